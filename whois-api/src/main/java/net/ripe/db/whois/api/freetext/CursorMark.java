@@ -0,0 +1,53 @@
+package net.ripe.db.whois.api.freetext;
+
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.util.BytesRef;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Position of the last hit of a page, for deep paging with search-after instead of collecting all preceding hits.
+ * <p/>
+ * Hits are sorted by object type, and then by primary key, so the cursor is the object type and primary key of the
+ * last hit returned. Both are stored in the index rather than derived from the reader, so paging continues after the
+ * same hit when the index is updated in between pages.
+ */
+final class CursorMark {
+    static final String START = "*";
+
+    private static final char SEPARATOR = ':';
+
+    private CursorMark() {
+    }
+
+    /**
+     * @return the hit to search after, or null to start at the first hit.
+     */
+    @CheckForNull
+    static FieldDoc parse(final String cursorMark) {
+        if (START.equals(cursorMark)) {
+            return null;
+        }
+
+        final int separator = cursorMark.lastIndexOf(SEPARATOR);
+        if (separator <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid cursorMark: %s", cursorMark));
+        }
+
+        final String primaryKey = cursorMark.substring(separator + 1);
+        try {
+            if (Integer.parseInt(primaryKey) < 0) {
+                throw new IllegalArgumentException(String.format("Invalid cursorMark: %s", cursorMark));
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Invalid cursorMark: %s", cursorMark));
+        }
+
+        // primary keys are unique, so the doc only breaks the tie with the hit itself, which is then skipped
+        return new FieldDoc(Integer.MAX_VALUE, Float.NaN, new Object[]{new BytesRef(cursorMark.substring(0, separator)), new BytesRef(primaryKey)});
+    }
+
+    static String format(final FieldDoc fieldDoc) {
+        return ((BytesRef) fieldDoc.fields[0]).utf8ToString() + SEPARATOR + ((BytesRef) fieldDoc.fields[1]).utf8ToString();
+    }
+}
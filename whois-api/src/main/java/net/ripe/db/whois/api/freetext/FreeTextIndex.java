@@ -8,7 +8,6 @@ import net.ripe.db.whois.api.search.IndexTemplate;
 import net.ripe.db.whois.api.search.RebuildableIndex;
 import net.ripe.db.whois.common.dao.jdbc.JdbcRpslObjectOperations;
 import net.ripe.db.whois.common.dao.jdbc.JdbcStreamingHelper;
-import net.ripe.db.whois.common.domain.serials.SerialEntry;
 import net.ripe.db.whois.common.rpsl.AttributeType;
 import net.ripe.db.whois.common.rpsl.RpslAttribute;
 import net.ripe.db.whois.common.rpsl.RpslObject;
@@ -30,7 +29,9 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
@@ -38,17 +39,28 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.sql.DataSource;
 import java.io.IOException;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
 public class FreeTextIndex extends RebuildableIndex {
     private static final Logger LOGGER = LoggerFactory.getLogger(FreeTextIndex.class);
 
-    private static final int INDEX_UPDATE_INTERVAL_IN_SECONDS = 60;
+    // changes are searchable within this interval; a poll without changes costs a single query for the last serial
+    private static final int INDEX_UPDATE_INTERVAL_IN_SECONDS = 5;
+    private static final int UPDATE_BATCH_SIZE = 5000;
+    private static final int RANGES_PER_THREAD = 8;
 
     static final String OBJECT_TYPE_FIELD_NAME = "object-type";
     static final String PRIMARY_KEY_FIELD_NAME = "primary-key";
@@ -87,11 +99,12 @@ public class FreeTextIndex extends RebuildableIndex {
         INDEXED_NOT_TOKENIZED.freeze();
     }
 
-    public static final int MAX_UPDATE_BACKLOG = 25000;
-
     private final JdbcTemplate jdbcTemplate;
     private final String source;
 
+    private int rebuildThreads = 4;
+    private int maxUpdateBacklog = 1000000;
+
     @Autowired
     FreeTextIndex(
             @Qualifier("whoisSlaveDataSource") final DataSource dataSource,
@@ -104,6 +117,22 @@ public class FreeTextIndex extends RebuildableIndex {
         this.source = source;
     }
 
+    @Value("${freetext.rebuild.threads:4}")
+    void setRebuildThreads(final int rebuildThreads) {
+        this.rebuildThreads = Math.max(1, rebuildThreads);
+    }
+
+    /**
+     * @param maxUpdateBacklog the number of serials an index may be behind at startup to be updated rather than
+     *                         rebuilt. Updates read the changes in batches of 5000 serials, so the default of
+     *                         1,000,000 serials is caught up in 200 range queries, still far less work than a rebuild
+     *                         reading every object in the database.
+     */
+    @Value("${freetext.update.backlog:1000000}")
+    void setMaxUpdateBacklog(final int maxUpdateBacklog) {
+        this.maxUpdateBacklog = Math.max(0, maxUpdateBacklog);
+    }
+
     @PostConstruct
     public void init() {
         super.init(new IndexWriterConfig(Version.LUCENE_41, INDEX_ANALYZER)
@@ -112,58 +141,134 @@ public class FreeTextIndex extends RebuildableIndex {
                 new IndexTemplate.WriteCallback() {
                     @Override
                     public void write(final IndexWriter indexWriter, final TaxonomyWriter taxonomyWriter) throws IOException {
-                        if (indexWriter.numDocs() == 0) {
-                            rebuild(indexWriter, taxonomyWriter);
-                        } else {
-                            final Map<String, String> commitData = indexWriter.getCommitData();
-                            final String committedSource = commitData.get("source");
-                            if (!source.equals(committedSource)) {
-                                LOGGER.warn("Index {} has invalid source: {}, rebuild", indexDir, committedSource);
-                                rebuild(indexWriter, taxonomyWriter);
-                            }
-
-                            if (!commitData.containsKey("serial")) {
-                                LOGGER.warn("Index {} is missing serial, rebuild", indexDir);
-                                rebuild(indexWriter, taxonomyWriter);
-                            }
-
-                            final int indexSerial = Integer.parseInt(commitData.get("serial"));
-                            final int serial = JdbcRpslObjectOperations.getSerials(jdbcTemplate).getEnd();
-                            if (serial < indexSerial) {
-                                LOGGER.warn("Index serial ({}) higher than database serial ({}), rebuild", indexSerial, serial);
-                                rebuild(indexWriter, taxonomyWriter);
-                            }
-
-                            if (serial - MAX_UPDATE_BACKLOG > indexSerial) {
-                                LOGGER.warn("Index serial ({}) too far behind database serial ({}), rebuild", indexSerial, serial);
-                                rebuild(indexWriter, taxonomyWriter);
-                            }
+                        if (isRebuildNeeded(indexWriter)) {
+                            requestRebuild();
                         }
                     }
                 });
     }
 
+    private boolean isRebuildNeeded(final IndexWriter indexWriter) {
+        if (indexWriter.numDocs() == 0) {
+            return true;
+        }
+
+        final Map<String, String> commitData = indexWriter.getCommitData();
+        final String committedSource = commitData.get("source");
+        if (!source.equals(committedSource)) {
+            LOGGER.warn("Index {} has invalid source: {}, rebuild", indexDir, committedSource);
+            return true;
+        }
+
+        if (!commitData.containsKey("serial")) {
+            LOGGER.warn("Index {} is missing serial, rebuild", indexDir);
+            return true;
+        }
+
+        final int indexSerial = Integer.parseInt(commitData.get("serial"));
+        final int serial = JdbcRpslObjectOperations.getSerials(jdbcTemplate).getEnd();
+        if (serial < indexSerial) {
+            LOGGER.warn("Index serial ({}) higher than database serial ({}), rebuild", indexSerial, serial);
+            return true;
+        }
+
+        if (serial - maxUpdateBacklog > indexSerial) {
+            LOGGER.warn("Index serial ({}) too far behind database serial ({}), rebuild", indexSerial, serial);
+            return true;
+        }
+
+        return false;
+    }
+
     @PreDestroy
     public void destroy() {
         cleanup();
     }
 
+    /**
+     * Index all current objects into the fresh writers of a side index, reading object id ranges of the last table in
+     * parallel.
+     * <p/>
+     * Each range is streamed on its own connection, and its objects are parsed and added to the index writer by the
+     * thread reading it, so documents are built and indexed concurrently.
+     */
     protected void rebuild(final IndexWriter indexWriter, final TaxonomyWriter taxonomyWriter) throws IOException {
         indexWriter.deleteAll();
         final int maxSerial = JdbcRpslObjectOperations.getSerials(jdbcTemplate).getEnd();
 
+        final Map<String, Object> objectIds = jdbcTemplate.queryForMap("SELECT MIN(object_id) AS min_id, MAX(object_id) AS max_id FROM last");
+        if (objectIds.get("max_id") != null) {
+            final long minObjectId = ((Number) objectIds.get("min_id")).longValue();
+            final long maxObjectId = ((Number) objectIds.get("max_id")).longValue();
+            final int nrRanges = rebuildThreads * RANGES_PER_THREAD;
+            final long rangeSize = (maxObjectId - minObjectId) / nrRanges + 1;
+
+            final ExecutorService executorService = Executors.newFixedThreadPool(rebuildThreads, new ThreadFactory() {
+                final ThreadGroup threadGroup = new ThreadGroup(Thread.currentThread().getThreadGroup(), "FreeTextRebuild");
+                final AtomicInteger threadNum = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(threadGroup, r, String.format("FreeTextRebuild-%s", threadNum.incrementAndGet()));
+                }
+            });
+
+            try {
+                final AtomicInteger nrIndexed = new AtomicInteger();
+                final List<Future<?>> futures = Lists.newArrayList();
+                for (long rangeStart = minObjectId; rangeStart <= maxObjectId; rangeStart += rangeSize) {
+                    final long fromInclusive = rangeStart;
+                    final long toExclusive = Math.min(rangeStart + rangeSize, maxObjectId + 1);
+
+                    futures.add(executorService.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            rebuildRange(indexWriter, taxonomyWriter, fromInclusive, toExclusive, nrIndexed);
+                            return null;
+                        }
+                    }));
+                }
+
+                for (final Future<?> future : futures) {
+                    try {
+                        future.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while rebuilding", e);
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException("Rebuilding", e.getCause());
+                    }
+                }
+
+                LOGGER.info("Indexed {} objects", nrIndexed.get());
+            } finally {
+                executorService.shutdownNow();
+            }
+        }
+
+        updateMetadata(indexWriter, source, maxSerial);
+    }
+
+    private void rebuildRange(final IndexWriter indexWriter, final TaxonomyWriter taxonomyWriter, final long fromInclusive, final long toExclusive, final AtomicInteger nrIndexed) {
         JdbcStreamingHelper.executeStreaming(jdbcTemplate, "" +
                 "SELECT object_id, object " +
                 "FROM last " +
-                "WHERE sequence_id != 0 " +
+                "WHERE object_id >= ? " +
+                "AND object_id < ? " +
+                "AND sequence_id != 0 " +
                 "AND object_type != 100 ",
+                new PreparedStatementSetter() {
+                    @Override
+                    public void setValues(final PreparedStatement ps) throws SQLException {
+                        ps.setLong(1, fromInclusive);
+                        ps.setLong(2, toExclusive);
+                    }
+                },
                 new ResultSetExtractor<Void>() {
                     private static final int LOG_EVERY = 500000;
 
                     @Override
                     public Void extractData(final ResultSet rs) throws SQLException, DataAccessException {
-                        int nrIndexed = 0;
-
                         while (rs.next()) {
                             final int objectId = rs.getInt(1);
 
@@ -178,21 +283,17 @@ public class FreeTextIndex extends RebuildableIndex {
                             try {
                                 addEntry(indexWriter, taxonomyWriter, object);
 
-                                if (++nrIndexed % LOG_EVERY == 0) {
-                                    LOGGER.info("Indexed {} objects", nrIndexed);
+                                if (nrIndexed.incrementAndGet() % LOG_EVERY == 0) {
+                                    LOGGER.info("Indexed {} objects", nrIndexed.get());
                                 }
                             } catch (IOException e) {
                                 throw new IllegalStateException("Indexing", e);
                             }
                         }
 
-                        LOGGER.info("Indexed {} objects", nrIndexed);
                         return null;
                     }
                 });
-
-
-        updateMetadata(indexWriter, source, maxSerial);
     }
 
     @Scheduled(fixedDelay = INDEX_UPDATE_INTERVAL_IN_SECONDS * 1000)
@@ -207,34 +308,71 @@ public class FreeTextIndex extends RebuildableIndex {
 
         if (last > end) {
             LOGGER.warn("Index serial ({}) higher than database serial ({}), rebuilding", last, end);
-            rebuild(indexWriter, taxonomyWriter);
+            requestRebuild();
         } else if (last < end) {
             LOGGER.debug("Updating index {} to {}", indexDir, end);
 
             final Stopwatch stopwatch = new Stopwatch().start();
-            for (int serial = last + 1; serial <= end; serial++) {
-                final SerialEntry serialEntry = JdbcRpslObjectOperations.getById(jdbcTemplate, serial);
-                if (serialEntry == null) {
-                    // TODO: [AH] suboptimal; there could be big gaps in serial entries. we should have a getNextId() call instead, SELECT()ing on serial_id > serial
-                    continue;
-                }
-                final RpslObject rpslObject = serialEntry.getRpslObject();
-
-                switch (serialEntry.getOperation()) {
-                    case UPDATE:
-                        deleteEntry(indexWriter, rpslObject);
-                        addEntry(indexWriter, taxonomyWriter, rpslObject);
-                        break;
-                    case DELETE:
-                        deleteEntry(indexWriter, rpslObject);
-                        break;
-                }
+            int nrObjects = 0;
+            for (int batchStart = last; batchStart < end; batchStart += UPDATE_BATCH_SIZE) {
+                nrObjects += updateBatch(indexWriter, taxonomyWriter, batchStart, Math.min(end, batchStart + UPDATE_BATCH_SIZE));
             }
 
-            LOGGER.debug("Updated index {} in {}", indexDir, stopwatch.stop());
+            LOGGER.debug("Updated {} objects in index {} in {}", nrObjects, indexDir, stopwatch.stop());
+            updateMetadata(indexWriter, source, end);
+        }
+    }
+
+    /**
+     * Index the current version of all objects changed in the serial range, in a single range query.
+     *
+     * @return the number of objects changed.
+     */
+    private int updateBatch(final IndexWriter indexWriter, final TaxonomyWriter taxonomyWriter, final int fromExclusive, final int toInclusive) throws IOException {
+        final Map<Integer, RpslObject> changedObjects = Maps.newLinkedHashMap();
+
+        jdbcTemplate.query("" +
+                "SELECT serials.object_id, last.sequence_id, last.object_type, last.object " +
+                "FROM serials " +
+                "LEFT JOIN last ON last.object_id = serials.object_id " +
+                "WHERE serials.serial_id > ? " +
+                "AND serials.serial_id <= ?",
+                new RowCallbackHandler() {
+                    @Override
+                    public void processRow(final ResultSet rs) throws SQLException {
+                        final int objectId = rs.getInt(1);
+                        if (changedObjects.containsKey(objectId)) {
+                            return;
+                        }
+
+                        RpslObject object = null;
+                        if (rs.getInt(2) != 0 && rs.getInt(3) != 100) {
+                            try {
+                                object = RpslObject.parse(objectId, rs.getBytes(4));
+                            } catch (RuntimeException e) {
+                                LOGGER.warn("Unable to parse object with id: {}", objectId, e);
+                            }
+                        }
+
+                        changedObjects.put(objectId, object);
+                    }
+                },
+                fromExclusive, toInclusive);
+
+        final List<Term> deletes = Lists.newArrayListWithExpectedSize(changedObjects.size());
+        for (final Integer objectId : changedObjects.keySet()) {
+            deletes.add(new Term(PRIMARY_KEY_FIELD_NAME, Integer.toString(objectId)));
+        }
+
+        indexWriter.deleteDocuments(deletes.toArray(new Term[deletes.size()]));
+
+        for (final RpslObject rpslObject : changedObjects.values()) {
+            if (rpslObject != null) {
+                addEntry(indexWriter, taxonomyWriter, rpslObject);
+            }
         }
 
-        updateMetadata(indexWriter, source, end);
+        return changedObjects.size();
     }
 
     private void updateMetadata(final IndexWriter indexWriter, final String source, final int serial) {
@@ -262,8 +400,4 @@ public class FreeTextIndex extends RebuildableIndex {
 
         indexWriter.addDocument(document);
     }
-
-    private void deleteEntry(final IndexWriter indexWriter, final RpslObject rpslObject) throws IOException {
-        indexWriter.deleteDocuments(new Term(PRIMARY_KEY_FIELD_NAME, Integer.toString(rpslObject.getObjectId())));
-    }
 }
@@ -42,7 +42,9 @@ import static net.ripe.db.whois.api.freetext.FreeTextIndex.PRIMARY_KEY_FIELD_NAM
 class FreeTextSearch {
     private static final Logger LOGGER = LoggerFactory.getLogger(FreeTextSearch.class);
 
-    static final Sort SORT_BY_OBJECT_TYPE = new Sort(new SortField(FreeTextIndex.OBJECT_TYPE_FIELD_NAME, SortField.Type.STRING));
+    static final Sort SORT_BY_OBJECT_TYPE_AND_PRIMARY_KEY = new Sort(
+            new SortField(FreeTextIndex.OBJECT_TYPE_FIELD_NAME, SortField.Type.STRING),
+            new SortField(PRIMARY_KEY_FIELD_NAME, SortField.Type.STRING));
     static final FacetSearchParams FACET_SEARCH_PARAMS = new FacetSearchParams(new CountFacetRequest(new CategoryPath(FreeTextIndex.OBJECT_TYPE_FIELD_NAME), Integer.MAX_VALUE));
 
     private final FreeTextIndex freeTextIndex;
@@ -85,23 +87,28 @@ class FreeTextSearch {
         freeTextIndex.search(new IndexTemplate.SearchCallback<Void>() {
             @Override
             public Void search(final IndexReader indexReader, final TaxonomyReader taxonomyReader, final IndexSearcher indexSearcher) throws IOException {
-                final int maxResults = Math.max(100, indexReader.numDocs());
-                final TopFieldCollector topFieldCollector = TopFieldCollector.create(SORT_BY_OBJECT_TYPE, maxResults, false, false, false, false);
-                final FacetsCollector facetsCollector = FacetsCollector.create(FACET_SEARCH_PARAMS, indexReader, taxonomyReader);
+                final String cursorMark = searchRequest.getCursorMark();
+                final FieldDoc after = cursorMark == null ? null : CursorMark.parse(cursorMark);
+                final int start = cursorMark == null ? Math.max(0, searchRequest.getStart()) : 0;
+                final int rows = Math.max(0, searchRequest.getRows());
 
-                indexSearcher.search(query, MultiCollector.wrap(topFieldCollector, facetsCollector));
+                // only the hits up to the requested page are kept, not a queue as large as the index
+                final int numHits = (int) Math.max(1, Math.min((long) start + rows, indexReader.maxDoc()));
+                final TopFieldCollector topFieldCollector = TopFieldCollector.create(SORT_BY_OBJECT_TYPE_AND_PRIMARY_KEY, numHits, after, cursorMark != null, false, false, false);
+
+                // facets are counted in the same pass over the matching documents
+                final FacetsCollector facetsCollector = searchRequest.isFacet() ? FacetsCollector.create(FACET_SEARCH_PARAMS, indexReader, taxonomyReader) : null;
+                indexSearcher.search(query, facetsCollector == null ? topFieldCollector : MultiCollector.wrap(topFieldCollector, facetsCollector));
 
                 final List<Document> documents = Lists.newArrayList();
 
                 final TopDocs topDocs = topFieldCollector.topDocs();
-                final int start = Math.max(0, searchRequest.getStart());
-                final int end = Math.min(start + searchRequest.getRows(), topDocs.totalHits);
+                final int end = (int) Math.min((long) start + rows, topDocs.scoreDocs.length);
                 for (int index = start; index < end; index++) {
                     final ScoreDoc scoreDoc = topDocs.scoreDocs[index];
                     documents.add(indexSearcher.doc(scoreDoc.doc));
                 }
 
-                final List<FacetResult> facetResults = facetsCollector.getFacetResults();
                 final List<SearchResponse.Lst> responseLstList = Lists.newArrayList();
                 responseLstList.add(getResponseHeader(searchRequest, stopwatch.elapsedTime(TimeUnit.MILLISECONDS)));
 
@@ -109,14 +116,18 @@ class FreeTextSearch {
                     responseLstList.add(createHighlights(searchRequest, query, documents));
                 }
 
-                if (searchRequest.isFacet()) {
-                    responseLstList.add(getFacet(facetResults));
+                if (facetsCollector != null) {
+                    responseLstList.add(getFacet(facetsCollector.getFacetResults()));
                 }
 
                 final SearchResponse searchResponse = new SearchResponse();
-                searchResponse.setResult(createResult(searchRequest, documents, topDocs.totalHits));
+                searchResponse.setResult(createResult(documents, topDocs.totalHits, start));
                 searchResponse.setLsts(responseLstList);
 
+                if (cursorMark != null) {
+                    searchResponse.setNextCursorMark(end > start ? CursorMark.format((FieldDoc) topDocs.scoreDocs[end - 1]) : cursorMark);
+                }
+
                 marshaller.marshal(searchResponse, new StreamResult(writer));
                 return null;
             }
@@ -139,8 +150,8 @@ class FreeTextSearch {
         return responseHeader;
     }
 
-    private SearchResponse.Result createResult(final SearchRequest searchRequest, final List<Document> documents, final int totalHits) {
-        final SearchResponse.Result result = new SearchResponse.Result("response", totalHits, searchRequest.getStart());
+    private SearchResponse.Result createResult(final List<Document> documents, final int totalHits, final int start) {
+        final SearchResponse.Result result = new SearchResponse.Result("response", totalHits, start);
 
         final List<SearchResponse.Result.Doc> resultDocumentList = Lists.newArrayList();
         for (Document document : documents) {
@@ -20,6 +20,7 @@ class SearchRequest {
     private static final String PARAM_HIGHLIGHT_POST = "hl.simple.post";
     private static final String PARAM_RESPONSE_WRITER_TYPE = "wt";
     private static final String PARAM_FACET = "facet";
+    private static final String PARAM_CURSOR_MARK = "cursorMark";
 
     private static final Splitter PARAM_SPLITTER = Splitter.on('&');
     private static final Splitter VALUE_SPLITTER = Splitter.on('=');
@@ -84,6 +85,13 @@ class SearchRequest {
         return getIntValue(PARAM_ROWS, 10);
     }
 
+    /**
+     * @return the position to continue deep paging after, "*" for the first page, or null if not paging by cursor.
+     */
+    public String getCursorMark() {
+        return getStringValue(PARAM_CURSOR_MARK, null);
+    }
+
     public String getFormat() {
         return getStringValue(PARAM_RESPONSE_WRITER_TYPE, "xml");
     }
@@ -13,10 +13,17 @@ class SearchResponse {
     @XmlElements({@XmlElement(name = "lst", type = Lst.class)})
     private List<Lst> lsts;
 
+    @XmlElement(name = "str")
+    private Str nextCursorMark;
+
     public void setResult(final Result result) {
         this.result = result;
     }
 
+    public void setNextCursorMark(final String nextCursorMark) {
+        this.nextCursorMark = new Str("nextCursorMark", nextCursorMark);
+    }
+
     public void setLsts(final List<Lst> lsts) {
         this.lsts = lsts;
     }
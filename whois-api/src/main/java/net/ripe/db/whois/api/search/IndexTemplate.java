@@ -1,15 +1,17 @@
 package net.ripe.db.whois.api.search;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.lucene.facet.search.SearcherTaxonomyManager;
 import org.apache.lucene.facet.taxonomy.TaxonomyReader;
 import org.apache.lucene.facet.taxonomy.TaxonomyWriter;
-import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyReader;
 import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
 import org.apache.lucene.index.*;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,6 +23,12 @@ import java.util.concurrent.Semaphore;
 
 import static org.apache.lucene.util.IOUtils.closeWhileHandlingException;
 
+/**
+ * Index with a taxonomy for facets, written by one thread at a time and searched concurrently.
+ * <p/>
+ * Searches share a near real-time pair of index searcher and taxonomy reader, which is refreshed after each commit,
+ * instead of opening readers per search.
+ */
 public class IndexTemplate implements Closeable {
     private static final Logger LOGGER = LoggerFactory.getLogger(IndexTemplate.class);
 
@@ -30,8 +38,8 @@ public class IndexTemplate implements Closeable {
     private final Semaphore updateLock = new Semaphore(1);
 
     private IndexWriter indexWriter;
-    private ReaderManager readerManager;
     private DirectoryTaxonomyWriter taxonomyWriter;
+    private volatile SearcherTaxonomyManager searcherTaxonomyManager;
 
     public IndexTemplate(final String directory, final IndexWriterConfig config) throws IOException {
         if (StringUtils.isEmpty(directory)) {
@@ -60,7 +68,7 @@ public class IndexTemplate implements Closeable {
         updateLock.acquireUninterruptibly();
 
         try {
-            closeWhileHandlingException(readerManager, indexWriter, taxonomyWriter, index, taxonomy);
+            closeWhileHandlingException(searcherTaxonomyManager, indexWriter, taxonomyWriter, index, taxonomy);
         } finally {
             updateLock.release();
         }
@@ -77,7 +85,7 @@ public class IndexTemplate implements Closeable {
             taxonomyWriter.commit();
             indexWriter.commit();
 
-            readerManager.maybeRefresh();
+            searcherTaxonomyManager.maybeRefreshBlocking();
         } catch (IOException e) {
             LOGGER.error("Unexpected", e);
             rollback();
@@ -95,6 +103,62 @@ public class IndexTemplate implements Closeable {
         }
     }
 
+    /**
+     * Replace the contents of this index and its taxonomy with those of the rebuilt index, including its commit data.
+     * <p/>
+     * The rebuilt index is copied from its directories, so its writers are committed and closed first. It can only be
+     * closed afterwards. Searches keep using the current readers until the replacement is committed.
+     */
+    public void replace(final IndexTemplate rebuilt) throws IOException {
+        updateLock.acquireUninterruptibly();
+        rebuilt.updateLock.acquireUninterruptibly();
+
+        try {
+            final Map<String, String> commitData = rebuilt.indexWriter.getCommitData();
+            rebuilt.closeWriters();
+
+            taxonomyWriter.replaceTaxonomy(rebuilt.taxonomy);
+            indexWriter.deleteAll();
+            indexWriter.addIndexes(rebuilt.index);
+            indexWriter.setCommitData(commitData);
+
+            taxonomyWriter.prepareCommit();
+            indexWriter.prepareCommit();
+
+            taxonomyWriter.commit();
+            indexWriter.commit();
+
+            // replacing the taxonomy starts a new taxonomy epoch, which the current manager can not refresh to
+            final SearcherTaxonomyManager previous = searcherTaxonomyManager;
+            searcherTaxonomyManager = new SearcherTaxonomyManager(indexWriter, true, null, taxonomyWriter);
+            closeWhileHandlingException(previous);
+        } catch (IOException e) {
+            LOGGER.error("Unexpected", e);
+            rollback();
+            throw e;
+        } catch (RuntimeException e) {
+            LOGGER.error("Unexpected", e);
+            rollback();
+            throw e;
+        } finally {
+            rebuilt.updateLock.release();
+            updateLock.release();
+        }
+    }
+
+    private void closeWriters() throws IOException {
+        taxonomyWriter.commit();
+        indexWriter.commit();
+
+        try {
+            IOUtils.close(searcherTaxonomyManager, taxonomyWriter, indexWriter);
+        } finally {
+            searcherTaxonomyManager = null;
+            taxonomyWriter = null;
+            indexWriter = null;
+        }
+    }
+
     private void rollback() throws IOException {
         try {
             indexWriter.rollback();
@@ -105,39 +169,49 @@ public class IndexTemplate implements Closeable {
     }
 
     private void createNewWriters() throws IOException {
-        closeWhileHandlingException(taxonomyWriter, indexWriter);
+        // searches in progress keep using the readers they acquired from the previous manager
+        closeWhileHandlingException(searcherTaxonomyManager, taxonomyWriter, indexWriter);
         taxonomyWriter = new DirectoryTaxonomyWriter(taxonomy);
         indexWriter = new IndexWriter(index, config);
 
         taxonomyWriter.commit();
         indexWriter.commit();
 
-        readerManager = new ReaderManager(indexWriter, true);
+        searcherTaxonomyManager = new SearcherTaxonomyManager(indexWriter, true, null, taxonomyWriter);
     }
 
     public <T> T read(final ReadCallback<T> readCallback) throws IOException {
-        DirectoryReader indexReader = null;
-        TaxonomyReader taxonomyReader = null;
-
-        try {
-            indexReader = readerManager.acquire();
-            taxonomyReader = new DirectoryTaxonomyReader(taxonomy);
-
-            return readCallback.read(indexReader, taxonomyReader);
-        } finally {
-            closeWhileHandlingException(taxonomyReader);
-            readerManager.release(indexReader);
-        }
+        return search(new SearchCallback<T>() {
+            @Override
+            public T search(final IndexReader indexReader, final TaxonomyReader taxonomyReader, final IndexSearcher indexSearcher) throws IOException {
+                return readCallback.read(indexReader, taxonomyReader);
+            }
+        });
     }
 
     public <T> T search(final SearchCallback<T> searchCallback) throws IOException {
-        return read(new ReadCallback<T>() {
-            @Override
-            public T read(final IndexReader indexReader, final TaxonomyReader taxonomyReader) throws IOException {
-                final IndexSearcher indexSearcher = new IndexSearcher(indexReader);
-                return searchCallback.search(indexReader, taxonomyReader, indexSearcher);
+        SearcherTaxonomyManager manager = searcherTaxonomyManager;
+        SearcherTaxonomyManager.SearcherAndTaxonomy searcherAndTaxonomy;
+        while (true) {
+            try {
+                searcherAndTaxonomy = manager.acquire();
+                break;
+            } catch (AlreadyClosedException e) {
+                // the manager was replaced in between, retry on the new one
+                if (manager == searcherTaxonomyManager) {
+                    throw e;
+                }
+
+                manager = searcherTaxonomyManager;
             }
-        });
+        }
+
+        try {
+            final IndexSearcher indexSearcher = searcherAndTaxonomy.searcher;
+            return searchCallback.search(indexSearcher.getIndexReader(), searcherAndTaxonomy.taxonomyReader, indexSearcher);
+        } finally {
+            manager.release(searcherAndTaxonomy);
+        }
     }
 
     public Map<String, String> getCommitData() throws IOException {
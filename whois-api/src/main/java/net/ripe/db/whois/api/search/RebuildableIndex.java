@@ -1,23 +1,32 @@
 package net.ripe.db.whois.api.search;
 
 import com.google.common.base.Stopwatch;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.lucene.facet.taxonomy.TaxonomyWriter;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.search.Query;
 import org.slf4j.Logger;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public abstract class RebuildableIndex {
+    private static final String REBUILD_DIR = "rebuild";
+
     private final Logger logger;
 
     private final Semaphore updateLock = new Semaphore(1);
+    private final Semaphore rebuildLock = new Semaphore(1);
+    private final AtomicBoolean rebuildRequested = new AtomicBoolean();
 
     protected final String indexDir;
     protected IndexTemplate index;
+    private IndexWriterConfig config;
 
     protected RebuildableIndex(final Logger logger, final String indexDir) {
         this.logger = logger;
@@ -30,35 +39,82 @@ public abstract class RebuildableIndex {
         }
 
         try {
-            index = new IndexTemplate(indexDir, config);
+            this.config = config;
+            index = new IndexTemplate(indexDir, config.clone());
             index.write(initializer);
         } catch (IOException e) {
             throw new IllegalStateException(String.format("Initializing index in %s", indexDir), e);
         } finally {
             updateLock.release();
         }
+
+        rebuildIfRequested();
     }
 
     protected void cleanup() {
         IOUtils.closeQuietly(index);
     }
 
+    /**
+     * Rebuild into a separate index, while the current index is still searched and updated, and replace the current
+     * index with it when complete.
+     */
     public final void rebuild() {
         try {
-            updateLock.acquireUninterruptibly();
+            rebuildLock.acquireUninterruptibly();
             logger.info("Rebuilding index {}", indexDir);
             final Stopwatch stopwatch = new Stopwatch().start();
-            index.write(new IndexTemplate.WriteCallback() {
-                @Override
-                public void write(final IndexWriter indexWriter, final TaxonomyWriter taxonomyWriter) throws IOException {
-                    rebuild(indexWriter, taxonomyWriter);
+
+            final String rebuildDir = StringUtils.isEmpty(indexDir) ? null : new File(indexDir, REBUILD_DIR).getAbsolutePath();
+            deleteRebuildDir(rebuildDir);
+
+            final IndexTemplate rebuiltIndex = new IndexTemplate(rebuildDir, config.clone().setOpenMode(IndexWriterConfig.OpenMode.CREATE));
+            try {
+                rebuiltIndex.write(new IndexTemplate.WriteCallback() {
+                    @Override
+                    public void write(final IndexWriter indexWriter, final TaxonomyWriter taxonomyWriter) throws IOException {
+                        rebuild(indexWriter, taxonomyWriter);
+                    }
+                });
+
+                logger.info("Rebuilt index {} in {}, replacing current index", indexDir, stopwatch);
+
+                updateLock.acquireUninterruptibly();
+                try {
+                    index.replace(rebuiltIndex);
+                } finally {
+                    updateLock.release();
                 }
-            });
-            logger.info("Rebuilt index {} in {}", indexDir, stopwatch.stop());
+            } finally {
+                IOUtils.closeQuietly(rebuiltIndex);
+                deleteRebuildDir(rebuildDir);
+            }
+
+            logger.info("Rebuilt and replaced index {} in {}", indexDir, stopwatch.stop());
         } catch (IOException e) {
             logger.error("Rebuilding index: {}", indexDir, e);
         } finally {
-            updateLock.release();
+            rebuildLock.release();
+        }
+    }
+
+    /**
+     * Request a rebuild from a write callback. The index being written can't be rebuilt in place, so the rebuild is
+     * done by {@link #rebuild()} once the write has completed.
+     */
+    protected void requestRebuild() {
+        rebuildRequested.set(true);
+    }
+
+    private void rebuildIfRequested() {
+        if (rebuildRequested.getAndSet(false)) {
+            rebuild();
+        }
+    }
+
+    private static void deleteRebuildDir(final String rebuildDir) throws IOException {
+        if (rebuildDir != null) {
+            FileUtils.deleteDirectory(new File(rebuildDir));
         }
     }
 
@@ -84,6 +140,8 @@ public abstract class RebuildableIndex {
         } finally {
             updateLock.release();
         }
+
+        rebuildIfRequested();
     }
 
     public void delete(final Query query) {
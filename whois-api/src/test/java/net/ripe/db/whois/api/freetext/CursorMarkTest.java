@@ -0,0 +1,45 @@
+package net.ripe.db.whois.api.freetext;
+
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class CursorMarkTest {
+
+    @Test
+    public void start() {
+        assertThat(CursorMark.parse("*"), is(nullValue()));
+    }
+
+    @Test
+    public void format_and_parse() {
+        final FieldDoc fieldDoc = CursorMark.parse(CursorMark.format(new FieldDoc(1, Float.NaN, new Object[]{new BytesRef("aut-num"), new BytesRef("1234")})));
+
+        assertThat(((BytesRef) fieldDoc.fields[0]).utf8ToString(), is("aut-num"));
+        assertThat(((BytesRef) fieldDoc.fields[1]).utf8ToString(), is("1234"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missing_object_type() {
+        CursorMark.parse(":1234");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missing_primary_key() {
+        CursorMark.parse("inetnum");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalid_primary_key() {
+        CursorMark.parse("inetnum:abc");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negative_primary_key() {
+        CursorMark.parse("inetnum:-1");
+    }
+}
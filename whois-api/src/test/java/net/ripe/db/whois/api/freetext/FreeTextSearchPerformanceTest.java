@@ -0,0 +1,137 @@
+package net.ripe.db.whois.api.freetext;
+
+import com.google.common.base.Stopwatch;
+import net.ripe.db.whois.common.ManualTest;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import static net.ripe.db.whois.api.freetext.FreeTextSearch.SORT_BY_OBJECT_TYPE_AND_PRIMARY_KEY;
+
+/**
+ * Compares time and allocation per query of collecting into a queue sized to the index, as done before, and into a
+ * queue sized to the requested page, for a selective and an unselective query.
+ */
+@Category(ManualTest.class)
+public class FreeTextSearchPerformanceTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FreeTextSearchPerformanceTest.class);
+
+    private static final int NR_DOCUMENTS = 1_000_000;
+    private static final int NR_QUERIES = 20;
+    private static final int NR_ROUNDS = 3;
+    private static final int ROWS = 10;
+
+    private static final String[] OBJECT_TYPES = {"inetnum", "inet6num", "route", "person", "role", "mntner", "organisation", "aut-num"};
+
+    private static RAMDirectory directory;
+    private static DirectoryReader indexReader;
+    private static IndexSearcher indexSearcher;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        directory = new RAMDirectory();
+
+        final Stopwatch stopwatch = new Stopwatch().start();
+        try (final IndexWriter indexWriter = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_44, new KeywordAnalyzer()))) {
+            for (int i = 0; i < NR_DOCUMENTS; i++) {
+                final Document document = new Document();
+                document.add(new StringField(FreeTextIndex.PRIMARY_KEY_FIELD_NAME, Integer.toString(i), Field.Store.YES));
+                document.add(new StringField(FreeTextIndex.OBJECT_TYPE_FIELD_NAME, OBJECT_TYPES[i % OBJECT_TYPES.length], Field.Store.YES));
+                document.add(new StringField("source", "RIPE", Field.Store.NO));
+                document.add(new StringField("mnt-by", i % 1000 == 0 ? "SELECTIVE-MNT" : "OTHER-MNT", Field.Store.NO));
+                indexWriter.addDocument(document);
+            }
+        }
+
+        indexReader = DirectoryReader.open(directory);
+        indexSearcher = new IndexSearcher(indexReader);
+        LOGGER.info("Indexed {} documents in {}", NR_DOCUMENTS, stopwatch.stop());
+    }
+
+    @AfterClass
+    public static void tearDown() throws IOException {
+        indexReader.close();
+        directory.close();
+    }
+
+    @Test
+    public void selective_query() throws IOException {
+        run("selective", new TermQuery(new Term("mnt-by", "SELECTIVE-MNT")));
+    }
+
+    @Test
+    public void unselective_query() throws IOException {
+        run("unselective", new TermQuery(new Term("source", "RIPE")));
+    }
+
+    private void run(final String name, final Query query) throws IOException {
+        for (int round = 0; round < NR_ROUNDS; round++) {
+            measure(name + " sized to index", query, Math.max(100, indexReader.numDocs()), round);
+            measure(name + " sized to page", query, ROWS, round);
+            measureSearchAfter(name + " search after", query, round);
+        }
+    }
+
+    private void measure(final String name, final Query query, final int numHits, final int round) throws IOException {
+        final long allocatedBefore = allocatedBytes();
+        final Stopwatch stopwatch = new Stopwatch().start();
+
+        int totalHits = 0;
+        for (int i = 0; i < NR_QUERIES; i++) {
+            final TopFieldCollector collector = TopFieldCollector.create(SORT_BY_OBJECT_TYPE_AND_PRIMARY_KEY, numHits, false, false, false, false);
+            indexSearcher.search(query, collector);
+            totalHits = collector.topDocs(0, ROWS).totalHits;
+        }
+
+        log(name, round, stopwatch.stop(), allocatedBytes() - allocatedBefore, totalHits);
+    }
+
+    private void measureSearchAfter(final String name, final Query query, final int round) throws IOException {
+        final TopFieldCollector firstPage = TopFieldCollector.create(SORT_BY_OBJECT_TYPE_AND_PRIMARY_KEY, ROWS, null, true, false, false, false);
+        indexSearcher.search(query, firstPage);
+        final TopDocs firstTopDocs = firstPage.topDocs();
+        final FieldDoc after = CursorMark.parse(CursorMark.format((FieldDoc) firstTopDocs.scoreDocs[firstTopDocs.scoreDocs.length - 1]));
+
+        final long allocatedBefore = allocatedBytes();
+        final Stopwatch stopwatch = new Stopwatch().start();
+
+        int totalHits = 0;
+        for (int i = 0; i < NR_QUERIES; i++) {
+            final TopFieldCollector collector = TopFieldCollector.create(SORT_BY_OBJECT_TYPE_AND_PRIMARY_KEY, ROWS, after, true, false, false, false);
+            indexSearcher.search(query, collector);
+            totalHits = collector.topDocs().totalHits;
+        }
+
+        log(name, round, stopwatch.stop(), allocatedBytes() - allocatedBefore, totalHits);
+    }
+
+    private static void log(final String name, final int round, final Stopwatch stopwatch, final long allocated, final int totalHits) {
+        LOGGER.info("{}: round {}: {} queries ({} hits) in {}, {} KB allocated per query", name, round, NR_QUERIES, totalHits, stopwatch, allocated / NR_QUERIES / 1024);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
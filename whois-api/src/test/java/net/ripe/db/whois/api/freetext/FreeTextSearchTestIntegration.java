@@ -19,6 +19,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import java.io.StringReader;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.apache.commons.lang.StringUtils.countMatches;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
@@ -27,6 +31,7 @@ import static org.junit.Assert.fail;
 @Category(IntegrationTest.class)
 public class FreeTextSearchTestIntegration extends AbstractRestClientTest {
     private static final Audience AUDIENCE = Audience.PUBLIC;
+    private static final Pattern NEXT_CURSOR_MARK_PATTERN = Pattern.compile("<str name=\"nextCursorMark\">([^<]*)</str>");
 
     @Autowired FreeTextIndex freeTextIndex;
 
@@ -388,6 +393,29 @@ public class FreeTextSearchTestIntegration extends AbstractRestClientTest {
         assertThat(query("q=JM1-RIPE"), containsString("numFound=\"0\""));
     }
 
+    @Test
+    public void update_applies_latest_version_of_changed_objects() {
+        final RpslObject deleted = databaseHelper.addObject(RpslObject.parse("" +
+                "person: John McDonald\n" +
+                "nic-hdl: JM1-RIPE\n" +
+                "source: RIPE"));
+        databaseHelper.addObject(RpslObject.parse("" +
+                "mntner: DEV-MNT\n" +
+                "descr: original\n" +
+                "source: RIPE"));
+        databaseHelper.updateObject(RpslObject.parse("" +
+                "mntner: DEV-MNT\n" +
+                "descr: updated\n" +
+                "source: RIPE"));
+        databaseHelper.removeObject(deleted);
+
+        freeTextIndex.update();
+
+        assertThat(query("q=JM1-RIPE"), containsString("numFound=\"0\""));
+        assertThat(query("q=original"), containsString("numFound=\"0\""));
+        assertThat(query("q=updated"), containsString("numFound=\"1\""));
+    }
+
     @Test
     public void search_with_forward_slash() {
         databaseHelper.addObject(RpslObject.parse(
@@ -458,6 +486,36 @@ public class FreeTextSearchTestIntegration extends AbstractRestClientTest {
         assertThat(query("q=193"), containsString("numFound=\"2\""));
     }
 
+    @Test
+    public void search_with_cursor_mark() throws Exception {
+        databaseHelper.addObject("mntner: FIRST-MNT\ndescr: paged\nsource: RIPE");
+        databaseHelper.addObject("mntner: SECOND-MNT\ndescr: paged\nsource: RIPE");
+        databaseHelper.addObject("mntner: THIRD-MNT\ndescr: paged\nsource: RIPE");
+        freeTextIndex.rebuild();
+
+        final String firstPage = query("q=paged&rows=2&cursorMark=*");
+        assertThat(firstPage, containsString("numFound=\"3\""));
+        assertThat(countMatches(firstPage, "<doc>"), is(2));
+
+        final String secondPage = query("q=paged&rows=2&cursorMark=" + getNextCursorMark(firstPage));
+        assertThat(secondPage, containsString("numFound=\"3\""));
+        assertThat(countMatches(secondPage, "<doc>"), is(1));
+
+        final String lastPage = query("q=paged&rows=2&cursorMark=" + getNextCursorMark(secondPage));
+        assertThat(countMatches(lastPage, "<doc>"), is(0));
+        assertThat(getNextCursorMark(lastPage), is(getNextCursorMark(secondPage)));
+    }
+
+    @Test
+    public void search_with_start_beyond_hits() throws Exception {
+        databaseHelper.addObject("mntner: FIRST-MNT\ndescr: paged\nsource: RIPE");
+        freeTextIndex.rebuild();
+
+        final String response = query("q=paged&start=10&rows=10");
+        assertThat(response, containsString("numFound=\"1\""));
+        assertThat(countMatches(response, "<doc>"), is(0));
+    }
+
     @Test
     public void search_inet6num() throws Exception {
         databaseHelper.addObject(
@@ -613,6 +671,12 @@ public class FreeTextSearchTestIntegration extends AbstractRestClientTest {
         assertThat(query("q=test.com"), containsString("numFound=\"1\""));
     }
 
+    private static String getNextCursorMark(final String response) {
+        final Matcher matcher = NEXT_CURSOR_MARK_PATTERN.matcher(response);
+        assertThat(matcher.find(), is(true));
+        return matcher.group(1);
+    }
+
     private String query(final String queryString) {
         return client
                 .resource(String.format("http://localhost:%s/search?%s", getPort(AUDIENCE), queryString))
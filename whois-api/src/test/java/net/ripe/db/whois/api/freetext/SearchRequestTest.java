@@ -4,6 +4,7 @@ package net.ripe.db.whois.api.freetext;
 import org.junit.Test;
 
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 
 public class SearchRequestTest {
@@ -33,6 +34,13 @@ public class SearchRequestTest {
         assertThat(subject.isHighlight(), is(true));
         assertThat(subject.getRows(), is(10));
         assertThat(subject.getStart(), is(60));
+        assertThat(subject.getCursorMark(), is(nullValue()));
+    }
+
+    @Test
+    public void cursor_mark() {
+        SearchRequest subject = SearchRequest.parse("q=walker&rows=10&cursorMark=inetnum%3A1234");
+        assertThat(subject.getCursorMark(), is("inetnum:1234"));
     }
 
     @Test
@@ -5,6 +5,7 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.facet.taxonomy.CategoryPath;
 import org.apache.lucene.facet.taxonomy.TaxonomyReader;
 import org.apache.lucene.facet.taxonomy.TaxonomyWriter;
 import org.apache.lucene.index.IndexReader;
@@ -24,9 +25,12 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.concurrent.*;
 
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
@@ -253,6 +257,91 @@ public class IndexTemplateTest {
         }
     }
 
+    @Test
+    public void searcher_and_taxonomy_reused_until_write() throws IOException {
+        final IndexSearcher[] searchers = new IndexSearcher[3];
+        final TaxonomyReader[] taxonomyReaders = new TaxonomyReader[3];
+
+        for (int i = 0; i < 3; i++) {
+            if (i == 2) {
+                subject.write(new IndexTemplate.WriteCallback() {
+                    @Override
+                    public void write(final IndexWriter indexWriter, final TaxonomyWriter taxonomyWriter) throws IOException {
+                        addDoc(indexWriter, "title", "isbn");
+                        taxonomyWriter.addCategory(new CategoryPath("title", "isbn"));
+                    }
+                });
+            }
+
+            final int index = i;
+            subject.search(new IndexTemplate.SearchCallback<Void>() {
+                @Override
+                public Void search(final IndexReader indexReader, final TaxonomyReader taxonomyReader, final IndexSearcher indexSearcher) throws IOException {
+                    searchers[index] = indexSearcher;
+                    taxonomyReaders[index] = taxonomyReader;
+                    return null;
+                }
+            });
+        }
+
+        assertThat(searchers[1], is(sameInstance(searchers[0])));
+        assertThat(taxonomyReaders[1], is(sameInstance(taxonomyReaders[0])));
+
+        assertThat(searchers[2], is(not(sameInstance(searchers[0]))));
+        assertThat(searchers[2].getIndexReader().numDocs(), is(1));
+        assertThat(taxonomyReaders[2].getOrdinal(new CategoryPath("title", "isbn")), is(not(TaxonomyReader.INVALID_ORDINAL)));
+    }
+
+    @Test
+    public void replace() throws IOException {
+        subject.write(new IndexTemplate.WriteCallback() {
+            @Override
+            public void write(final IndexWriter indexWriter, final TaxonomyWriter taxonomyWriter) throws IOException {
+                addDoc(indexWriter, "old", "isbn");
+                taxonomyWriter.addCategory(new CategoryPath("title", "old"));
+            }
+        });
+
+        final String rebuiltDirectory = folder.newFolder().getAbsolutePath();
+        final IndexTemplate rebuilt = new IndexTemplate(rebuiltDirectory, new IndexWriterConfig(Version.LUCENE_41, analyzer));
+        try {
+            rebuilt.write(new IndexTemplate.WriteCallback() {
+                @Override
+                public void write(final IndexWriter indexWriter, final TaxonomyWriter taxonomyWriter) throws IOException {
+                    addDoc(indexWriter, "new", "isbn");
+                    addDoc(indexWriter, "new", "isbn");
+                    taxonomyWriter.addCategory(new CategoryPath("title", "new"));
+                    indexWriter.setCommitData(Collections.singletonMap("serial", "1"));
+                }
+            });
+
+            subject.replace(rebuilt);
+
+            // the writers of the rebuilt index are closed, so new writers can lock its directories
+            new IndexTemplate(rebuiltDirectory, new IndexWriterConfig(Version.LUCENE_41, analyzer)).close();
+        } finally {
+            rebuilt.close();
+        }
+
+        assertThat(numDocs(), is(2));
+        assertThat(subject.getCommitData().get("serial"), is("1"));
+        assertThat(subject.read(new IndexTemplate.ReadCallback<Integer>() {
+            @Override
+            public Integer read(final IndexReader indexReader, final TaxonomyReader taxonomyReader) throws IOException {
+                return taxonomyReader.getOrdinal(new CategoryPath("title", "old"));
+            }
+        }), is(TaxonomyReader.INVALID_ORDINAL));
+
+        subject.write(new IndexTemplate.WriteCallback() {
+            @Override
+            public void write(final IndexWriter indexWriter, final TaxonomyWriter taxonomyWriter) throws IOException {
+                addDoc(indexWriter, "after", "isbn");
+            }
+        });
+
+        assertThat(numDocs(), is(3));
+    }
+
     int numDocs() throws IOException {
         return subject.read(new IndexTemplate.ReadCallback<Integer>() {
             @Override
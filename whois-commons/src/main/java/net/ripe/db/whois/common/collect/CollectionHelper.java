@@ -25,7 +25,9 @@ public final class CollectionHelper {
 
     // TODO: [AH] result is wrapped by 2 iterable wrappers in this method - optimize!
     public static Iterable<ResponseObject> iterateProxy(final ProxyLoader<Identifiable, RpslObject> rpslObjectLoader, final Iterable<? extends Identifiable> identifiables) {
-        final ProxyIterable<Identifiable, ? extends ResponseObject> rpslObjects = new ProxyIterable<>((Iterable<Identifiable>) identifiables, rpslObjectLoader, 100);
+        final ReadAhead readAhead = ReadAhead.current();
+        final int prefetch = readAhead == null ? 100 : readAhead.getPrefetch();
+        final ProxyIterable<Identifiable, ? extends ResponseObject> rpslObjects = new ProxyIterable<>((Iterable<Identifiable>) identifiables, rpslObjectLoader, prefetch, readAhead);
         return (Iterable<ResponseObject>) Iterables.filter(rpslObjects, Predicates.notNull());
     }
 }
@@ -3,24 +3,38 @@ package net.ripe.db.whois.common.collect;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
+import javax.annotation.Nullable;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 public class ProxyIterable<P, R> implements Iterable<R> {
     private final ProxyLoader<P, R> loader;
     private final int prefetch;
+    private final ReadAhead readAhead;
 
     private final List<R> initialBatch;
     private final Iterable<P> source;
 
     public ProxyIterable(final Iterable<P> source, final ProxyLoader<P, R> loader, final int prefetch) {
+        this(source, loader, prefetch, null);
+    }
+
+    /**
+     * @param readAhead if not null, the next batch is loaded on the read-ahead executor while the current batch is consumed.
+     */
+    public ProxyIterable(final Iterable<P> source, final ProxyLoader<P, R> loader, final int prefetch, @Nullable final ReadAhead readAhead) {
         this.loader = loader;
         this.prefetch = prefetch;
+        this.readAhead = readAhead;
 
         final List<P> initialProxyBatch = nextBatch(source.iterator());
-        this.initialBatch = load(initialProxyBatch);
+        this.initialBatch = timedLoad(initialProxyBatch);
         this.source = Iterables.skip(source, initialProxyBatch.size());
     }
 
@@ -29,25 +43,71 @@ public class ProxyIterable<P, R> implements Iterable<R> {
         return new Iterator<R>() {
             private final Iterator<P> sourceIterator = source.iterator();
             private List<R> batch = initialBatch;
+            private FutureTask<List<R>> pendingBatch;
             private int idx;
 
             @Override
             public boolean hasNext() {
-                return idx < batch.size() || sourceIterator.hasNext();
+                return idx < batch.size() || pendingBatch != null || sourceIterator.hasNext();
             }
 
             @Override
             public R next() {
                 if (idx == batch.size()) {
                     idx = 0;
-                    batch = load(nextBatch(sourceIterator));
+                    batch = pendingBatch == null ? timedLoad(nextBatch(sourceIterator)) : awaitPendingBatch();
                 }
 
                 if (idx >= batch.size()) {
                     throw new NoSuchElementException();
                 }
 
-                return batch.get(idx++);
+                final R result = batch.get(idx++);
+                if (pendingBatch == null && readAhead != null && sourceIterator.hasNext() && readAhead.isReady()) {
+                    readAheadNextBatch();
+                }
+
+                return result;
+            }
+
+            private void readAheadNextBatch() {
+                final List<P> proxyBatch = nextBatch(sourceIterator);
+                final FutureTask<List<R>> task = new FutureTask<>(new Callable<List<R>>() {
+                    @Override
+                    public List<R> call() {
+                        return load(proxyBatch);
+                    }
+                });
+
+                try {
+                    readAhead.getExecutor().execute(task);
+                } catch (RejectedExecutionException e) {
+                    task.run();
+                }
+
+                pendingBatch = task;
+                readAhead.started(task);
+            }
+
+            private List<R> awaitPendingBatch() {
+                final long start = System.nanoTime();
+                try {
+                    return pendingBatch.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while loading", e);
+                } catch (ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+
+                    throw new IllegalStateException("Unable to load", cause);
+                } finally {
+                    readAhead.finished(pendingBatch);
+                    pendingBatch = null;
+                    readAhead.loaded(System.nanoTime() - start, true);
+                }
             }
 
             @Override
@@ -57,6 +117,19 @@ public class ProxyIterable<P, R> implements Iterable<R> {
         };
     }
 
+    private List<R> timedLoad(final List<P> proxyBatch) {
+        if (readAhead == null || proxyBatch.isEmpty()) {
+            return load(proxyBatch);
+        }
+
+        final long start = System.nanoTime();
+        try {
+            return load(proxyBatch);
+        } finally {
+            readAhead.loaded(System.nanoTime() - start, false);
+        }
+    }
+
     private List<R> load(final List<P> proxyBatch) {
         if (proxyBatch.isEmpty()) {
             return Collections.emptyList();
@@ -0,0 +1,117 @@
+package net.ripe.db.whois.common.collect;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.Sets;
+
+import javax.annotation.CheckForNull;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-ahead settings and statistics for the {@link ProxyIterable}s created while handling a single query.
+ * <p/>
+ * While a batch is being consumed, the next batch is loaded on the executor, as long as the consumer is ready to
+ * receive more (e.g. the client connection is writable). The read-ahead is bound to the thread handling the query, and
+ * picked up by {@link CollectionHelper#iterateProxy}.
+ */
+public class ReadAhead {
+    private static final ThreadLocal<ReadAhead> CURRENT = new ThreadLocal<>();
+
+    private final Executor executor;
+    private final Supplier<Boolean> ready;
+    private final int prefetch;
+
+    // only touched by the thread handling the query
+    private final Set<Future<?>> pending = Sets.newHashSet();
+
+    private long loadWaitNanos;
+    private int loads;
+    private int readAheadLoads;
+
+    public ReadAhead(final Executor executor, final Supplier<Boolean> ready, final int prefetch) {
+        this.executor = executor;
+        this.ready = ready;
+        this.prefetch = prefetch;
+    }
+
+    @CheckForNull
+    public static ReadAhead current() {
+        return CURRENT.get();
+    }
+
+    public static void setCurrent(final ReadAhead readAhead) {
+        CURRENT.set(readAhead);
+    }
+
+    public static void removeCurrent() {
+        CURRENT.remove();
+    }
+
+    Executor getExecutor() {
+        return executor;
+    }
+
+    boolean isReady() {
+        return ready.get();
+    }
+
+    public int getPrefetch() {
+        return prefetch;
+    }
+
+    void started(final Future<?> load) {
+        pending.add(load);
+    }
+
+    void finished(final Future<?> load) {
+        pending.remove(load);
+    }
+
+    /**
+     * Cancels the batches still being loaded ahead, so they do not hold on to a pool thread (and database connection)
+     * once the query has ended, e.g. because the client disconnected.
+     */
+    public void cancel() {
+        for (final Future<?> load : pending) {
+            load.cancel(true);
+        }
+
+        pending.clear();
+    }
+
+    void loaded(final long waitNanos, final boolean readAhead) {
+        loadWaitNanos += waitNanos;
+        loads++;
+        if (readAhead) {
+            readAheadLoads++;
+        }
+    }
+
+    /**
+     * @return total time spent waiting for batches to be loaded.
+     */
+    public long getLoadWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(loadWaitNanos);
+    }
+
+    /**
+     * @return number of batches loaded.
+     */
+    public int getLoads() {
+        return loads;
+    }
+
+    /**
+     * @return number of batches loaded ahead on the executor.
+     */
+    public int getReadAheadLoads() {
+        return readAheadLoads;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("loads=%d, readAheadLoads=%d, loadWait=%dms", loads, readAheadLoads, getLoadWaitMillis());
+    }
+}
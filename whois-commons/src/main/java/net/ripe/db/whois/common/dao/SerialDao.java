@@ -3,11 +3,18 @@ package net.ripe.db.whois.common.dao;
 import net.ripe.db.whois.common.domain.serials.SerialEntry;
 import net.ripe.db.whois.common.domain.serials.SerialRange;
 
+import java.util.List;
+
 public interface SerialDao {
 
     SerialRange getSerials();
 
     SerialEntry getById(int serialId);
 
+    /**
+     * @return the serial entries in the range, in order of serial; serials not found are skipped.
+     */
+    List<SerialEntry> getByIdRange(int serialBegin, int serialEnd);
+
     int getSerialAge(int serialId);
 }
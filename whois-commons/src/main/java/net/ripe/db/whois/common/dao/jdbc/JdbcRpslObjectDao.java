@@ -1,18 +1,12 @@
 package net.ripe.db.whois.common.dao.jdbc;
 
-import com.google.common.base.Function;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheBuilderSpec;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
-import com.google.common.util.concurrent.UncheckedExecutionException;
 import net.ripe.db.whois.common.aspects.RetryFor;
 import net.ripe.db.whois.common.dao.RpslObjectDao;
 import net.ripe.db.whois.common.dao.RpslObjectInfo;
+import net.ripe.db.whois.common.dao.jdbc.domain.CompactRpslObjectRowMapper;
 import net.ripe.db.whois.common.dao.jdbc.domain.ObjectTypeIds;
 import net.ripe.db.whois.common.dao.jdbc.domain.RpslObjectInfoMapper;
 import net.ripe.db.whois.common.dao.jdbc.domain.RpslObjectResultSetExtractor;
@@ -31,8 +25,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.dao.IncorrectResultSizeDataAccessException;
 import org.springframework.dao.RecoverableDataAccessException;
@@ -59,44 +51,44 @@ public class JdbcRpslObjectDao implements RpslObjectDao {
 
     private static final List<AttributeType> RELATED_TO_ATTRIBUTES = Lists.newArrayList(AttributeType.ADMIN_C, AttributeType.AUTHOR, AttributeType.ORG, AttributeType.PING_HDL, AttributeType.TECH_C, AttributeType.ZONE_C, AttributeType.MNT_IRT);
 
+    // Index lookups are invalidated by primary key, so only cache types where the primary key is the only key attribute
+    private static final Set<ObjectType> INDEX_CACHE_TYPES = Sets.immutableEnumSet(ObjectType.PERSON, ObjectType.ROLE, ObjectType.MNTNER, ObjectType.ORGANISATION, ObjectType.IRT, ObjectType.KEY_CERT);
+
     private final JdbcTemplate jdbcTemplate;
     private final SourceContext sourceContext;
-
-    private final Map<String, LoadingCache<String, Set<RpslObjectInfo>>> keyIndexCache = new HashMap<>();
-    private final Map<String, LoadingCache<Integer, RpslObject>> keyObjectCache = new HashMap<>();
-    private CacheBuilderSpec cacheSettings = CacheBuilderSpec.disableCaching();
+    private final RpslObjectCache objectCache;
 
     @Autowired
-    public JdbcRpslObjectDao(@Qualifier("sourceAwareDataSource") final DataSource dataSource, final SourceContext sourceContext) {
+    public JdbcRpslObjectDao(@Qualifier("sourceAwareDataSource") final DataSource dataSource, final SourceContext sourceContext, final RpslObjectCache objectCache) {
         this.jdbcTemplate = new JdbcTemplate(dataSource);
         this.sourceContext = sourceContext;
-    }
-
-    @Value("${jdbc.cachespec:}")
-    public void setCacheSettings(final String cachespec) {
-        if (cachespec.isEmpty()) {
-            this.cacheSettings = CacheBuilderSpec.disableCaching();
-        } else {
-            this.cacheSettings = CacheBuilderSpec.parse(cachespec);
-        }
+        this.objectCache = objectCache;
     }
 
     @Override
     public void load(final List<Identifiable> proxy, final List<RpslObject> result) {
-        final Map<Integer, RpslObject> loadedObjects = Maps.newHashMapWithExpectedSize(proxy.size());
+        final ObjectIdPositions positions = new ObjectIdPositions(proxy.size());
+        final List<Identifiable> requested = Lists.newArrayListWithExpectedSize(proxy.size());
+        for (final Identifiable identifiable : proxy) {
+            if (positions.add(identifiable.getObjectId())) {
+                requested.add(identifiable);
+            }
+        }
+
+        final RpslObject[] loadedObjects = new RpslObject[requested.size()];
 
-        Set<Integer> differences = loadObjects(proxy, loadedObjects);
+        List<Identifiable> differences = loadObjects(requested, positions, loadedObjects);
         if (!differences.isEmpty()) {
             final Source originalSource = sourceContext.getCurrentSource();
-            LOGGER.info("Objects in source {} not found for ids: {}", originalSource, differences);
+            LOGGER.info("Objects in source {} not found for ids: {}", originalSource, getObjectIds(differences));
 
             if (originalSource.getType().equals(Source.Type.SLAVE)) {
                 final Source masterSource = Source.master(originalSource.getName());
                 try {
                     sourceContext.setCurrent(masterSource);
-                    differences = loadObjects(proxy, loadedObjects);
+                    differences = loadObjects(differences, positions, loadedObjects);
                     if (!differences.isEmpty()) {
-                        LOGGER.info("Objects in source {} not found for ids: {}", masterSource, differences);
+                        LOGGER.info("Objects in source {} not found for ids: {}", masterSource, getObjectIds(differences));
                     }
                 } catch (IllegalSourceException e) {
                     LOGGER.debug("Source not configured: {}", masterSource, e);
@@ -106,43 +98,36 @@ public class JdbcRpslObjectDao implements RpslObjectDao {
             }
         }
 
-        final List<RpslObject> rpslObjects = Lists.newArrayList(loadedObjects.values());
-        Collections.sort(rpslObjects, new Comparator<RpslObject>() {
-            final List<Integer> requestedIds = Lists.newArrayList(Iterables.transform(proxy, new Function<Identifiable, Integer>() {
-                @Override
-                public Integer apply(final Identifiable input) {
-                    return input.getObjectId();
-                }
-            }));
-
-            @Override
-            public int compare(final RpslObject o1, final RpslObject o2) {
-                return requestedIds.indexOf(o1.getObjectId()) - requestedIds.indexOf(o2.getObjectId());
-            }
-        });
-
         // TODO [AK] Return result rather than adding all to the collection
-        result.addAll(rpslObjects);
+        for (final RpslObject rpslObject : loadedObjects) {
+            if (rpslObject != null) {
+                result.add(rpslObject);
+            }
+        }
     }
 
-    private Set<Integer> loadObjects(final List<Identifiable> proxy, final Map<Integer, RpslObject> loadedObjects) {
-        LoadingCache<Integer, RpslObject> cache = getKeyObjectCacheForCurrentSource();
+    /**
+     * Loads the requested objects into their position, from the cache or in a single query for the current source.
+     *
+     * @return the requested objects that were not found.
+     */
+    private List<Identifiable> loadObjects(final List<Identifiable> requested, final ObjectIdPositions positions, final RpslObject[] loadedObjects) {
+        final Source source = sourceContext.getCurrentSource();
+        final long serial = objectCache.getSerial(source);
         final StringBuilder queryBuilder = new StringBuilder();
-        final List<Integer> objectIds = Lists.newArrayListWithExpectedSize(proxy.size());
-        for (final Identifiable identifiable : proxy) {
+        final List<Integer> objectIds = Lists.newArrayListWithExpectedSize(requested.size());
+        for (final Identifiable identifiable : requested) {
             final Integer objectId = identifiable.getObjectId();
-            if (loadedObjects.containsKey(objectId)) {
-                continue;
-            }
+            final int position = positions.get(objectId);
 
-            RpslObject object = cache.getIfPresent(objectId);
+            final RpslObject object = objectCache.get(RpslObjectCache.objectKey(source, objectId));
             if (object != null) {
-                loadedObjects.put(objectId, object);
+                loadedObjects[position] = object;
                 continue;
             }
 
             if (identifiable instanceof RpslObject) {
-                loadedObjects.put(objectId, (RpslObject) identifiable);
+                loadedObjects[position] = (RpslObject) identifiable;
             } else {
                 if (queryBuilder.length() > 0) {
                     // In MySQL, UNION ALL is much faster than IN
@@ -159,72 +144,72 @@ public class JdbcRpslObjectDao implements RpslObjectDao {
             }
         }
 
-        if (queryBuilder.length() > 0) {
-            final List<RpslObject> rpslObjects = jdbcTemplate.query(
-                    queryBuilder.toString(),
-                    new PreparedStatementSetter() {
+        if (objectIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final List<RpslObject> rpslObjects = jdbcTemplate.query(
+                queryBuilder.toString(),
+                new PreparedStatementSetter() {
                     @Override
                     public void setValues(final PreparedStatement ps) throws SQLException {
-                            for (int i = 0; i < objectIds.size(); i++) {
-                                ps.setInt(i + 1, objectIds.get(i));
-                            }
+                        for (int i = 0; i < objectIds.size(); i++) {
+                            ps.setInt(i + 1, objectIds.get(i));
                         }
+                    }
                 },
-                    new RpslObjectRowMapper());
+                new CompactRpslObjectRowMapper());
 
-            for (final RpslObject rpslObject : rpslObjects) {
-                loadedObjects.put(rpslObject.getObjectId(), rpslObject);
-                cache.put(rpslObject.getObjectId(), rpslObject);
+        for (final RpslObject rpslObject : rpslObjects) {
+            final int position = positions.get(rpslObject.getObjectId());
+            if (position >= 0) {
+                loadedObjects[position] = rpslObject;
+                objectCache.put(RpslObjectCache.objectKey(source, rpslObject.getObjectId()), serial, rpslObject);
             }
         }
 
-        if (proxy.size() == loadedObjects.size()) {
-            return Collections.emptySet();
+        if (rpslObjects.size() == objectIds.size()) {
+            return Collections.emptyList();
         }
 
-        final Set<Integer> differences = Sets.newLinkedHashSet();
-        for (final Identifiable identifiable : proxy) {
-            final Integer objectId = identifiable.getObjectId();
-            if (!loadedObjects.containsKey(objectId)) {
-                differences.add(objectId);
+        final List<Identifiable> differences = Lists.newArrayList();
+        for (final Identifiable identifiable : requested) {
+            if (loadedObjects[positions.get(identifiable.getObjectId())] == null) {
+                differences.add(identifiable);
             }
         }
 
         return differences;
     }
 
-    private LoadingCache<Integer, RpslObject> getKeyObjectCacheForCurrentSource() {
-        String cacheIdentifier = sourceContext.getCurrentSource().toString();
-        if (!keyObjectCache.containsKey(cacheIdentifier)) {
-            keyObjectCache.put(cacheIdentifier, CacheBuilder.from(cacheSettings)
-                    .build(new CacheLoader<Integer, RpslObject>() {
-                        public RpslObject load(Integer key) {
-                            return jdbcTemplate.queryForObject("" +
-                                    "SELECT object_id, object FROM last " +
-                                    "WHERE object_id = ? " +
-                                    "AND sequence_id != 0",
-                                    new RpslObjectRowMapper(),
-                                    key);
-                        }
-                    }));
+    private static List<Integer> getObjectIds(final List<Identifiable> identifiables) {
+        final List<Integer> objectIds = Lists.newArrayListWithExpectedSize(identifiables.size());
+        for (final Identifiable identifiable : identifiables) {
+            objectIds.add(identifiable.getObjectId());
         }
-        return keyObjectCache.get(cacheIdentifier);
+
+        return objectIds;
     }
 
     @Override
     public RpslObject getById(final int objectId) {
-        RpslObject result;
-        try {
-            result = getKeyObjectCacheForCurrentSource().getUnchecked(objectId);
-        } catch (UncheckedExecutionException e) {
-            Throwable throwable = e.getCause();
-            if (throwable instanceof DataAccessException) {
-                throw (DataAccessException) throwable;
-            } else {
-                throw e;
-            }
+        final Source source = sourceContext.getCurrentSource();
+        final RpslObjectCache.Key<RpslObject> objectKey = RpslObjectCache.objectKey(source, objectId);
+        final RpslObject cached = objectCache.get(objectKey);
+        if (cached != null) {
+            return cached;
         }
-        return result;
+
+        final long serial = objectCache.getSerial(source);
+        final RpslObject rpslObject = jdbcTemplate.queryForObject("" +
+                "SELECT object_id, object FROM last " +
+                "WHERE object_id = ? " +
+                "AND sequence_id != 0",
+                new CompactRpslObjectRowMapper(),
+                objectId);
+
+        objectCache.put(objectKey, serial, rpslObject);
+        return rpslObject;
     }
 
     @Override
@@ -239,17 +224,33 @@ public class JdbcRpslObjectDao implements RpslObjectDao {
 
     @Override
     public RpslObject getByKey(final ObjectType type, final CIString key) {
+        final Source source = sourceContext.getCurrentSource();
+        final RpslObjectCache.Key<Integer> primaryKey = RpslObjectCache.primaryKey(source, type, key);
+        final Integer cachedObjectId = objectCache.get(primaryKey);
+        if (cachedObjectId != null) {
+            final RpslObject cached = objectCache.get(RpslObjectCache.objectKey(source, cachedObjectId));
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        final long serial = objectCache.getSerial(source);
+        final RpslObject rpslObject;
         try {
-            return jdbcTemplate.queryForObject("" +
+            rpslObject = jdbcTemplate.queryForObject("" +
                     "SELECT object_id, object " +
                     "  FROM last " +
                     "  WHERE object_type = ? and pkey = ? and sequence_id != 0 ",
-                    new RpslObjectRowMapper(),
+                    new CompactRpslObjectRowMapper(),
                     ObjectTypeIds.getId(type),
                     key.toString());
         } catch (EmptyResultDataAccessException e) {
             return getByKeyFromIndex(type, key);
         }
+
+        objectCache.put(primaryKey, serial, rpslObject.getObjectId());
+        objectCache.put(RpslObjectCache.objectKey(source, rpslObject.getObjectId()), serial, rpslObject);
+        return rpslObject;
     }
 
     @Override
@@ -359,30 +360,33 @@ public class JdbcRpslObjectDao implements RpslObjectDao {
     }
 
     private Set<RpslObjectInfo> findByKeyInIndex(final ObjectType type, final CIString key) {
-        String cacheIdentifier = sourceContext.getCurrentSource() + ": " + type.getShortName();
-        if (!keyIndexCache.containsKey(cacheIdentifier)) {
-            keyIndexCache.put(cacheIdentifier, CacheBuilder.from(cacheSettings)
-                    .build(new CacheLoader<String, Set<RpslObjectInfo>>() {
-                        public Set<RpslObjectInfo> load(String key) {
-                            final Set<RpslObjectInfo> objectInfos = Sets.newHashSetWithExpectedSize(1);
-                            final ObjectTemplate objectTemplate = ObjectTemplate.getTemplate(type);
-                            for (final AttributeType attributeType : objectTemplate.getKeyAttributes()) {
-                                final List<RpslObjectInfo> rpslObjectInfos = IndexStrategies.get(attributeType).findInIndex(jdbcTemplate, key);
-                                for (final RpslObjectInfo rpslObjectInfo : rpslObjectInfos) {
-
-                                    // Make sure the object type actually matches the requested type, can otherwise fail e.g. when looking up person/role
-                                    if (rpslObjectInfo.getObjectType().equals(type)) {
-                                        objectInfos.add(rpslObjectInfo);
-                                    }
-                                }
-                            }
-
-                            return objectInfos;
-                        }
-                    }));
+        final Source source = sourceContext.getCurrentSource();
+        final RpslObjectCache.Key<Set<RpslObjectInfo>> indexKey = RpslObjectCache.indexKey(source, type, key);
+        final boolean cacheable = INDEX_CACHE_TYPES.contains(type);
+        if (cacheable) {
+            final Set<RpslObjectInfo> cached = objectCache.get(indexKey);
+            if (cached != null) {
+                return cached;
+            }
         }
 
-        return keyIndexCache.get(cacheIdentifier).getUnchecked(key.toString());
+        final long serial = cacheable ? objectCache.getSerial(source) : RpslObjectCache.NOT_CACHED;
+        final Set<RpslObjectInfo> objectInfos = Sets.newHashSetWithExpectedSize(1);
+        final ObjectTemplate objectTemplate = ObjectTemplate.getTemplate(type);
+        for (final AttributeType attributeType : objectTemplate.getKeyAttributes()) {
+            final List<RpslObjectInfo> rpslObjectInfos = IndexStrategies.get(attributeType).findInIndex(jdbcTemplate, key);
+            for (final RpslObjectInfo rpslObjectInfo : rpslObjectInfos) {
+
+                // Make sure the object type actually matches the requested type, can otherwise fail e.g. when looking up person/role
+                if (rpslObjectInfo.getObjectType().equals(type)) {
+                    objectInfos.add(rpslObjectInfo);
+                }
+            }
+        }
+
+        final Set<RpslObjectInfo> result = Collections.unmodifiableSet(objectInfos);
+        objectCache.put(indexKey, serial, result);
+        return result;
     }
 
     @Override
@@ -7,6 +7,8 @@ import net.ripe.db.whois.common.dao.RpslObjectUpdateInfo;
 import net.ripe.db.whois.common.dao.jdbc.domain.ObjectTypeIds;
 import net.ripe.db.whois.common.dao.jdbc.index.IndexStrategies;
 import net.ripe.db.whois.common.dao.jdbc.index.IndexStrategy;
+import net.ripe.db.whois.common.dao.jdbc.index.IndexUpdates;
+import net.ripe.db.whois.common.dao.jdbc.index.JdbcIndexUpdates;
 import net.ripe.db.whois.common.domain.CIString;
 import net.ripe.db.whois.common.domain.serials.Operation;
 import net.ripe.db.whois.common.domain.serials.SerialEntry;
@@ -46,24 +48,31 @@ public class JdbcRpslObjectOperations {
     }
 
     public static Set<CIString> insertIntoTablesIgnoreMissing(final JdbcTemplate jdbcTemplate, final RpslObjectInfo rpslObjectInfo, final RpslObject rpslObject) {
+        return insertIntoTablesIgnoreMissing(jdbcTemplate, new JdbcIndexUpdates(jdbcTemplate), rpslObjectInfo, rpslObject);
+    }
+
+    /**
+     * Writes the index rows of the object to indexUpdates, looking up referenced objects on jdbcTemplate.
+     */
+    public static Set<CIString> insertIntoTablesIgnoreMissing(final JdbcTemplate jdbcTemplate, final IndexUpdates indexUpdates, final RpslObjectInfo rpslObjectInfo, final RpslObject rpslObject) {
         final Set<CIString> missingReferences = Sets.newHashSet();
         final Set<AttributeType> keyAttributes = ObjectTemplate.getTemplate(rpslObject.getType()).getKeyAttributes();
         for (final AttributeType keyAttributeType : keyAttributes) {
-            missingReferences.addAll(insertAttributeIndex(jdbcTemplate, rpslObjectInfo, rpslObject, keyAttributeType));
+            missingReferences.addAll(insertAttributeIndex(jdbcTemplate, indexUpdates, rpslObjectInfo, rpslObject, keyAttributeType));
         }
 
         final List<AttributeTemplate> attributeTemplates = ObjectTemplate.getTemplate(rpslObject.getType()).getAttributeTemplates();
         for (final AttributeTemplate attributeTemplate : attributeTemplates) {
             final AttributeType attributeType = attributeTemplate.getAttributeType();
             if (!keyAttributes.contains(attributeType)) {
-                missingReferences.addAll(insertAttributeIndex(jdbcTemplate, rpslObjectInfo, rpslObject, attributeType));
+                missingReferences.addAll(insertAttributeIndex(jdbcTemplate, indexUpdates, rpslObjectInfo, rpslObject, attributeType));
             }
         }
 
         return missingReferences;
     }
 
-    private static Set<CIString> insertAttributeIndex(final JdbcTemplate jdbcTemplate, final RpslObjectInfo rpslObjectInfo, final RpslObject rpslObject, final AttributeType attributeType) {
+    private static Set<CIString> insertAttributeIndex(final JdbcTemplate jdbcTemplate, final IndexUpdates indexUpdates, final RpslObjectInfo rpslObjectInfo, final RpslObject rpslObject, final AttributeType attributeType) {
         final Set<CIString> missingReferences = Sets.newHashSet();
 
         final IndexStrategy indexStrategy = IndexStrategies.get(attributeType);
@@ -74,7 +83,7 @@ public class JdbcRpslObjectOperations {
             for (final CIString value : attribute.getCleanValues()) {
                 if (uniqueValues.add(value)) {
                     try {
-                        final int rows = indexStrategy.addToIndex(jdbcTemplate, rpslObjectInfo, rpslObject, value.toString());
+                        final int rows = indexStrategy.addToIndex(jdbcTemplate, indexUpdates, rpslObjectInfo, rpslObject, value.toString());
                         if (rows < 1) {
                             throw new DataIntegrityViolationException("Rows affected: " + rows);
                         }
@@ -116,10 +125,14 @@ public class JdbcRpslObjectOperations {
     }
 
     public static void deleteFromTables(final JdbcTemplate jdbcTemplate, final RpslObjectInfo rpslObjectInfo) {
+        deleteFromTables(new JdbcIndexUpdates(jdbcTemplate), rpslObjectInfo);
+    }
+
+    public static void deleteFromTables(final IndexUpdates indexUpdates, final RpslObjectInfo rpslObjectInfo) {
         final ObjectTemplate objectTemplate = ObjectTemplate.getTemplate(rpslObjectInfo.getObjectType());
 
         for (AttributeTemplate attributeTemplate : objectTemplate.getAttributeTemplates()) {
-            IndexStrategies.get(attributeTemplate.getAttributeType()).removeFromIndex(jdbcTemplate, rpslObjectInfo);
+            IndexStrategies.get(attributeTemplate.getAttributeType()).removeFromIndex(indexUpdates, rpslObjectInfo);
         }
     }
 
@@ -384,25 +397,33 @@ public class JdbcRpslObjectOperations {
     // TODO: [AH] fix legacy history to match rdp's approach
     // note: this is really kludgy, because legacy decreased serials.sequence_id by 1 on deletion, to make sure once
     //       could join from the deletion serials record directly to history.
-    private static SerialEntry getSerialEntry(final JdbcTemplate jdbcTemplate, final int serialId) {
-        return jdbcTemplate.queryForObject("" +
-                "SELECT serials.operation, serials.atlast, serials.object_id, last.timestamp, " +
-                "COALESCE(legacy_history.timestamp, rdp_history.timestamp), " +
-                "IF(last.sequence_id, last.object, COALESCE(legacy_history.object, rdp_history.object)) " +
-                "FROM serials " +
-                "LEFT JOIN last ON last.object_id = serials.object_id " +
-                "LEFT JOIN history legacy_history ON legacy_history.object_id = serials.object_id AND legacy_history.sequence_id = serials.sequence_id " +
-                "LEFT JOIN history rdp_history ON rdp_history.object_id = serials.object_id AND rdp_history.sequence_id = serials.sequence_id - 1 " +
-                "WHERE serials.serial_id = ?", new RowMapper<SerialEntry>() {
-            @Override
-            public SerialEntry mapRow(ResultSet rs, int rowNum) throws SQLException {
-                try {
-                    return new SerialEntry(Operation.getByCode(rs.getInt(1)), rs.getBoolean(2), rs.getInt(3), rs.getInt(4), rs.getInt(5), rs.getBytes(6));
-                } catch (RuntimeException e) {
-                    throw new IllegalStateException("Failed at serial_id " + serialId, e);
-                }
+    private static final String SERIAL_ENTRY_QUERY = "" +
+            "SELECT serials.serial_id, serials.operation, serials.atlast, serials.object_id, last.timestamp, " +
+            "COALESCE(legacy_history.timestamp, rdp_history.timestamp), " +
+            "IF(last.sequence_id, last.object, COALESCE(legacy_history.object, rdp_history.object)) " +
+            "FROM serials " +
+            "LEFT JOIN last ON last.object_id = serials.object_id " +
+            "LEFT JOIN history legacy_history ON legacy_history.object_id = serials.object_id AND legacy_history.sequence_id = serials.sequence_id " +
+            "LEFT JOIN history rdp_history ON rdp_history.object_id = serials.object_id AND rdp_history.sequence_id = serials.sequence_id - 1 ";
+
+    private static final RowMapper<SerialEntry> SERIAL_ENTRY_ROW_MAPPER = new RowMapper<SerialEntry>() {
+        @Override
+        public SerialEntry mapRow(ResultSet rs, int rowNum) throws SQLException {
+            final int serialId = rs.getInt(1);
+            try {
+                return new SerialEntry(serialId, Operation.getByCode(rs.getInt(2)), rs.getBoolean(3), rs.getInt(4), rs.getInt(5), rs.getInt(6), rs.getBytes(7));
+            } catch (RuntimeException e) {
+                throw new IllegalStateException("Failed at serial_id " + serialId, e);
             }
-        }, serialId);
+        }
+    };
+
+    private static SerialEntry getSerialEntry(final JdbcTemplate jdbcTemplate, final int serialId) {
+        return jdbcTemplate.queryForObject(SERIAL_ENTRY_QUERY + "WHERE serials.serial_id = ?", SERIAL_ENTRY_ROW_MAPPER, serialId);
+    }
+
+    public static List<SerialEntry> getByIdRange(final JdbcTemplate jdbcTemplate, final int serialBegin, final int serialEnd) {
+        return jdbcTemplate.query(SERIAL_ENTRY_QUERY + "WHERE serials.serial_id BETWEEN ? AND ? ORDER BY serials.serial_id", SERIAL_ENTRY_ROW_MAPPER, serialBegin, serialEnd);
     }
 
     // exact same, but omit blob lookup for performance reasons
@@ -418,7 +439,7 @@ public class JdbcRpslObjectOperations {
                 "WHERE serials.serial_id = ?", new RowMapper<SerialEntry>() {
             @Override
             public SerialEntry mapRow(ResultSet rs, int rowNum) throws SQLException {
-                return new SerialEntry(Operation.getByCode(rs.getInt(1)), rs.getBoolean(2), rs.getInt(3), rs.getInt(4), rs.getInt(5));
+                return new SerialEntry(serialId, Operation.getByCode(rs.getInt(1)), rs.getBoolean(2), rs.getInt(3), rs.getInt(4), rs.getInt(5));
             }
         }, serialId);
     }
@@ -11,6 +11,7 @@ import org.springframework.stereotype.Repository;
 
 import javax.annotation.CheckForNull;
 import javax.sql.DataSource;
+import java.util.List;
 
 @Repository
 public class JdbcSerialDao implements SerialDao {
@@ -34,6 +35,11 @@ public class JdbcSerialDao implements SerialDao {
         return JdbcRpslObjectOperations.getById(jdbcTemplate, serialId);
     }
 
+    @Override
+    public List<SerialEntry> getByIdRange(final int serialBegin, final int serialEnd) {
+        return JdbcRpslObjectOperations.getByIdRange(jdbcTemplate, serialBegin, serialEnd);
+    }
+
     @Override
     public int getSerialAge(final int serialId) {
         return JdbcRpslObjectOperations.getSerialAge(dateTimeProvider, jdbcTemplate, serialId);
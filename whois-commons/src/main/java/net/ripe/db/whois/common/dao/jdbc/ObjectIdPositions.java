@@ -0,0 +1,67 @@
+package net.ripe.db.whois.common.dao.jdbc;
+
+import java.util.Arrays;
+
+/**
+ * Maps object ids to their position in a batch of requested objects, in order of first occurrence.
+ * <p/>
+ * Open addressing over primitive arrays, so lookups do not box and the map is sized once for the batch.
+ */
+class ObjectIdPositions {
+    private static final int EMPTY = -1;
+
+    private final int[] objectIds;
+    private final int[] positions;
+    private final int mask;
+    private int size;
+
+    ObjectIdPositions(final int expectedSize) {
+        final int capacity = Integer.highestOneBit(Math.max(2, expectedSize) * 2 - 1) << 1;
+        this.objectIds = new int[capacity];
+        this.positions = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(positions, EMPTY);
+    }
+
+    /**
+     * @return true if the object id was added at the next position, false if it was already present.
+     */
+    boolean add(final int objectId) {
+        if (size > mask / 2) {
+            throw new IllegalStateException("More than expected object ids: " + size);
+        }
+
+        for (int slot = slot(objectId); ; slot = (slot + 1) & mask) {
+            if (positions[slot] == EMPTY) {
+                objectIds[slot] = objectId;
+                positions[slot] = size++;
+                return true;
+            }
+
+            if (objectIds[slot] == objectId) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return position of the object id, or -1 if not present.
+     */
+    int get(final int objectId) {
+        for (int slot = slot(objectId); ; slot = (slot + 1) & mask) {
+            final int position = positions[slot];
+            if (position == EMPTY || objectIds[slot] == objectId) {
+                return position;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int slot(final int objectId) {
+        final int hash = objectId * 0x9e3779b9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
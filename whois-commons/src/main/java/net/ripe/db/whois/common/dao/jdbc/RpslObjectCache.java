@@ -0,0 +1,387 @@
+package net.ripe.db.whois.common.dao.jdbc;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Maps;
+import net.ripe.db.whois.common.dao.RpslObjectInfo;
+import net.ripe.db.whois.common.dao.jdbc.domain.ObjectTypeIds;
+import net.ripe.db.whois.common.domain.CIString;
+import net.ripe.db.whois.common.rpsl.ObjectType;
+import net.ripe.db.whois.common.rpsl.RpslObject;
+import net.ripe.db.whois.common.source.Source;
+import net.ripe.db.whois.common.source.SourceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.PostConstruct;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static net.ripe.db.whois.common.domain.CIString.ciString;
+
+/**
+ * Memory bounded cache of RPSL objects and key lookups, shared by all slave sources.
+ * <p/>
+ * Objects are weighed by their serialized size, and kept compact: callers get a copy to decode attributes on. Entries
+ * are invalidated from the serials table, the same way the IP trees are updated, so cached objects are at most
+ * {@link #CACHE_UPDATE_IN_SECONDS} behind the database. Master sources are never cached, as updates need to read their
+ * own writes.
+ * <p/>
+ * To avoid caching an object that was updated while it was being loaded, callers take the serial before loading from
+ * the database, and pass it on {@link #put}.
+ */
+@Component
+public class RpslObjectCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RpslObjectCache.class);
+
+    public static final int CACHE_UPDATE_IN_SECONDS = 10;
+    public static final long NOT_CACHED = -1;
+
+    private static final int MAX_SERIALS_TO_INVALIDATE = 100_000;
+    private static final int KEY_WEIGHT = 128;
+
+    private final SourceContext sourceContext;
+    private final Map<Source, SourceState> sources = Maps.newConcurrentMap();
+    private final AtomicLong weight = new AtomicLong();
+
+    private int maximumSizeMb;
+    private Cache<Key<?>, Entry> cache;
+
+    @Autowired
+    public RpslObjectCache(final SourceContext sourceContext) {
+        this.sourceContext = sourceContext;
+    }
+
+    @Value("${rpsl.object.cache.size.mb:0}")
+    void setMaximumSizeMb(final int maximumSizeMb) {
+        this.maximumSizeMb = maximumSizeMb;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (maximumSizeMb <= 0) {
+            return;
+        }
+
+        LOGGER.info("Initializing RPSL object cache of {} MB", maximumSizeMb);
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(maximumSizeMb * 1024L * 1024L)
+                .weigher(new Weigher<Key<?>, Entry>() {
+                    @Override
+                    public int weigh(final Key<?> key, final Entry entry) {
+                        return entry.weight;
+                    }
+                })
+                .removalListener(new RemovalListener<Key<?>, Entry>() {
+                    @Override
+                    public void onRemoval(final RemovalNotification<Key<?>, Entry> notification) {
+                        weight.addAndGet(-notification.getValue().weight);
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * @return the serial cached entries for the source are up to date with, to be passed to {@link #put} after loading
+     * from the database, or {@link #NOT_CACHED} if the source is not cached.
+     */
+    public long getSerial(final Source source) {
+        final SourceState sourceState = getSourceState(source);
+        return sourceState == null ? NOT_CACHED : sourceState.lastSerial;
+    }
+
+    @CheckForNull
+    @SuppressWarnings("unchecked")
+    public <T> T get(final Key<T> key) {
+        if (!isCacheable(key.source)) {
+            return null;
+        }
+
+        final Entry entry = cache.getIfPresent(key);
+        if (entry == null) {
+            return null;
+        }
+
+        // hand out copies of compact objects, so attributes decoded by callers are not kept in the cache
+        return entry.value instanceof RpslObject ? (T) ((RpslObject) entry.value).compactCopy() : (T) entry.value;
+    }
+
+    public <T> void put(final Key<T> key, final long serial, final T value) {
+        if (serial == NOT_CACHED || !isCacheable(key.source)) {
+            return;
+        }
+
+        final Entry entry = new Entry(value);
+        weight.addAndGet(entry.weight);
+        cache.put(key, entry);
+
+        // entries may have been invalidated while the value was being loaded
+        final SourceState sourceState = sources.get(key.source);
+        if (sourceState == null || sourceState.lastSerial != serial) {
+            cache.invalidate(key);
+        }
+    }
+
+    private boolean isCacheable(final Source source) {
+        return cache != null && source.getType() == Source.Type.SLAVE;
+    }
+
+    @CheckForNull
+    private SourceState getSourceState(final Source source) {
+        if (!isCacheable(source)) {
+            return null;
+        }
+
+        SourceState sourceState = sources.get(source);
+        if (sourceState == null) {
+            synchronized (sources) {
+                sourceState = sources.get(source);
+                if (sourceState == null) {
+                    final JdbcTemplate jdbcTemplate = sourceContext.getSourceConfiguration(source).getJdbcTemplate();
+                    sourceState = new SourceState(jdbcTemplate, getLastSerial(jdbcTemplate));
+                    sources.put(source, sourceState);
+                }
+            }
+        }
+
+        return sourceState;
+    }
+
+    @Scheduled(fixedDelay = CACHE_UPDATE_IN_SECONDS * 1000)
+    public void update() {
+        for (final Map.Entry<Source, SourceState> entry : sources.entrySet()) {
+            try {
+                update(entry.getKey(), entry.getValue());
+            } catch (RuntimeException e) {
+                LOGGER.warn("Unable to update RPSL object cache for {}, invalidating", entry.getKey(), e);
+                invalidate(entry.getKey());
+            }
+        }
+    }
+
+    private void update(final Source source, final SourceState sourceState) {
+        final long fromExclusive = sourceState.lastSerial;
+        final long toInclusive = getLastSerial(sourceState.jdbcTemplate);
+        if (toInclusive == fromExclusive) {
+            return;
+        }
+
+        // entries loaded from here on are checked against the new serial when put
+        sourceState.lastSerial = toInclusive;
+
+        if (toInclusive < fromExclusive) {
+            // database restored or truncated, object ids may be reused
+            LOGGER.info("Invalidating RPSL object cache for {}, serial went back from {} to {}", source, fromExclusive, toInclusive);
+            invalidate(source);
+            return;
+        }
+
+        if (toInclusive - fromExclusive > MAX_SERIALS_TO_INVALIDATE) {
+            LOGGER.info("Invalidating RPSL object cache for {}, {} serials behind", source, toInclusive - fromExclusive);
+            invalidate(source);
+            return;
+        }
+
+        sourceState.jdbcTemplate.query("" +
+                "SELECT serials.object_id, last.object_type, last.pkey " +
+                "FROM serials " +
+                "LEFT JOIN last ON last.object_id = serials.object_id " +
+                "WHERE serials.serial_id > ? " +
+                "AND serials.serial_id <= ?",
+                new RowCallbackHandler() {
+                    @Override
+                    public void processRow(final ResultSet rs) throws SQLException {
+                        cache.invalidate(objectKey(source, rs.getInt(1)));
+
+                        final String pkey = rs.getString(3);
+                        if (pkey != null) {
+                            final ObjectType objectType = ObjectTypeIds.getType(rs.getInt(2));
+                            cache.invalidate(primaryKey(source, objectType, ciString(pkey)));
+                            cache.invalidate(indexKey(source, objectType, ciString(pkey)));
+                        }
+                    }
+                },
+                fromExclusive, toInclusive);
+    }
+
+    private static long getLastSerial(final JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForInt("SELECT MAX(serial_id) FROM serials");
+    }
+
+    public void invalidateAll() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    private void invalidate(final Source source) {
+        for (final Iterator<Key<?>> iterator = cache.asMap().keySet().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().source.equals(source)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public CacheStats getStats() {
+        return cache == null ? new CacheStats(0, 0, 0, 0, 0, 0) : cache.stats();
+    }
+
+    public long getSize() {
+        return cache == null ? 0 : cache.size();
+    }
+
+    public long getWeight() {
+        return weight.get();
+    }
+
+    public static Key<RpslObject> objectKey(final Source source, final int objectId) {
+        return new ObjectKey(source, objectId);
+    }
+
+    /**
+     * @return key of the object id of the object with the primary key.
+     */
+    public static Key<Integer> primaryKey(final Source source, final ObjectType objectType, final CIString pkey) {
+        return new TypedKey<>(source, objectType, pkey, false);
+    }
+
+    /**
+     * @return key of the objects found by looking up the key attributes in the index tables.
+     */
+    public static Key<Set<RpslObjectInfo>> indexKey(final Source source, final ObjectType objectType, final CIString key) {
+        return new TypedKey<>(source, objectType, key, true);
+    }
+
+    private static final class SourceState {
+        private final JdbcTemplate jdbcTemplate;
+        private volatile long lastSerial;
+
+        private SourceState(final JdbcTemplate jdbcTemplate, final long lastSerial) {
+            this.jdbcTemplate = jdbcTemplate;
+            this.lastSerial = lastSerial;
+        }
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final int weight;
+
+        private Entry(final Object value) {
+            if (value instanceof RpslObject) {
+                this.value = ((RpslObject) value).compactCopy();
+                this.weight = ((RpslObject) value).toByteArray().length;
+            } else if (value instanceof Set) {
+                this.value = value;
+                this.weight = KEY_WEIGHT * Math.max(1, ((Set<?>) value).size());
+            } else {
+                this.value = value;
+                this.weight = KEY_WEIGHT;
+            }
+        }
+    }
+
+    /**
+     * @param <T> type of the cached value
+     */
+    public abstract static class Key<T> {
+        final Source source;
+
+        private Key(final Source source) {
+            this.source = source;
+        }
+    }
+
+    private static final class ObjectKey extends Key<RpslObject> {
+        private final int objectId;
+
+        private ObjectKey(final Source source, final int objectId) {
+            super(source);
+            this.objectId = objectId;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            final ObjectKey that = (ObjectKey) o;
+            return objectId == that.objectId && source.equals(that.source);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * source.hashCode() + objectId;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %d", source, objectId);
+        }
+    }
+
+    private static final class TypedKey<T> extends Key<T> {
+        private final ObjectType objectType;
+        private final CIString key;
+        private final boolean index;
+
+        private TypedKey(final Source source, final ObjectType objectType, final CIString key, final boolean index) {
+            super(source);
+            this.objectType = objectType;
+            this.key = key;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            final TypedKey<?> that = (TypedKey<?>) o;
+            return index == that.index && objectType == that.objectType && key.equals(that.key) && source.equals(that.source);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = source.hashCode();
+            result = 31 * result + objectType.hashCode();
+            result = 31 * result + key.hashCode();
+            result = 31 * result + (index ? 1 : 0);
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %s%s", source, objectType, key, index ? " (index)" : "");
+        }
+    }
+}
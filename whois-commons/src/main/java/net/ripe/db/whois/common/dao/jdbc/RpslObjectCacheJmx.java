@@ -0,0 +1,72 @@
+package net.ripe.db.whois.common.dao.jdbc;
+
+import net.ripe.db.whois.common.jmx.JmxBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Callable;
+
+@Component
+@ManagedResource(objectName = JmxBase.OBJECT_NAME_BASE + "RpslObjectCache", description = "Whois RPSL object cache")
+public class RpslObjectCacheJmx extends JmxBase {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RpslObjectCacheJmx.class);
+
+    private final RpslObjectCache rpslObjectCache;
+
+    @Autowired
+    public RpslObjectCacheJmx(final RpslObjectCache rpslObjectCache) {
+        super(LOGGER);
+        this.rpslObjectCache = rpslObjectCache;
+    }
+
+    @ManagedAttribute(description = "Is the cache enabled")
+    public boolean isEnabled() {
+        return rpslObjectCache.isEnabled();
+    }
+
+    @ManagedAttribute(description = "Number of cache hits")
+    public long getHitCount() {
+        return rpslObjectCache.getStats().hitCount();
+    }
+
+    @ManagedAttribute(description = "Number of cache misses")
+    public long getMissCount() {
+        return rpslObjectCache.getStats().missCount();
+    }
+
+    @ManagedAttribute(description = "Ratio of lookups that were cache hits")
+    public double getHitRate() {
+        return rpslObjectCache.getStats().hitRate();
+    }
+
+    @ManagedAttribute(description = "Number of entries evicted because the cache was full")
+    public long getEvictionCount() {
+        return rpslObjectCache.getStats().evictionCount();
+    }
+
+    @ManagedAttribute(description = "Number of cached entries")
+    public long getSize() {
+        return rpslObjectCache.getSize();
+    }
+
+    @ManagedAttribute(description = "Approximate size of cached entries in bytes")
+    public long getWeight() {
+        return rpslObjectCache.getWeight();
+    }
+
+    @ManagedOperation(description = "Invalidate all cached entries")
+    public String invalidateAll() {
+        return invokeOperation("Invalidate RPSL object cache", "", new Callable<String>() {
+            @Override
+            public String call() {
+                rpslObjectCache.invalidateAll();
+                return "RPSL object cache invalidated";
+            }
+        });
+    }
+}
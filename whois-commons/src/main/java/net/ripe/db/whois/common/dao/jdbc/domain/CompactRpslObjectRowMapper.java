@@ -0,0 +1,17 @@
+package net.ripe.db.whois.common.dao.jdbc.domain;
+
+import net.ripe.db.whois.common.rpsl.RpslObject;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps rows to objects that keep the raw object bytes, see {@link RpslObject#parseCompact}.
+ */
+public class CompactRpslObjectRowMapper implements RowMapper<RpslObject> {
+    @Override
+    public RpslObject mapRow(final ResultSet rs, final int rowNum) throws SQLException {
+        return RpslObject.parseCompact(rs.getInt(1), rs.getBytes(2));
+    }
+}
@@ -16,12 +16,19 @@ public interface IndexStrategy {
 
     int addToIndex(JdbcTemplate jdbcTemplate, RpslObjectInfo objectInfo, RpslObject object, String value);
 
+    /**
+     * Writes the index rows for the value to indexUpdates, looking up referenced objects on jdbcTemplate.
+     */
+    int addToIndex(JdbcTemplate jdbcTemplate, IndexUpdates indexUpdates, RpslObjectInfo objectInfo, RpslObject object, String value);
+
     List<RpslObjectInfo> findInIndex(JdbcTemplate jdbcTemplate, String value);
 
     List<RpslObjectInfo> findInIndex(JdbcTemplate jdbcTemplate, CIString value);
 
     void removeFromIndex(JdbcTemplate jdbcTemplate, RpslObjectInfo objectInfo);
 
+    void removeFromIndex(IndexUpdates indexUpdates, RpslObjectInfo objectInfo);
+
     String getLookupTableName();
 
     String getLookupColumnName();
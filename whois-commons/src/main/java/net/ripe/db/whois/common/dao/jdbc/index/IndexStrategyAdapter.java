@@ -29,7 +29,12 @@ abstract class IndexStrategyAdapter implements IndexStrategy {
     }
 
     @Override
-    public int addToIndex(final JdbcTemplate jdbcTemplate, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
+    public final int addToIndex(final JdbcTemplate jdbcTemplate, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
+        return addToIndex(jdbcTemplate, new JdbcIndexUpdates(jdbcTemplate), objectInfo, object, value);
+    }
+
+    @Override
+    public int addToIndex(final JdbcTemplate jdbcTemplate, final IndexUpdates indexUpdates, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
         return 1;
     }
 
@@ -44,7 +49,12 @@ abstract class IndexStrategyAdapter implements IndexStrategy {
     }
 
     @Override
-    public void removeFromIndex(final JdbcTemplate jdbcTemplate, final RpslObjectInfo objectInfo) {
+    public final void removeFromIndex(final JdbcTemplate jdbcTemplate, final RpslObjectInfo objectInfo) {
+        removeFromIndex(new JdbcIndexUpdates(jdbcTemplate), objectInfo);
+    }
+
+    @Override
+    public void removeFromIndex(final IndexUpdates indexUpdates, final RpslObjectInfo objectInfo) {
     }
 
     @Override
@@ -21,8 +21,8 @@ abstract class IndexStrategyWithSingleLookupTable extends IndexStrategyAdapter {
     }
 
     @Override
-    public void removeFromIndex(final JdbcTemplate jdbcTemplate, final RpslObjectInfo objectInfo) {
-        jdbcTemplate.update(String.format("DELETE FROM %s WHERE object_id = ?", lookupTableName), objectInfo.getObjectId());
+    public void removeFromIndex(final IndexUpdates indexUpdates, final RpslObjectInfo objectInfo) {
+        indexUpdates.update(String.format("DELETE FROM %s WHERE object_id = ?", lookupTableName), objectInfo.getObjectId());
     }
 
     @Override
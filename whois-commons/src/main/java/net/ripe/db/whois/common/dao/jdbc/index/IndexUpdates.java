@@ -0,0 +1,21 @@
+package net.ripe.db.whois.common.dao.jdbc.index;
+
+/**
+ * The statements writing and removing the index rows of an object.
+ * <p/>
+ * Index strategies look up referenced objects on a JdbcTemplate, and write their index rows here, so the index rows can
+ * be written immediately or collected and written as JDBC batches.
+ */
+public interface IndexUpdates {
+    /**
+     * @return the number of rows affected, or the number of rows the statement is expected to affect if it is executed
+     * later, in which case the rows affected are checked when it is executed.
+     */
+    int update(String sql, Object... args);
+
+    /**
+     * @return true if statements are executed when they are added, so the index rows written are found on the
+     * JdbcTemplate the index strategies look up on.
+     */
+    boolean isImmediate();
+}
@@ -17,13 +17,13 @@ class IndexWithAsBlock extends IndexStrategyWithSingleLookupTable {
     }
 
     @Override
-    public int addToIndex(final JdbcTemplate jdbcTemplate, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
+    public int addToIndex(final JdbcTemplate jdbcTemplate, final IndexUpdates indexUpdates, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
         final AsBlockRange asBlockRange = parseAsBlockRange(value);
         if (asBlockRange == null) {
             throw new IllegalArgumentException("invalid asBlockRange");
         }
 
-        return jdbcTemplate.update(
+        return indexUpdates.update(
                 "INSERT INTO as_block (object_id, begin_as, end_as) VALUES (?, ?, ?)",
                 objectInfo.getObjectId(),
                 asBlockRange.getBegin(),
@@ -21,13 +21,13 @@ class IndexWithIfAddr extends IndexStrategyWithSingleLookupTable {
     }
 
     @Override
-    public int addToIndex(final JdbcTemplate jdbcTemplate, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
+    public int addToIndex(final JdbcTemplate jdbcTemplate, final IndexUpdates indexUpdates, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
         final Ipv4Resource ifaddr = parseIfAddr(value);
         if (ifaddr == null) {
             throw new IllegalArgumentException("invalid ifaddr");
         }
 
-        return jdbcTemplate.update(
+        return indexUpdates.update(
                 "INSERT INTO ifaddr (object_id, ifaddr) VALUES (?, ?)",
                 objectInfo.getObjectId(),
                 ifaddr.begin());
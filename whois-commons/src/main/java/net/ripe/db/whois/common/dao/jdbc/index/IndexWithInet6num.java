@@ -18,11 +18,11 @@ class IndexWithInet6num extends IndexStrategyWithSingleLookupTable {
     // MySQL 5.1 bug workaround: if 64-bit integer has its msb bit set, the comparison fails
     // (proved to be working in mysql 5.5; we can drop the Long.toString() then
     @Override
-    public int addToIndex(final JdbcTemplate jdbcTemplate, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
+    public int addToIndex(final JdbcTemplate jdbcTemplate, final IndexUpdates indexUpdates, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
         final Ipv6Resource resource = Ipv6Resource.parse(objectInfo.getKey());
         final String netname = object.getValueForAttribute(AttributeType.NETNAME).toString();
 
-        return jdbcTemplate.update(
+        return indexUpdates.update(
                 "INSERT INTO inet6num (object_id, i6_msb, i6_lsb, prefix_length, netname) VALUES (?, ?, ?, ?, ?)",
                 objectInfo.getObjectId(),
                 Long.toString(Ipv6Resource.msb(resource.begin())),
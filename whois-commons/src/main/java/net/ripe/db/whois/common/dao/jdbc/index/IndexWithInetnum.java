@@ -17,12 +17,12 @@ class IndexWithInetnum extends IndexStrategyWithSingleLookupTable {
     }
 
     @Override
-    public int addToIndex(final JdbcTemplate jdbcTemplate, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
+    public int addToIndex(final JdbcTemplate jdbcTemplate, final IndexUpdates indexUpdates, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
         final Ipv4Resource resource = Ipv4Resource.parse(objectInfo.getKey());
 
         final String netname = object.getValueForAttribute(AttributeType.NETNAME).toString();
 
-        return jdbcTemplate.update(
+        return indexUpdates.update(
                 "INSERT INTO inetnum (object_id, begin_in, end_in, netname) VALUES (?, ?, ?, ?)",
                 objectInfo.getObjectId(),
                 resource.begin(),
@@ -15,8 +15,8 @@ class IndexWithLocalAs extends IndexStrategyWithSingleLookupTable {
     }
 
     @Override
-    public int addToIndex(final JdbcTemplate jdbcTemplate, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
-        return jdbcTemplate.update(
+    public int addToIndex(final JdbcTemplate jdbcTemplate, final IndexUpdates indexUpdates, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
+        return indexUpdates.update(
                 "UPDATE inet_rtr SET local_as = ? WHERE object_id = ?",
                 value,
                 objectInfo.getObjectId());
@@ -35,7 +35,7 @@ class IndexWithLocalAs extends IndexStrategyWithSingleLookupTable {
     }
 
     @Override
-    public void removeFromIndex(final JdbcTemplate jdbcTemplate, final RpslObjectInfo objectInfo) {
+    public void removeFromIndex(final IndexUpdates indexUpdates, final RpslObjectInfo objectInfo) {
         //do nothing, removed for inet_rtr using the indexWithValue strategy
     }
 }
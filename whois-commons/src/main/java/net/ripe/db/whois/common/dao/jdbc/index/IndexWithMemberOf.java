@@ -22,14 +22,14 @@ class IndexWithMemberOf extends IndexWithReference {
     }
 
     @Override
-    public int addToIndex(final JdbcTemplate jdbcTemplate, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
+    public int addToIndex(final JdbcTemplate jdbcTemplate, final IndexUpdates indexUpdates, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
         final IndexStrategy referenceStrategy = IndexStrategies.get(getReferenceAttribute(object.getType()));
         final RpslObjectInfo reference = uniqueResult(referenceStrategy.findInIndex(jdbcTemplate, value));
         if (reference == null) {
             throw new IllegalArgumentException("Referenced object does not exist: " + value);
         }
 
-        return addToIndex(jdbcTemplate, objectInfo, reference);
+        return addToIndex(indexUpdates, objectInfo, reference);
     }
 
     @Override
@@ -19,27 +19,30 @@ class IndexWithMntRoutes extends IndexWithReference {
     }
 
     @Override
-    public int addToIndex(final JdbcTemplate jdbcTemplate, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
+    public int addToIndex(final JdbcTemplate jdbcTemplate, final IndexUpdates indexUpdates, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
         final RpslObjectInfo reference = getReference(jdbcTemplate, MntRoutes.parse(value).getMaintainer().toString());
         if (reference == null) {
             throw new IllegalArgumentException("Referenced object does not exist: " + value);
         }
 
-        int existing = jdbcTemplate.queryForInt("" +
-                "SELECT COUNT(*) " +
-                "FROM mnt_routes " +
-                "WHERE object_id = ? " +
-                "AND " + lookupColumnName + " = ? " +
-                "AND object_type = ?",
-                objectInfo.getObjectId(),
-                reference.getObjectId(),
-                ObjectTypeIds.getId(objectInfo.getObjectType()));
+        // batched rows are not on the database yet, and duplicate rows of an object are only written once by the batch
+        if (indexUpdates.isImmediate()) {
+            final int existing = jdbcTemplate.queryForInt("" +
+                    "SELECT COUNT(*) " +
+                    "FROM mnt_routes " +
+                    "WHERE object_id = ? " +
+                    "AND " + lookupColumnName + " = ? " +
+                    "AND object_type = ?",
+                    objectInfo.getObjectId(),
+                    reference.getObjectId(),
+                    ObjectTypeIds.getId(objectInfo.getObjectType()));
 
-        if (existing != 0) {
-            return existing;
+            if (existing != 0) {
+                return existing;
+            }
         }
 
-        return jdbcTemplate.update("" +
+        return indexUpdates.update("" +
                 "INSERT INTO mnt_routes " +
                 "(object_id, " + lookupColumnName + ", object_type) " +
                 "VALUES (?, ?, ?)",
@@ -76,10 +79,10 @@ class IndexWithMntRoutes extends IndexWithReference {
     }
 
     @Override
-    public void removeFromIndex(final JdbcTemplate jdbcTemplate, final RpslObjectInfo objectInfo) {
-        jdbcTemplate.update("DELETE FROM mnt_routes WHERE object_id = ?", objectInfo.getObjectId());
+    public void removeFromIndex(final IndexUpdates indexUpdates, final RpslObjectInfo objectInfo) {
+        indexUpdates.update("DELETE FROM mnt_routes WHERE object_id = ?", objectInfo.getObjectId());
 
         // TODO [AK] Remove reference to mnt_routes6 after rebuilding indexes
-        jdbcTemplate.update("DELETE FROM mnt_routes6 WHERE object_id = ?", objectInfo.getObjectId());
+        indexUpdates.update("DELETE FROM mnt_routes6 WHERE object_id = ?", objectInfo.getObjectId());
     }
 }
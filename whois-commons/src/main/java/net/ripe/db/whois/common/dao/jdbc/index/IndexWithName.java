@@ -68,21 +68,21 @@ class IndexWithName extends IndexStrategyWithSingleLookupTable {
     }
 
     @Override
-    public int addToIndex(final JdbcTemplate jdbcTemplate, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
+    public int addToIndex(final JdbcTemplate jdbcTemplate, final IndexUpdates indexUpdates, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
         int ret = 0;
 
         final Set<CIString> names = Sets.newHashSet();
         for (String name : SPACE_SPLITTER.split(value)) {
             if (names.add(ciString(name))) {
-                ret += addToIndex(jdbcTemplate, objectInfo.getObjectId(), name);
+                ret += addToIndex(indexUpdates, objectInfo.getObjectId(), name);
             }
         }
 
         return ret;
     }
 
-    int addToIndex(final JdbcTemplate jdbcTemplate, final int objectId, final String name) {
+    int addToIndex(final IndexUpdates indexUpdates, final int objectId, final String name) {
         final String query = String.format("INSERT INTO %s (object_id, name) VALUES (?, ?)", lookupTableName);
-        return jdbcTemplate.update(query, objectId, name);
+        return indexUpdates.update(query, objectId, name);
     }
 }
@@ -22,9 +22,9 @@ class IndexWithNameAndType extends IndexWithName {
     }
 
     @Override
-    int addToIndex(final JdbcTemplate jdbcTemplate, final int objectId, final String name) {
+    int addToIndex(final IndexUpdates indexUpdates, final int objectId, final String name) {
         final String query = String.format("INSERT INTO %s (object_id, name, object_type) VALUES (?, ?, ?)", lookupTableName);
-        return jdbcTemplate.update(query, objectId, name, objectTypeId);
+        return indexUpdates.update(query, objectId, name, objectTypeId);
     }
 
     @Override
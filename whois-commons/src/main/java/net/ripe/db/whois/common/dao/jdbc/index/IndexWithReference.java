@@ -60,22 +60,22 @@ class IndexWithReference extends IndexStrategySimpleLookup {
     }
 
     @Override
-    public int addToIndex(final JdbcTemplate jdbcTemplate, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
+    public int addToIndex(final JdbcTemplate jdbcTemplate, final IndexUpdates indexUpdates, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
         final RpslObjectInfo reference = getReference(jdbcTemplate, value);
         if (reference == null) {
             throw new IllegalArgumentException("Referenced object does not exist: " + value);
         }
 
-        return addToIndex(jdbcTemplate, objectInfo, reference);
+        return addToIndex(indexUpdates, objectInfo, reference);
     }
 
-    int addToIndex(final JdbcTemplate jdbcTemplate, final RpslObjectInfo objectInfo, final RpslObjectInfo reference) {
-        return addToIndex(jdbcTemplate, objectInfo, reference.getObjectId());
+    int addToIndex(final IndexUpdates indexUpdates, final RpslObjectInfo objectInfo, final RpslObjectInfo reference) {
+        return addToIndex(indexUpdates, objectInfo, reference.getObjectId());
     }
 
-    int addToIndex(final JdbcTemplate jdbcTemplate, final RpslObjectInfo objectInfo, final int referenceObjectId) {
+    int addToIndex(final IndexUpdates indexUpdates, final RpslObjectInfo objectInfo, final int referenceObjectId) {
         final String query = String.format("INSERT INTO %s (object_id, %s, object_type) VALUES (?, ?, ?)", lookupTableName, lookupColumnName);
-        return jdbcTemplate.update(query, objectInfo.getObjectId(), referenceObjectId, ObjectTypeIds.getId(objectInfo.getObjectType()));
+        return indexUpdates.update(query, objectInfo.getObjectId(), referenceObjectId, ObjectTypeIds.getId(objectInfo.getObjectType()));
     }
 
     @Override
@@ -19,11 +19,11 @@ class IndexWithRoute6 extends IndexStrategyWithSingleLookupTable {
     }
 
     @Override
-    public int addToIndex(final JdbcTemplate jdbcTemplate, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
+    public int addToIndex(final JdbcTemplate jdbcTemplate, final IndexUpdates indexUpdates, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
         final Ipv6Resource resource = Ipv6Resource.parse(value);
         final String origin = object.getValueForAttribute(AttributeType.ORIGIN).toString();
 
-        return jdbcTemplate.update(
+        return indexUpdates.update(
                 "INSERT INTO route6 (object_id, r6_msb, r6_lsb, prefix_length, origin) VALUES (?, ?, ?, ?, ?)",
                 objectInfo.getObjectId(),
                 Ipv6Resource.msb(resource.begin()),
@@ -16,9 +16,9 @@ class IndexWithValue extends IndexStrategySimpleLookup {
     }
 
     @Override
-    public int addToIndex(final JdbcTemplate jdbcTemplate, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
+    public int addToIndex(final JdbcTemplate jdbcTemplate, final IndexUpdates indexUpdates, final RpslObjectInfo objectInfo, final RpslObject object, final String value) {
         final String query = String.format("INSERT INTO %s (object_id, %s) VALUES (?, ?)", lookupTableName, lookupColumnName);
-        return jdbcTemplate.update(query, objectInfo.getObjectId(), value);
+        return indexUpdates.update(query, objectInfo.getObjectId(), value);
     }
 
     @Override
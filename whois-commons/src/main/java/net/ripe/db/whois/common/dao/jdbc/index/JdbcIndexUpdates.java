@@ -0,0 +1,24 @@
+package net.ripe.db.whois.common.dao.jdbc.index;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Executes the statements writing the index rows immediately.
+ */
+public class JdbcIndexUpdates implements IndexUpdates {
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcIndexUpdates(final JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public int update(final String sql, final Object... args) {
+        return jdbcTemplate.update(sql, args);
+    }
+
+    @Override
+    public boolean isImmediate() {
+        return true;
+    }
+}
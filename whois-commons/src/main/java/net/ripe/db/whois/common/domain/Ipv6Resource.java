@@ -89,6 +89,23 @@ public class Ipv6Resource extends IpInterval<Ipv6Resource> implements Comparable
         }
     }
 
+    private Ipv6Resource(long beginMsb, long beginLsb, long endMsb, long endLsb) {
+        Validate.isTrue(compare(beginMsb, beginLsb, endMsb, endLsb) <= 0, "Begin must be before end");
+
+        this.beginMsb = beginMsb;
+        this.beginLsb = beginLsb;
+        this.endMsb = endMsb;
+        this.endLsb = endLsb;
+    }
+
+    /**
+     * Constructs a new IPv6 interval from the most and least significant 64 bits of its begin and end (both
+     * inclusive), as returned by {@link #beginMsb()}, {@link #beginLsb()}, {@link #endMsb()} and {@link #endLsb()}.
+     */
+    public static Ipv6Resource fromLongs(long beginMsb, long beginLsb, long endMsb, long endLsb) {
+        return new Ipv6Resource(beginMsb, beginLsb, endMsb, endLsb);
+    }
+
     public Ipv6Resource(BigInteger begin, BigInteger end) {
         Validate.isTrue(begin.bitLength() <= IPV6_BITCOUNT, "Begin out of range: ", begin);
         Validate.isTrue(end.bitLength() <= IPV6_BITCOUNT, "End out of range: ", end);
@@ -183,6 +200,34 @@ public class Ipv6Resource extends IpInterval<Ipv6Resource> implements Comparable
         return twoUnsignedLongToBigInteger(endMsb, endLsb);
     }
 
+    /**
+     * @return the most significant 64 bits of the start address, as unsigned <code>long</code>.
+     */
+    public long beginMsb() {
+        return beginMsb;
+    }
+
+    /**
+     * @return the least significant 64 bits of the start address, as unsigned <code>long</code>.
+     */
+    public long beginLsb() {
+        return beginLsb;
+    }
+
+    /**
+     * @return the most significant 64 bits of the end address, as unsigned <code>long</code>.
+     */
+    public long endMsb() {
+        return endMsb;
+    }
+
+    /**
+     * @return the least significant 64 bits of the end address, as unsigned <code>long</code>.
+     */
+    public long endLsb() {
+        return endLsb;
+    }
+
     private static long[] byteArrayToLongArray(byte[] address) {
         Validate.isTrue(address.length == 16, "Address has to be 16 bytes long");
         long[] res = new long[2];
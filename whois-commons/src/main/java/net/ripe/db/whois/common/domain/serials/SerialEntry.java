@@ -3,6 +3,7 @@ package net.ripe.db.whois.common.domain.serials;
 import net.ripe.db.whois.common.rpsl.RpslObject;
 
 public class SerialEntry {
+    final private int serialId;
     final private Operation operation;
     final private boolean atLast;
 
@@ -11,7 +12,8 @@ public class SerialEntry {
 
     private RpslObject rpslObject;
 
-    public SerialEntry(Operation operation, boolean atLast, int objectId, int lastTimestamp, int historyTimestamp) {
+    public SerialEntry(int serialId, Operation operation, boolean atLast, int objectId, int lastTimestamp, int historyTimestamp) {
+        this.serialId = serialId;
         this.operation = operation;
         this.atLast = atLast;
         this.lastTimestamp = lastTimestamp;
@@ -19,11 +21,15 @@ public class SerialEntry {
         rpslObject = null;
     }
 
-    public SerialEntry(Operation operation, boolean atLast, int objectId, int lastTimestamp, int historyTimestamp, byte[] blob) {
-        this(operation, atLast, objectId, lastTimestamp, historyTimestamp);
+    public SerialEntry(int serialId, Operation operation, boolean atLast, int objectId, int lastTimestamp, int historyTimestamp, byte[] blob) {
+        this(serialId, operation, atLast, objectId, lastTimestamp, historyTimestamp);
         rpslObject = RpslObject.parse(objectId, blob);
     }
 
+    public int getSerialId() {
+        return serialId;
+    }
+
     public RpslObject getRpslObject() {
         return rpslObject;
     }
@@ -7,22 +7,41 @@ import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
+/**
+ * An {@link IntervalMap} that can hold multiple values per interval.
+ * <p/>
+ * The value sets are never modified once they are stored, a modification replaces the set. This
+ * allows a copy to share the value sets with its source.
+ */
 public final class MultiValueIntervalMap<K extends Interval<K>, V> implements IntervalMap<K, V> {
-    private final IntervalMap<K, SortedSet<V>> wrapped;
+    private final NestedIntervalMap<K, SortedSet<V>> wrapped;
 
     public MultiValueIntervalMap() {
         this.wrapped = new NestedIntervalMap<>();
     }
 
+    /**
+     * Construct a new {@link MultiValueIntervalMap} with (key, values) of
+     * <code>source</code> copied.
+     *
+     * @param source the source to copy.
+     */
+    public MultiValueIntervalMap(final MultiValueIntervalMap<K, V> source) {
+        this.wrapped = new NestedIntervalMap<>(source.wrapped);
+    }
+
     @Override
     public void put(K key, V value) {
-        SortedSet<V> set = CollectionHelper.uniqueResult(wrapped.findExact(key));
+        final SortedSet<V> set = CollectionHelper.uniqueResult(wrapped.findExact(key));
         if (set == null) {
-            set = new TreeSet<>();
-            wrapped.put(key, set);
+            final SortedSet<V> newSet = new TreeSet<>();
+            newSet.add(value);
+            wrapped.put(key, newSet);
+        } else if (!set.contains(value)) {
+            final SortedSet<V> newSet = new TreeSet<>(set);
+            newSet.add(value);
+            wrapped.put(key, newSet);
         }
-
-        set.add(value);
     }
 
     @Override
@@ -32,15 +51,17 @@ public final class MultiValueIntervalMap<K extends Interval<K>, V> implements In
 
     @Override
     public void remove(K key, V value) {
-        SortedSet<V> set = CollectionHelper.uniqueResult(wrapped.findExact(key));
-        if (set == null) {
+        final SortedSet<V> set = CollectionHelper.uniqueResult(wrapped.findExact(key));
+        if (set == null || !set.contains(value)) {
             return;
         }
 
-        set.remove(value);
-
-        if (set.isEmpty()) {
+        if (set.size() == 1) {
             wrapped.remove(key);
+        } else {
+            final SortedSet<V> newSet = new TreeSet<>(set);
+            newSet.remove(value);
+            wrapped.put(key, newSet);
         }
     }
 
@@ -0,0 +1,445 @@
+package net.ripe.db.whois.common.iptree;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import net.ripe.db.whois.common.collect.CollectionHelper;
+import net.ripe.db.whois.common.domain.Ipv4Resource;
+import net.ripe.db.whois.common.etree.IntersectingIntervalException;
+import net.ripe.db.whois.common.etree.IntervalMap;
+import net.ripe.db.whois.common.etree.NestedIntervalMap;
+import org.apache.commons.lang.Validate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An {@link IntervalMap} of {@link Ipv4Entry} values that keeps begin, end and object id of every entry in
+ * parallel primitive arrays instead of a tree of node objects.
+ * <p/>
+ * Entries are sorted in pre-order of the nesting tree (begin ascending, end descending). For every entry the
+ * index of its parent and the index just past its last nested entry is kept, so less specific lookups walk up the
+ * parents and more specific lookups scan a contiguous range of the arrays.
+ * <p/>
+ * Modifications are validated immediately but collected separately, and merged into new arrays by the first
+ * lookup that follows (or by {@link #compact()}). A batch of updates therefore costs a single pass over the arrays.
+ * The arrays are never modified once built, so copies share them with their source, and lookups on a map without
+ * pending modifications don't take a lock.
+ */
+public final class CompactIpv4IntervalMap implements IntervalMap<Ipv4Resource, Ipv4Entry> {
+    private static final Index EMPTY = new Index(new int[0], new int[0], new int[0], 0);
+
+    private volatile Index index = EMPTY;
+    private volatile boolean modified;
+
+    private NestedIntervalMap<Ipv4Resource, Ipv4Entry> added = new NestedIntervalMap<>();
+    private Set<Ipv4Resource> removed = Sets.newHashSet();
+
+    /**
+     * Construct an empty {@link CompactIpv4IntervalMap}.
+     */
+    public CompactIpv4IntervalMap() {
+    }
+
+    /**
+     * Construct a new {@link CompactIpv4IntervalMap} with (key, values) of
+     * <code>source</code> copied.
+     *
+     * @param source the source to copy.
+     */
+    public CompactIpv4IntervalMap(final CompactIpv4IntervalMap source) {
+        this.index = source.compactedIndex();
+    }
+
+    @Override
+    public synchronized void put(final Ipv4Resource key, final Ipv4Entry value) {
+        Validate.notNull(key);
+        Validate.notNull(value);
+
+        final List<Ipv4Resource> intersections = index.findIntersecting(key, removed);
+        if (!intersections.isEmpty()) {
+            throw new IntersectingIntervalException(key, intersections);
+        }
+
+        added.put(key, value);
+        removed.remove(key);
+        modified = true;
+    }
+
+    @Override
+    public synchronized void remove(final Ipv4Resource key) {
+        Validate.notNull(key);
+
+        added.remove(key);
+        if (index.indexOf(key.begin(), key.end()) >= 0) {
+            removed.add(key);
+        }
+
+        modified = true;
+    }
+
+    @Override
+    public synchronized void remove(final Ipv4Resource key, final Ipv4Entry value) {
+        Validate.notNull(key);
+        Validate.notNull(value);
+
+        Ipv4Entry existing = CollectionHelper.uniqueResult(added.findExact(key));
+        if (existing == null && !removed.contains(key)) {
+            final int i = index.indexOf(key.begin(), key.end());
+            if (i >= 0) {
+                existing = index.entry(i);
+            }
+        }
+
+        if (value.equals(existing)) {
+            remove(key);
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        index = EMPTY;
+        added = new NestedIntervalMap<>();
+        removed = Sets.newHashSet();
+        modified = false;
+    }
+
+    /**
+     * Merges pending modifications into the arrays, so the next lookup doesn't have to.
+     */
+    public void compact() {
+        compactedIndex();
+    }
+
+    /**
+     * @return the number of entries in this map.
+     */
+    public int size() {
+        return compactedIndex().size;
+    }
+
+    @Override
+    public List<Ipv4Entry> findFirstLessSpecific(final Ipv4Resource key) {
+        Validate.notNull(key);
+        final Index index = compactedIndex();
+        final int i = index.findFirstLessSpecific(key.begin(), key.end());
+        return i < 0 ? Collections.<Ipv4Entry>emptyList() : Collections.singletonList(index.entry(i));
+    }
+
+    @Override
+    public List<Ipv4Entry> findExact(final Ipv4Resource key) {
+        Validate.notNull(key);
+        final Index index = compactedIndex();
+        final int i = index.indexOf(key.begin(), key.end());
+        return i < 0 ? Collections.<Ipv4Entry>emptyList() : Collections.singletonList(index.entry(i));
+    }
+
+    @Override
+    public List<Ipv4Entry> findExactOrFirstLessSpecific(final Ipv4Resource key) {
+        Validate.notNull(key);
+        final Index index = compactedIndex();
+        final int i = index.findExactOrFirstLessSpecific(key.begin(), key.end());
+        return i < 0 ? Collections.<Ipv4Entry>emptyList() : Collections.singletonList(index.entry(i));
+    }
+
+    @Override
+    public List<Ipv4Entry> findAllLessSpecific(final Ipv4Resource key) {
+        Validate.notNull(key);
+        final Index index = compactedIndex();
+        return index.ancestorsOf(index.findFirstLessSpecific(key.begin(), key.end()));
+    }
+
+    @Override
+    public List<Ipv4Entry> findExactAndAllLessSpecific(final Ipv4Resource key) {
+        Validate.notNull(key);
+        final Index index = compactedIndex();
+        return index.ancestorsOf(index.findExactOrFirstLessSpecific(key.begin(), key.end()));
+    }
+
+    @Override
+    public List<Ipv4Entry> findFirstMoreSpecific(final Ipv4Resource key) {
+        Validate.notNull(key);
+        return compactedIndex().findFirstMoreSpecific(key.begin(), key.end());
+    }
+
+    @Override
+    public List<Ipv4Entry> findAllMoreSpecific(final Ipv4Resource key) {
+        Validate.notNull(key);
+        return compactedIndex().findAllMoreSpecific(key.begin(), key.end(), false);
+    }
+
+    @Override
+    public List<Ipv4Entry> findExactAndAllMoreSpecific(final Ipv4Resource key) {
+        Validate.notNull(key);
+        return compactedIndex().findAllMoreSpecific(key.begin(), key.end(), true);
+    }
+
+    private Index compactedIndex() {
+        if (modified) {
+            synchronized (this) {
+                if (modified) {
+                    index = index.merge(added.findExactAndAllMoreSpecific(Ipv4Resource.MAX_RANGE), removed);
+                    added = new NestedIntervalMap<>();
+                    removed = Sets.newHashSet();
+                    modified = false;
+                }
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Immutable, sorted arrays of entries. Begin and end are stored as unsigned ints.
+     */
+    private static final class Index {
+        final int[] begins;
+        final int[] ends;
+        final int[] objectIds;
+        final int[] parents;
+        final int[] subtreeEnds;
+        final int size;
+
+        Index(final int[] begins, final int[] ends, final int[] objectIds, final int size) {
+            this.begins = begins;
+            this.ends = ends;
+            this.objectIds = objectIds;
+            this.size = size;
+            this.parents = new int[size];
+            this.subtreeEnds = new int[size];
+
+            final int[] stack = new int[size];
+            int depth = 0;
+            for (int i = 0; i < size; i++) {
+                while (depth > 0 && end(stack[depth - 1]) < begin(i)) {
+                    subtreeEnds[stack[--depth]] = i;
+                }
+
+                parents[i] = depth > 0 ? stack[depth - 1] : -1;
+                stack[depth++] = i;
+            }
+
+            while (depth > 0) {
+                subtreeEnds[stack[--depth]] = size;
+            }
+        }
+
+        long begin(final int i) {
+            return begins[i] & 0xffffffffL;
+        }
+
+        long end(final int i) {
+            return ends[i] & 0xffffffffL;
+        }
+
+        Ipv4Entry entry(final int i) {
+            return new Ipv4Entry(new Ipv4Resource(begin(i), end(i)), objectIds[i]);
+        }
+
+        boolean contains(final int i, final long begin, final long end) {
+            return begin(i) <= begin && end(i) >= end;
+        }
+
+        boolean equals(final int i, final long begin, final long end) {
+            return begin(i) == begin && end(i) == end;
+        }
+
+        /**
+         * Binary search by begin ascending, end descending.
+         *
+         * @return the index of the entry, or <code>(-(insertion point) - 1)</code> if not found
+         */
+        int indexOf(final long begin, final long end) {
+            int low = 0;
+            int high = size - 1;
+
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                final long midBegin = begin(mid);
+                final long midEnd = end(mid);
+
+                if (midBegin < begin || (midBegin == begin && midEnd > end)) {
+                    low = mid + 1;
+                } else if (midBegin > begin || midEnd < end) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+
+            return -(low + 1);
+        }
+
+        /*
+         * Every entry containing the interval sorts before it, and the entry sorting directly before it is nested
+         * in all of those, so the closest containing entry is found by walking up from there.
+         */
+        int findExactOrFirstLessSpecific(final long begin, final long end) {
+            final int position = indexOf(begin, end);
+            int i = position >= 0 ? position : -position - 2;
+            while (i >= 0 && !contains(i, begin, end)) {
+                i = parents[i];
+            }
+
+            return i;
+        }
+
+        int findFirstLessSpecific(final long begin, final long end) {
+            final int i = findExactOrFirstLessSpecific(begin, end);
+            return i >= 0 && equals(i, begin, end) ? parents[i] : i;
+        }
+
+        List<Ipv4Entry> ancestorsOf(final int index) {
+            if (index < 0) {
+                return Collections.emptyList();
+            }
+
+            final List<Ipv4Entry> result = Lists.newArrayList();
+            for (int i = index; i >= 0; i = parents[i]) {
+                result.add(entry(i));
+            }
+
+            Collections.reverse(result);
+            return result;
+        }
+
+        List<Ipv4Entry> findAllMoreSpecific(final long begin, final long end, final boolean includeExact) {
+            final int position = indexOf(begin, end);
+            int i = position >= 0 ? position : -position - 1;
+            if (position >= 0 && !includeExact) {
+                i++;
+            }
+
+            final List<Ipv4Entry> result = Lists.newArrayList();
+            for (; i < size && begin(i) <= end; i++) {
+                if (end(i) <= end) {
+                    result.add(entry(i));
+                }
+            }
+
+            return result;
+        }
+
+        List<Ipv4Entry> findFirstMoreSpecific(final long begin, final long end) {
+            final int position = indexOf(begin, end);
+            int i = position >= 0 ? position + 1 : -position - 1;
+
+            final List<Ipv4Entry> result = Lists.newArrayList();
+            while (i < size && begin(i) <= end) {
+                if (end(i) <= end) {
+                    result.add(entry(i));
+                    i = subtreeEnds[i];
+                } else {
+                    i++;
+                }
+            }
+
+            return result;
+        }
+
+        /*
+         * Intersecting entries either contain the begin but not the end of the interval, or the other way around.
+         * All entries containing a single address are ancestors of the closest one.
+         */
+        List<Ipv4Resource> findIntersecting(final Ipv4Resource key, final Set<Ipv4Resource> ignored) {
+            final long begin = key.begin();
+            final long end = key.end();
+
+            List<Ipv4Resource> result = Collections.emptyList();
+            for (int i = findExactOrFirstLessSpecific(begin, begin); i >= 0; i = parents[i]) {
+                if (begin(i) < begin && end(i) < end && !ignored.contains(entry(i).getKey())) {
+                    result = Lists.newArrayList(result);
+                    result.add(entry(i).getKey());
+                }
+            }
+
+            for (int i = findExactOrFirstLessSpecific(end, end); i >= 0; i = parents[i]) {
+                if (begin(i) > begin && end(i) > end && !ignored.contains(entry(i).getKey())) {
+                    result = Lists.newArrayList(result);
+                    result.add(entry(i).getKey());
+                }
+            }
+
+            return result;
+        }
+
+        /**
+         * @param additions entries to add (or replace), in pre-order
+         * @param removals  keys to remove
+         * @return a new index with the modifications applied
+         */
+        Index merge(final List<Ipv4Entry> additions, final Set<Ipv4Resource> removals) {
+            final List<Ipv4Resource> sortedRemovals = Lists.newArrayList(removals);
+            Collections.sort(sortedRemovals);
+
+            final int capacity = size + additions.size();
+            final int[] mergedBegins = new int[capacity];
+            final int[] mergedEnds = new int[capacity];
+            final int[] mergedObjectIds = new int[capacity];
+
+            int merged = 0;
+            int i = 0;
+            int added = 0;
+            int removal = 0;
+
+            while (i < size || added < additions.size()) {
+                final int cmp;
+                if (i == size) {
+                    cmp = 1;
+                } else if (added == additions.size()) {
+                    cmp = -1;
+                } else {
+                    cmp = compare(i, additions.get(added).getKey());
+                }
+
+                if (cmp < 0) {
+                    while (removal < sortedRemovals.size() && compare(i, sortedRemovals.get(removal)) > 0) {
+                        removal++;
+                    }
+
+                    if (removal == sortedRemovals.size() || compare(i, sortedRemovals.get(removal)) != 0) {
+                        mergedBegins[merged] = begins[i];
+                        mergedEnds[merged] = ends[i];
+                        mergedObjectIds[merged] = objectIds[i];
+                        merged++;
+                    }
+
+                    i++;
+                } else {
+                    final Ipv4Entry entry = additions.get(added);
+                    mergedBegins[merged] = (int) entry.getKey().begin();
+                    mergedEnds[merged] = (int) entry.getKey().end();
+                    mergedObjectIds[merged] = entry.getObjectId();
+                    merged++;
+
+                    if (cmp == 0) {
+                        i++;
+                    }
+
+                    added++;
+                }
+            }
+
+            return new Index(
+                    Arrays.copyOf(mergedBegins, merged),
+                    Arrays.copyOf(mergedEnds, merged),
+                    Arrays.copyOf(mergedObjectIds, merged),
+                    merged);
+        }
+
+        private int compare(final int i, final Ipv4Resource key) {
+            final long begin = begin(i);
+            if (begin != key.begin()) {
+                return begin < key.begin() ? -1 : 1;
+            }
+
+            final long end = end(i);
+            if (end != key.end()) {
+                return end > key.end() ? -1 : 1;
+            }
+
+            return 0;
+        }
+    }
+}
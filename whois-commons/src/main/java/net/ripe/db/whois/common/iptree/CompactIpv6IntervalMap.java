@@ -0,0 +1,759 @@
+package net.ripe.db.whois.common.iptree;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import net.ripe.db.whois.common.collect.CollectionHelper;
+import net.ripe.db.whois.common.domain.Ipv6Resource;
+import net.ripe.db.whois.common.etree.IntersectingIntervalException;
+import net.ripe.db.whois.common.etree.IntervalMap;
+import net.ripe.db.whois.common.etree.NestedIntervalMap;
+import org.apache.commons.lang.Validate;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An {@link IntervalMap} of IPv6 entries that packs every interval as two pairs of <code>long</code>s in a flat
+ * buffer, and every value as a single <code>long</code> (see {@link ValueCodec}), instead of a tree of node objects.
+ * <p/>
+ * The layout and update strategy are the same as {@link CompactIpv4IntervalMap}: entries are sorted in pre-order of
+ * the nesting tree with parent and subtree-end indexes, modifications are collected and merged in a single pass by
+ * the next lookup (or {@link #compact()}), and copies share the immutable buffers. Bounds are stored with the sign
+ * bit flipped, so lookups compare them as signed <code>long</code>s without allocating.
+ * <p/>
+ * A map created with a value {@link Comparator} holds multiple values per interval, ordered by the comparator, like
+ * {@link net.ripe.db.whois.common.etree.MultiValueIntervalMap}.
+ *
+ * @param <V> the type of the values to store.
+ */
+public final class CompactIpv6IntervalMap<V extends IpEntry<Ipv6Resource>> implements IntervalMap<Ipv6Resource, V> {
+
+    /**
+     * Converts values to and from the <code>long</code> stored in the map. A value that does not fit is encoded as a
+     * <code>long</code> unique to the value that the codec can not decode, and the map keeps the value itself.
+     */
+    public interface ValueCodec<V> {
+        long encode(V value);
+
+        boolean canDecode(long value);
+
+        V decode(Ipv6Resource key, long value);
+    }
+
+    public static final ValueCodec<Ipv6Entry> IPV6_ENTRY_CODEC = new ValueCodec<Ipv6Entry>() {
+        @Override
+        public long encode(final Ipv6Entry value) {
+            return value.getObjectId();
+        }
+
+        @Override
+        public boolean canDecode(final long value) {
+            return true;
+        }
+
+        @Override
+        public Ipv6Entry decode(final Ipv6Resource key, final long value) {
+            return new Ipv6Entry(key, (int) value);
+        }
+    };
+
+    /**
+     * Stores the origin as AS number plus one in the upper 32 bits, the object id in the lower 32 bits. Origins that do
+     * not round trip (AS numbers of more than 32 bits, leading zeros, lower case or origins that are not an AS number)
+     * are encoded as the object id only, which is unique to the route in the map.
+     */
+    public static final ValueCodec<Ipv6RouteEntry> IPV6_ROUTE_ENTRY_CODEC = new ValueCodec<Ipv6RouteEntry>() {
+        private static final String AS_PREFIX = "AS";
+        private static final long MAX_ENCODED_ASN = 0xfffffffeL;
+
+        @Override
+        public long encode(final Ipv6RouteEntry value) {
+            final long objectId = value.getObjectId() & 0xffffffffL;
+
+            final long asn = parseAsn(value.getOrigin());
+            if (asn == -1) {
+                return objectId;
+            }
+
+            return ((asn + 1) << 32) | objectId;
+        }
+
+        @Override
+        public boolean canDecode(final long value) {
+            return (value >>> 32) != 0;
+        }
+
+        @Override
+        public Ipv6RouteEntry decode(final Ipv6Resource key, final long value) {
+            return new Ipv6RouteEntry(key, (int) value, AS_PREFIX + ((value >>> 32) - 1));
+        }
+
+        private long parseAsn(final String origin) {
+            if (origin == null || !origin.startsWith(AS_PREFIX)) {
+                return -1;
+            }
+
+            try {
+                final long asn = Long.parseLong(origin.substring(AS_PREFIX.length()));
+                return asn >= 0 && asn <= MAX_ENCODED_ASN && origin.equals(AS_PREFIX + asn) ? asn : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    };
+
+    private final ValueCodec<V> valueCodec;
+    private final Comparator<? super V> valueComparator;
+
+    private volatile Index<V> index;
+    private volatile boolean modified;
+
+    private NestedIntervalMap<Ipv6Resource, PendingEntry> added = new NestedIntervalMap<>();
+    private Set<Ipv6Resource> removed = Sets.newHashSet();
+    private Map<Long, V> addedValues = Maps.newHashMap();
+
+    /**
+     * @return a map holding a single {@link Ipv6Entry} per interval.
+     */
+    public static CompactIpv6IntervalMap<Ipv6Entry> forEntries() {
+        return new CompactIpv6IntervalMap<>(IPV6_ENTRY_CODEC, null);
+    }
+
+    /**
+     * @return a map holding multiple {@link Ipv6RouteEntry}s per interval, ordered by origin.
+     */
+    public static CompactIpv6IntervalMap<Ipv6RouteEntry> forRouteEntries() {
+        return new CompactIpv6IntervalMap<>(IPV6_ROUTE_ENTRY_CODEC, new Comparator<Ipv6RouteEntry>() {
+            @Override
+            public int compare(final Ipv6RouteEntry o1, final Ipv6RouteEntry o2) {
+                return o1.compareTo(o2);
+            }
+        });
+    }
+
+    /**
+     * @param valueCodec      converts values to and from their stored representation
+     * @param valueComparator orders multiple values per interval, or <code>null</code> to store a single value
+     *                        per interval
+     */
+    public CompactIpv6IntervalMap(final ValueCodec<V> valueCodec, final Comparator<? super V> valueComparator) {
+        this.valueCodec = valueCodec;
+        this.valueComparator = valueComparator;
+        this.index = new Index<>(0, 0, ImmutableMap.<Long, V>of());
+    }
+
+    /**
+     * Construct a new {@link CompactIpv6IntervalMap} with (key, values) of
+     * <code>source</code> copied.
+     *
+     * @param source the source to copy.
+     */
+    public CompactIpv6IntervalMap(final CompactIpv6IntervalMap<V> source) {
+        this.valueCodec = source.valueCodec;
+        this.valueComparator = source.valueComparator;
+        this.index = source.compactedIndex();
+    }
+
+    @Override
+    public synchronized void put(final Ipv6Resource key, final V value) {
+        Validate.notNull(key);
+        Validate.notNull(value);
+
+        final long encoded = valueCodec.encode(value);
+        final long[] existing = currentValues(key);
+
+        final long[] values;
+        if (valueComparator == null || existing.length == 0) {
+            values = new long[]{encoded};
+        } else {
+            int position = 0;
+            while (position < existing.length) {
+                final int cmp = valueComparator.compare(value, decodeCurrent(key, existing[position]));
+                if (cmp == 0) {
+                    return;
+                } else if (cmp < 0) {
+                    break;
+                }
+                position++;
+            }
+
+            values = new long[existing.length + 1];
+            System.arraycopy(existing, 0, values, 0, position);
+            values[position] = encoded;
+            System.arraycopy(existing, position, values, position + 1, existing.length - position);
+        }
+
+        if (existing.length == 0) {
+            final List<Ipv6Resource> intersections = index.findIntersecting(new Bounds(key), removed);
+            if (!intersections.isEmpty()) {
+                throw new IntersectingIntervalException(key, intersections);
+            }
+        }
+
+        if (!valueCodec.canDecode(encoded)) {
+            addedValues.put(encoded, value);
+        }
+
+        added.put(key, new PendingEntry(key, values));
+        removed.remove(key);
+        modified = true;
+    }
+
+    @Override
+    public synchronized void remove(final Ipv6Resource key) {
+        Validate.notNull(key);
+
+        added.remove(key);
+        if (index.indexOf(new Bounds(key)) >= 0) {
+            removed.add(key);
+        }
+
+        modified = true;
+    }
+
+    @Override
+    public synchronized void remove(final Ipv6Resource key, final V value) {
+        Validate.notNull(key);
+        Validate.notNull(value);
+
+        final long[] existing = currentValues(key);
+        final long[] remaining = new long[existing.length];
+        int nrRemaining = 0;
+        for (final long existingValue : existing) {
+            final V decoded = decodeCurrent(key, existingValue);
+            final boolean matches = valueComparator == null ? value.equals(decoded) : valueComparator.compare(value, decoded) == 0;
+            if (!matches) {
+                remaining[nrRemaining++] = existingValue;
+            }
+        }
+
+        if (nrRemaining == existing.length) {
+            return;
+        }
+
+        if (nrRemaining == 0) {
+            remove(key);
+        } else {
+            added.put(key, new PendingEntry(key, Arrays.copyOf(remaining, nrRemaining)));
+            removed.remove(key);
+            modified = true;
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        index = new Index<>(0, 0, ImmutableMap.<Long, V>of());
+        added = new NestedIntervalMap<>();
+        removed = Sets.newHashSet();
+        addedValues = Maps.newHashMap();
+        modified = false;
+    }
+
+    /**
+     * Merges pending modifications into the buffers, so the next lookup doesn't have to.
+     */
+    public void compact() {
+        compactedIndex();
+    }
+
+    /**
+     * @return the number of intervals in this map.
+     */
+    public int size() {
+        return compactedIndex().size;
+    }
+
+    /**
+     * @return the number of values kept by the map, as the codec can not decode them.
+     */
+    int nrUndecodableValues() {
+        return compactedIndex().undecodableValues.size();
+    }
+
+    @Override
+    public List<V> findFirstLessSpecific(final Ipv6Resource key) {
+        Validate.notNull(key);
+        final Index<V> index = compactedIndex();
+        return valuesOf(index, index.findFirstLessSpecific(new Bounds(key)));
+    }
+
+    @Override
+    public List<V> findExact(final Ipv6Resource key) {
+        Validate.notNull(key);
+        final Index<V> index = compactedIndex();
+        return valuesOf(index, index.indexOf(new Bounds(key)));
+    }
+
+    @Override
+    public List<V> findExactOrFirstLessSpecific(final Ipv6Resource key) {
+        Validate.notNull(key);
+        final Index<V> index = compactedIndex();
+        return valuesOf(index, index.findExactOrFirstLessSpecific(new Bounds(key)));
+    }
+
+    @Override
+    public List<V> findAllLessSpecific(final Ipv6Resource key) {
+        Validate.notNull(key);
+        final Index<V> index = compactedIndex();
+        return ancestorsOf(index, index.findFirstLessSpecific(new Bounds(key)));
+    }
+
+    @Override
+    public List<V> findExactAndAllLessSpecific(final Ipv6Resource key) {
+        Validate.notNull(key);
+        final Index<V> index = compactedIndex();
+        return ancestorsOf(index, index.findExactOrFirstLessSpecific(new Bounds(key)));
+    }
+
+    @Override
+    public List<V> findFirstMoreSpecific(final Ipv6Resource key) {
+        Validate.notNull(key);
+        final Index<V> index = compactedIndex();
+        final Bounds bounds = new Bounds(key);
+        final int position = index.indexOf(bounds);
+
+        final List<V> result = Lists.newArrayList();
+        int i = position >= 0 ? position + 1 : -position - 1;
+        while (i < index.size && index.beginsBeforeOrAtEnd(i, bounds)) {
+            if (index.endsBeforeOrAtEnd(i, bounds)) {
+                addValues(result, index, i);
+                i = index.subtreeEnd(i);
+            } else {
+                i++;
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public List<V> findAllMoreSpecific(final Ipv6Resource key) {
+        Validate.notNull(key);
+        return findAllMoreSpecific(key, false);
+    }
+
+    @Override
+    public List<V> findExactAndAllMoreSpecific(final Ipv6Resource key) {
+        Validate.notNull(key);
+        return findAllMoreSpecific(key, true);
+    }
+
+    private List<V> findAllMoreSpecific(final Ipv6Resource key, final boolean includeExact) {
+        final Index<V> index = compactedIndex();
+        final Bounds bounds = new Bounds(key);
+        final int position = index.indexOf(bounds);
+
+        int i = position >= 0 ? position : -position - 1;
+        if (position >= 0 && !includeExact) {
+            i++;
+        }
+
+        final List<V> result = Lists.newArrayList();
+        for (; i < index.size && index.beginsBeforeOrAtEnd(i, bounds); i++) {
+            if (index.endsBeforeOrAtEnd(i, bounds)) {
+                addValues(result, index, i);
+            }
+        }
+
+        return result;
+    }
+
+    private List<V> valuesOf(final Index<V> index, final int i) {
+        if (i < 0) {
+            return Collections.emptyList();
+        }
+
+        final List<V> result = Lists.newArrayListWithExpectedSize(1);
+        addValues(result, index, i);
+        return result;
+    }
+
+    private List<V> ancestorsOf(final Index<V> index, final int i) {
+        if (i < 0) {
+            return Collections.emptyList();
+        }
+
+        final List<Integer> ancestors = Lists.newArrayList();
+        for (int ancestor = i; ancestor >= 0; ancestor = index.parent(ancestor)) {
+            ancestors.add(ancestor);
+        }
+
+        final List<V> result = Lists.newArrayListWithExpectedSize(ancestors.size());
+        for (int ancestor = ancestors.size() - 1; ancestor >= 0; ancestor--) {
+            addValues(result, index, ancestors.get(ancestor));
+        }
+
+        return result;
+    }
+
+    private void addValues(final List<V> result, final Index<V> index, final int i) {
+        final Ipv6Resource key = index.key(i);
+        for (int value = index.valueStart(i); value < index.valueEnd(i); value++) {
+            result.add(index.decode(valueCodec, key, index.values.get(value)));
+        }
+    }
+
+    // the value may be added since the last merge, or kept by the index
+    private V decodeCurrent(final Ipv6Resource key, final long value) {
+        final V addedValue = valueCodec.canDecode(value) ? null : addedValues.get(value);
+        return addedValue != null ? addedValue : index.decode(valueCodec, key, value);
+    }
+
+    private long[] currentValues(final Ipv6Resource key) {
+        final PendingEntry pendingEntry = CollectionHelper.uniqueResult(added.findExact(key));
+        if (pendingEntry != null) {
+            return pendingEntry.values;
+        }
+
+        if (!removed.contains(key)) {
+            final int i = index.indexOf(new Bounds(key));
+            if (i >= 0) {
+                final long[] result = new long[index.valueEnd(i) - index.valueStart(i)];
+                for (int value = 0; value < result.length; value++) {
+                    result[value] = index.values.get(index.valueStart(i) + value);
+                }
+                return result;
+            }
+        }
+
+        return new long[0];
+    }
+
+    private Index<V> compactedIndex() {
+        if (modified) {
+            synchronized (this) {
+                if (modified) {
+                    index = index.merge(added.findExactAndAllMoreSpecific(Ipv6Resource.MAX_RANGE), removed, addedValues, valueCodec);
+                    added = new NestedIntervalMap<>();
+                    removed = Sets.newHashSet();
+                    addedValues = Maps.newHashMap();
+                    modified = false;
+                }
+            }
+        }
+
+        return index;
+    }
+
+    private static final class PendingEntry {
+        final Ipv6Resource key;
+        final long[] values;
+
+        PendingEntry(final Ipv6Resource key, final long[] values) {
+            this.key = key;
+            this.values = values;
+        }
+    }
+
+    /**
+     * Bounds of an interval with the sign bit flipped, so they can be compared as signed <code>long</code>s.
+     */
+    private static final class Bounds {
+        final long beginMsb;
+        final long beginLsb;
+        final long endMsb;
+        final long endLsb;
+
+        Bounds(final Ipv6Resource key) {
+            this(key.beginMsb() ^ Long.MIN_VALUE, key.beginLsb() ^ Long.MIN_VALUE, key.endMsb() ^ Long.MIN_VALUE, key.endLsb() ^ Long.MIN_VALUE);
+        }
+
+        Bounds(final long beginMsb, final long beginLsb, final long endMsb, final long endLsb) {
+            this.beginMsb = beginMsb;
+            this.beginLsb = beginLsb;
+            this.endMsb = endMsb;
+            this.endLsb = endLsb;
+        }
+
+        Bounds singletonAtBegin() {
+            return new Bounds(beginMsb, beginLsb, beginMsb, beginLsb);
+        }
+
+        Bounds singletonAtEnd() {
+            return new Bounds(endMsb, endLsb, endMsb, endLsb);
+        }
+    }
+
+    private static int compare(final long aMsb, final long aLsb, final long bMsb, final long bLsb) {
+        if (aMsb != bMsb) {
+            return aMsb < bMsb ? -1 : 1;
+        }
+
+        if (aLsb != bLsb) {
+            return aLsb < bLsb ? -1 : 1;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Immutable, sorted buffers of entries. Per entry, <code>bounds</code> holds 4 longs (begin msb and lsb, end
+     * msb and lsb) and <code>links</code> holds 3 ints (parent, subtree end and start of its values). Values the codec
+     * can not decode are kept by their encoded value in <code>undecodableValues</code>, which only holds the values
+     * of the index, so values removed from the map are dropped by the next merge.
+     * <p/>
+     * The buffers are on the heap: every merge allocates new buffers, as copies of the map still read the previous
+     * ones, and direct buffers would only be freed by the garbage collector.
+     */
+    private static final class Index<V> {
+        private static final int BOUNDS_SIZE = 4;
+        private static final int LINKS_SIZE = 3;
+
+        final LongBuffer bounds;
+        final IntBuffer links;
+        final LongBuffer values;
+        final Map<Long, V> undecodableValues;
+        final int size;
+
+        Index(final int size, final int nrValues, final Map<Long, V> undecodableValues) {
+            this.size = size;
+            this.bounds = LongBuffer.allocate(size * BOUNDS_SIZE);
+            this.links = IntBuffer.allocate(size * LINKS_SIZE);
+            this.values = LongBuffer.allocate(nrValues);
+            this.undecodableValues = undecodableValues;
+        }
+
+        long beginMsb(final int i) {
+            return bounds.get(i * BOUNDS_SIZE);
+        }
+
+        long beginLsb(final int i) {
+            return bounds.get(i * BOUNDS_SIZE + 1);
+        }
+
+        long endMsb(final int i) {
+            return bounds.get(i * BOUNDS_SIZE + 2);
+        }
+
+        long endLsb(final int i) {
+            return bounds.get(i * BOUNDS_SIZE + 3);
+        }
+
+        int parent(final int i) {
+            return links.get(i * LINKS_SIZE);
+        }
+
+        int subtreeEnd(final int i) {
+            return links.get(i * LINKS_SIZE + 1);
+        }
+
+        int valueStart(final int i) {
+            return links.get(i * LINKS_SIZE + 2);
+        }
+
+        int valueEnd(final int i) {
+            return i + 1 < size ? valueStart(i + 1) : values.limit();
+        }
+
+        V decode(final ValueCodec<V> valueCodec, final Ipv6Resource key, final long value) {
+            return valueCodec.canDecode(value) ? valueCodec.decode(key, value) : undecodableValues.get(value);
+        }
+
+        Ipv6Resource key(final int i) {
+            return Ipv6Resource.fromLongs(
+                    beginMsb(i) ^ Long.MIN_VALUE,
+                    beginLsb(i) ^ Long.MIN_VALUE,
+                    endMsb(i) ^ Long.MIN_VALUE,
+                    endLsb(i) ^ Long.MIN_VALUE);
+        }
+
+        boolean contains(final int i, final Bounds that) {
+            return compare(beginMsb(i), beginLsb(i), that.beginMsb, that.beginLsb) <= 0
+                    && compare(endMsb(i), endLsb(i), that.endMsb, that.endLsb) >= 0;
+        }
+
+        boolean isEqual(final int i, final Bounds that) {
+            return beginMsb(i) == that.beginMsb && beginLsb(i) == that.beginLsb && endMsb(i) == that.endMsb && endLsb(i) == that.endLsb;
+        }
+
+        boolean beginsBeforeOrAtEnd(final int i, final Bounds that) {
+            return compare(beginMsb(i), beginLsb(i), that.endMsb, that.endLsb) <= 0;
+        }
+
+        boolean endsBeforeOrAtEnd(final int i, final Bounds that) {
+            return compare(endMsb(i), endLsb(i), that.endMsb, that.endLsb) <= 0;
+        }
+
+        /**
+         * Order by begin ascending, end descending.
+         */
+        int compareTo(final int i, final Bounds that) {
+            final int cmp = compare(beginMsb(i), beginLsb(i), that.beginMsb, that.beginLsb);
+            if (cmp != 0) {
+                return cmp;
+            }
+
+            return compare(that.endMsb, that.endLsb, endMsb(i), endLsb(i));
+        }
+
+        /**
+         * @return the index of the entry, or <code>(-(insertion point) - 1)</code> if not found
+         */
+        int indexOf(final Bounds bounds) {
+            int low = 0;
+            int high = size - 1;
+
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                final int cmp = compareTo(mid, bounds);
+
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+
+            return -(low + 1);
+        }
+
+        int findExactOrFirstLessSpecific(final Bounds bounds) {
+            final int position = indexOf(bounds);
+            int i = position >= 0 ? position : -position - 2;
+            while (i >= 0 && !contains(i, bounds)) {
+                i = parent(i);
+            }
+
+            return i;
+        }
+
+        int findFirstLessSpecific(final Bounds bounds) {
+            final int i = findExactOrFirstLessSpecific(bounds);
+            return i >= 0 && isEqual(i, bounds) ? parent(i) : i;
+        }
+
+        List<Ipv6Resource> findIntersecting(final Bounds bounds, final Set<Ipv6Resource> ignored) {
+            List<Ipv6Resource> result = Collections.emptyList();
+            for (int i = findExactOrFirstLessSpecific(bounds.singletonAtBegin()); i >= 0; i = parent(i)) {
+                if (compare(beginMsb(i), beginLsb(i), bounds.beginMsb, bounds.beginLsb) < 0
+                        && compare(endMsb(i), endLsb(i), bounds.endMsb, bounds.endLsb) < 0
+                        && !ignored.contains(key(i))) {
+                    result = Lists.newArrayList(result);
+                    result.add(key(i));
+                }
+            }
+
+            for (int i = findExactOrFirstLessSpecific(bounds.singletonAtEnd()); i >= 0; i = parent(i)) {
+                if (compare(beginMsb(i), beginLsb(i), bounds.beginMsb, bounds.beginLsb) > 0
+                        && compare(endMsb(i), endLsb(i), bounds.endMsb, bounds.endLsb) > 0
+                        && !ignored.contains(key(i))) {
+                    result = Lists.newArrayList(result);
+                    result.add(key(i));
+                }
+            }
+
+            return result;
+        }
+
+        /**
+         * @param additions entries to add (or replace), in pre-order
+         * @param removals  keys to remove
+         * @param addedValues values added that the codec can not decode, by encoded value
+         * @return a new index with the modifications applied
+         */
+        Index<V> merge(final List<PendingEntry> additions, final Set<Ipv6Resource> removals, final Map<Long, V> addedValues, final ValueCodec<V> valueCodec) {
+            final List<Ipv6Resource> sortedRemovals = Lists.newArrayList(removals);
+            Collections.sort(sortedRemovals);
+
+            // first pass determines which entries end up in the result, second pass copies them
+            final boolean[] keep = new boolean[size];
+            int nrEntries = additions.size();
+            int nrValues = 0;
+            for (final PendingEntry addition : additions) {
+                nrValues += addition.values.length;
+            }
+
+            int added = 0;
+            int removal = 0;
+            for (int i = 0; i < size; i++) {
+                while (added < additions.size() && compareTo(i, new Bounds(additions.get(added).key)) > 0) {
+                    added++;
+                }
+
+                while (removal < sortedRemovals.size() && compareTo(i, new Bounds(sortedRemovals.get(removal))) > 0) {
+                    removal++;
+                }
+
+                keep[i] = !(added < additions.size() && isEqual(i, new Bounds(additions.get(added).key)))
+                        && !(removal < sortedRemovals.size() && isEqual(i, new Bounds(sortedRemovals.get(removal))));
+
+                if (keep[i]) {
+                    nrEntries++;
+                    nrValues += valueEnd(i) - valueStart(i);
+                }
+            }
+
+            final Map<Long, V> resultValues = Maps.newHashMap();
+            final Index<V> result = new Index<>(nrEntries, nrValues, resultValues);
+
+            int i = 0;
+            added = 0;
+            while (i < size || added < additions.size()) {
+                if (i < size && !keep[i]) {
+                    i++;
+                    continue;
+                }
+
+                final boolean takeExisting = added == additions.size() || (i < size && compareTo(i, new Bounds(additions.get(added).key)) < 0);
+                if (takeExisting) {
+                    result.bounds.put(beginMsb(i)).put(beginLsb(i)).put(endMsb(i)).put(endLsb(i));
+                    result.links.put(0).put(0).put(result.values.position());
+                    for (int value = valueStart(i); value < valueEnd(i); value++) {
+                        final long encoded = values.get(value);
+                        if (!valueCodec.canDecode(encoded)) {
+                            resultValues.put(encoded, undecodableValues.get(encoded));
+                        }
+                        result.values.put(encoded);
+                    }
+                    i++;
+                } else {
+                    final PendingEntry addition = additions.get(added);
+                    final Bounds bounds = new Bounds(addition.key);
+                    result.bounds.put(bounds.beginMsb).put(bounds.beginLsb).put(bounds.endMsb).put(bounds.endLsb);
+                    result.links.put(0).put(0).put(result.values.position());
+                    for (final long encoded : addition.values) {
+                        if (!valueCodec.canDecode(encoded)) {
+                            final V addedValue = addedValues.get(encoded);
+                            resultValues.put(encoded, addedValue != null ? addedValue : undecodableValues.get(encoded));
+                        }
+                    }
+                    result.values.put(addition.values);
+                    added++;
+                }
+            }
+
+            result.bounds.flip();
+            result.links.flip();
+            result.values.flip();
+            result.link();
+            return result;
+        }
+
+        private void link() {
+            final int[] stack = new int[size];
+            int depth = 0;
+            for (int i = 0; i < size; i++) {
+                while (depth > 0 && compare(endMsb(stack[depth - 1]), endLsb(stack[depth - 1]), beginMsb(i), beginLsb(i)) < 0) {
+                    links.put(stack[--depth] * LINKS_SIZE + 1, i);
+                }
+
+                links.put(i * LINKS_SIZE, depth > 0 ? stack[depth - 1] : -1);
+                stack[depth++] = i;
+            }
+
+            while (depth > 0) {
+                links.put(stack[--depth] * LINKS_SIZE + 1, size);
+            }
+        }
+    }
+}
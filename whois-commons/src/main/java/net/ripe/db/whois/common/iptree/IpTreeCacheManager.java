@@ -1,8 +1,11 @@
 package net.ripe.db.whois.common.iptree;
 
+import com.google.common.base.Splitter;
 import com.google.common.collect.Maps;
+import net.ripe.db.whois.common.dao.jdbc.JdbcStreamingHelper;
 import net.ripe.db.whois.common.dao.jdbc.domain.ObjectTypeIds;
 import net.ripe.db.whois.common.domain.CIString;
+import net.ripe.db.whois.common.domain.IpInterval;
 import net.ripe.db.whois.common.domain.Ipv4Resource;
 import net.ripe.db.whois.common.domain.Ipv6Resource;
 import net.ripe.db.whois.common.domain.attrs.Domain;
@@ -13,35 +16,122 @@ import net.ripe.db.whois.common.source.SourceConfiguration;
 import net.ripe.db.whois.common.source.SourceContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.apache.commons.lang.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.Semaphore;
 
+import static net.ripe.db.whois.common.domain.CIString.ciSet;
+import static net.ripe.db.whois.common.domain.CIString.ciString;
+
 @Component
 public class IpTreeCacheManager {
     private static final Logger LOGGER = LoggerFactory.getLogger(IpTreeCacheManager.class);
 
+    private static final Splitter COMMA_SPLITTER = Splitter.on(',').omitEmptyStrings().trimResults();
+
     private final SourceContext sourceContext;
+    private final IpTreeUpdateTransport ipTreeUpdateTransport;
+
+    private Set<CIString> compactIpv4Sources = Collections.emptySet();
+    private Set<CIString> compactIpv6Sources = Collections.emptySet();
+    private File snapshotDirectory;
 
     @Autowired
-    public IpTreeCacheManager(final SourceContext sourceContext) {
+    public IpTreeCacheManager(final SourceContext sourceContext, final IpTreeUpdateTransport ipTreeUpdateTransport) {
         this.sourceContext = sourceContext;
+        this.ipTreeUpdateTransport = ipTreeUpdateTransport;
     }
 
-    private static class IpTreeUpdate {
-        private final ObjectType objectType;
-        private final String pkey;
-        private final int objectId;
-        private final Operation operation;
+    @PreDestroy
+    void shutdown() {
+        rebuildPool.shutdownNow();
+    }
+
+    @PostConstruct
+    void subscribe() {
+        ipTreeUpdateTransport.addListener(new IpTreeUpdateTransport.Listener() {
+            @Override
+            public void onDelta(final IpTreeDelta delta) {
+                apply(delta);
+            }
+        });
+    }
+
+    /**
+     * @param compactIpv4Sources comma separated list of sources for which the IPv4 inetnum and domain trees are kept
+     *                           in a {@link CompactIpv4IntervalMap}.
+     */
+    @Value("${iptree.compact.ipv4.sources:}")
+    void setCompactIpv4Sources(final String compactIpv4Sources) {
+        this.compactIpv4Sources = ciSet(COMMA_SPLITTER.split(compactIpv4Sources));
+        if (!this.compactIpv4Sources.isEmpty()) {
+            LOGGER.info("Using compact IPv4 trees for sources: {}", this.compactIpv4Sources);
+        }
+    }
+
+    /**
+     * @param compactIpv6Sources comma separated list of sources for which the IPv6 inet6num, route6 and domain trees
+     *                           are kept in a {@link CompactIpv6IntervalMap}.
+     */
+    @Value("${iptree.compact.ipv6.sources:}")
+    void setCompactIpv6Sources(final String compactIpv6Sources) {
+        this.compactIpv6Sources = ciSet(COMMA_SPLITTER.split(compactIpv6Sources));
+        if (!this.compactIpv6Sources.isEmpty()) {
+            LOGGER.info("Using compact IPv6 trees for sources: {}", this.compactIpv6Sources);
+        }
+    }
+
+    /**
+     * @param snapshotDirectory directory in which a snapshot of the trees of every source is kept, to speed up startup.
+     *                          Snapshots are disabled if empty.
+     */
+    @Value("${dir.iptree.snapshot:}")
+    void setSnapshotDirectory(final String snapshotDirectory) {
+        if (StringUtils.isBlank(snapshotDirectory)) {
+            this.snapshotDirectory = null;
+            return;
+        }
+
+        this.snapshotDirectory = new File(snapshotDirectory);
+        if (!this.snapshotDirectory.exists() && !this.snapshotDirectory.mkdirs()) {
+            LOGGER.warn("Unable to create IP tree snapshot directory: {}", this.snapshotDirectory.getAbsolutePath());
+        }
 
-        private IpTreeUpdate(final ObjectType objectType, final String pkey, final int objectId, final Operation operation) {
+        LOGGER.info("Using IP tree snapshots in: {}", this.snapshotDirectory.getAbsolutePath());
+    }
+
+    static class IpTreeUpdate implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final ObjectType objectType;
+        final String pkey;
+        final int objectId;
+        final Operation operation;
+
+        IpTreeUpdate(final ObjectType objectType, final String pkey, final int objectId, final Operation operation) {
             this.objectType = objectType;
             this.pkey = pkey;
             this.objectId = objectId;
@@ -54,36 +144,185 @@ public class IpTreeCacheManager {
         }
     }
 
+    /**
+     * Selects the {@link IntervalMap} implementations used for the trees of a source.
+     */
+    static class TreeLayout {
+        final boolean compactIpv4;
+        final boolean compactIpv6;
+
+        TreeLayout(final boolean compactIpv4, final boolean compactIpv6) {
+            this.compactIpv4 = compactIpv4;
+            this.compactIpv6 = compactIpv6;
+        }
+
+        IntervalMap<Ipv4Resource, Ipv4Entry> createIpv4IntervalMap() {
+            return compactIpv4 ? new CompactIpv4IntervalMap() : new NestedIntervalMap<Ipv4Resource, Ipv4Entry>();
+        }
+
+        IntervalMap<Ipv6Resource, Ipv6Entry> createIpv6IntervalMap() {
+            return compactIpv6 ? CompactIpv6IntervalMap.forEntries() : new NestedIntervalMap<Ipv6Resource, Ipv6Entry>();
+        }
+
+        IntervalMap<Ipv6Resource, Ipv6RouteEntry> createIpv6RouteIntervalMap() {
+            return compactIpv6 ? CompactIpv6IntervalMap.forRouteEntries() : new MultiValueIntervalMap<Ipv6Resource, Ipv6RouteEntry>();
+        }
+    }
+
     private static class CacheEntry {
         final SourceConfiguration sourceConfiguration;
+        final TreeLayout treeLayout;
         final Semaphore updateLock = new Semaphore(1);
-        NestedIntervalMaps nestedIntervalMaps = new NestedIntervalMaps();
+        volatile NestedIntervalMaps nestedIntervalMaps;
+        volatile long snapshotSerial = Long.MIN_VALUE;
+        long lastPublishedSerial = Long.MAX_VALUE;
 
-        private CacheEntry(final SourceConfiguration sourceConfiguration) {
+        private CacheEntry(final SourceConfiguration sourceConfiguration, final TreeLayout treeLayout) {
             this.sourceConfiguration = sourceConfiguration;
+            this.treeLayout = treeLayout;
+            this.nestedIntervalMaps = new NestedIntervalMaps(treeLayout);
         }
     }
 
+    /**
+     * Snapshot of the IP trees of a source.
+     * <p/>
+     * A published snapshot is never modified, so readers don't need any locking. Updates are applied to a copy
+     * (see {@link #update(List, long)}) which replaces the snapshot in the {@link CacheEntry} once complete.
+     */
     static class NestedIntervalMaps {
-        final IntervalMap<Ipv4Resource, Ipv4Entry> ipv4TreeCache = SynchronizedIntervalMap.synchronizedMap(new NestedIntervalMap<Ipv4Resource, Ipv4Entry>());
-        final IntervalMap<Ipv6Resource, Ipv6Entry> ipv6TreeCache = SynchronizedIntervalMap.synchronizedMap(new NestedIntervalMap<Ipv6Resource, Ipv6Entry>());
-        final IntervalMap<Ipv4Resource, Ipv4RouteEntry> ipv4RouteTreeCache = SynchronizedIntervalMap.synchronizedMap(new MultiValueIntervalMap<Ipv4Resource, Ipv4RouteEntry>());
-        final IntervalMap<Ipv6Resource, Ipv6RouteEntry> ipv6RouteTreeCache = SynchronizedIntervalMap.synchronizedMap(new MultiValueIntervalMap<Ipv6Resource, Ipv6RouteEntry>());
-        final IntervalMap<Ipv4Resource, Ipv4Entry> ipv4DomainTreeCache = SynchronizedIntervalMap.synchronizedMap(new NestedIntervalMap<Ipv4Resource, Ipv4Entry>());
-        final IntervalMap<Ipv6Resource, Ipv6Entry> ipv6DomainTreeCache = SynchronizedIntervalMap.synchronizedMap(new NestedIntervalMap<Ipv6Resource, Ipv6Entry>());
+        // modifications kept in the overlay of a tree before they are merged into a copy of the tree
+        static final int MAX_OVERLAY_MODIFICATIONS = 1000;
+
+        final IntervalMap<Ipv4Resource, Ipv4Entry> ipv4TreeCache;
+        final IntervalMap<Ipv6Resource, Ipv6Entry> ipv6TreeCache;
+        final IntervalMap<Ipv4Resource, Ipv4RouteEntry> ipv4RouteTreeCache;
+        final IntervalMap<Ipv6Resource, Ipv6RouteEntry> ipv6RouteTreeCache;
+        final IntervalMap<Ipv4Resource, Ipv4Entry> ipv4DomainTreeCache;
+        final IntervalMap<Ipv6Resource, Ipv6Entry> ipv6DomainTreeCache;
 
-        volatile long lastSerial = Long.MIN_VALUE;
+        final long lastSerial;
+
+        NestedIntervalMaps(final TreeLayout treeLayout) {
+            this(treeLayout, Long.MIN_VALUE);
+        }
+
+        NestedIntervalMaps(final TreeLayout treeLayout, final long lastSerial) {
+            this(treeLayout.createIpv4IntervalMap(),
+                    treeLayout.createIpv6IntervalMap(),
+                    new MultiValueIntervalMap<Ipv4Resource, Ipv4RouteEntry>(),
+                    treeLayout.createIpv6RouteIntervalMap(),
+                    treeLayout.createIpv4IntervalMap(),
+                    treeLayout.createIpv6IntervalMap(),
+                    lastSerial);
+        }
+
+        private NestedIntervalMaps(
+                final IntervalMap<Ipv4Resource, Ipv4Entry> ipv4TreeCache,
+                final IntervalMap<Ipv6Resource, Ipv6Entry> ipv6TreeCache,
+                final IntervalMap<Ipv4Resource, Ipv4RouteEntry> ipv4RouteTreeCache,
+                final IntervalMap<Ipv6Resource, Ipv6RouteEntry> ipv6RouteTreeCache,
+                final IntervalMap<Ipv4Resource, Ipv4Entry> ipv4DomainTreeCache,
+                final IntervalMap<Ipv6Resource, Ipv6Entry> ipv6DomainTreeCache,
+                final long lastSerial) {
+            this.ipv4TreeCache = ipv4TreeCache;
+            this.ipv6TreeCache = ipv6TreeCache;
+            this.ipv4RouteTreeCache = ipv4RouteTreeCache;
+            this.ipv6RouteTreeCache = ipv6RouteTreeCache;
+            this.ipv4DomainTreeCache = ipv4DomainTreeCache;
+            this.ipv6DomainTreeCache = ipv6DomainTreeCache;
+            this.lastSerial = lastSerial;
+        }
+
+        /**
+         * Creates a new snapshot with the updates applied. The trees affected by the updates get a copy of their
+         * overlay (see {@link OverlayIntervalMap}), which shares the tree itself with this snapshot. The others are
+         * shared as they are. Only once an overlay holds {@link #MAX_OVERLAY_MODIFICATIONS} modifications, it is
+         * merged into a copy of its tree.
+         */
+        NestedIntervalMaps update(final List<IpTreeUpdate> updates, final long lastSerial) {
+            final Set<ObjectType> updatedTypes = EnumSet.noneOf(ObjectType.class);
+            for (final IpTreeUpdate ipTreeUpdate : updates) {
+                updatedTypes.add(ipTreeUpdate.objectType);
+            }
+
+            final NestedIntervalMaps result = new NestedIntervalMaps(
+                    updatedTypes.contains(ObjectType.INETNUM) ? overlayOf(ipv4TreeCache, Ipv4Resource.MAX_RANGE, false) : ipv4TreeCache,
+                    updatedTypes.contains(ObjectType.INET6NUM) ? overlayOf(ipv6TreeCache, Ipv6Resource.MAX_RANGE, false) : ipv6TreeCache,
+                    updatedTypes.contains(ObjectType.ROUTE) ? overlayOf(ipv4RouteTreeCache, Ipv4Resource.MAX_RANGE, true) : ipv4RouteTreeCache,
+                    updatedTypes.contains(ObjectType.ROUTE6) ? overlayOf(ipv6RouteTreeCache, Ipv6Resource.MAX_RANGE, true) : ipv6RouteTreeCache,
+                    updatedTypes.contains(ObjectType.DOMAIN) ? overlayOf(ipv4DomainTreeCache, Ipv4Resource.MAX_RANGE, false) : ipv4DomainTreeCache,
+                    updatedTypes.contains(ObjectType.DOMAIN) ? overlayOf(ipv6DomainTreeCache, Ipv6Resource.MAX_RANGE, false) : ipv6DomainTreeCache,
+                    lastSerial);
 
-        void update(final Iterable<IpTreeUpdate> updates, final long lastSerial) {
             for (final IpTreeUpdate ipTreeUpdate : updates) {
                 try {
-                    update(ipTreeUpdate);
+                    result.update(ipTreeUpdate);
                 } catch (RuntimeException e) {
                     LOGGER.warn("Unable to update object {}: {}", ipTreeUpdate, e.getMessage());
                 }
             }
 
-            this.lastSerial = lastSerial;
+            return new NestedIntervalMaps(
+                    mergeIfFull(result.ipv4TreeCache),
+                    mergeIfFull(result.ipv6TreeCache),
+                    mergeIfFull(result.ipv4RouteTreeCache),
+                    mergeIfFull(result.ipv6RouteTreeCache),
+                    mergeIfFull(result.ipv4DomainTreeCache),
+                    mergeIfFull(result.ipv6DomainTreeCache),
+                    lastSerial);
+        }
+
+        List<IntervalMap<?, ?>> getIntervalMaps() {
+            return Arrays.<IntervalMap<?, ?>>asList(ipv4TreeCache, ipv6TreeCache, ipv4RouteTreeCache, ipv6RouteTreeCache, ipv4DomainTreeCache, ipv6DomainTreeCache);
+        }
+
+        private static <K extends IpInterval<K>, V extends IpEntry<K>> OverlayIntervalMap<K, V> overlayOf(final IntervalMap<K, V> intervalMap, final K maxRange, final boolean multiValue) {
+            if (intervalMap instanceof OverlayIntervalMap) {
+                return new OverlayIntervalMap<>((OverlayIntervalMap<K, V>) intervalMap);
+            }
+
+            return new OverlayIntervalMap<>(intervalMap, maxRange, multiValue);
+        }
+
+        private static <K extends IpInterval<K>, V extends IpEntry<K>> IntervalMap<K, V> mergeIfFull(final IntervalMap<K, V> intervalMap) {
+            if (!(intervalMap instanceof OverlayIntervalMap)) {
+                return intervalMap;
+            }
+
+            final OverlayIntervalMap<K, V> overlay = (OverlayIntervalMap<K, V>) intervalMap;
+            if (overlay.getModifications() < MAX_OVERLAY_MODIFICATIONS) {
+                return overlay;
+            }
+
+            final IntervalMap<K, V> result = copyOf(overlay.getBase());
+            overlay.applyTo(result);
+            compact(result);
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <K extends Interval<K>, V> IntervalMap<K, V> copyOf(final IntervalMap<K, V> intervalMap) {
+            if (intervalMap instanceof NestedIntervalMap) {
+                return new NestedIntervalMap<>((NestedIntervalMap<K, V>) intervalMap);
+            } else if (intervalMap instanceof MultiValueIntervalMap) {
+                return new MultiValueIntervalMap<>((MultiValueIntervalMap<K, V>) intervalMap);
+            } else if (intervalMap instanceof CompactIpv4IntervalMap) {
+                return (IntervalMap<K, V>) new CompactIpv4IntervalMap((CompactIpv4IntervalMap) intervalMap);
+            } else if (intervalMap instanceof CompactIpv6IntervalMap) {
+                return (IntervalMap<K, V>) new CompactIpv6IntervalMap<>((CompactIpv6IntervalMap<?>) intervalMap);
+            }
+
+            throw new IllegalArgumentException(String.format("Unable to copy %s", intervalMap.getClass()));
+        }
+
+        // merge pending modifications before publishing, instead of in the first lookup
+        static void compact(final IntervalMap<?, ?> intervalMap) {
+            if (intervalMap instanceof CompactIpv4IntervalMap) {
+                ((CompactIpv4IntervalMap) intervalMap).compact();
+            } else if (intervalMap instanceof CompactIpv6IntervalMap) {
+                ((CompactIpv6IntervalMap) intervalMap).compact();
+            }
         }
 
         private void update(final IpTreeUpdate ipTreeUpdate) {
@@ -160,18 +399,100 @@ public class IpTreeCacheManager {
         }
     }
 
-    private final Map<CIString, CacheEntry> cache = Maps.newHashMap();
+    private final Map<CIString, CacheEntry> cache = Maps.newConcurrentMap();
+    private final ForkJoinPool rebuildPool = new ForkJoinPool();
+
+    /**
+     * Loads the trees from the snapshot if available and catches up with the serials added since, otherwise
+     * rebuilds the trees from the database.
+     */
+    void init(final SourceConfiguration sourceConfiguration) {
+        final CIString source = sourceConfiguration.getSource().getName();
+        final CacheEntry cacheEntry = createCacheEntry(sourceConfiguration);
+
+        final NestedIntervalMaps snapshot = readSnapshot(source, cacheEntry.treeLayout);
+        if (snapshot == null) {
+            rebuild(sourceConfiguration);
+            return;
+        }
+
+        cacheEntry.nestedIntervalMaps = snapshot;
+        cacheEntry.snapshotSerial = snapshot.lastSerial;
+        LOGGER.info("Loaded IP trees for {} from snapshot at serial {}", source, snapshot.lastSerial);
+
+        update(sourceConfiguration.getJdbcTemplate(), cacheEntry);
+        cache.put(source, cacheEntry);
+    }
 
     void rebuild(final SourceConfiguration sourceConfiguration) {
+        final CIString source = sourceConfiguration.getSource().getName();
+        final CacheEntry cacheEntry = createCacheEntry(sourceConfiguration);
+        rebuild(sourceConfiguration.getJdbcTemplate(), cacheEntry);
+        cache.put(source, cacheEntry);
+
+        writeSnapshot(source, cacheEntry);
+    }
+
+    private CacheEntry createCacheEntry(final SourceConfiguration sourceConfiguration) {
         final CIString source = sourceConfiguration.getSource().getName();
         final CacheEntry existingEntry = cache.get(source);
         if (existingEntry != null && !sourceConfiguration.equals(existingEntry.sourceConfiguration)) {
             throw new IllegalArgumentException(String.format("Cannot rebuild %s using different source configuration: %s", existingEntry.sourceConfiguration, sourceConfiguration));
         }
 
-        final CacheEntry cacheEntry = new CacheEntry(sourceConfiguration);
-        rebuild(sourceConfiguration.getJdbcTemplate(), cacheEntry);
-        cache.put(source, cacheEntry);
+        final TreeLayout treeLayout = new TreeLayout(compactIpv4Sources.contains(source), compactIpv6Sources.contains(source));
+        return new CacheEntry(sourceConfiguration, treeLayout);
+    }
+
+    /**
+     * Writes a snapshot of every source of which the trees changed since the previous snapshot.
+     */
+    void writeSnapshots() {
+        for (final Map.Entry<CIString, CacheEntry> entry : cache.entrySet()) {
+            writeSnapshot(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void writeSnapshot(final CIString source, final CacheEntry cacheEntry) {
+        if (snapshotDirectory == null) {
+            return;
+        }
+
+        final NestedIntervalMaps nestedIntervalMaps = cacheEntry.nestedIntervalMaps;
+        if (nestedIntervalMaps.lastSerial == cacheEntry.snapshotSerial) {
+            return;
+        }
+
+        try {
+            IpTreeSnapshot.write(getSnapshotFile(source), source, nestedIntervalMaps);
+            cacheEntry.snapshotSerial = nestedIntervalMaps.lastSerial;
+            LOGGER.debug("Wrote IP tree snapshot for {} at serial {}", source, nestedIntervalMaps.lastSerial);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to write IP tree snapshot for {}: {}", source, e.getMessage());
+        }
+    }
+
+    private NestedIntervalMaps readSnapshot(final CIString source, final TreeLayout treeLayout) {
+        if (snapshotDirectory == null) {
+            return null;
+        }
+
+        final File snapshotFile = getSnapshotFile(source);
+        if (!snapshotFile.exists()) {
+            LOGGER.info("No IP tree snapshot for {}, rebuilding", source);
+            return null;
+        }
+
+        try {
+            return IpTreeSnapshot.read(snapshotFile, source, treeLayout);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read IP tree snapshot for {}, rebuilding: {}", source, e.getMessage());
+            return null;
+        }
+    }
+
+    private File getSnapshotFile(final CIString source) {
+        return new File(snapshotDirectory, String.format("%s.iptree", source.toLowerCase()));
     }
 
     public void update(final SourceConfiguration sourceConfiguration) {
@@ -201,48 +522,104 @@ public class IpTreeCacheManager {
             LOGGER.warn("Database went away; serial in trees: {}; serial in DB: {}", fromExclusive, toInclusive);
             rebuild(jdbcTemplate, cacheEntry);
         } else {
-            final List<IpTreeUpdate> ipTreeUpdates = jdbcTemplate.query("" +
-                    "SELECT last.object_type, last.pkey, last.object_id, serials.operation " +
-                    "FROM serials " +
-                    "LEFT JOIN last ON last.object_id = serials.object_id " +
-                    "WHERE serials.serial_id > ? " +
-                    "AND serials.serial_id <= ? " +
-                    "AND last.object_type in (?, ?, ?, ?, ?) " +
-                    "AND ((serials.operation = 1 AND serials.sequence_id = 1) OR serials.operation = 2) " +
-                    "ORDER BY serials.serial_id ASC",
-                    new RowMapper<IpTreeUpdate>() {
-                        @Override
-                        public IpTreeUpdate mapRow(final ResultSet rs, final int rowNum) throws SQLException {
-                            return new IpTreeUpdate(
-                                    ObjectTypeIds.getType(rs.getInt(1)),
-                                    rs.getString(2),
-                                    rs.getInt(3),
-                                    Operation.getByCode(rs.getInt(4))
-                            );
-                        }
-                    },
-                    fromExclusive, toInclusive,
-                    ObjectTypeIds.getId(ObjectType.INETNUM),
-                    ObjectTypeIds.getId(ObjectType.INET6NUM),
-                    ObjectTypeIds.getId(ObjectType.ROUTE),
-                    ObjectTypeIds.getId(ObjectType.ROUTE6),
-                    ObjectTypeIds.getId(ObjectType.DOMAIN));
+            final List<IpTreeUpdate> ipTreeUpdates = loadUpdates(jdbcTemplate, fromExclusive, toInclusive);
+            cacheEntry.nestedIntervalMaps = cacheEntry.nestedIntervalMaps.update(ipTreeUpdates, toInclusive);
+        }
+    }
 
-            cacheEntry.nestedIntervalMaps.update(ipTreeUpdates, toInclusive);
+    private List<IpTreeUpdate> loadUpdates(final JdbcTemplate jdbcTemplate, final long fromExclusive, final long toInclusive) {
+        return jdbcTemplate.query("" +
+                "SELECT last.object_type, last.pkey, last.object_id, serials.operation " +
+                "FROM serials " +
+                "LEFT JOIN last ON last.object_id = serials.object_id " +
+                "WHERE serials.serial_id > ? " +
+                "AND serials.serial_id <= ? " +
+                "AND last.object_type in (?, ?, ?, ?, ?) " +
+                "AND ((serials.operation = 1 AND serials.sequence_id = 1) OR serials.operation = 2) " +
+                "ORDER BY serials.serial_id ASC",
+                new RowMapper<IpTreeUpdate>() {
+                    @Override
+                    public IpTreeUpdate mapRow(final ResultSet rs, final int rowNum) throws SQLException {
+                        return new IpTreeUpdate(
+                                ObjectTypeIds.getType(rs.getInt(1)),
+                                rs.getString(2),
+                                rs.getInt(3),
+                                Operation.getByCode(rs.getInt(4))
+                        );
+                    }
+                },
+                fromExclusive, toInclusive,
+                ObjectTypeIds.getId(ObjectType.INETNUM),
+                ObjectTypeIds.getId(ObjectType.INET6NUM),
+                ObjectTypeIds.getId(ObjectType.ROUTE),
+                ObjectTypeIds.getId(ObjectType.ROUTE6),
+                ObjectTypeIds.getId(ObjectType.DOMAIN));
+    }
+
+    /**
+     * Brings the trees up to date with the database and publishes the changes since the previous publication, so
+     * other nodes don't have to wait for their next poll. Called by the node handling updates once updates are
+     * committed, see {@link IpTreeUpdater#requestPublication()}.
+     */
+    public void publish(final SourceConfiguration sourceConfiguration) {
+        final CIString source = sourceConfiguration.getSource().getName();
+        final CacheEntry cacheEntry = cache.get(source);
+        if (cacheEntry == null) {
+            throw new IllegalArgumentException(String.format("No cached ipTree for source: %s", source));
+        }
+
+        cacheEntry.updateLock.acquireUninterruptibly();
+        try {
+            final JdbcTemplate jdbcTemplate = sourceConfiguration.getJdbcTemplate();
+            final long lastSerial = cacheEntry.nestedIntervalMaps.lastSerial;
+            final long fromExclusive = Math.min(lastSerial, cacheEntry.lastPublishedSerial);
+            final long toInclusive = getLastSerial(jdbcTemplate);
+
+            if (toInclusive < lastSerial) {
+                update(jdbcTemplate, cacheEntry);
+            } else if (fromExclusive < toInclusive) {
+                final List<IpTreeUpdate> ipTreeUpdates = loadUpdates(jdbcTemplate, fromExclusive, toInclusive);
+                cacheEntry.nestedIntervalMaps = cacheEntry.nestedIntervalMaps.update(ipTreeUpdates, toInclusive);
+                cacheEntry.lastPublishedSerial = toInclusive;
+
+                ipTreeUpdateTransport.publish(new IpTreeDelta(source.toString(), fromExclusive, toInclusive, ipTreeUpdates));
+            }
+        } finally {
+            cacheEntry.updateLock.release();
         }
     }
 
-    Map<SourceConfiguration, Long> getLastSerials() {
-        final Map<SourceConfiguration, Long> lastSerials = Maps.newHashMap();
+    /**
+     * Applies a delta published by another node, if it covers the serial the trees are at. Otherwise the delta is
+     * ignored, and the trees are brought up to date by the next poll.
+     */
+    void apply(final IpTreeDelta delta) {
+        final CacheEntry cacheEntry = cache.get(ciString(delta.getSource()));
+        if (cacheEntry == null) {
+            return;
+        }
 
-        for (final CacheEntry cacheEntry : cache.values()) {
-            cacheEntry.updateLock.acquireUninterruptibly();
+        // don't wait here if other thread is already busy updating the tree
+        if (cacheEntry.updateLock.tryAcquire()) {
             try {
-                lastSerials.put(cacheEntry.sourceConfiguration, cacheEntry.nestedIntervalMaps.lastSerial);
+                final long lastSerial = cacheEntry.nestedIntervalMaps.lastSerial;
+                if (lastSerial < delta.getFromExclusive() || lastSerial >= delta.getToInclusive()) {
+                    LOGGER.debug("Ignoring {} (serial in trees: {})", delta, lastSerial);
+                } else {
+                    cacheEntry.nestedIntervalMaps = cacheEntry.nestedIntervalMaps.update(delta.getUpdates(), delta.getToInclusive());
+                }
             } finally {
                 cacheEntry.updateLock.release();
             }
         }
+    }
+
+    Map<SourceConfiguration, Long> getLastSerials() {
+        final Map<SourceConfiguration, Long> lastSerials = Maps.newHashMap();
+
+        for (final CacheEntry cacheEntry : cache.values()) {
+            lastSerials.put(cacheEntry.sourceConfiguration, cacheEntry.nestedIntervalMaps.lastSerial);
+        }
 
         return lastSerials;
     }
@@ -260,35 +637,176 @@ public class IpTreeCacheManager {
     }
 
     private void rebuild(final JdbcTemplate jdbcTemplate, final CacheEntry cacheEntry) {
-        final NestedIntervalMaps nestedIntervalMaps = new NestedIntervalMaps();
-
         final long toInclusive = getLastSerial(jdbcTemplate);
+        final NestedIntervalMaps nestedIntervalMaps = new NestedIntervalMaps(cacheEntry.treeLayout, toInclusive);
+
+        rebuildPool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(
+                        new RebuildTask(jdbcTemplate, ObjectType.INETNUM) {
+                            final TreeLoader<Ipv4Resource, Ipv4Entry> entries = new TreeLoader<>(nestedIntervalMaps.ipv4TreeCache);
+
+                            @Override
+                            void add(final String pkey, final int objectId) {
+                                entries.add(new Ipv4Entry(Ipv4Resource.parse(pkey), objectId));
+                            }
+
+                            @Override
+                            void load() {
+                                entries.load();
+                            }
+                        },
+                        new RebuildTask(jdbcTemplate, ObjectType.INET6NUM) {
+                            final TreeLoader<Ipv6Resource, Ipv6Entry> entries = new TreeLoader<>(nestedIntervalMaps.ipv6TreeCache);
+
+                            @Override
+                            void add(final String pkey, final int objectId) {
+                                entries.add(new Ipv6Entry(Ipv6Resource.parse(pkey), objectId));
+                            }
+
+                            @Override
+                            void load() {
+                                entries.load();
+                            }
+                        },
+                        new RebuildTask(jdbcTemplate, ObjectType.ROUTE) {
+                            final TreeLoader<Ipv4Resource, Ipv4RouteEntry> entries = new TreeLoader<>(nestedIntervalMaps.ipv4RouteTreeCache);
+
+                            @Override
+                            void add(final String pkey, final int objectId) {
+                                entries.add(Ipv4RouteEntry.parse(pkey, objectId));
+                            }
+
+                            @Override
+                            void load() {
+                                entries.load();
+                            }
+                        },
+                        new RebuildTask(jdbcTemplate, ObjectType.ROUTE6) {
+                            final TreeLoader<Ipv6Resource, Ipv6RouteEntry> entries = new TreeLoader<>(nestedIntervalMaps.ipv6RouteTreeCache);
+
+                            @Override
+                            void add(final String pkey, final int objectId) {
+                                entries.add(Ipv6RouteEntry.parse(pkey, objectId));
+                            }
+
+                            @Override
+                            void load() {
+                                entries.load();
+                            }
+                        },
+                        new RebuildTask(jdbcTemplate, ObjectType.DOMAIN) {
+                            final TreeLoader<Ipv4Resource, Ipv4Entry> ipv4Entries = new TreeLoader<>(nestedIntervalMaps.ipv4DomainTreeCache);
+                            final TreeLoader<Ipv6Resource, Ipv6Entry> ipv6Entries = new TreeLoader<>(nestedIntervalMaps.ipv6DomainTreeCache);
+
+                            @Override
+                            void add(final String pkey, final int objectId) {
+                                final Domain domain = Domain.parse(pkey);
+                                switch (domain.getType()) {
+                                    case INADDR:
+                                        ipv4Entries.add(new Ipv4Entry((Ipv4Resource) domain.getReverseIp(), objectId));
+                                        break;
+                                    case IP6:
+                                        ipv6Entries.add(new Ipv6Entry((Ipv6Resource) domain.getReverseIp(), objectId));
+                                        break;
+                                    default:
+                                        LOGGER.debug("Ignoring domain: {}", domain);
+                                        break;
+                                }
+                            }
+
+                            @Override
+                            void load() {
+                                invokeAll(
+                                        new RecursiveAction() {
+                                            @Override
+                                            protected void compute() {
+                                                ipv4Entries.load();
+                                            }
+                                        },
+                                        new RecursiveAction() {
+                                            @Override
+                                            protected void compute() {
+                                                ipv6Entries.load();
+                                            }
+                                        });
+                            }
+                        });
+            }
+        });
 
-        final List<IpTreeUpdate> ipTreeUpdates = jdbcTemplate.query("" +
-                "SELECT object_type, pkey, object_id " +
-                "FROM last " +
-                "WHERE object_type in (?, ?, ?, ?, ?) " +
-                "AND sequence_id != 0 ",
-                new RowMapper<IpTreeUpdate>() {
-                    @Override
-                    public IpTreeUpdate mapRow(final ResultSet rs, final int rowNum) throws SQLException {
-                        return new IpTreeUpdate(
-                                ObjectTypeIds.getType(rs.getInt(1)),
-                                rs.getString(2),
-                                rs.getInt(3),
-                                Operation.UPDATE
-                        );
-                    }
-                },
-                ObjectTypeIds.getId(ObjectType.INETNUM),
-                ObjectTypeIds.getId(ObjectType.INET6NUM),
-                ObjectTypeIds.getId(ObjectType.ROUTE),
-                ObjectTypeIds.getId(ObjectType.ROUTE6),
-                ObjectTypeIds.getId(ObjectType.DOMAIN));
+        cacheEntry.nestedIntervalMaps = nestedIntervalMaps;
+    }
 
-        nestedIntervalMaps.update(ipTreeUpdates, toInclusive);
+    /**
+     * Streams the primary keys of a single object type from the database and loads them into the tree(s) for that type.
+     * Each object type is loaded by a separate task, as the trees are independent.
+     */
+    private abstract static class RebuildTask extends RecursiveAction {
+        private final JdbcTemplate jdbcTemplate;
+        private final ObjectType objectType;
 
-        cacheEntry.nestedIntervalMaps = nestedIntervalMaps;
+        RebuildTask(final JdbcTemplate jdbcTemplate, final ObjectType objectType) {
+            this.jdbcTemplate = jdbcTemplate;
+            this.objectType = objectType;
+        }
+
+        @Override
+        protected void compute() {
+            JdbcStreamingHelper.executeStreaming(jdbcTemplate, "" +
+                    "SELECT pkey, object_id " +
+                    "FROM last " +
+                    "WHERE object_type = ? " +
+                    "AND sequence_id != 0 ",
+                    new PreparedStatementSetter() {
+                        @Override
+                        public void setValues(final PreparedStatement ps) throws SQLException {
+                            ps.setInt(1, ObjectTypeIds.getId(objectType));
+                        }
+                    },
+                    new RowCallbackHandler() {
+                        @Override
+                        public void processRow(final ResultSet rs) throws SQLException {
+                            final String pkey = rs.getString(1);
+                            try {
+                                add(pkey, rs.getInt(2));
+                            } catch (RuntimeException e) {
+                                LOGGER.warn("Unable to update object (objectType={}, pkey={}): {}", objectType, pkey, e.getMessage());
+                            }
+                        }
+                    });
+
+            load();
+        }
+
+        abstract void add(String pkey, int objectId);
+
+        abstract void load();
+    }
+
+    /**
+     * Puts the entries for a tree as they are streamed from the database, so they are never held in memory next to
+     * the tree, and compacts the tree once all entries are loaded.
+     */
+    private static class TreeLoader<K extends Interval<K>, V extends IpEntry<K>> {
+        private final IntervalMap<K, V> intervalMap;
+
+        TreeLoader(final IntervalMap<K, V> intervalMap) {
+            this.intervalMap = intervalMap;
+        }
+
+        void add(final V entry) {
+            try {
+                intervalMap.put(entry.getKey(), entry);
+            } catch (IntersectingIntervalException e) {
+                LOGGER.warn("Skipping intersecting entry {}, should be cleaned up in database", entry);
+            }
+        }
+
+        void load() {
+            NestedIntervalMaps.compact(intervalMap);
+        }
     }
 
     private int getLastSerial(final JdbcTemplate jdbcTemplate) {
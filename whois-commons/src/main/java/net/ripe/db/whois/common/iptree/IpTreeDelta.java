@@ -0,0 +1,50 @@
+package net.ripe.db.whois.common.iptree;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Changes to the IP trees of a source for the serials in the range (fromExclusive, toInclusive], as published to other
+ * nodes through an {@link IpTreeUpdateTransport}.
+ * <p/>
+ * Every change sets the final state of an entry, so a delta can safely be applied to trees that already contain part
+ * of the range.
+ */
+public final class IpTreeDelta implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String source;
+    private final long fromExclusive;
+    private final long toInclusive;
+    private final List<IpTreeCacheManager.IpTreeUpdate> updates;
+
+    IpTreeDelta(final String source, final long fromExclusive, final long toInclusive, final List<IpTreeCacheManager.IpTreeUpdate> updates) {
+        this.source = source;
+        this.fromExclusive = fromExclusive;
+        this.toInclusive = toInclusive;
+        this.updates = ImmutableList.copyOf(updates);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public long getFromExclusive() {
+        return fromExclusive;
+    }
+
+    public long getToInclusive() {
+        return toInclusive;
+    }
+
+    List<IpTreeCacheManager.IpTreeUpdate> getUpdates() {
+        return updates;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("IpTreeDelta(source=%s, serials=(%d, %d], updates=%d)", source, fromExclusive, toInclusive, updates.size());
+    }
+}
@@ -0,0 +1,247 @@
+package net.ripe.db.whois.common.iptree;
+
+import com.google.common.base.Charsets;
+import net.ripe.db.whois.common.domain.CIString;
+import net.ripe.db.whois.common.domain.Ipv4Resource;
+import net.ripe.db.whois.common.domain.Ipv6Resource;
+import net.ripe.db.whois.common.etree.IntervalMap;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import static net.ripe.db.whois.common.domain.CIString.ciString;
+
+/**
+ * Binary snapshot of the IP trees of a source, used to avoid a full rebuild from the database on startup.
+ * <p/>
+ * The file holds a header (magic, format version, source name and last serial), the entries of every tree in
+ * pre-order, and a trailing CRC32 of all preceding bytes. Keys are stored as raw interval bounds so loading does not
+ * need to parse any primary keys. Files are read through a memory mapping and written to a temporary file which is
+ * atomically moved into place.
+ */
+final class IpTreeSnapshot {
+    static final int MAGIC = 0x57495054;
+    static final int VERSION = 1;
+
+    private static final int CHECKSUM_LENGTH = 8;
+
+    private IpTreeSnapshot() {
+    }
+
+    static void write(final File file, final CIString source, final IpTreeCacheManager.NestedIntervalMaps nestedIntervalMaps) throws IOException {
+        final File tmpFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+
+        try {
+            final CRC32 crc = new CRC32();
+            try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(new FileOutputStream(tmpFile), crc)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, source.toString());
+                out.writeLong(nestedIntervalMaps.lastSerial);
+
+                writeIpv4Entries(out, nestedIntervalMaps.ipv4TreeCache);
+                writeIpv6Entries(out, nestedIntervalMaps.ipv6TreeCache);
+                writeIpv4RouteEntries(out, nestedIntervalMaps.ipv4RouteTreeCache);
+                writeIpv6RouteEntries(out, nestedIntervalMaps.ipv6RouteTreeCache);
+                writeIpv4Entries(out, nestedIntervalMaps.ipv4DomainTreeCache);
+                writeIpv6Entries(out, nestedIntervalMaps.ipv6DomainTreeCache);
+
+                out.flush();
+                out.writeLong(crc.getValue());
+            }
+
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            if (tmpFile.exists() && !tmpFile.delete()) {
+                tmpFile.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * @throws IOException if the file can not be read, or is not a valid snapshot for the source.
+     */
+    static IpTreeCacheManager.NestedIntervalMaps read(final File file, final CIString source, final IpTreeCacheManager.TreeLayout treeLayout) throws IOException {
+        final MappedByteBuffer buffer;
+        try (final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            final FileChannel channel = randomAccessFile.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(String.format("Snapshot %s too large: %d", file, channel.size()));
+            }
+
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            verifyChecksum(file, buffer);
+
+            final int magic = buffer.getInt();
+            if (magic != MAGIC) {
+                throw new IOException(String.format("Snapshot %s has invalid magic: %x", file, magic));
+            }
+
+            final int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("Snapshot %s has unsupported version: %d", file, version));
+            }
+
+            final String snapshotSource = readString(buffer);
+            if (!source.equals(ciString(snapshotSource))) {
+                throw new IOException(String.format("Snapshot %s is for source %s instead of %s", file, snapshotSource, source));
+            }
+
+            final IpTreeCacheManager.NestedIntervalMaps nestedIntervalMaps = new IpTreeCacheManager.NestedIntervalMaps(treeLayout, buffer.getLong());
+            readIpv4Entries(buffer, nestedIntervalMaps.ipv4TreeCache);
+            readIpv6Entries(buffer, nestedIntervalMaps.ipv6TreeCache);
+            readIpv4RouteEntries(buffer, nestedIntervalMaps.ipv4RouteTreeCache);
+            readIpv6RouteEntries(buffer, nestedIntervalMaps.ipv6RouteTreeCache);
+            readIpv4Entries(buffer, nestedIntervalMaps.ipv4DomainTreeCache);
+            readIpv6Entries(buffer, nestedIntervalMaps.ipv6DomainTreeCache);
+
+            if (buffer.remaining() != CHECKSUM_LENGTH) {
+                throw new IOException(String.format("Snapshot %s has %d unexpected trailing bytes", file, buffer.remaining() - CHECKSUM_LENGTH));
+            }
+
+            for (final IntervalMap<?, ?> intervalMap : nestedIntervalMaps.getIntervalMaps()) {
+                IpTreeCacheManager.NestedIntervalMaps.compact(intervalMap);
+            }
+
+            return nestedIntervalMaps;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException(String.format("Snapshot %s is corrupt", file), e);
+        }
+    }
+
+    private static void verifyChecksum(final File file, final ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < CHECKSUM_LENGTH) {
+            throw new IOException(String.format("Snapshot %s is truncated", file));
+        }
+
+        final int dataLength = buffer.remaining() - CHECKSUM_LENGTH;
+        final ByteBuffer data = buffer.duplicate();
+        final CRC32 crc = new CRC32();
+        final byte[] chunk = new byte[64 * 1024];
+        for (int remaining = dataLength; remaining > 0; remaining -= chunk.length) {
+            final int length = Math.min(remaining, chunk.length);
+            data.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+
+        if (crc.getValue() != data.getLong()) {
+            throw new IOException(String.format("Snapshot %s has invalid checksum", file));
+        }
+    }
+
+    private static void writeIpv4Entries(final DataOutputStream out, final IntervalMap<Ipv4Resource, Ipv4Entry> intervalMap) throws IOException {
+        final List<Ipv4Entry> entries = intervalMap.findExactAndAllMoreSpecific(Ipv4Resource.MAX_RANGE);
+        out.writeInt(entries.size());
+        for (final Ipv4Entry entry : entries) {
+            writeIpv4Key(out, entry.getKey());
+            out.writeInt(entry.getObjectId());
+        }
+    }
+
+    private static void readIpv4Entries(final ByteBuffer buffer, final IntervalMap<Ipv4Resource, Ipv4Entry> intervalMap) {
+        for (int count = buffer.getInt(); count > 0; count--) {
+            final Ipv4Resource key = readIpv4Key(buffer);
+            intervalMap.put(key, new Ipv4Entry(key, buffer.getInt()));
+        }
+    }
+
+    private static void writeIpv6Entries(final DataOutputStream out, final IntervalMap<Ipv6Resource, Ipv6Entry> intervalMap) throws IOException {
+        final List<Ipv6Entry> entries = intervalMap.findExactAndAllMoreSpecific(Ipv6Resource.MAX_RANGE);
+        out.writeInt(entries.size());
+        for (final Ipv6Entry entry : entries) {
+            writeIpv6Key(out, entry.getKey());
+            out.writeInt(entry.getObjectId());
+        }
+    }
+
+    private static void readIpv6Entries(final ByteBuffer buffer, final IntervalMap<Ipv6Resource, Ipv6Entry> intervalMap) {
+        for (int count = buffer.getInt(); count > 0; count--) {
+            final Ipv6Resource key = readIpv6Key(buffer);
+            intervalMap.put(key, new Ipv6Entry(key, buffer.getInt()));
+        }
+    }
+
+    private static void writeIpv4RouteEntries(final DataOutputStream out, final IntervalMap<Ipv4Resource, Ipv4RouteEntry> intervalMap) throws IOException {
+        final List<Ipv4RouteEntry> entries = intervalMap.findExactAndAllMoreSpecific(Ipv4Resource.MAX_RANGE);
+        out.writeInt(entries.size());
+        for (final Ipv4RouteEntry entry : entries) {
+            writeIpv4Key(out, entry.getKey());
+            out.writeInt(entry.getObjectId());
+            writeString(out, entry.getOrigin());
+        }
+    }
+
+    private static void readIpv4RouteEntries(final ByteBuffer buffer, final IntervalMap<Ipv4Resource, Ipv4RouteEntry> intervalMap) {
+        for (int count = buffer.getInt(); count > 0; count--) {
+            final Ipv4Resource key = readIpv4Key(buffer);
+            intervalMap.put(key, new Ipv4RouteEntry(key, buffer.getInt(), readString(buffer)));
+        }
+    }
+
+    private static void writeIpv6RouteEntries(final DataOutputStream out, final IntervalMap<Ipv6Resource, Ipv6RouteEntry> intervalMap) throws IOException {
+        final List<Ipv6RouteEntry> entries = intervalMap.findExactAndAllMoreSpecific(Ipv6Resource.MAX_RANGE);
+        out.writeInt(entries.size());
+        for (final Ipv6RouteEntry entry : entries) {
+            writeIpv6Key(out, entry.getKey());
+            out.writeInt(entry.getObjectId());
+            writeString(out, entry.getOrigin());
+        }
+    }
+
+    private static void readIpv6RouteEntries(final ByteBuffer buffer, final IntervalMap<Ipv6Resource, Ipv6RouteEntry> intervalMap) {
+        for (int count = buffer.getInt(); count > 0; count--) {
+            final Ipv6Resource key = readIpv6Key(buffer);
+            intervalMap.put(key, new Ipv6RouteEntry(key, buffer.getInt(), readString(buffer)));
+        }
+    }
+
+    private static void writeIpv4Key(final DataOutputStream out, final Ipv4Resource key) throws IOException {
+        out.writeInt((int) key.begin());
+        out.writeInt((int) key.end());
+    }
+
+    private static Ipv4Resource readIpv4Key(final ByteBuffer buffer) {
+        final long begin = buffer.getInt() & 0xffffffffL;
+        final long end = buffer.getInt() & 0xffffffffL;
+        return new Ipv4Resource(begin, end);
+    }
+
+    private static void writeIpv6Key(final DataOutputStream out, final Ipv6Resource key) throws IOException {
+        out.writeLong(key.beginMsb());
+        out.writeLong(key.beginLsb());
+        out.writeLong(key.endMsb());
+        out.writeLong(key.endLsb());
+    }
+
+    private static Ipv6Resource readIpv6Key(final ByteBuffer buffer) {
+        return Ipv6Resource.fromLongs(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(Charsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,16 @@
+package net.ripe.db.whois.common.iptree;
+
+/**
+ * Distributes {@link IpTreeDelta}s from the node handling updates to all nodes serving queries.
+ * <p/>
+ * Delivery is best effort: a node that misses a delta catches up by polling the database.
+ */
+public interface IpTreeUpdateTransport {
+    void publish(IpTreeDelta delta);
+
+    void addListener(Listener listener);
+
+    interface Listener {
+        void onDelta(IpTreeDelta delta);
+    }
+}
@@ -20,6 +20,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
@@ -27,6 +28,8 @@ public class IpTreeUpdater {
     private static final Logger LOGGER = LoggerFactory.getLogger(IpTreeUpdater.class);
 
     public static final int TREE_UPDATE_IN_SECONDS = 10;
+    public static final int TREE_SNAPSHOT_IN_SECONDS = 15 * 60;
+    public static final int TREE_PUBLISH_IN_MILLIS = 500;
 
     private final IpTreeCacheManager ipTreeCacheManager;
 
@@ -36,6 +39,8 @@ public class IpTreeUpdater {
 
     private ExecutorService executorService;
 
+    private final AtomicBoolean publicationRequested = new AtomicBoolean();
+
     @Autowired
     public IpTreeUpdater(final IpTreeCacheManager ipTreeCacheManager) {
         this.ipTreeCacheManager = ipTreeCacheManager;
@@ -84,12 +89,27 @@ public class IpTreeUpdater {
             }
         });
 
-        rebuild();
+        load();
     }
 
     @PreDestroy
     public void stop() {
         executorService.shutdownNow();
+        ipTreeCacheManager.writeSnapshots();
+    }
+
+    private void load() {
+        LOGGER.info("Loading IP trees");
+        final Stopwatch stopwatch = new Stopwatch().start();
+
+        invokeAll(sourceConfigurationsForRebuild, new OperationCallback() {
+            @Override
+            public void execute(final SourceConfiguration sourceConfiguration) {
+                ipTreeCacheManager.init(sourceConfiguration);
+            }
+        });
+
+        LOGGER.info("Finished loading IP trees in {}", stopwatch);
     }
 
     public void rebuild() {
@@ -116,10 +136,34 @@ public class IpTreeUpdater {
         });
     }
 
+    @Scheduled(fixedDelay = TREE_SNAPSHOT_IN_SECONDS * 1000)
+    public void writeSnapshots() {
+        ipTreeCacheManager.writeSnapshots();
+    }
+
     public void updateCurrent() {
         ipTreeCacheManager.update(sourceContext.getCurrentSourceConfiguration());
     }
 
+    /**
+     * Requests a publication of the changes to the trees of the current source. Requests are coalesced, so a burst of
+     * updates is published as a single delta within {@link #TREE_PUBLISH_IN_MILLIS}.
+     */
+    public void requestPublication() {
+        publicationRequested.set(true);
+    }
+
+    @Scheduled(fixedDelay = TREE_PUBLISH_IN_MILLIS)
+    public void publishRequested() {
+        if (publicationRequested.getAndSet(false)) {
+            try {
+                ipTreeCacheManager.publish(sourceContext.getCurrentSourceConfiguration());
+            } catch (RuntimeException e) {
+                LOGGER.warn("Unable to publish IP tree updates", e);
+            }
+        }
+    }
+
     private void invokeAll(final Set<SourceConfiguration> sourceConfigurations, final OperationCallback operationCallback) {
         final List<Future<?>> futures = Lists.newArrayList();
         for (final SourceConfiguration sourceConfiguration : sourceConfigurations) {
@@ -0,0 +1,34 @@
+package net.ripe.db.whois.common.iptree;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Delivers deltas to listeners in the same JVM, on the publishing thread.
+ */
+@Component
+public class LoopbackIpTreeUpdateTransport implements IpTreeUpdateTransport {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoopbackIpTreeUpdateTransport.class);
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(final IpTreeDelta delta) {
+        for (final Listener listener : listeners) {
+            try {
+                listener.onDelta(delta);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Unable to deliver {}", delta, e);
+            }
+        }
+    }
+
+    @Override
+    public void addListener(final Listener listener) {
+        listeners.add(listener);
+    }
+}
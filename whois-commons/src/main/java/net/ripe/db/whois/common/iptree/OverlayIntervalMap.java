@@ -0,0 +1,328 @@
+package net.ripe.db.whois.common.iptree;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import net.ripe.db.whois.common.domain.IpInterval;
+import net.ripe.db.whois.common.etree.IntersectingIntervalException;
+import net.ripe.db.whois.common.etree.IntervalMap;
+import net.ripe.db.whois.common.etree.MultiValueIntervalMap;
+import net.ripe.db.whois.common.etree.NestedIntervalMap;
+import org.apache.commons.lang.Validate;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An {@link IntervalMap} that keeps the modifications made since a base map in a small overlay, instead of modifying
+ * the base map. The base map is never modified, so any number of overlays can share it with a published snapshot.
+ * <p/>
+ * Values added are kept in a separate map of the same kind as the base map (single or multiple values per key), and
+ * values of the base map removed or replaced are hidden. Lookups combine the results of both maps. Once the overlay
+ * grows too large for that to be cheap, it is applied to a copy of the base map (see {@link #applyTo(IntervalMap)}).
+ * <p/>
+ * <strong>Note that this implementation is not synchronized.</strong> It is modified before it is published only.
+ */
+final class OverlayIntervalMap<K extends IpInterval<K>, V extends IpEntry<K>> implements IntervalMap<K, V> {
+    private final K maxRange;
+    private final boolean multiValue;
+
+    private IntervalMap<K, V> base;
+    private final IntervalMap<K, V> added;
+    private final Set<V> removed;
+    private int modifications;
+
+    /**
+     * Construct an empty overlay on <code>base</code>.
+     *
+     * @param base       the map to lay the overlay on, which must not be modified anymore.
+     * @param maxRange   the interval containing every key.
+     * @param multiValue true if the base map holds multiple values per key.
+     */
+    OverlayIntervalMap(final IntervalMap<K, V> base, final K maxRange, final boolean multiValue) {
+        this.base = base;
+        this.maxRange = maxRange;
+        this.multiValue = multiValue;
+        this.added = multiValue ? new MultiValueIntervalMap<K, V>() : new NestedIntervalMap<K, V>();
+        this.removed = Sets.newHashSet();
+    }
+
+    /**
+     * Construct a new {@link OverlayIntervalMap} on the base of <code>source</code>, with its modifications copied.
+     *
+     * @param source the source to copy.
+     */
+    OverlayIntervalMap(final OverlayIntervalMap<K, V> source) {
+        this.base = source.base;
+        this.maxRange = source.maxRange;
+        this.multiValue = source.multiValue;
+        this.added = multiValue
+                ? new MultiValueIntervalMap<>((MultiValueIntervalMap<K, V>) source.added)
+                : new NestedIntervalMap<>((NestedIntervalMap<K, V>) source.added);
+        this.removed = Sets.newHashSet(source.removed);
+        this.modifications = source.modifications;
+    }
+
+    IntervalMap<K, V> getBase() {
+        return base;
+    }
+
+    /**
+     * @return the number of modifications made since the base map.
+     */
+    int getModifications() {
+        return modifications;
+    }
+
+    /**
+     * Applies the modifications made since the base map to <code>intervalMap</code>, a copy of the base map.
+     */
+    void applyTo(final IntervalMap<K, V> intervalMap) {
+        for (final V value : removed) {
+            intervalMap.remove(value.getKey(), value);
+        }
+
+        for (final V value : added.findExactAndAllMoreSpecific(maxRange)) {
+            intervalMap.put(value.getKey(), value);
+        }
+    }
+
+    @Override
+    public void put(final K key, final V value) {
+        Validate.notNull(key);
+        Validate.notNull(value);
+
+        final List<K> intersections = findIntersecting(key);
+        if (!intersections.isEmpty()) {
+            throw new IntersectingIntervalException(key, intersections);
+        }
+
+        final List<V> existing = base.findExact(key);
+        if (multiValue && existing.contains(value) && !removed.contains(value)) {
+            return;
+        }
+
+        added.put(key, value);
+        if (!multiValue) {
+            removed.addAll(existing);
+        }
+
+        modifications++;
+    }
+
+    @Override
+    public void remove(final K key) {
+        Validate.notNull(key);
+
+        added.remove(key);
+        removed.addAll(base.findExact(key));
+        modifications++;
+    }
+
+    @Override
+    public void remove(final K key, final V value) {
+        Validate.notNull(key);
+        Validate.notNull(value);
+
+        if (added.findExact(key).contains(value)) {
+            added.remove(key, value);
+        } else if (base.findExact(key).contains(value)) {
+            removed.add(value);
+        } else {
+            return;
+        }
+
+        modifications++;
+    }
+
+    @Override
+    public void clear() {
+        base = multiValue ? new MultiValueIntervalMap<K, V>() : new NestedIntervalMap<K, V>();
+        added.clear();
+        removed.clear();
+        modifications = 0;
+    }
+
+    @Override
+    public List<V> findFirstLessSpecific(final K key) {
+        Validate.notNull(key);
+        return lastKeyOf(findAllLessSpecific(key));
+    }
+
+    @Override
+    public List<V> findExact(final K key) {
+        Validate.notNull(key);
+        return combine(base.findExact(key), added.findExact(key));
+    }
+
+    @Override
+    public List<V> findExactOrFirstLessSpecific(final K key) {
+        Validate.notNull(key);
+        return lastKeyOf(findExactAndAllLessSpecific(key));
+    }
+
+    @Override
+    public List<V> findAllLessSpecific(final K key) {
+        Validate.notNull(key);
+        return withoutKey(findExactAndAllLessSpecific(key), key);
+    }
+
+    @Override
+    public List<V> findExactAndAllLessSpecific(final K key) {
+        Validate.notNull(key);
+        return combine(base.findExactAndAllLessSpecific(key), added.findExactAndAllLessSpecific(key));
+    }
+
+    /**
+     * The first more specific values are the values of the largest keys within <code>key</code>. Hidden values of the
+     * base map are replaced by their own first more specific values, and values nested in a value of the other map
+     * are left out.
+     */
+    @Override
+    public List<V> findFirstMoreSpecific(final K key) {
+        Validate.notNull(key);
+
+        final List<V> baseValues = base.findFirstMoreSpecific(key);
+        if (modifications == 0) {
+            return baseValues;
+        }
+
+        final List<V> candidates = Lists.newArrayList();
+        addVisibleFirstMoreSpecific(baseValues, candidates);
+        candidates.addAll(added.findFirstMoreSpecific(key));
+        Collections.sort(candidates, PRE_ORDER);
+
+        final List<V> result = Lists.newArrayListWithExpectedSize(candidates.size());
+        K outerKey = null;
+        for (final V candidate : candidates) {
+            final K candidateKey = candidate.getKey();
+            if (outerKey != null && outerKey.contains(candidateKey) && !outerKey.equals(candidateKey)) {
+                continue;
+            }
+
+            result.add(candidate);
+            outerKey = candidateKey;
+        }
+
+        return result;
+    }
+
+    private void addVisibleFirstMoreSpecific(final List<V> values, final List<V> result) {
+        final Set<K> hiddenKeys = Sets.newLinkedHashSet();
+        final Set<K> visibleKeys = Sets.newHashSet();
+        for (final V value : values) {
+            if (removed.contains(value)) {
+                hiddenKeys.add(value.getKey());
+            } else {
+                visibleKeys.add(value.getKey());
+                result.add(value);
+            }
+        }
+
+        hiddenKeys.removeAll(visibleKeys);
+        for (final K hiddenKey : hiddenKeys) {
+            addVisibleFirstMoreSpecific(base.findFirstMoreSpecific(hiddenKey), result);
+        }
+    }
+
+    @Override
+    public List<V> findAllMoreSpecific(final K key) {
+        Validate.notNull(key);
+        return withoutKey(findExactAndAllMoreSpecific(key), key);
+    }
+
+    @Override
+    public List<V> findExactAndAllMoreSpecific(final K key) {
+        Validate.notNull(key);
+        return combine(base.findExactAndAllMoreSpecific(key), added.findExactAndAllMoreSpecific(key));
+    }
+
+    // the keys of both maps are nested or disjoint, so ordering the combined values like a lookup on a single map does
+    private List<V> combine(final List<V> baseValues, final List<V> addedValues) {
+        if (modifications == 0) {
+            return baseValues;
+        }
+
+        final List<V> result = Lists.newArrayListWithExpectedSize(baseValues.size() + addedValues.size());
+        for (final V value : baseValues) {
+            if (!removed.contains(value)) {
+                result.add(value);
+            }
+        }
+
+        if (!addedValues.isEmpty()) {
+            result.addAll(addedValues);
+            Collections.sort(result, PRE_ORDER);
+        }
+
+        return result;
+    }
+
+    private List<V> lastKeyOf(final List<V> values) {
+        if (values.isEmpty()) {
+            return values;
+        }
+
+        final K lastKey = values.get(values.size() - 1).getKey();
+        int first = values.size() - 1;
+        while (first > 0 && values.get(first - 1).getKey().equals(lastKey)) {
+            first--;
+        }
+
+        return values.subList(first, values.size());
+    }
+
+    private List<V> withoutKey(final List<V> values, final K key) {
+        final List<V> result = Lists.newArrayListWithExpectedSize(values.size());
+        for (final V value : values) {
+            if (!value.getKey().equals(key)) {
+                result.add(value);
+            }
+        }
+
+        return result;
+    }
+
+    // an interval intersecting the key without nesting contains exactly one of its bounds
+    @SuppressWarnings("unchecked")
+    private List<K> findIntersecting(final K key) {
+        final K upperBound = (K) IpInterval.asIpInterval(key.endAsInetAddress());
+
+        final List<K> result = Lists.newArrayList();
+        for (final K bound : Lists.newArrayList(key.singletonIntervalAtLowerBound(), upperBound)) {
+            for (final V value : base.findExactAndAllLessSpecific(bound)) {
+                final K existingKey = value.getKey();
+                if (!removed.contains(value) && !existingKey.contains(key) && !key.contains(existingKey) && !result.contains(existingKey)) {
+                    result.add(existingKey);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Orders values like the lookups of a single map: less specific keys before the keys nested in them, and keys
+     * before the disjoint keys following them. Values of the same key are ordered by their natural order, if any.
+     */
+    private static final Comparator<IpEntry<?>> PRE_ORDER = new Comparator<IpEntry<?>>() {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        @Override
+        public int compare(final IpEntry<?> o1, final IpEntry<?> o2) {
+            final IpInterval k1 = (IpInterval) o1.getKey();
+            final IpInterval k2 = (IpInterval) o2.getKey();
+
+            int result = k1.singletonIntervalAtLowerBound().compareUpperBound(k2.singletonIntervalAtLowerBound());
+            if (result == 0) {
+                result = k2.compareUpperBound(k1);
+            }
+
+            if (result == 0 && o1 instanceof Comparable) {
+                result = ((Comparable) o1).compareTo(o2);
+            }
+
+            return result;
+        }
+    };
+}
@@ -0,0 +1,241 @@
+package net.ripe.db.whois.common.rpsl;
+
+import com.google.common.base.Charsets;
+import net.ripe.db.whois.common.io.ByteArrayOutput;
+import org.apache.commons.lang.Validate;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.Immutable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Attributes of an RPSL object kept as the raw ISO-8859-1 bytes, with a table of attribute offsets.
+ * <p/>
+ * Attributes are only decoded on access. Bytes that are already formatted the way {@link RpslAttribute#writeTo} would
+ * write them are written out as they are, other bytes are formatted once, on first use.
+ */
+@Immutable
+final class CompactRpslAttributes {
+    private static final int LEADING_CHARS = 16;
+    private static final int LEADING_CHARS_SHORTHAND = 5;
+
+    private final byte[] bytes;
+
+    // per attribute: start of key, position of ':' and end of value
+    private final int[] offsets;
+    private final int size;
+
+    // computed on first use, like String.hashCode(); the bytes themselves if already formatted
+    private volatile byte[] formattedBytes;
+
+    @SuppressWarnings("PMD.ArrayIsStoredDirectly")
+    private CompactRpslAttributes(final byte[] bytes, final int[] offsets, final int size) {
+        this.bytes = bytes;
+        this.offsets = offsets;
+        this.size = size;
+    }
+
+    /**
+     * Reads the attribute offsets, accepting the same input as {@link RpslObjectBuilder#getAttributes(byte[])}.
+     */
+    static CompactRpslAttributes parse(final byte[] buf) {
+        Validate.notNull(buf, "Object can not be null");
+
+        int[] offsets = new int[3 * 16];
+        int size = 0;
+
+        int pos = 0;
+        while (pos < buf.length) {
+            final int keyStart = pos;
+
+            boolean readKey = false;
+            for (; pos < buf.length; pos++) {
+                int c = buf[pos] & 0xff;
+
+                if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == ':' || c == '*' || c == ' ')) {
+                    throw new IllegalArgumentException("Read illegal character in key: '" + (char) c + "'");
+                }
+
+                if (c == ':') {
+                    readKey = true;
+                    break;
+                }
+            }
+
+            if (!readKey) throw new IllegalArgumentException("No key found");
+            if (keyStart == pos) throw new IllegalArgumentException("Read zero sized key");
+
+            final int colon = pos++;
+            int stop = pos;
+
+            processStream:
+            for (; pos < buf.length; ) {
+                int c = buf[pos++] & 0xff;
+
+                if (c == '\r') {
+                    continue;
+                }
+
+                if (c == '\n') {
+                    int next = (pos < buf.length) ? buf[pos] & 0xff : -1;
+
+                    switch (next) {
+                        case ' ':
+                        case '\t':
+                        case '+':
+                            break;
+                        default:
+                            break processStream;
+                    }
+                }
+
+                stop = pos;
+            }
+
+            if (3 * size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+            }
+
+            offsets[3 * size] = keyStart;
+            offsets[3 * size + 1] = colon;
+            offsets[3 * size + 2] = stop;
+            size++;
+        }
+
+        return new CompactRpslAttributes(buf, Arrays.copyOf(offsets, 3 * size), size);
+    }
+
+    int size() {
+        return size;
+    }
+
+    RpslAttribute get(final int index) {
+        final int keyStart = offsets[3 * index];
+        final int colon = offsets[3 * index + 1];
+        final int end = offsets[3 * index + 2];
+
+        return new RpslAttribute(
+                new String(bytes, keyStart, colon - keyStart, Charsets.ISO_8859_1),
+                new String(bytes, colon + 1, end - colon - 1, Charsets.ISO_8859_1));
+    }
+
+    @CheckForNull
+    AttributeType getType(final int index) {
+        final int keyStart = offsets[3 * index];
+        final int colon = offsets[3 * index + 1];
+        return AttributeType.getByNameOrNull(new String(bytes, keyStart, colon - keyStart, Charsets.ISO_8859_1).toLowerCase());
+    }
+
+    List<RpslAttribute> decode() {
+        final List<RpslAttribute> attributes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            attributes.add(get(i));
+        }
+
+        return attributes;
+    }
+
+    private boolean checkFormatted() {
+        final FormattedComparison comparison = new FormattedComparison();
+        for (int i = 0; i < size && !comparison.mismatch; i++) {
+            format(i, comparison);
+        }
+
+        return !comparison.mismatch && comparison.pos == bytes.length;
+    }
+
+    /**
+     * @return the formatted bytes, which must not be modified, as they may be shared.
+     */
+    byte[] getFormattedBytes() {
+        byte[] result = formattedBytes;
+        if (result == null) {
+            result = checkFormatted() ? bytes : format();
+            formattedBytes = result;
+        }
+
+        return result;
+    }
+
+    private byte[] format() {
+        final ByteArrayOutput out = new ByteArrayOutput(bytes.length + 16 * size);
+        for (int i = 0; i < size; i++) {
+            format(i, out);
+        }
+
+        return out.toByteArray();
+    }
+
+    boolean sameBytes(final CompactRpslAttributes other) {
+        return Arrays.equals(bytes, other.bytes);
+    }
+
+    /**
+     * Byte for byte the same as {@link RpslAttribute#writeTo}.
+     */
+    private void format(final int index, final OutputStream out) {
+        final int keyStart = offsets[3 * index];
+        final int colon = offsets[3 * index + 1];
+        final int end = offsets[3 * index + 2];
+
+        try {
+            for (int i = keyStart; i < colon; i++) {
+                final int c = bytes[i] & 0xff;
+                out.write(c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c);
+            }
+
+            out.write(':');
+
+            final int column = bytes[keyStart] == '*' ? LEADING_CHARS_SHORTHAND : LEADING_CHARS;
+            int leadColumn = colon - keyStart + 1;
+            int spaces = 0;
+
+            for (int i = colon + 1; i < end; i++) {
+                final int c = bytes[i] & 0xff;
+
+                if (leadColumn == 0 && spaces == 0 && c == '+') {
+                    out.write(c);
+                    leadColumn++;
+                } else if (c == ' ' || c == '\t' || c == '\r') {
+                    spaces++;
+                } else if (c == '\n') {
+                    leadColumn = 0;
+                    spaces = 0;
+                    out.write(c);
+                } else {
+                    if (leadColumn < column) {
+                        spaces = column - leadColumn;
+                        leadColumn = column;
+                    }
+
+                    while (spaces > 0) {
+                        out.write(' ');
+                        spaces--;
+                    }
+
+                    out.write(c);
+                }
+            }
+
+            out.write('\n');
+        } catch (IOException e) {
+            throw new IllegalStateException("Should never occur", e);
+        }
+    }
+
+    private final class FormattedComparison extends OutputStream {
+        private int pos;
+        private boolean mismatch;
+
+        @Override
+        public void write(final int b) {
+            if (mismatch || pos >= bytes.length || (bytes[pos++] & 0xff) != b) {
+                mismatch = true;
+            }
+        }
+    }
+}
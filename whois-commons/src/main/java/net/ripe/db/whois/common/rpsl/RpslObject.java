@@ -26,6 +26,7 @@ public class RpslObject implements Identifiable, ResponseObject {
     private final RpslAttribute typeAttribute;
     private Integer objectId;
 
+    private final CompactRpslAttributes compactAttributes;
     private List<RpslAttribute> attributes;
     private Map<AttributeType, List<RpslAttribute>> typeCache;
     private int hash;
@@ -45,6 +46,7 @@ public class RpslObject implements Identifiable, ResponseObject {
 
         this.typeAttribute = attributes.get(0);
         this.type = ObjectType.getByNameOrNull(typeAttribute.getKey());
+        this.compactAttributes = null;
         this.attributes = Collections.unmodifiableList(attributes);
 
         Validate.notNull(type, "Type cannot be null");
@@ -52,6 +54,19 @@ public class RpslObject implements Identifiable, ResponseObject {
         Validate.notEmpty(getKey().toString(), "Key cannot be empty");
     }
 
+    private RpslObject(final Integer objectId, final CompactRpslAttributes compactAttributes) {
+        Validate.isTrue(compactAttributes.size() > 0, "The validated collection is empty");
+
+        this.objectId = objectId;
+        this.typeAttribute = compactAttributes.get(0);
+        this.type = ObjectType.getByNameOrNull(typeAttribute.getKey());
+        this.compactAttributes = compactAttributes;
+
+        Validate.notNull(type, "Type cannot be null");
+        Validate.notNull(getKey(), "Key cannot be null");
+        Validate.notEmpty(getKey().toString(), "Key cannot be empty");
+    }
+
     public static RpslObject parse(final String input) {
         return new RpslObject(RpslObjectBuilder.getAttributes(input));
     }
@@ -68,6 +83,23 @@ public class RpslObject implements Identifiable, ResponseObject {
         return new RpslObject(objectId, RpslObjectBuilder.getAttributes(input));
     }
 
+    /**
+     * Parse an object that keeps the input bytes, and only decodes attributes when they are accessed.
+     * <p/>
+     * Meant for objects that are cached or mostly streamed as they are, the input must not be modified afterwards.
+     */
+    public static RpslObject parseCompact(final Integer objectId, final byte[] input) {
+        return new RpslObject(objectId, CompactRpslAttributes.parse(input));
+    }
+
+    /**
+     * @return an object sharing the bytes of this compact object, without any of the attributes decoded so far, or this
+     * object if it is not compact.
+     */
+    public RpslObject compactCopy() {
+        return compactAttributes == null ? this : new RpslObject(objectId, compactAttributes);
+    }
+
     @Override
     public int getObjectId() {
         return objectId;
@@ -79,6 +111,10 @@ public class RpslObject implements Identifiable, ResponseObject {
     }
 
     public List<RpslAttribute> getAttributes() {
+        if (attributes == null) {
+            attributes = Collections.unmodifiableList(compactAttributes.decode());
+        }
+
         return attributes;
     }
 
@@ -87,10 +123,10 @@ public class RpslObject implements Identifiable, ResponseObject {
             final ObjectTemplate objectTemplate = ObjectTemplate.getTemplate(type);
             final Iterator<AttributeType> keyAttributeIterator = objectTemplate.getKeyAttributes().iterator();
 
-            CIString tmpKey = findAttribute(keyAttributeIterator.next()).getCleanValue();
+            CIString tmpKey = findKeyAttribute(keyAttributeIterator.next()).getCleanValue();
             // route(6) has two primary keys
             while (keyAttributeIterator.hasNext()) {
-                tmpKey = tmpKey.append(findAttribute(keyAttributeIterator.next()).getCleanValue());
+                tmpKey = tmpKey.append(findKeyAttribute(keyAttributeIterator.next()).getCleanValue());
             }
 
             key = tmpKey;
@@ -99,6 +135,30 @@ public class RpslObject implements Identifiable, ResponseObject {
         return key;
     }
 
+    private RpslAttribute findKeyAttribute(final AttributeType attributeType) {
+        if (attributes != null) {
+            return findAttribute(attributeType);
+        }
+
+        // only decode the key attributes of compact objects
+        RpslAttribute result = null;
+        for (int i = 0; i < compactAttributes.size(); i++) {
+            if (attributeType.equals(compactAttributes.getType(i))) {
+                if (result != null) {
+                    throw new IllegalArgumentException("Multiple attributes of type: " + attributeType);
+                }
+
+                result = compactAttributes.get(i);
+            }
+        }
+
+        if (result == null) {
+            throw new IllegalArgumentException("No attribute of type: " + attributeType);
+        }
+
+        return result;
+    }
+
     public String getFormattedKey() {
         switch (type) {
             case PERSON:
@@ -120,6 +180,10 @@ public class RpslObject implements Identifiable, ResponseObject {
         }
 
         final RpslObject other = (RpslObject) obj;
+        if (compactAttributes != null && other.compactAttributes != null && compactAttributes.sameBytes(other.compactAttributes)) {
+            return true;
+        }
+
         return Iterables.elementsEqual(getAttributes(), other.getAttributes());
     }
 
@@ -224,10 +288,22 @@ public class RpslObject implements Identifiable, ResponseObject {
 
     @Override
     public void writeTo(final OutputStream out) throws IOException {
+        if (compactAttributes != null) {
+            out.write(compactAttributes.getFormattedBytes());
+            out.flush();
+            return;
+        }
+
         writeTo(new OutputStreamWriter(out, Charsets.ISO_8859_1));
     }
 
     public void writeTo(final Writer writer) throws IOException {
+        if (compactAttributes != null) {
+            writer.write(new String(compactAttributes.getFormattedBytes(), Charsets.ISO_8859_1));
+            writer.flush();
+            return;
+        }
+
         for (final RpslAttribute attribute : getAttributes()) {
             attribute.writeTo(writer);
         }
@@ -237,6 +313,10 @@ public class RpslObject implements Identifiable, ResponseObject {
 
     @Override
     public byte[] toByteArray() {
+        if (compactAttributes != null) {
+            return compactAttributes.getFormattedBytes().clone();
+        }
+
         try {
             final ByteArrayOutput baos = new ByteArrayOutput();
             writeTo(baos);
@@ -248,6 +328,10 @@ public class RpslObject implements Identifiable, ResponseObject {
 
     @Override
     public String toString() {
+        if (compactAttributes != null) {
+            return new String(compactAttributes.getFormattedBytes(), Charsets.ISO_8859_1);
+        }
+
         try {
             final StringWriter writer = new StringWriter();
             for (final RpslAttribute attribute : getAttributes()) {
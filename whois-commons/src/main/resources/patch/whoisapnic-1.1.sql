@@ -0,0 +1,15 @@
+--
+-- Table structure for table `object_digest`
+--
+
+DROP TABLE IF EXISTS `object_digest`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!40101 SET character_set_client = utf8 */;
+CREATE TABLE `object_digest` (
+  `object_id` int(10) unsigned NOT NULL DEFAULT '0',
+  `digest` bigint(20) NOT NULL DEFAULT '0',
+  PRIMARY KEY (`object_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+UPDATE `version` SET version = 'whoisapnic-1.1' WHERE version = 'whoisapnic-1.0';
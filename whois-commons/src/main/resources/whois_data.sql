@@ -2,4 +2,4 @@ INSERT INTO x509 (keycert_id) VALUES (0);
 INSERT INTO update_lock VALUES (0);
 TRUNCATE version;
 INSERT INTO `version` VALUES ('whois-1.67.5');
-INSERT INTO `version` VALUES ('whoisapnic-1.0');
+INSERT INTO `version` VALUES ('whoisapnic-1.1');
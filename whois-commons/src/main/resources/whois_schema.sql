@@ -1234,3 +1234,10 @@ CREATE TABLE `tags` (
   PRIMARY KEY (`object_id`, `tag_id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=latin1;
 
+
+DROP TABLE IF EXISTS `object_digest`;
+CREATE TABLE `object_digest` (
+  `object_id` int(10) unsigned NOT NULL DEFAULT '0',
+  `digest` bigint(20) NOT NULL DEFAULT '0',
+  PRIMARY KEY (`object_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
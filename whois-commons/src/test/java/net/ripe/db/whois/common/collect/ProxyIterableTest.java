@@ -1,9 +1,18 @@
 package net.ripe.db.whois.common.collect;
 
+import com.google.common.base.Suppliers;
+import com.google.common.collect.Lists;
+import org.junit.After;
 import org.junit.Test;
 import org.mockito.Mockito;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
@@ -14,6 +23,13 @@ public class ProxyIterableTest {
     private Iterable<Integer> source;
     private ProxyLoader<Integer, String> loader;
 
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
     @Test
     public void test_load_single_fetch() throws Exception {
         testWithPrefetch(100);
@@ -57,6 +73,94 @@ public class ProxyIterableTest {
         assertNull(iterator.next());
     }
 
+    @Test
+    public void read_ahead() {
+        final ReadAhead readAhead = new ReadAhead(executorService, Suppliers.ofInstance(true), 2);
+        subject = new ProxyIterable<>(Arrays.asList(1, 2, 3, 4, 5, 6, 7), new StringLoader(), 2, readAhead);
+
+        assertThat(Lists.newArrayList(subject), is(Lists.newArrayList("1", "2", "3", "4", "5", "6", "7")));
+        assertThat(readAhead.getLoads(), is(4));
+        assertThat(readAhead.getReadAheadLoads(), is(3));
+    }
+
+    @Test
+    public void read_ahead_not_ready() {
+        final ReadAhead readAhead = new ReadAhead(executorService, Suppliers.ofInstance(false), 2);
+        subject = new ProxyIterable<>(Arrays.asList(1, 2, 3, 4, 5), new StringLoader(), 2, readAhead);
+
+        assertThat(Lists.newArrayList(subject), is(Lists.newArrayList("1", "2", "3", "4", "5")));
+        assertThat(readAhead.getLoads(), is(3));
+        assertThat(readAhead.getReadAheadLoads(), is(0));
+    }
+
+    @Test
+    public void read_ahead_rejected() {
+        final ReadAhead readAhead = new ReadAhead(new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        }, Suppliers.ofInstance(true), 2);
+        subject = new ProxyIterable<>(Arrays.asList(1, 2, 3, 4, 5), new StringLoader(), 2, readAhead);
+
+        assertThat(Lists.newArrayList(subject), is(Lists.newArrayList("1", "2", "3", "4", "5")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void read_ahead_load_fails() {
+        final ReadAhead readAhead = new ReadAhead(executorService, Suppliers.ofInstance(true), 1);
+        subject = new ProxyIterable<>(Arrays.asList(1, 2), new ProxyLoader<Integer, String>() {
+            @Override
+            public void load(final List<Integer> proxy, final List<String> result) {
+                if (proxy.contains(2)) {
+                    throw new IllegalArgumentException();
+                }
+
+                result.add(String.valueOf(proxy.get(0)));
+            }
+        }, 1, readAhead);
+
+        Lists.newArrayList(subject);
+    }
+
+    @Test
+    public void read_ahead_cancelled_when_abandoned() throws Exception {
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final ReadAhead readAhead = new ReadAhead(executorService, Suppliers.ofInstance(true), 1);
+        subject = new ProxyIterable<>(Arrays.asList(1, 2), new ProxyLoader<Integer, String>() {
+            @Override
+            public void load(final List<Integer> proxy, final List<String> result) {
+                if (proxy.contains(2)) {
+                    loading.countDown();
+                    try {
+                        Thread.sleep(10000);
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                }
+
+                result.add(String.valueOf(proxy.get(0)));
+            }
+        }, 1, readAhead);
+
+        assertThat(subject.iterator().next(), is("1"));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        readAhead.cancel();
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    private static class StringLoader implements ProxyLoader<Integer, String> {
+        @Override
+        public void load(final List<Integer> proxy, final List<String> result) {
+            for (final Integer integer : proxy) {
+                result.add(String.valueOf(integer));
+            }
+        }
+    }
+
     private void testWithPrefetch(final int prefetch) {
         final int total = 6;
 
@@ -1,5 +1,6 @@
 package net.ripe.db.whois.common.dao.jdbc;
 
+import net.ripe.db.whois.common.domain.serials.Operation;
 import net.ripe.db.whois.common.domain.serials.SerialEntry;
 import net.ripe.db.whois.common.domain.serials.SerialRange;
 import net.ripe.db.whois.common.rpsl.RpslObject;
@@ -10,6 +11,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.List;
+
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 
@@ -46,6 +49,23 @@ public class JdbcSerialDaoTest extends AbstractDaoTest {
         assertThat(entry.getRpslObject(), is(inetnum));
     }
 
+    @Test
+    public void getSerialEntriesByIdRange() {
+        final RpslObject mntner = databaseHelper.addObject("mntner:DEV-MNT");
+        final RpslObject person = databaseHelper.addObject("person:Denis Walker\nnic-hdl:DW-RIPE");
+        databaseHelper.removeObject(person);
+
+        final List<SerialEntry> entries = subject.getByIdRange(1, 3);
+
+        assertThat(entries.size(), is(3));
+        assertThat(entries.get(0).getSerialId(), is(1));
+        assertThat(entries.get(0).getRpslObject(), is(mntner));
+        assertThat(entries.get(1).getSerialId(), is(2));
+        assertThat(entries.get(2).getSerialId(), is(3));
+        assertThat(entries.get(2).getOperation(), is(Operation.DELETE));
+        assertThat(entries.get(2).getRpslObject(), is(person));
+    }
+
     @Test
     public void getSerialCreateDelete() {
         final RpslObject object = databaseHelper.addObject("aut-num: AS1");
@@ -0,0 +1,111 @@
+package net.ripe.db.whois.common.dao.jdbc;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import net.ripe.db.whois.common.ManualTest;
+import net.ripe.db.whois.common.domain.Identifiable;
+import net.ripe.db.whois.common.rpsl.RpslObject;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares restoring the requested order of loaded objects as done by {@link JdbcRpslObjectDao#load} with the previous
+ * indexOf based sort, for realistic proxy batch sizes. Loaded objects arrive in random order, as rows from the database.
+ */
+@Category(ManualTest.class)
+public class ObjectIdPositionsPerformanceTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ObjectIdPositionsPerformanceTest.class);
+
+    private static final int[] BATCH_SIZES = {10, 100, 1_000, 10_000};
+    private static final int NR_OBJECTS = 1_000_000;
+    private static final int NR_ROUNDS = 5;
+
+    @Test
+    public void object_id_positions() {
+        run("ObjectIdPositions", new Reorder() {
+            @Override
+            public List<RpslObject> reorder(final List<Identifiable> proxy, final List<RpslObject> loaded) {
+                final ObjectIdPositions positions = new ObjectIdPositions(proxy.size());
+                for (final Identifiable identifiable : proxy) {
+                    positions.add(identifiable.getObjectId());
+                }
+
+                final RpslObject[] loadedObjects = new RpslObject[positions.size()];
+                for (final RpslObject rpslObject : loaded) {
+                    loadedObjects[positions.get(rpslObject.getObjectId())] = rpslObject;
+                }
+
+                final List<RpslObject> result = Lists.newArrayListWithExpectedSize(loadedObjects.length);
+                for (final RpslObject rpslObject : loadedObjects) {
+                    if (rpslObject != null) {
+                        result.add(rpslObject);
+                    }
+                }
+
+                return result;
+            }
+        });
+    }
+
+    @Test
+    public void index_of_sort() {
+        run("indexOf sort", new Reorder() {
+            @Override
+            public List<RpslObject> reorder(final List<Identifiable> proxy, final List<RpslObject> loaded) {
+                final List<Integer> requestedIds = Lists.newArrayListWithExpectedSize(proxy.size());
+                for (final Identifiable identifiable : proxy) {
+                    requestedIds.add(identifiable.getObjectId());
+                }
+
+                final List<RpslObject> result = Lists.newArrayList(loaded);
+                Collections.sort(result, new Comparator<RpslObject>() {
+                    @Override
+                    public int compare(final RpslObject o1, final RpslObject o2) {
+                        return requestedIds.indexOf(o1.getObjectId()) - requestedIds.indexOf(o2.getObjectId());
+                    }
+                });
+
+                return result;
+            }
+        });
+    }
+
+    private void run(final String name, final Reorder reorder) {
+        for (final int batchSize : BATCH_SIZES) {
+            final List<Identifiable> proxy = Lists.newArrayListWithExpectedSize(batchSize);
+            final Random random = new Random(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                final int objectId = random.nextInt(Integer.MAX_VALUE);
+                proxy.add(RpslObject.parse(objectId, "mntner: DEV-MNT" + objectId));
+            }
+
+            final List<RpslObject> loaded = Lists.newArrayListWithExpectedSize(batchSize);
+            for (final Identifiable identifiable : proxy) {
+                loaded.add((RpslObject) identifiable);
+            }
+            Collections.shuffle(loaded, random);
+
+            final int nrBatches = Math.max(1, NR_OBJECTS / batchSize / Math.max(1, batchSize / 100));
+            for (int round = 0; round < NR_ROUNDS; round++) {
+                final Stopwatch stopwatch = new Stopwatch().start();
+                long nrResults = 0;
+                for (int i = 0; i < nrBatches; i++) {
+                    nrResults += reorder.reorder(proxy, loaded).size();
+                }
+
+                LOGGER.info("{}: batch size {}: round {}: {} objects in {}", name, batchSize, round, nrResults, stopwatch.stop());
+            }
+        }
+    }
+
+    interface Reorder {
+        List<RpslObject> reorder(List<Identifiable> proxy, List<RpslObject> loaded);
+    }
+}
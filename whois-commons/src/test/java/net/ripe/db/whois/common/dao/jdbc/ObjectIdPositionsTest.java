@@ -0,0 +1,69 @@
+package net.ripe.db.whois.common.dao.jdbc;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ObjectIdPositionsTest {
+    @Test
+    public void empty() {
+        final ObjectIdPositions subject = new ObjectIdPositions(0);
+
+        assertThat(subject.size(), is(0));
+        assertThat(subject.get(1), is(-1));
+    }
+
+    @Test
+    public void positions_in_order_of_first_occurrence() {
+        final ObjectIdPositions subject = new ObjectIdPositions(4);
+
+        assertThat(subject.add(30), is(true));
+        assertThat(subject.add(10), is(true));
+        assertThat(subject.add(30), is(false));
+        assertThat(subject.add(20), is(true));
+
+        assertThat(subject.size(), is(3));
+        assertThat(subject.get(30), is(0));
+        assertThat(subject.get(10), is(1));
+        assertThat(subject.get(20), is(2));
+        assertThat(subject.get(40), is(-1));
+    }
+
+    @Test
+    public void colliding_object_ids() {
+        final ObjectIdPositions subject = new ObjectIdPositions(100);
+        for (int i = 0; i < 100; i++) {
+            subject.add(i << 16);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(subject.get(i << 16), is(i));
+        }
+    }
+
+    @Test
+    public void random_object_ids() {
+        final int[] objectIds = new int[1000];
+        final Random random = new Random(0);
+        final ObjectIdPositions subject = new ObjectIdPositions(objectIds.length);
+        for (int i = 0; i < objectIds.length; i++) {
+            objectIds[i] = random.nextInt(Integer.MAX_VALUE);
+            subject.add(objectIds[i]);
+        }
+
+        for (int i = 0; i < objectIds.length; i++) {
+            assertThat(subject.get(objectIds[i]), is(i));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void more_than_expected() {
+        final ObjectIdPositions subject = new ObjectIdPositions(2);
+        subject.add(1);
+        subject.add(2);
+        subject.add(3);
+    }
+}
@@ -0,0 +1,156 @@
+package net.ripe.db.whois.common.dao.jdbc;
+
+import net.ripe.db.whois.common.dao.jdbc.domain.ObjectTypeIds;
+import net.ripe.db.whois.common.rpsl.ObjectType;
+import net.ripe.db.whois.common.rpsl.RpslObject;
+import net.ripe.db.whois.common.source.Source;
+import net.ripe.db.whois.common.source.SourceConfiguration;
+import net.ripe.db.whois.common.source.SourceContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+
+import static net.ripe.db.whois.common.domain.CIString.ciString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RpslObjectCacheTest {
+    private static final Source SLAVE = Source.slave("TEST");
+    private static final Source MASTER = Source.master("TEST");
+
+    @Mock SourceContext sourceContext;
+    @Mock SourceConfiguration sourceConfiguration;
+    @Mock JdbcTemplate jdbcTemplate;
+
+    private RpslObjectCache subject;
+    private RpslObject mntner = RpslObject.parse(1, "mntner: DEV-MNT");
+
+    @Before
+    public void setUp() throws Exception {
+        when(sourceContext.getSourceConfiguration(SLAVE)).thenReturn(sourceConfiguration);
+        when(sourceConfiguration.getJdbcTemplate()).thenReturn(jdbcTemplate);
+        when(jdbcTemplate.queryForInt(anyString())).thenReturn(10);
+
+        subject = new RpslObjectCache(sourceContext);
+        subject.setMaximumSizeMb(1);
+        subject.init();
+    }
+
+    @Test
+    public void disabled() {
+        subject = new RpslObjectCache(sourceContext);
+        subject.init();
+
+        assertThat(subject.isEnabled(), is(false));
+        assertThat(subject.getSerial(SLAVE), is(RpslObjectCache.NOT_CACHED));
+
+        subject.put(RpslObjectCache.objectKey(SLAVE, 1), 10, mntner);
+        assertThat(subject.get(RpslObjectCache.objectKey(SLAVE, 1)), is(nullValue()));
+    }
+
+    @Test
+    public void put_and_get() {
+        subject.put(RpslObjectCache.objectKey(SLAVE, 1), subject.getSerial(SLAVE), mntner);
+        subject.put(RpslObjectCache.primaryKey(SLAVE, ObjectType.MNTNER, ciString("DEV-MNT")), subject.getSerial(SLAVE), 1);
+
+        assertThat(subject.get(RpslObjectCache.objectKey(SLAVE, 1)), is(mntner));
+        assertThat(subject.get(RpslObjectCache.primaryKey(SLAVE, ObjectType.MNTNER, ciString("dev-mnt"))), is(1));
+        assertThat(subject.get(RpslObjectCache.indexKey(SLAVE, ObjectType.MNTNER, ciString("DEV-MNT"))), is(nullValue()));
+        assertThat(subject.getSize(), is(2L));
+        assertThat(subject.getWeight(), greaterThan((long) mntner.toByteArray().length));
+        assertThat(subject.getStats().hitCount(), is(2L));
+    }
+
+    @Test
+    public void master_not_cached() {
+        assertThat(subject.getSerial(MASTER), is(RpslObjectCache.NOT_CACHED));
+
+        subject.put(RpslObjectCache.objectKey(MASTER, 1), 10, mntner);
+        assertThat(subject.get(RpslObjectCache.objectKey(MASTER, 1)), is(nullValue()));
+    }
+
+    @Test
+    public void update_invalidates_changed_objects() {
+        final long serial = subject.getSerial(SLAVE);
+        subject.put(RpslObjectCache.objectKey(SLAVE, 1), serial, mntner);
+        subject.put(RpslObjectCache.primaryKey(SLAVE, ObjectType.MNTNER, ciString("DEV-MNT")), serial, 1);
+        subject.put(RpslObjectCache.objectKey(SLAVE, 2), serial, RpslObject.parse(2, "mntner: OTHER-MNT"));
+
+        givenSerials(12, 1, ObjectType.MNTNER, "DEV-MNT");
+        subject.update();
+
+        assertThat(subject.getSerial(SLAVE), is(12L));
+        assertThat(subject.get(RpslObjectCache.objectKey(SLAVE, 1)), is(nullValue()));
+        assertThat(subject.get(RpslObjectCache.primaryKey(SLAVE, ObjectType.MNTNER, ciString("DEV-MNT"))), is(nullValue()));
+        assertThat(subject.get(RpslObjectCache.objectKey(SLAVE, 2)), is(RpslObject.parse(2, "mntner: OTHER-MNT")));
+    }
+
+    @Test
+    public void put_loaded_before_update_is_dropped() {
+        final long serial = subject.getSerial(SLAVE);
+
+        givenSerials(12, 1, ObjectType.MNTNER, "DEV-MNT");
+        subject.update();
+
+        subject.put(RpslObjectCache.objectKey(SLAVE, 1), serial, mntner);
+        assertThat(subject.get(RpslObjectCache.objectKey(SLAVE, 1)), is(nullValue()));
+    }
+
+    @Test
+    public void update_far_behind_invalidates_source() {
+        subject.put(RpslObjectCache.objectKey(SLAVE, 2), subject.getSerial(SLAVE), RpslObject.parse(2, "mntner: OTHER-MNT"));
+
+        when(jdbcTemplate.queryForInt(anyString())).thenReturn(1_000_000);
+        subject.update();
+
+        assertThat(subject.get(RpslObjectCache.objectKey(SLAVE, 2)), is(nullValue()));
+        assertThat(subject.getSerial(SLAVE), is(1_000_000L));
+    }
+
+    @Test
+    public void serial_going_back_invalidates_source() {
+        subject.put(RpslObjectCache.objectKey(SLAVE, 2), subject.getSerial(SLAVE), RpslObject.parse(2, "mntner: OTHER-MNT"));
+
+        when(jdbcTemplate.queryForInt(anyString())).thenReturn(3);
+        subject.update();
+
+        assertThat(subject.get(RpslObjectCache.objectKey(SLAVE, 2)), is(nullValue()));
+        assertThat(subject.getSerial(SLAVE), is(3L));
+
+        subject.put(RpslObjectCache.objectKey(SLAVE, 2), subject.getSerial(SLAVE), RpslObject.parse(2, "mntner: NEW-MNT"));
+        assertThat(subject.get(RpslObjectCache.objectKey(SLAVE, 2)), is(RpslObject.parse(2, "mntner: NEW-MNT")));
+    }
+
+    private void givenSerials(final int lastSerial, final int objectId, final ObjectType objectType, final String pkey) {
+        when(jdbcTemplate.queryForInt(anyString())).thenReturn(lastSerial);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                final ResultSet rs = mock(ResultSet.class);
+                when(rs.getInt(1)).thenReturn(objectId);
+                when(rs.getInt(2)).thenReturn(ObjectTypeIds.getId(objectType));
+                when(rs.getString(3)).thenReturn(pkey);
+
+                ((RowCallbackHandler) invocation.getArguments()[1]).processRow(rs);
+                return null;
+            }
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), Matchers.<Object>anyVararg());
+    }
+}
@@ -3,6 +3,7 @@ package net.ripe.db.whois.common.dao.jdbc.index;
 import net.ripe.db.whois.common.rpsl.AttributeType;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
@@ -36,7 +37,7 @@ public class IndexStrategyAdapterTest {
 
     @Test
     public void removeFromIndex() {
-        subject.removeFromIndex(null, null);
+        subject.removeFromIndex((JdbcTemplate) null, null);
     }
 
     @Test
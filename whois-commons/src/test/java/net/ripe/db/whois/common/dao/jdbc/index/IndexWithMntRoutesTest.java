@@ -1,6 +1,7 @@
 package net.ripe.db.whois.common.dao.jdbc.index;
 
 import net.ripe.db.whois.common.dao.RpslObjectInfo;
+import net.ripe.db.whois.common.domain.CIString;
 import net.ripe.db.whois.common.rpsl.AttributeType;
 import net.ripe.db.whois.common.rpsl.RpslObject;
 import org.junit.Before;
@@ -61,6 +62,52 @@ public class IndexWithMntRoutesTest extends IndexTestBase {
         subject.addToIndex(whoisTemplate, rpslObjectInfo, rpslObject, rpslObject.getValueForAttribute(AttributeType.MNT_ROUTES));
     }
 
+    @Test
+    public void add_same_maintainer_twice() {
+        final RpslObject rpslObject = RpslObject.parse("" +
+                "inetnum:10.0.0.0 - 10.0.0.255\n" +
+                "netname:netname\n" +
+                "mnt-routes: DEV-MNT {10.0.0.0/28}\n" +
+                "mnt-routes: DEV-MNT {10.0.0.128/28}\n");
+
+        final RpslObjectInfo rpslObjectInfo = new RpslObjectInfo(2, rpslObject.getType(), rpslObject.getKey());
+        for (final CIString value : rpslObject.getValuesForAttribute(AttributeType.MNT_ROUTES)) {
+            assertThat(subject.addToIndex(whoisTemplate, rpslObjectInfo, rpslObject, value), is(1));
+        }
+
+        assertThat(getNrMntRoutes(), is(1));
+    }
+
+    @Test
+    public void add_reference_value_for_any() {
+        final RpslObject rpslObject = RpslObject.parse("" +
+                "inetnum:10.0.0.0 - 10.0.0.255\n" +
+                "netname:netname\n" +
+                "mnt-routes: DEV-MNT ANY\n");
+
+        final RpslObjectInfo rpslObjectInfo = new RpslObjectInfo(2, rpslObject.getType(), rpslObject.getKey());
+        for (final CIString value : rpslObject.findAttribute(AttributeType.MNT_ROUTES).getReferenceValues()) {
+            assertThat(subject.addToIndex(whoisTemplate, rpslObjectInfo, rpslObject, value), is(1));
+        }
+
+        assertThat(getNrMntRoutes(), is(1));
+    }
+
+    @Test
+    public void add_reference_value_for_prefixes() {
+        final RpslObject rpslObject = RpslObject.parse("" +
+                "inet6num:2a00:c00::/32\n" +
+                "netname:netname\n" +
+                "mnt-routes: DEV-MNT {2a00:c00::/48}\n");
+
+        final RpslObjectInfo rpslObjectInfo = new RpslObjectInfo(2, rpslObject.getType(), rpslObject.getKey());
+        for (final CIString value : rpslObject.findAttribute(AttributeType.MNT_ROUTES).getReferenceValues()) {
+            assertThat(subject.addToIndex(whoisTemplate, rpslObjectInfo, rpslObject, value), is(1));
+        }
+
+        assertThat(getNrMntRoutes(), is(1));
+    }
+
     @Test
     public void remove_for_inetnum() {
         final RpslObject inetnum = RpslObject.parse("" +
@@ -400,4 +400,18 @@ public class Ipv6ResourceTest {
         final Ipv6Resource subject = Ipv6Resource.parse("2001:2002:2003::/48");
         assertThat(subject.endAsInetAddress().getHostAddress(), is("2001:2002:2003:ffff:ffff:ffff:ffff:ffff"));
     }
+
+    @Test
+    public void fromLongs() {
+        final Ipv6Resource subject = Ipv6Resource.parse("ffff:2002:2003::/48");
+        final Ipv6Resource copy = Ipv6Resource.fromLongs(subject.beginMsb(), subject.beginLsb(), subject.endMsb(), subject.endLsb());
+
+        assertThat(copy, is(subject));
+        assertThat(copy.toString(), is("ffff:2002:2003::/48"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fromLongs_begin_after_end() {
+        Ipv6Resource.fromLongs(0, 2, 0, 1);
+    }
 }
@@ -135,4 +135,28 @@ public class MultiValueIntervalMapTest {
         final List<String> result = subject.findExactAndAllMoreSpecific(k_12);
         assertThat(result, contains(v_121, v_122, v_11));
     }
+
+    @Test
+    public void copy_is_not_modified_by_source() {
+        final MultiValueIntervalMap<Ipv4Resource, String> copy = new MultiValueIntervalMap<>(subject);
+
+        subject.put(k_13, "1-3 4");
+        subject.remove(k_12, v_121);
+        subject.remove(k_11);
+
+        assertThat(copy.findExact(k_11), contains(v_11));
+        assertThat(copy.findExact(k_12), contains(v_121, v_122));
+        assertThat(copy.findExact(k_13), contains(v_131, v_132, v_133));
+    }
+
+    @Test
+    public void source_is_not_modified_by_copy() {
+        final MultiValueIntervalMap<Ipv4Resource, String> copy = new MultiValueIntervalMap<>(subject);
+
+        copy.put(k_13, "1-3 4");
+        copy.remove(k_12, v_121);
+
+        assertThat(subject.findExact(k_12), contains(v_121, v_122));
+        assertThat(subject.findExact(k_13), contains(v_131, v_132, v_133));
+    }
 }
@@ -0,0 +1,82 @@
+package net.ripe.db.whois.common.iptree;
+
+import com.google.common.base.Stopwatch;
+import net.ripe.db.whois.common.ManualTest;
+import net.ripe.db.whois.common.domain.Ipv4Resource;
+import net.ripe.db.whois.common.etree.IntersectingIntervalException;
+import net.ripe.db.whois.common.etree.IntervalMap;
+import net.ripe.db.whois.common.etree.NestedIntervalMap;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Random;
+
+/**
+ * Compares build time, heap usage and lookup throughput of {@link CompactIpv4IntervalMap} and
+ * {@link NestedIntervalMap} for a realistic number of inetnums.
+ */
+@Category(ManualTest.class)
+public class CompactIpv4IntervalMapPerformanceTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompactIpv4IntervalMapPerformanceTest.class);
+
+    private static final int NR_ENTRIES = 4_000_000;
+    private static final int NR_LOOKUPS = 2_000_000;
+    private static final int NR_ROUNDS = 5;
+
+    @Test
+    public void nested_interval_map() {
+        run("NestedIntervalMap", new NestedIntervalMap<Ipv4Resource, Ipv4Entry>());
+    }
+
+    @Test
+    public void compact_interval_map() {
+        run("CompactIpv4IntervalMap", new CompactIpv4IntervalMap());
+    }
+
+    private void run(final String name, final IntervalMap<Ipv4Resource, Ipv4Entry> subject) {
+        final long heapBefore = usedHeap();
+        final Stopwatch stopwatch = new Stopwatch().start();
+
+        final Random random = new Random(0);
+        for (int i = 0; i < NR_ENTRIES; i++) {
+            final Ipv4Resource key = randomPrefix(random);
+            try {
+                subject.put(key, new Ipv4Entry(key, i));
+            } catch (IntersectingIntervalException ignored) {
+            }
+        }
+
+        subject.findExact(Ipv4Resource.MAX_RANGE);
+        LOGGER.info("{}: built {} entries in {}, using {} MB heap", name, NR_ENTRIES, stopwatch.stop(), (usedHeap() - heapBefore) / (1024 * 1024));
+
+        for (int round = 0; round < NR_ROUNDS; round++) {
+            final Random lookups = new Random(round);
+            long nrResults = 0;
+
+            stopwatch.reset().start();
+            for (int i = 0; i < NR_LOOKUPS; i++) {
+                final Ipv4Resource key = randomPrefix(lookups);
+                nrResults += subject.findExactOrFirstLessSpecific(key).size();
+                nrResults += subject.findAllLessSpecific(key).size();
+                nrResults += subject.findFirstMoreSpecific(key).size();
+            }
+
+            LOGGER.info("{}: round {}: {} lookups in {} ({} results)", name, round, 3 * NR_LOOKUPS, stopwatch.stop(), nrResults);
+        }
+    }
+
+    private static Ipv4Resource randomPrefix(final Random random) {
+        return Ipv4Resource.parsePrefixWithLength(random.nextInt() & 0xffffffffL, 12 + random.nextInt(17));
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,181 @@
+package net.ripe.db.whois.common.iptree;
+
+import net.ripe.db.whois.common.domain.Ipv4Resource;
+import net.ripe.db.whois.common.etree.IntersectingIntervalException;
+import net.ripe.db.whois.common.etree.IntervalMap;
+import net.ripe.db.whois.common.etree.NestedIntervalMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class CompactIpv4IntervalMapTest {
+    private final long seed = System.currentTimeMillis();
+    private final Random random = new Random(seed);
+
+    private CompactIpv4IntervalMap subject;
+
+    private Ipv4Entry e_1_10 = entry(1, 10, 1);
+    private Ipv4Entry e_1_5 = entry(1, 5, 2);
+    private Ipv4Entry e_2_3 = entry(2, 3, 3);
+    private Ipv4Entry e_6_10 = entry(6, 10, 4);
+    private Ipv4Entry e_20_30 = entry(20, 30, 5);
+
+    @Before
+    public void setUp() {
+        subject = new CompactIpv4IntervalMap();
+        for (final Ipv4Entry entry : new Ipv4Entry[]{e_6_10, e_20_30, e_2_3, e_1_10, e_1_5}) {
+            subject.put(entry.getKey(), entry);
+        }
+    }
+
+    @Test
+    public void findExact() {
+        assertThat(subject.findExact(e_1_5.getKey()), contains(e_1_5));
+        assertThat(subject.findExact(new Ipv4Resource(1, 4)), empty());
+    }
+
+    @Test
+    public void findExactAndAllLessSpecific() {
+        assertThat(subject.findExactAndAllLessSpecific(e_2_3.getKey()), contains(e_1_10, e_1_5, e_2_3));
+        assertThat(subject.findExactAndAllLessSpecific(new Ipv4Resource(4, 4)), contains(e_1_10, e_1_5));
+        assertThat(subject.findExactAndAllLessSpecific(new Ipv4Resource(11, 11)), empty());
+    }
+
+    @Test
+    public void findFirstLessSpecific() {
+        assertThat(subject.findFirstLessSpecific(e_2_3.getKey()), contains(e_1_5));
+        assertThat(subject.findFirstLessSpecific(e_1_10.getKey()), empty());
+    }
+
+    @Test
+    public void findFirstMoreSpecific() {
+        assertThat(subject.findFirstMoreSpecific(e_1_10.getKey()), contains(e_1_5, e_6_10));
+        assertThat(subject.findFirstMoreSpecific(Ipv4Resource.MAX_RANGE), contains(e_1_10, e_20_30));
+    }
+
+    @Test
+    public void findAllMoreSpecific() {
+        assertThat(subject.findAllMoreSpecific(e_1_10.getKey()), contains(e_1_5, e_2_3, e_6_10));
+        assertThat(subject.findExactAndAllMoreSpecific(e_1_10.getKey()), contains(e_1_10, e_1_5, e_2_3, e_6_10));
+    }
+
+    @Test
+    public void put_replaces_value() {
+        final Ipv4Entry replacement = entry(1, 5, 10);
+        subject.put(replacement.getKey(), replacement);
+
+        assertEquals(10, subject.findExact(e_1_5.getKey()).get(0).getObjectId());
+    }
+
+    @Test(expected = IntersectingIntervalException.class)
+    public void put_intersecting() {
+        subject.compact();
+        subject.put(new Ipv4Resource(4, 7), entry(4, 7, 10));
+    }
+
+    @Test(expected = IntersectingIntervalException.class)
+    public void put_intersecting_pending() {
+        subject.put(new Ipv4Resource(40, 50), entry(40, 50, 10));
+        subject.put(new Ipv4Resource(45, 55), entry(45, 55, 11));
+    }
+
+    @Test
+    public void put_intersecting_removed() {
+        subject.compact();
+        subject.remove(e_20_30.getKey());
+        subject.put(new Ipv4Resource(25, 35), entry(25, 35, 10));
+
+        assertThat(subject.findFirstMoreSpecific(Ipv4Resource.MAX_RANGE), contains(e_1_10, entry(25, 35, 10)));
+    }
+
+    @Test
+    public void remove_promotes_children() {
+        subject.remove(e_1_5.getKey());
+
+        assertThat(subject.findFirstMoreSpecific(e_1_10.getKey()), contains(e_2_3, e_6_10));
+        assertThat(subject.findFirstLessSpecific(e_2_3.getKey()), contains(e_1_10));
+    }
+
+    @Test
+    public void remove_with_value() {
+        subject.remove(e_1_5.getKey(), e_2_3);
+        assertThat(subject.findExact(e_1_5.getKey()), contains(e_1_5));
+
+        subject.remove(e_1_5.getKey(), e_1_5);
+        assertThat(subject.findExact(e_1_5.getKey()), empty());
+    }
+
+    @Test
+    public void clear() {
+        subject.clear();
+        assertThat(subject.findAllMoreSpecific(Ipv4Resource.MAX_RANGE), empty());
+    }
+
+    @Test
+    public void copy_is_independent() {
+        final CompactIpv4IntervalMap copy = new CompactIpv4IntervalMap(subject);
+        copy.remove(e_1_10.getKey());
+        subject.remove(e_20_30.getKey());
+
+        assertThat(copy.findFirstMoreSpecific(Ipv4Resource.MAX_RANGE), contains(e_1_5, e_6_10, e_20_30));
+        assertThat(subject.findFirstMoreSpecific(Ipv4Resource.MAX_RANGE), contains(e_1_10));
+    }
+
+    @Test
+    public void same_results_as_nested_interval_map() {
+        final IntervalMap<Ipv4Resource, Ipv4Entry> expected = new NestedIntervalMap<>();
+        subject = new CompactIpv4IntervalMap();
+
+        final List<Ipv4Resource> keys = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            final Ipv4Resource key = randomPrefix();
+            final Ipv4Entry entry = new Ipv4Entry(key, i);
+            expected.put(key, entry);
+            subject.put(key, entry);
+            keys.add(key);
+
+            if (i % 10 == 0) {
+                final Ipv4Resource removed = keys.get(random.nextInt(keys.size()));
+                expected.remove(removed);
+                subject.remove(removed);
+            }
+
+            if (i % 100 == 0) {
+                assertSameResults(expected, randomPrefix());
+            }
+        }
+
+        for (int i = 0; i < 200; i++) {
+            assertSameResults(expected, randomPrefix());
+            assertSameResults(expected, keys.get(random.nextInt(keys.size())));
+        }
+    }
+
+    private void assertSameResults(final IntervalMap<Ipv4Resource, Ipv4Entry> expected, final Ipv4Resource key) {
+        final String message = "key " + key + " (seed = " + seed + ")";
+        assertEquals(message, expected.findExact(key), subject.findExact(key));
+        assertEquals(message, expected.findFirstLessSpecific(key), subject.findFirstLessSpecific(key));
+        assertEquals(message, expected.findExactOrFirstLessSpecific(key), subject.findExactOrFirstLessSpecific(key));
+        assertEquals(message, expected.findAllLessSpecific(key), subject.findAllLessSpecific(key));
+        assertEquals(message, expected.findExactAndAllLessSpecific(key), subject.findExactAndAllLessSpecific(key));
+        assertEquals(message, expected.findFirstMoreSpecific(key), subject.findFirstMoreSpecific(key));
+        assertEquals(message, expected.findAllMoreSpecific(key), subject.findAllMoreSpecific(key));
+        assertEquals(message, expected.findExactAndAllMoreSpecific(key), subject.findExactAndAllMoreSpecific(key));
+    }
+
+    private Ipv4Resource randomPrefix() {
+        return Ipv4Resource.parsePrefixWithLength(random.nextInt() & 0xffffffffL, 8 + random.nextInt(17));
+    }
+
+    private static Ipv4Entry entry(final long begin, final long end, final int objectId) {
+        return new Ipv4Entry(new Ipv4Resource(begin, end), objectId);
+    }
+}
@@ -0,0 +1,221 @@
+package net.ripe.db.whois.common.iptree;
+
+import net.ripe.db.whois.common.domain.Ipv6Resource;
+import net.ripe.db.whois.common.etree.IntersectingIntervalException;
+import net.ripe.db.whois.common.etree.IntervalMap;
+import net.ripe.db.whois.common.etree.MultiValueIntervalMap;
+import net.ripe.db.whois.common.etree.NestedIntervalMap;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class CompactIpv6IntervalMapTest {
+    private final long seed = System.currentTimeMillis();
+    private final Random random = new Random(seed);
+
+    private final Ipv6Resource k_32 = Ipv6Resource.parse("2001:db8::/32");
+    private final Ipv6Resource k_48 = Ipv6Resource.parse("2001:db8:1::/48");
+    private final Ipv6Resource k_64 = Ipv6Resource.parse("2001:db8:1:1::/64");
+    private final Ipv6Resource k_high = Ipv6Resource.parse("ffff::/16");
+
+    @Test
+    public void lookups() {
+        final CompactIpv6IntervalMap<Ipv6Entry> subject = CompactIpv6IntervalMap.forEntries();
+        for (final Ipv6Resource key : new Ipv6Resource[]{k_64, k_high, k_32, k_48}) {
+            subject.put(key, new Ipv6Entry(key, 1));
+        }
+
+        assertThat(subject.findExact(k_48), contains(new Ipv6Entry(k_48, 1)));
+        assertThat(subject.findAllLessSpecific(k_64), contains(new Ipv6Entry(k_32, 1), new Ipv6Entry(k_48, 1)));
+        assertThat(subject.findFirstMoreSpecific(Ipv6Resource.MAX_RANGE), contains(new Ipv6Entry(k_32, 1), new Ipv6Entry(k_high, 1)));
+        assertThat(subject.findAllMoreSpecific(k_32), contains(new Ipv6Entry(k_48, 1), new Ipv6Entry(k_64, 1)));
+        assertThat(subject.findExactOrFirstLessSpecific(Ipv6Resource.parse("ffff:1::/32")), contains(new Ipv6Entry(k_high, 1)));
+    }
+
+    @Test(expected = IntersectingIntervalException.class)
+    public void put_intersecting() {
+        final CompactIpv6IntervalMap<Ipv6Entry> subject = CompactIpv6IntervalMap.forEntries();
+        subject.put(k_48, new Ipv6Entry(k_48, 1));
+        subject.compact();
+
+        final Ipv6Resource intersecting = new Ipv6Resource(k_48.begin().subtract(BigInteger.ONE), k_48.begin());
+        subject.put(intersecting, new Ipv6Entry(intersecting, 2));
+    }
+
+    @Test
+    public void route_entries() {
+        final CompactIpv6IntervalMap<Ipv6RouteEntry> subject = CompactIpv6IntervalMap.forRouteEntries();
+        subject.put(k_48, new Ipv6RouteEntry(k_48, 1, "AS3333"));
+        subject.put(k_48, new Ipv6RouteEntry(k_48, 2, "AS10"));
+        subject.put(k_48, new Ipv6RouteEntry(k_48, 3, "AS3333"));
+        subject.put(k_32, new Ipv6RouteEntry(k_32, 4, "AS4294967295"));
+
+        final List<Ipv6RouteEntry> result = subject.findExactAndAllLessSpecific(k_48);
+        assertThat(result, contains(
+                new Ipv6RouteEntry(k_32, 4, "AS4294967295"),
+                new Ipv6RouteEntry(k_48, 2, "AS10"),
+                new Ipv6RouteEntry(k_48, 1, "AS3333")));
+        assertEquals(1, result.get(2).getObjectId());
+
+        subject.remove(k_48, new Ipv6RouteEntry(k_48, 1, "AS3333"));
+        assertThat(subject.findExact(k_48), contains(new Ipv6RouteEntry(k_48, 2, "AS10")));
+
+        subject.remove(k_48, new Ipv6RouteEntry(k_48, 2, "AS10"));
+        assertThat(subject.findExact(k_48), empty());
+    }
+
+    @Test
+    public void route_entry_origin_kept_as_given() {
+        final CompactIpv6IntervalMap<Ipv6RouteEntry> subject = CompactIpv6IntervalMap.forRouteEntries();
+        subject.put(k_48, new Ipv6RouteEntry(k_48, 1, "AS0123"));
+        subject.put(k_48, new Ipv6RouteEntry(k_48, 2, "AS123"));
+
+        assertThat(subject.findExact(k_48), contains(
+                new Ipv6RouteEntry(k_48, 1, "AS0123"),
+                new Ipv6RouteEntry(k_48, 2, "AS123")));
+    }
+
+    @Test
+    public void route_entry_with_origin_not_fitting_kept() {
+        final CompactIpv6IntervalMap<Ipv6RouteEntry> subject = CompactIpv6IntervalMap.forRouteEntries();
+        subject.put(k_48, new Ipv6RouteEntry(k_48, 1, "AS99999999999999999999"));
+        subject.put(k_48, new Ipv6RouteEntry(k_48, 2, "AS4294967295"));
+        subject.put(k_48, new Ipv6RouteEntry(k_48, 3, "AS0"));
+
+        assertThat(subject.findExact(k_48), contains(
+                new Ipv6RouteEntry(k_48, 3, "AS0"),
+                new Ipv6RouteEntry(k_48, 2, "AS4294967295"),
+                new Ipv6RouteEntry(k_48, 1, "AS99999999999999999999")));
+
+        subject.remove(k_48, new Ipv6RouteEntry(k_48, 1, "AS99999999999999999999"));
+        assertThat(subject.findExact(k_48), hasSize(2));
+    }
+
+    @Test
+    public void route_entry_with_null_origin_kept() {
+        final CompactIpv6IntervalMap<Ipv6RouteEntry> subject = CompactIpv6IntervalMap.forRouteEntries();
+        subject.put(k_32, new Ipv6RouteEntry(k_32, 1, null));
+
+        assertThat(subject.findExact(k_32), hasSize(1));
+        assertThat(subject.findExact(k_32).get(0).getOrigin(), is(nullValue()));
+    }
+
+    @Test
+    public void removed_origins_not_kept() {
+        final CompactIpv6IntervalMap<Ipv6RouteEntry> subject = CompactIpv6IntervalMap.forRouteEntries();
+        subject.put(k_32, new Ipv6RouteEntry(k_32, 1, "AS0001"));
+        subject.put(k_48, new Ipv6RouteEntry(k_48, 2, "AS0002"));
+        subject.put(k_64, new Ipv6RouteEntry(k_64, 3, "AS0003"));
+        assertThat(subject.nrUndecodableValues(), is(3));
+
+        final CompactIpv6IntervalMap<Ipv6RouteEntry> copy = new CompactIpv6IntervalMap<>(subject);
+        subject.remove(k_32);
+        subject.remove(k_48, new Ipv6RouteEntry(k_48, 2, "AS0002"));
+        subject.remove(k_64, new Ipv6RouteEntry(k_64, 3, "AS0003"));
+        subject.put(k_64, new Ipv6RouteEntry(k_64, 3, "AS3"));
+
+        assertThat(subject.nrUndecodableValues(), is(0));
+        assertThat(subject.findExactAndAllMoreSpecific(Ipv6Resource.MAX_RANGE), contains(new Ipv6RouteEntry(k_64, 3, "AS3")));
+        assertThat(copy.findExactAndAllMoreSpecific(Ipv6Resource.MAX_RANGE), contains(
+                new Ipv6RouteEntry(k_32, 1, "AS0001"),
+                new Ipv6RouteEntry(k_48, 2, "AS0002"),
+                new Ipv6RouteEntry(k_64, 3, "AS0003")));
+    }
+
+    @Test
+    public void copy_is_independent() {
+        final CompactIpv6IntervalMap<Ipv6Entry> subject = CompactIpv6IntervalMap.forEntries();
+        subject.put(k_32, new Ipv6Entry(k_32, 1));
+        subject.put(k_48, new Ipv6Entry(k_48, 2));
+
+        final CompactIpv6IntervalMap<Ipv6Entry> copy = new CompactIpv6IntervalMap<>(subject);
+        copy.remove(k_32);
+        subject.put(k_64, new Ipv6Entry(k_64, 3));
+
+        assertThat(copy.findAllMoreSpecific(Ipv6Resource.MAX_RANGE), contains(new Ipv6Entry(k_48, 2)));
+        assertThat(subject.findAllMoreSpecific(Ipv6Resource.MAX_RANGE), contains(new Ipv6Entry(k_32, 1), new Ipv6Entry(k_48, 2), new Ipv6Entry(k_64, 3)));
+    }
+
+    @Test
+    public void same_results_as_nested_interval_map() {
+        final IntervalMap<Ipv6Resource, Ipv6Entry> expected = new NestedIntervalMap<>();
+        final CompactIpv6IntervalMap<Ipv6Entry> subject = CompactIpv6IntervalMap.forEntries();
+
+        final List<Ipv6Resource> keys = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            final Ipv6Resource key = randomPrefix();
+            expected.put(key, new Ipv6Entry(key, i));
+            subject.put(key, new Ipv6Entry(key, i));
+            keys.add(key);
+
+            if (i % 10 == 0) {
+                final Ipv6Resource removed = keys.get(random.nextInt(keys.size()));
+                expected.remove(removed);
+                subject.remove(removed);
+            }
+        }
+
+        for (int i = 0; i < 200; i++) {
+            assertSameResults(expected, subject, randomPrefix());
+            assertSameResults(expected, subject, keys.get(random.nextInt(keys.size())));
+        }
+    }
+
+    @Test
+    public void same_results_as_multi_value_interval_map() {
+        final IntervalMap<Ipv6Resource, Ipv6RouteEntry> expected = new MultiValueIntervalMap<>();
+        final CompactIpv6IntervalMap<Ipv6RouteEntry> subject = CompactIpv6IntervalMap.forRouteEntries();
+
+        final List<Ipv6RouteEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            final Ipv6Resource key = random.nextInt(4) == 0 && !entries.isEmpty() ? entries.get(random.nextInt(entries.size())).getKey() : randomPrefix();
+            final Ipv6RouteEntry entry = new Ipv6RouteEntry(key, i, "AS" + random.nextInt(100));
+            expected.put(key, entry);
+            subject.put(key, entry);
+            entries.add(entry);
+
+            if (i % 10 == 0) {
+                final Ipv6RouteEntry removed = entries.get(random.nextInt(entries.size()));
+                expected.remove(removed.getKey(), removed);
+                subject.remove(removed.getKey(), removed);
+            }
+        }
+
+        for (int i = 0; i < 200; i++) {
+            assertSameResults(expected, subject, randomPrefix());
+            assertSameResults(expected, subject, entries.get(random.nextInt(entries.size())).getKey());
+        }
+    }
+
+    private <V> void assertSameResults(final IntervalMap<Ipv6Resource, V> expected, final IntervalMap<Ipv6Resource, V> subject, final Ipv6Resource key) {
+        final String message = "key " + key + " (seed = " + seed + ")";
+        assertEquals(message, expected.findExact(key), subject.findExact(key));
+        assertEquals(message, expected.findFirstLessSpecific(key), subject.findFirstLessSpecific(key));
+        assertEquals(message, expected.findExactOrFirstLessSpecific(key), subject.findExactOrFirstLessSpecific(key));
+        assertEquals(message, expected.findAllLessSpecific(key), subject.findAllLessSpecific(key));
+        assertEquals(message, expected.findExactAndAllLessSpecific(key), subject.findExactAndAllLessSpecific(key));
+        assertEquals(message, expected.findFirstMoreSpecific(key), subject.findFirstMoreSpecific(key));
+        assertEquals(message, expected.findAllMoreSpecific(key), subject.findAllMoreSpecific(key));
+        assertEquals(message, expected.findExactAndAllMoreSpecific(key), subject.findExactAndAllMoreSpecific(key));
+    }
+
+    // random prefixes in the upper half of the address space as well, to exercise unsigned comparison
+    private Ipv6Resource randomPrefix() {
+        final BigInteger address = new BigInteger(128, random);
+        final int prefixLength = 8 + random.nextInt(60);
+        final BigInteger size = BigInteger.ONE.shiftLeft(128 - prefixLength);
+        final BigInteger begin = address.subtract(address.mod(size));
+        return new Ipv6Resource(begin, begin.add(size).subtract(BigInteger.ONE));
+    }
+}
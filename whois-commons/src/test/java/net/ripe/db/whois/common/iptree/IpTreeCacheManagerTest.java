@@ -0,0 +1,319 @@
+package net.ripe.db.whois.common.iptree;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import net.ripe.db.whois.common.dao.jdbc.domain.ObjectTypeIds;
+import net.ripe.db.whois.common.domain.Ipv4Resource;
+import net.ripe.db.whois.common.domain.Ipv6Resource;
+import net.ripe.db.whois.common.domain.serials.Operation;
+import net.ripe.db.whois.common.etree.Interval;
+import net.ripe.db.whois.common.etree.IntervalMap;
+import net.ripe.db.whois.common.etree.NestedIntervalMap;
+import net.ripe.db.whois.common.rpsl.ObjectType;
+import net.ripe.db.whois.common.source.Source;
+import net.ripe.db.whois.common.source.SourceConfiguration;
+import net.ripe.db.whois.common.source.SourceContext;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static net.ripe.db.whois.common.domain.CIString.ciString;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class IpTreeCacheManagerTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock SourceContext sourceContext;
+    @Mock SourceConfiguration sourceConfiguration;
+    @Mock JdbcTemplate jdbcTemplate;
+
+    private LoopbackIpTreeUpdateTransport transport;
+    private IpTreeCacheManager publisher;
+    private IpTreeCacheManager subscriber;
+
+    @Before
+    public void setUp() throws Exception {
+        when(sourceConfiguration.getSource()).thenReturn(Source.master("TEST"));
+        when(sourceConfiguration.getJdbcTemplate()).thenReturn(jdbcTemplate);
+        when(jdbcTemplate.queryForInt(anyString())).thenReturn(10);
+
+        final File snapshotDirectory = folder.getRoot();
+        IpTreeSnapshot.write(new File(snapshotDirectory, "test.iptree"), ciString("TEST"), new IpTreeCacheManager.NestedIntervalMaps(new IpTreeCacheManager.TreeLayout(false, false), 10));
+
+        transport = new LoopbackIpTreeUpdateTransport();
+        publisher = createIpTreeCacheManager(snapshotDirectory);
+        subscriber = createIpTreeCacheManager(snapshotDirectory);
+    }
+
+    private IpTreeCacheManager createIpTreeCacheManager(final File snapshotDirectory) {
+        final IpTreeCacheManager ipTreeCacheManager = new IpTreeCacheManager(sourceContext, transport);
+        ipTreeCacheManager.setSnapshotDirectory(snapshotDirectory.getAbsolutePath());
+        ipTreeCacheManager.subscribe();
+        ipTreeCacheManager.init(sourceConfiguration);
+        return ipTreeCacheManager;
+    }
+
+    @Test
+    public void init_from_snapshot() {
+        assertThat(subscriber.get(ciString("TEST")).lastSerial, is(10L));
+    }
+
+    @Test
+    public void publish_applies_updates_to_subscriber() {
+        givenUpdates(12, new IpTreeCacheManager.IpTreeUpdate(ObjectType.INETNUM, "10.0.0.0 - 10.255.255.255", 1, Operation.UPDATE));
+
+        publisher.publish(sourceConfiguration);
+
+        assertThat(publisher.get(ciString("TEST")).lastSerial, is(12L));
+        assertThat(subscriber.get(ciString("TEST")).lastSerial, is(12L));
+        assertThat(subscriber.get(ciString("TEST")).ipv4TreeCache.findExact(Ipv4Resource.parse("10/8")), contains(new Ipv4Entry(Ipv4Resource.parse("10/8"), 1)));
+    }
+
+    @Test
+    public void publish_includes_updates_applied_by_poll() {
+        givenUpdates(11, new IpTreeCacheManager.IpTreeUpdate(ObjectType.INETNUM, "10.0.0.0 - 10.255.255.255", 1, Operation.UPDATE));
+        publisher.publish(sourceConfiguration);
+
+        givenUpdates(13, new IpTreeCacheManager.IpTreeUpdate(ObjectType.INETNUM, "10.0.0.0 - 10.255.255.255", 1, Operation.DELETE));
+        publisher.update(sourceConfiguration);
+        publisher.publish(sourceConfiguration);
+
+        assertThat(subscriber.get(ciString("TEST")).lastSerial, is(13L));
+        assertThat(subscriber.get(ciString("TEST")).ipv4TreeCache.findExact(Ipv4Resource.parse("10/8")), is(empty()));
+    }
+
+    @Test
+    public void apply_delta_not_covering_serial() {
+        subscriber.apply(new IpTreeDelta("TEST", 11, 12, Lists.newArrayList(new IpTreeCacheManager.IpTreeUpdate(ObjectType.INETNUM, "10.0.0.0 - 10.255.255.255", 1, Operation.UPDATE))));
+
+        assertThat(subscriber.get(ciString("TEST")).lastSerial, is(10L));
+        assertThat(subscriber.get(ciString("TEST")).ipv4TreeCache.findExact(Ipv4Resource.parse("10/8")), is(empty()));
+    }
+
+    @Test
+    public void apply_delta_overlapping_serial() {
+        subscriber.apply(new IpTreeDelta("TEST", 8, 12, Lists.newArrayList(new IpTreeCacheManager.IpTreeUpdate(ObjectType.INETNUM, "10.0.0.0 - 10.255.255.255", 1, Operation.UPDATE))));
+
+        assertThat(subscriber.get(ciString("TEST")).lastSerial, is(12L));
+        assertThat(subscriber.get(ciString("TEST")).ipv4TreeCache.findExact(Ipv4Resource.parse("10/8")), contains(new Ipv4Entry(Ipv4Resource.parse("10/8"), 1)));
+    }
+
+    @Test
+    public void apply_delta_unknown_source() {
+        subscriber.apply(new IpTreeDelta("OTHER", 10, 12, Collections.<IpTreeCacheManager.IpTreeUpdate>emptyList()));
+
+        assertThat(subscriber.get(ciString("TEST")).lastSerial, is(10L));
+    }
+
+    @Test
+    public void update_shares_tree_of_previous_snapshot() {
+        final IpTreeCacheManager.NestedIntervalMaps previous = subscriber.get(ciString("TEST"));
+        final IpTreeCacheManager.NestedIntervalMaps updated = previous.update(Lists.newArrayList(new IpTreeCacheManager.IpTreeUpdate(ObjectType.INETNUM, "10.0.0.0 - 10.255.255.255", 1, Operation.UPDATE)), 11);
+
+        assertThat(((OverlayIntervalMap<?, ?>) updated.ipv4TreeCache).getBase(), sameInstance((Object) previous.ipv4TreeCache));
+        assertThat(updated.ipv6TreeCache, sameInstance(previous.ipv6TreeCache));
+        assertThat(updated.ipv4TreeCache.findExact(Ipv4Resource.parse("10/8")), contains(new Ipv4Entry(Ipv4Resource.parse("10/8"), 1)));
+        assertThat(previous.ipv4TreeCache.findExact(Ipv4Resource.parse("10/8")), is(empty()));
+    }
+
+    @Test
+    public void update_merges_full_overlay() {
+        final List<IpTreeCacheManager.IpTreeUpdate> updates = Lists.newArrayList();
+        for (int i = 0; i < IpTreeCacheManager.NestedIntervalMaps.MAX_OVERLAY_MODIFICATIONS; i++) {
+            updates.add(new IpTreeCacheManager.IpTreeUpdate(ObjectType.INETNUM, new Ipv4Resource(i, i).toRangeString(), i, Operation.UPDATE));
+        }
+
+        final IpTreeCacheManager.NestedIntervalMaps updated = subscriber.get(ciString("TEST")).update(updates, 11);
+
+        assertThat(updated.ipv4TreeCache, instanceOf(NestedIntervalMap.class));
+        assertThat(updated.ipv4TreeCache.findFirstMoreSpecific(Ipv4Resource.MAX_RANGE).size(), is(IpTreeCacheManager.NestedIntervalMaps.MAX_OVERLAY_MODIFICATIONS));
+    }
+
+    @Test
+    public void rebuild_same_as_sequential_update() throws Exception {
+        assertRebuildSameAsSequentialUpdate(new IpTreeCacheManager(sourceContext, transport), new IpTreeCacheManager.TreeLayout(false, false));
+    }
+
+    @Test
+    public void rebuild_compact_same_as_sequential_update() throws Exception {
+        final IpTreeCacheManager ipTreeCacheManager = new IpTreeCacheManager(sourceContext, transport);
+        ipTreeCacheManager.setCompactIpv4Sources("TEST");
+        ipTreeCacheManager.setCompactIpv6Sources("TEST");
+
+        assertRebuildSameAsSequentialUpdate(ipTreeCacheManager, new IpTreeCacheManager.TreeLayout(true, true));
+    }
+
+    private void assertRebuildSameAsSequentialUpdate(final IpTreeCacheManager ipTreeCacheManager, final IpTreeCacheManager.TreeLayout treeLayout) throws Exception {
+        final long seed = System.currentTimeMillis();
+        final Random random = new Random(seed);
+
+        final List<IpTreeCacheManager.IpTreeUpdate> updates = Lists.newArrayList();
+        for (int i = 0; i < 2000; i++) {
+            final String origin = "AS" + random.nextInt(3);
+            updates.add(new IpTreeCacheManager.IpTreeUpdate(ObjectType.INETNUM, randomIpv4Prefix(random).toRangeString(), 5 * i, Operation.UPDATE));
+            updates.add(new IpTreeCacheManager.IpTreeUpdate(ObjectType.INET6NUM, randomIpv6Prefix(random).toString(), 5 * i + 1, Operation.UPDATE));
+            updates.add(new IpTreeCacheManager.IpTreeUpdate(ObjectType.ROUTE, randomIpv4Prefix(random) + origin, 5 * i + 2, Operation.UPDATE));
+            updates.add(new IpTreeCacheManager.IpTreeUpdate(ObjectType.ROUTE6, randomIpv6Prefix(random) + origin, 5 * i + 3, Operation.UPDATE));
+        }
+
+        int objectId = 10000;
+        for (final String domain : new String[]{"10.in-addr.arpa", "1.10.in-addr.arpa", "8.b.d.0.1.0.0.2.ip6.arpa", "ripe.net"}) {
+            updates.add(new IpTreeCacheManager.IpTreeUpdate(ObjectType.DOMAIN, domain, objectId++, Operation.UPDATE));
+        }
+
+        givenLastRows(updates);
+        ipTreeCacheManager.rebuild(sourceConfiguration);
+
+        final IpTreeCacheManager.NestedIntervalMaps expected = new IpTreeCacheManager.NestedIntervalMaps(treeLayout, 10).update(updates, 10);
+        final IpTreeCacheManager.NestedIntervalMaps actual = ipTreeCacheManager.get(ciString("TEST"));
+
+        final String message = "seed = " + seed;
+        assertThat(actual.lastSerial, is(10L));
+        assertSameEntries(message, expected.ipv4TreeCache, actual.ipv4TreeCache, Ipv4Resource.MAX_RANGE);
+        assertSameEntries(message, expected.ipv6TreeCache, actual.ipv6TreeCache, Ipv6Resource.MAX_RANGE);
+        assertSameEntries(message, expected.ipv4RouteTreeCache, actual.ipv4RouteTreeCache, Ipv4Resource.MAX_RANGE);
+        assertSameEntries(message, expected.ipv6RouteTreeCache, actual.ipv6RouteTreeCache, Ipv6Resource.MAX_RANGE);
+        assertSameEntries(message, expected.ipv4DomainTreeCache, actual.ipv4DomainTreeCache, Ipv4Resource.MAX_RANGE);
+        assertSameEntries(message, expected.ipv6DomainTreeCache, actual.ipv6DomainTreeCache, Ipv6Resource.MAX_RANGE);
+        assertThat(actual.ipv4DomainTreeCache.findExactAndAllMoreSpecific(Ipv4Resource.MAX_RANGE).size(), is(2));
+        assertThat(actual.ipv6DomainTreeCache.findExactAndAllMoreSpecific(Ipv6Resource.MAX_RANGE).size(), is(1));
+    }
+
+    // entries are equal by key, so compare object ids as well
+    private static <K extends Interval<K>, V extends IpEntry<K>> void assertSameEntries(final String message, final IntervalMap<K, V> expected, final IntervalMap<K, V> actual, final K maxRange) {
+        final List<V> expectedEntries = expected.findExactAndAllMoreSpecific(maxRange);
+        final List<V> actualEntries = actual.findExactAndAllMoreSpecific(maxRange);
+
+        assertEquals(message, expectedEntries, actualEntries);
+        for (int i = 0; i < expectedEntries.size(); i++) {
+            assertEquals(message, expectedEntries.get(i).getObjectId(), actualEntries.get(i).getObjectId());
+        }
+    }
+
+    private static Ipv4Resource randomIpv4Prefix(final Random random) {
+        return Ipv4Resource.parsePrefixWithLength(random.nextInt() & 0xffffffffL, 8 + random.nextInt(17));
+    }
+
+    private static Ipv6Resource randomIpv6Prefix(final Random random) {
+        return random.nextBoolean()
+                ? Ipv6Resource.parse(String.format("%x::/16", random.nextInt(0x10000)))
+                : Ipv6Resource.parse(String.format("%x:%x::/32", random.nextInt(0x10000), random.nextInt(0x10000)));
+    }
+
+    // the rebuild streams the rows of each object type from the last table, on a connection per object type
+    private void givenLastRows(final List<IpTreeCacheManager.IpTreeUpdate> rows) throws Exception {
+        final Map<Integer, List<IpTreeCacheManager.IpTreeUpdate>> rowsByType = Maps.newHashMap();
+        for (final IpTreeCacheManager.IpTreeUpdate row : rows) {
+            final int typeId = ObjectTypeIds.getId(row.objectType);
+            if (!rowsByType.containsKey(typeId)) {
+                rowsByType.put(typeId, Lists.<IpTreeCacheManager.IpTreeUpdate>newArrayList());
+            }
+            rowsByType.get(typeId).add(row);
+        }
+
+        final Connection connection = mock(Connection.class);
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws Throwable {
+                return ((ConnectionCallback<?>) invocation.getArguments()[0]).doInConnection(connection);
+            }
+        });
+
+        when(connection.prepareStatement(anyString(), anyInt(), anyInt())).thenAnswer(new Answer<PreparedStatement>() {
+            @Override
+            public PreparedStatement answer(final InvocationOnMock invocation) throws Throwable {
+                final AtomicInteger typeId = new AtomicInteger();
+                final PreparedStatement preparedStatement = mock(PreparedStatement.class);
+                doAnswer(new Answer<Void>() {
+                    @Override
+                    public Void answer(final InvocationOnMock invocation) throws Throwable {
+                        typeId.set((Integer) invocation.getArguments()[1]);
+                        return null;
+                    }
+                }).when(preparedStatement).setInt(anyInt(), anyInt());
+
+                when(preparedStatement.executeQuery()).thenAnswer(new Answer<ResultSet>() {
+                    @Override
+                    public ResultSet answer(final InvocationOnMock invocation) throws Throwable {
+                        final List<IpTreeCacheManager.IpTreeUpdate> typeRows = rowsByType.get(typeId.get());
+                        return resultSet(typeRows == null ? Collections.<IpTreeCacheManager.IpTreeUpdate>emptyList() : typeRows);
+                    }
+                });
+
+                return preparedStatement;
+            }
+        });
+    }
+
+    private static ResultSet resultSet(final List<IpTreeCacheManager.IpTreeUpdate> rows) throws Exception {
+        final Iterator<IpTreeCacheManager.IpTreeUpdate> iterator = rows.iterator();
+        final AtomicReference<IpTreeCacheManager.IpTreeUpdate> current = new AtomicReference<>();
+
+        final ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.next()).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(final InvocationOnMock invocation) throws Throwable {
+                current.set(iterator.hasNext() ? iterator.next() : null);
+                return current.get() != null;
+            }
+        });
+
+        when(resultSet.getString(1)).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(final InvocationOnMock invocation) throws Throwable {
+                return current.get().pkey;
+            }
+        });
+
+        when(resultSet.getInt(2)).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(final InvocationOnMock invocation) throws Throwable {
+                return current.get().objectId;
+            }
+        });
+
+        return resultSet;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void givenUpdates(final int lastSerial, final IpTreeCacheManager.IpTreeUpdate... updates) {
+        final List<IpTreeCacheManager.IpTreeUpdate> result = Lists.newArrayList(updates);
+        when(jdbcTemplate.queryForInt(anyString())).thenReturn(lastSerial);
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), Matchers.<Object>anyVararg())).thenReturn((List) result);
+    }
+}
@@ -0,0 +1,134 @@
+package net.ripe.db.whois.common.iptree;
+
+import net.ripe.db.whois.common.domain.Ipv4Resource;
+import net.ripe.db.whois.common.domain.Ipv6Resource;
+import net.ripe.db.whois.common.etree.Interval;
+import net.ripe.db.whois.common.etree.IntervalMap;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static net.ripe.db.whois.common.domain.CIString.ciString;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class IpTreeSnapshotTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final IpTreeCacheManager.TreeLayout NESTED = new IpTreeCacheManager.TreeLayout(false, false);
+    private static final IpTreeCacheManager.TreeLayout COMPACT = new IpTreeCacheManager.TreeLayout(true, true);
+
+    private File file;
+    private IpTreeCacheManager.NestedIntervalMaps nestedIntervalMaps;
+
+    @Before
+    public void setUp() throws Exception {
+        file = new File(folder.getRoot(), "test.iptree");
+
+        nestedIntervalMaps = new IpTreeCacheManager.NestedIntervalMaps(NESTED, 1234);
+        put(nestedIntervalMaps.ipv4TreeCache, new Ipv4Entry(Ipv4Resource.parse("0/0"), 1));
+        put(nestedIntervalMaps.ipv4TreeCache, new Ipv4Entry(Ipv4Resource.parse("10.0.0.0/8"), 2));
+        put(nestedIntervalMaps.ipv4TreeCache, new Ipv4Entry(Ipv4Resource.parse("255.0.0.0/8"), 3));
+        put(nestedIntervalMaps.ipv6TreeCache, new Ipv6Entry(Ipv6Resource.parse("2001::/16"), 4));
+        put(nestedIntervalMaps.ipv6TreeCache, new Ipv6Entry(Ipv6Resource.parse("2001:db8::/32"), 5));
+        put(nestedIntervalMaps.ipv4RouteTreeCache, new Ipv4RouteEntry(Ipv4Resource.parse("10.0.0.0/8"), 6, "AS3333"));
+        put(nestedIntervalMaps.ipv4RouteTreeCache, new Ipv4RouteEntry(Ipv4Resource.parse("10.0.0.0/8"), 7, "AS1234"));
+        put(nestedIntervalMaps.ipv6RouteTreeCache, new Ipv6RouteEntry(Ipv6Resource.parse("2001:db8::/32"), 8, "AS3333"));
+        put(nestedIntervalMaps.ipv4DomainTreeCache, new Ipv4Entry(Ipv4Resource.parse("193.0.0.0/24"), 9));
+        put(nestedIntervalMaps.ipv6DomainTreeCache, new Ipv6Entry(Ipv6Resource.parse("2001:db8::/48"), 10));
+    }
+
+    @Test
+    public void write_and_read() throws Exception {
+        IpTreeSnapshot.write(file, ciString("TEST"), nestedIntervalMaps);
+
+        assertSnapshot(IpTreeSnapshot.read(file, ciString("test"), NESTED));
+    }
+
+    @Test
+    public void write_and_read_compact() throws Exception {
+        IpTreeSnapshot.write(file, ciString("TEST"), nestedIntervalMaps);
+
+        assertSnapshot(IpTreeSnapshot.read(file, ciString("TEST"), COMPACT));
+    }
+
+    @Test
+    public void write_replaces_existing() throws Exception {
+        IpTreeSnapshot.write(file, ciString("TEST"), new IpTreeCacheManager.NestedIntervalMaps(NESTED, 1));
+        IpTreeSnapshot.write(file, ciString("TEST"), nestedIntervalMaps);
+
+        assertSnapshot(IpTreeSnapshot.read(file, ciString("TEST"), NESTED));
+        assertThat(folder.getRoot().list().length, is(1));
+    }
+
+    @Test(expected = IOException.class)
+    public void read_other_source() throws Exception {
+        IpTreeSnapshot.write(file, ciString("TEST"), nestedIntervalMaps);
+
+        IpTreeSnapshot.read(file, ciString("TEST-GRS"), NESTED);
+    }
+
+    @Test(expected = IOException.class)
+    public void read_corrupt() throws Exception {
+        IpTreeSnapshot.write(file, ciString("TEST"), nestedIntervalMaps);
+
+        try (final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(randomAccessFile.length() / 2);
+            final int value = randomAccessFile.read();
+            randomAccessFile.seek(randomAccessFile.length() / 2);
+            randomAccessFile.write(value ^ 0xff);
+        }
+
+        IpTreeSnapshot.read(file, ciString("TEST"), NESTED);
+    }
+
+    @Test(expected = IOException.class)
+    public void read_truncated() throws Exception {
+        IpTreeSnapshot.write(file, ciString("TEST"), nestedIntervalMaps);
+
+        try (final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(randomAccessFile.length() - 1);
+        }
+
+        IpTreeSnapshot.read(file, ciString("TEST"), NESTED);
+    }
+
+    @Test(expected = IOException.class)
+    public void read_empty() throws Exception {
+        folder.newFile(file.getName());
+
+        IpTreeSnapshot.read(file, ciString("TEST"), NESTED);
+    }
+
+    private void assertSnapshot(final IpTreeCacheManager.NestedIntervalMaps result) {
+        assertThat(result.lastSerial, is(1234L));
+
+        assertThat(result.ipv4TreeCache.findExactAndAllMoreSpecific(Ipv4Resource.MAX_RANGE), contains(
+                new Ipv4Entry(Ipv4Resource.parse("0/0"), 1),
+                new Ipv4Entry(Ipv4Resource.parse("10.0.0.0/8"), 2),
+                new Ipv4Entry(Ipv4Resource.parse("255.0.0.0/8"), 3)));
+        assertThat(result.ipv6TreeCache.findExactAndAllMoreSpecific(Ipv6Resource.MAX_RANGE), contains(
+                new Ipv6Entry(Ipv6Resource.parse("2001::/16"), 4),
+                new Ipv6Entry(Ipv6Resource.parse("2001:db8::/32"), 5)));
+        assertThat(result.ipv4RouteTreeCache.findExact(Ipv4Resource.parse("10.0.0.0/8")), containsInAnyOrder(
+                new Ipv4RouteEntry(Ipv4Resource.parse("10.0.0.0/8"), 6, "AS3333"),
+                new Ipv4RouteEntry(Ipv4Resource.parse("10.0.0.0/8"), 7, "AS1234")));
+        assertThat(result.ipv6RouteTreeCache.findExactAndAllMoreSpecific(Ipv6Resource.MAX_RANGE), contains(
+                new Ipv6RouteEntry(Ipv6Resource.parse("2001:db8::/32"), 8, "AS3333")));
+        assertThat(result.ipv4DomainTreeCache.findExactAndAllMoreSpecific(Ipv4Resource.MAX_RANGE), contains(
+                new Ipv4Entry(Ipv4Resource.parse("193.0.0.0/24"), 9)));
+        assertThat(result.ipv6DomainTreeCache.findExactAndAllMoreSpecific(Ipv6Resource.MAX_RANGE), hasSize(1));
+    }
+
+    private static <K extends Interval<K>, V extends IpEntry<K>> void put(final IntervalMap<K, V> intervalMap, final V entry) {
+        intervalMap.put(entry.getKey(), entry);
+    }
+}
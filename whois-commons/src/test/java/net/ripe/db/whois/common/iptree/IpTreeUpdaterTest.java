@@ -0,0 +1,65 @@
+package net.ripe.db.whois.common.iptree;
+
+import net.ripe.db.whois.common.source.SourceConfiguration;
+import net.ripe.db.whois.common.source.SourceContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class IpTreeUpdaterTest {
+    @Mock IpTreeCacheManager ipTreeCacheManager;
+    @Mock SourceContext sourceContext;
+    @Mock SourceConfiguration sourceConfiguration;
+
+    private IpTreeUpdater subject;
+
+    @Before
+    public void setUp() {
+        when(sourceContext.getCurrentSourceConfiguration()).thenReturn(sourceConfiguration);
+
+        subject = new IpTreeUpdater(ipTreeCacheManager);
+        subject.setSourceContext(sourceContext);
+    }
+
+    @Test
+    public void publish_nothing_requested() {
+        subject.publishRequested();
+
+        verify(ipTreeCacheManager, never()).publish(any(SourceConfiguration.class));
+    }
+
+    @Test
+    public void publish_requests_coalesced() {
+        subject.requestPublication();
+        subject.requestPublication();
+        subject.requestPublication();
+
+        subject.publishRequested();
+        subject.publishRequested();
+
+        verify(ipTreeCacheManager, times(1)).publish(sourceConfiguration);
+    }
+
+    @Test
+    public void publish_failure_does_not_propagate() {
+        doThrow(new IllegalStateException("down")).when(ipTreeCacheManager).publish(sourceConfiguration);
+
+        subject.requestPublication();
+        subject.publishRequested();
+
+        subject.requestPublication();
+        subject.publishRequested();
+
+        verify(ipTreeCacheManager, times(2)).publish(sourceConfiguration);
+    }
+}
@@ -0,0 +1,229 @@
+package net.ripe.db.whois.common.iptree;
+
+import net.ripe.db.whois.common.domain.Ipv4Resource;
+import net.ripe.db.whois.common.etree.IntersectingIntervalException;
+import net.ripe.db.whois.common.etree.IntervalMap;
+import net.ripe.db.whois.common.etree.MultiValueIntervalMap;
+import net.ripe.db.whois.common.etree.NestedIntervalMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class OverlayIntervalMapTest {
+    private final long seed = System.currentTimeMillis();
+    private final Random random = new Random(seed);
+
+    private NestedIntervalMap<Ipv4Resource, Ipv4Entry> base;
+    private OverlayIntervalMap<Ipv4Resource, Ipv4Entry> subject;
+
+    private Ipv4Entry e_1_10 = entry(1, 10, 1);
+    private Ipv4Entry e_1_5 = entry(1, 5, 2);
+    private Ipv4Entry e_2_3 = entry(2, 3, 3);
+    private Ipv4Entry e_6_10 = entry(6, 10, 4);
+    private Ipv4Entry e_20_30 = entry(20, 30, 5);
+
+    @Before
+    public void setUp() {
+        base = new NestedIntervalMap<>();
+        for (final Ipv4Entry entry : new Ipv4Entry[]{e_1_10, e_1_5, e_2_3, e_6_10, e_20_30}) {
+            base.put(entry.getKey(), entry);
+        }
+
+        subject = new OverlayIntervalMap<>(base, Ipv4Resource.MAX_RANGE, false);
+    }
+
+    @Test
+    public void lookups_without_modifications() {
+        assertThat(subject.findFirstMoreSpecific(Ipv4Resource.MAX_RANGE), contains(e_1_10, e_20_30));
+        assertThat(subject.findExactAndAllLessSpecific(e_2_3.getKey()), contains(e_1_10, e_1_5, e_2_3));
+        assertThat(subject.getModifications(), is(0));
+    }
+
+    @Test
+    public void put_nests_added_entry() {
+        final Ipv4Entry e_1_3 = entry(1, 3, 10);
+        subject.put(e_1_3.getKey(), e_1_3);
+
+        assertThat(subject.findFirstMoreSpecific(e_1_5.getKey()), contains(e_1_3));
+        assertThat(subject.findExactAndAllLessSpecific(e_2_3.getKey()), contains(e_1_10, e_1_5, e_1_3, e_2_3));
+        assertThat(subject.findExactAndAllMoreSpecific(e_1_10.getKey()), contains(e_1_10, e_1_5, e_1_3, e_2_3, e_6_10));
+    }
+
+    @Test
+    public void put_replaces_value() {
+        final Ipv4Entry replacement = entry(1, 5, 10);
+        subject.put(replacement.getKey(), replacement);
+
+        assertThat(subject.findExact(e_1_5.getKey()).size(), is(1));
+        assertEquals(10, subject.findExact(e_1_5.getKey()).get(0).getObjectId());
+    }
+
+    @Test(expected = IntersectingIntervalException.class)
+    public void put_intersecting() {
+        subject.put(new Ipv4Resource(4, 7), entry(4, 7, 10));
+    }
+
+    @Test(expected = IntersectingIntervalException.class)
+    public void put_intersecting_upper_bound() {
+        subject.put(new Ipv4Resource(15, 25), entry(15, 25, 10));
+    }
+
+    @Test
+    public void put_intersecting_removed() {
+        subject.remove(e_20_30.getKey());
+        subject.put(new Ipv4Resource(25, 35), entry(25, 35, 10));
+
+        assertThat(subject.findFirstMoreSpecific(Ipv4Resource.MAX_RANGE), contains(e_1_10, entry(25, 35, 10)));
+    }
+
+    @Test
+    public void remove_promotes_children() {
+        subject.remove(e_1_5.getKey());
+
+        assertThat(subject.findFirstMoreSpecific(e_1_10.getKey()), contains(e_2_3, e_6_10));
+        assertThat(subject.findFirstLessSpecific(e_2_3.getKey()), contains(e_1_10));
+    }
+
+    @Test
+    public void remove_with_value() {
+        subject.remove(e_1_5.getKey(), e_2_3);
+        assertThat(subject.findExact(e_1_5.getKey()), contains(e_1_5));
+        assertThat(subject.getModifications(), is(0));
+
+        subject.remove(e_1_5.getKey(), e_1_5);
+        assertThat(subject.findExact(e_1_5.getKey()), empty());
+    }
+
+    @Test
+    public void copy_is_independent() {
+        final OverlayIntervalMap<Ipv4Resource, Ipv4Entry> copy = new OverlayIntervalMap<>(subject);
+        copy.remove(e_1_10.getKey());
+        subject.remove(e_20_30.getKey());
+
+        assertThat(copy.findFirstMoreSpecific(Ipv4Resource.MAX_RANGE), contains(e_1_5, e_6_10, e_20_30));
+        assertThat(subject.findFirstMoreSpecific(Ipv4Resource.MAX_RANGE), contains(e_1_10));
+        assertThat(base.findFirstMoreSpecific(Ipv4Resource.MAX_RANGE), contains(e_1_10, e_20_30));
+    }
+
+    @Test
+    public void same_results_as_nested_interval_map() {
+        final IntervalMap<Ipv4Resource, Ipv4Entry> expected = new NestedIntervalMap<>();
+        base = new NestedIntervalMap<>();
+
+        final List<Ipv4Resource> keys = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            final Ipv4Resource key = randomPrefix();
+            expected.put(key, new Ipv4Entry(key, i));
+            base.put(key, new Ipv4Entry(key, i));
+            keys.add(key);
+        }
+
+        subject = new OverlayIntervalMap<>(base, Ipv4Resource.MAX_RANGE, false);
+        for (int i = 1000; i < 2000; i++) {
+            final Ipv4Resource key = randomPrefix();
+            expected.put(key, new Ipv4Entry(key, i));
+            subject.put(key, new Ipv4Entry(key, i));
+            keys.add(key);
+
+            if (i % 3 == 0) {
+                final Ipv4Resource removed = keys.get(random.nextInt(keys.size()));
+                expected.remove(removed);
+                subject.remove(removed);
+            }
+
+            if (i % 100 == 0) {
+                subject = new OverlayIntervalMap<>(subject);
+                assertSameResults(expected, subject, randomPrefix());
+            }
+        }
+
+        for (int i = 0; i < 200; i++) {
+            assertSameResults(expected, subject, randomPrefix());
+            assertSameResults(expected, subject, keys.get(random.nextInt(keys.size())));
+        }
+
+        final NestedIntervalMap<Ipv4Resource, Ipv4Entry> merged = new NestedIntervalMap<>(base);
+        subject.applyTo(merged);
+        for (int i = 0; i < 200; i++) {
+            assertSameResults(expected, merged, keys.get(random.nextInt(keys.size())));
+        }
+    }
+
+    @Test
+    public void same_results_as_multi_value_interval_map() {
+        final IntervalMap<Ipv4Resource, Ipv4RouteEntry> expected = new MultiValueIntervalMap<>();
+        final MultiValueIntervalMap<Ipv4Resource, Ipv4RouteEntry> routes = new MultiValueIntervalMap<>();
+
+        final List<Ipv4RouteEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            final Ipv4RouteEntry entry = randomRoute(i);
+            expected.put(entry.getKey(), entry);
+            routes.put(entry.getKey(), entry);
+            entries.add(entry);
+        }
+
+        OverlayIntervalMap<Ipv4Resource, Ipv4RouteEntry> overlay = new OverlayIntervalMap<>(routes, Ipv4Resource.MAX_RANGE, true);
+        for (int i = 1000; i < 2000; i++) {
+            final Ipv4RouteEntry entry = randomRoute(i);
+            expected.put(entry.getKey(), entry);
+            overlay.put(entry.getKey(), entry);
+            entries.add(entry);
+
+            if (i % 3 == 0) {
+                final Ipv4RouteEntry removed = entries.get(random.nextInt(entries.size()));
+                expected.remove(removed.getKey(), removed);
+                overlay.remove(removed.getKey(), removed);
+            }
+
+            if (i % 100 == 0) {
+                overlay = new OverlayIntervalMap<>(overlay);
+            }
+        }
+
+        for (int i = 0; i < 200; i++) {
+            assertSameResults(expected, overlay, randomPrefix());
+            assertSameResults(expected, overlay, entries.get(random.nextInt(entries.size())).getKey());
+        }
+    }
+
+    private <V extends IpEntry<Ipv4Resource>> void assertSameResults(final IntervalMap<Ipv4Resource, V> expected, final IntervalMap<Ipv4Resource, V> actual, final Ipv4Resource key) {
+        final String message = "key " + key + " (seed = " + seed + ")";
+        assertSameValues(message, expected.findExact(key), actual.findExact(key));
+        assertSameValues(message, expected.findFirstLessSpecific(key), actual.findFirstLessSpecific(key));
+        assertSameValues(message, expected.findExactOrFirstLessSpecific(key), actual.findExactOrFirstLessSpecific(key));
+        assertSameValues(message, expected.findAllLessSpecific(key), actual.findAllLessSpecific(key));
+        assertSameValues(message, expected.findExactAndAllLessSpecific(key), actual.findExactAndAllLessSpecific(key));
+        assertSameValues(message, expected.findFirstMoreSpecific(key), actual.findFirstMoreSpecific(key));
+        assertSameValues(message, expected.findAllMoreSpecific(key), actual.findAllMoreSpecific(key));
+        assertSameValues(message, expected.findExactAndAllMoreSpecific(key), actual.findExactAndAllMoreSpecific(key));
+    }
+
+    // entries are equal by key, so compare object ids as well
+    private static <V extends IpEntry<Ipv4Resource>> void assertSameValues(final String message, final List<V> expected, final List<V> actual) {
+        assertEquals(message, expected, actual);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(message, expected.get(i).getObjectId(), actual.get(i).getObjectId());
+        }
+    }
+
+    private Ipv4Resource randomPrefix() {
+        return Ipv4Resource.parsePrefixWithLength(random.nextInt() & 0xffffffffL, 8 + random.nextInt(17));
+    }
+
+    private Ipv4RouteEntry randomRoute(final int objectId) {
+        return new Ipv4RouteEntry(Ipv4Resource.parsePrefixWithLength(random.nextInt() & 0xffffffffL, 8 + random.nextInt(9)), objectId, "AS" + random.nextInt(3));
+    }
+
+    private static Ipv4Entry entry(final long begin, final long end, final int objectId) {
+        return new Ipv4Entry(new Ipv4Resource(begin, end), objectId);
+    }
+}
@@ -776,6 +776,85 @@ public class RpslObjectTest {
                         " source:         TEST\n"));
     }
 
+    @Test
+    public void compact_same_as_parsed() {
+        final RpslObject parsed = RpslObject.parse(1, maintainer.getBytes(Charsets.ISO_8859_1));
+        final RpslObject compact = RpslObject.parseCompact(1, maintainer.getBytes(Charsets.ISO_8859_1));
+
+        assertThat(compact.getObjectId(), is(1));
+        assertThat(compact.getType(), is(ObjectType.MNTNER));
+        assertThat(compact.getKey(), is(CIString.ciString("DEV-MNT")));
+        assertThat(compact.getAttributes(), is(parsed.getAttributes()));
+        assertThat(compact.findAttributes(AttributeType.TECH_C), is(parsed.findAttributes(AttributeType.TECH_C)));
+        assertThat(compact, is(parsed));
+        assertThat(parsed, is(compact));
+        assertThat(compact.hashCode(), is(parsed.hashCode()));
+    }
+
+    @Test
+    public void compact_writes_formatted() {
+        final String input = "" +
+                "MNTNER: DEV-MNT\n" +
+                "descr:\tmultiple\r\n" +
+                "+ lines   \n" +
+                "*de: shorthand\n" +
+                "remarks:\n";
+
+        final RpslObject parsed = RpslObject.parse(input);
+        final RpslObject compact = RpslObject.parseCompact(1, input.getBytes(Charsets.ISO_8859_1));
+
+        assertThat(compact.toString(), is(parsed.toString()));
+        assertThat(compact.toByteArray(), is(parsed.toByteArray()));
+        assertThat(RpslObject.parseCompact(1, parsed.toByteArray()).toString(), is(parsed.toString()));
+    }
+
+    @Test
+    public void compact_formatted_once() {
+        final byte[] formatted = "mntner:         DEV-MNT\n".getBytes(Charsets.ISO_8859_1);
+        final CompactRpslAttributes alreadyFormatted = CompactRpslAttributes.parse(formatted);
+        assertThat(alreadyFormatted.getFormattedBytes(), is(sameInstance(formatted)));
+
+        final CompactRpslAttributes unformatted = CompactRpslAttributes.parse("MNTNER: DEV-MNT".getBytes(Charsets.ISO_8859_1));
+        final byte[] formattedBytes = unformatted.getFormattedBytes();
+        assertThat(formattedBytes, is(formatted));
+        assertThat(unformatted.getFormattedBytes(), is(sameInstance(formattedBytes)));
+    }
+
+    @Test
+    public void compact_copy() {
+        final RpslObject compact = RpslObject.parseCompact(1, maintainer.getBytes(Charsets.ISO_8859_1));
+        compact.getAttributes();
+
+        final RpslObject copy = compact.compactCopy();
+
+        assertThat(copy, is(not(sameInstance(compact))));
+        assertThat(copy, is(compact));
+        assertThat(copy.getObjectId(), is(1));
+
+        final RpslObject parsed = RpslObject.parse(maintainer);
+        assertThat(parsed.compactCopy(), is(sameInstance(parsed)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compact_invalid_character_in_key() {
+        RpslObject.parseCompact(1, "mnt/ner: DEV-MNT\n".getBytes(Charsets.ISO_8859_1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compact_unknown_type() {
+        RpslObject.parseCompact(1, " :".getBytes(Charsets.ISO_8859_1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compact_empty() {
+        RpslObject.parseCompact(1, new byte[]{});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compact_duplicate_key_attribute() {
+        RpslObject.parseCompact(1, "mntner: DEV-MNT\nmntner: OTHER-MNT\n".getBytes(Charsets.ISO_8859_1));
+    }
+
     private static Iterable<String> convertToString(final Iterable<CIString> c) {
         return Iterables.transform(c, new Function<CIString, String>() {
             @Nullable
@@ -0,0 +1,434 @@
+package net.ripe.db.whois.logsearch;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import net.ripe.db.whois.api.search.IndexTemplate;
+import net.ripe.db.whois.logsearch.logformat.DailyLogFolder;
+import net.ripe.db.whois.logsearch.logformat.LoggedUpdate;
+import net.ripe.db.whois.logsearch.logformat.TarredLogFile;
+import org.apache.lucene.facet.taxonomy.TaxonomyWriter;
+import org.apache.lucene.index.IndexWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Indexes all tar files and daily log folders in a directory in bulk. The tar files and folders are read on a pool of
+ * reader threads, and the logged updates read are added to the index on a pool of indexer threads sharing the index
+ * writer. The queue of logged updates read but not indexed yet is bounded, so readers wait for the indexers.
+ * <p/>
+ * The tar files and folders are indexed in batches, in order of path. Every batch is committed with the path of its
+ * last tar file or folder as checkpoint in the commit data, so an interrupted bulk index of the same directory resumes
+ * after the last batch committed. Tar files and folders that fail to be read or indexed are reported in the progress,
+ * and the checkpoint is not moved past the first of them, so indexing the directory again retries them.
+ */
+@Component
+public class LogFileBulkIndexer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogFileBulkIndexer.class);
+
+    static final String CHECKPOINT_DIRECTORY = "bulkIndexDirectory";
+    static final String CHECKPOINT = "bulkIndexCheckpoint";
+
+    private static final PendingUpdate END_OF_BATCH = new PendingUpdate(null, null, null);
+
+    private final LogFileIndex logFileIndex;
+
+    private int nrThreads = 4;
+    private int batchSize = 32;
+    private int queueSize = 1000;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Progress progress;
+
+    @Autowired
+    public LogFileBulkIndexer(final LogFileIndex logFileIndex) {
+        this.logFileIndex = logFileIndex;
+    }
+
+    @Value("${logsearch.bulk.threads:4}")
+    void setNrThreads(final int nrThreads) {
+        this.nrThreads = Math.max(1, nrThreads);
+    }
+
+    @Value("${logsearch.bulk.batch.size:32}")
+    void setBatchSize(final int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Value("${logsearch.bulk.queue.size:1000}")
+    void setQueueSize(final int queueSize) {
+        this.queueSize = Math.max(1, queueSize);
+    }
+
+    /**
+     * @return the progress of the running or last bulk index, or null if there was none.
+     */
+    public Progress getProgress() {
+        return progress;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * @throws IllegalStateException if a bulk index is running already.
+     */
+    public void addDirectoryToIndex(final String folder) throws IOException {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Bulk index already running");
+        }
+
+        try {
+            indexDirectory(folder);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void indexDirectory(final String folder) throws IOException {
+        final String directory = new File(folder).getAbsolutePath();
+        final List<String> logSources = findLogSources(directory);
+
+        int start = 0;
+        final Map<String, String> commitData = logFileIndex.getCommitData();
+        if (directory.equals(commitData.get(CHECKPOINT_DIRECTORY))) {
+            final String checkpoint = commitData.get(CHECKPOINT);
+            while (start < logSources.size() && logSources.get(start).compareTo(checkpoint) <= 0) {
+                start++;
+            }
+
+            LOGGER.info("Resuming bulk index of {} after {}", directory, checkpoint);
+        }
+
+        final Progress progress = new Progress(directory, logSources.size(), start);
+        this.progress = progress;
+
+        final ExecutorService readers = Executors.newFixedThreadPool(nrThreads, createThreadFactory("LogFileReader"));
+        final ExecutorService indexers = Executors.newFixedThreadPool(nrThreads, createThreadFactory("LogFileIndexer"));
+
+        try {
+            for (int batchStart = start; batchStart < logSources.size(); batchStart += batchSize) {
+                final List<String> batch = logSources.subList(batchStart, Math.min(batchStart + batchSize, logSources.size()));
+
+                logFileIndex.update(new IndexTemplate.WriteCallback() {
+                    @Override
+                    public void write(final IndexWriter indexWriter, final TaxonomyWriter taxonomyWriter) throws IOException {
+                        indexBatch(batch, indexWriter, readers, indexers, progress);
+
+                        final String lastIndexed = getLastIndexed(batch, progress.failedLogSources);
+                        if (lastIndexed != null) {
+                            final Map<String, String> checkpoint = Maps.newHashMap(indexWriter.getCommitData());
+                            checkpoint.put(CHECKPOINT_DIRECTORY, directory);
+                            checkpoint.put(CHECKPOINT, lastIndexed);
+                            indexWriter.setCommitData(checkpoint);
+                        }
+                    }
+                });
+
+                progress.logSourcesIndexed.addAndGet(batch.size() - progress.failedLogSources.subSet(batch.get(0), true, batch.get(batch.size() - 1), true).size());
+                LOGGER.info("Bulk index {}", progress);
+            }
+
+            if (!progress.failedLogSources.isEmpty()) {
+                LOGGER.warn("Bulk index of {} failed for {}", directory, progress.failedLogSources);
+                return;
+            }
+
+            logFileIndex.update(new IndexTemplate.WriteCallback() {
+                @Override
+                public void write(final IndexWriter indexWriter, final TaxonomyWriter taxonomyWriter) throws IOException {
+                    final Map<String, String> commitData = Maps.newHashMap(indexWriter.getCommitData());
+                    commitData.remove(CHECKPOINT_DIRECTORY);
+                    commitData.remove(CHECKPOINT);
+                    indexWriter.setCommitData(commitData);
+                }
+            });
+        } finally {
+            progress.finished();
+            readers.shutdownNow();
+            indexers.shutdownNow();
+
+            LOGGER.info("Bulk index {}", progress);
+        }
+    }
+
+    /**
+     * @return the last tar file or folder in the batch that is not preceded by a failed one, or null if there is none.
+     */
+    private static String getLastIndexed(final List<String> batch, final NavigableSet<String> failedLogSources) {
+        if (!failedLogSources.isEmpty() && failedLogSources.first().compareTo(batch.get(0)) < 0) {
+            return null;
+        }
+
+        String lastIndexed = null;
+        for (final String logSource : batch) {
+            if (failedLogSources.contains(logSource)) {
+                break;
+            }
+            lastIndexed = logSource;
+        }
+
+        return lastIndexed;
+    }
+
+    private void indexBatch(final List<String> batch, final IndexWriter indexWriter, final ExecutorService readers, final ExecutorService indexers, final Progress progress) {
+        final BlockingQueue<PendingUpdate> pendingUpdates = new ArrayBlockingQueue<>(queueSize);
+        progress.pendingUpdates = pendingUpdates;
+
+        final List<Future<?>> indexerFutures = Lists.newArrayList();
+        for (int i = 0; i < nrThreads; i++) {
+            indexerFutures.add(indexers.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws InterruptedException {
+                    for (PendingUpdate pendingUpdate = pendingUpdates.take(); pendingUpdate != END_OF_BATCH; pendingUpdate = pendingUpdates.take()) {
+                        try {
+                            LogFileIndex.addToIndex(pendingUpdate.loggedUpdate, pendingUpdate.contents, indexWriter);
+                            progress.updatesIndexed.incrementAndGet();
+                        } catch (RuntimeException e) {
+                            LOGGER.warn("Unable to index {}", pendingUpdate.loggedUpdate, e);
+                            progress.failedLogSources.add(pendingUpdate.logSource);
+                        }
+                    }
+
+                    return null;
+                }
+            }));
+        }
+
+        final List<Future<?>> readerFutures = Lists.newArrayList();
+        for (final String logSource : batch) {
+            readerFutures.add(readers.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    readLogSource(logSource, pendingUpdates, progress);
+                    return null;
+                }
+            }));
+        }
+
+        try {
+            for (int i = 0; i < readerFutures.size(); i++) {
+                try {
+                    readerFutures.get(i).get();
+                } catch (ExecutionException e) {
+                    LOGGER.warn("Unable to read {}", batch.get(i), e.getCause());
+                    progress.failedLogSources.add(batch.get(i));
+                }
+            }
+
+            for (int i = 0; i < nrThreads; i++) {
+                pendingUpdates.put(END_OF_BATCH);
+            }
+
+            for (final Future<?> future : indexerFutures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            cancel(readerFutures);
+            cancel(indexerFutures);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while bulk indexing", e);
+        } catch (ExecutionException e) {
+            cancel(readerFutures);
+            cancel(indexerFutures);
+            throw new IllegalStateException("Bulk indexing", e.getCause());
+        }
+    }
+
+    private static void readLogSource(final String logSource, final BlockingQueue<PendingUpdate> pendingUpdates, final Progress progress) {
+        final LoggedUpdateProcessor<LoggedUpdate> processor = new LoggedUpdateProcessor<LoggedUpdate>() {
+            @Override
+            public boolean accept(final LoggedUpdate loggedUpdate) {
+                return !Thread.currentThread().isInterrupted() && NewLogFormatProcessor.INDEXED_LOG_ENTRIES.matcher(loggedUpdate.getUpdateId()).matches();
+            }
+
+            @Override
+            public void process(final LoggedUpdate loggedUpdate, final String contents) {
+                try {
+                    pendingUpdates.put(new PendingUpdate(logSource, loggedUpdate, contents));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        // the readers skip what they cannot read, so record the source as failed to keep the checkpoint before it
+        final ReadFailureHandler readFailureHandler = new ReadFailureHandler() {
+            @Override
+            public void readFailed(final String path, final Exception cause) {
+                progress.failedLogSources.add(logSource);
+            }
+        };
+
+        if (TarredLogFile.LOGFILE_PATTERN.matcher(logSource).matches()) {
+            new TarredLogFile(new File(logSource)).processLoggedFiles(processor, readFailureHandler);
+        } else {
+            new DailyLogFolder(Paths.get(logSource)).processLoggedFiles(processor, readFailureHandler);
+        }
+    }
+
+    /**
+     * @return the absolute paths of the tar files and daily log folders in the directory, in order.
+     */
+    static List<String> findLogSources(final String directory) throws IOException {
+        final List<String> logSources = Lists.newArrayList();
+
+        Files.walkFileTree(Paths.get(directory), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+                final String absolutePath = dir.toAbsolutePath().toString();
+                if (DailyLogFolder.DAILY_LOG_FOLDER_PATTERN.matcher(absolutePath).matches()) {
+                    logSources.add(absolutePath);
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                final String absolutePath = file.toAbsolutePath().toString();
+                if (TarredLogFile.LOGFILE_PATTERN.matcher(absolutePath).matches()) {
+                    logSources.add(absolutePath);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Collections.sort(logSources);
+        return logSources;
+    }
+
+    private static void cancel(final List<Future<?>> futures) {
+        for (final Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private static ThreadFactory createThreadFactory(final String name) {
+        return new ThreadFactory() {
+            final ThreadGroup threadGroup = new ThreadGroup(Thread.currentThread().getThreadGroup(), name);
+            final AtomicInteger threadNum = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(threadGroup, r, String.format("%s-%s", name, threadNum.incrementAndGet()));
+            }
+        };
+    }
+
+    static final class PendingUpdate {
+        private final String logSource;
+        private final LoggedUpdate loggedUpdate;
+        private final String contents;
+
+        private PendingUpdate(final String logSource, final LoggedUpdate loggedUpdate, final String contents) {
+            this.logSource = logSource;
+            this.loggedUpdate = loggedUpdate;
+            this.contents = contents;
+        }
+    }
+
+    public static final class Progress {
+        private final String directory;
+        private final int nrLogSources;
+        private final int nrSkipped;
+        private final long started = System.nanoTime();
+
+        private final AtomicInteger logSourcesIndexed = new AtomicInteger();
+        private final AtomicLong updatesIndexed = new AtomicLong();
+        private final NavigableSet<String> failedLogSources = new ConcurrentSkipListSet<>();
+
+        private volatile BlockingQueue<PendingUpdate> pendingUpdates;
+        private volatile long finished;
+
+        private Progress(final String directory, final int nrLogSources, final int nrSkipped) {
+            this.directory = directory;
+            this.nrLogSources = nrLogSources;
+            this.nrSkipped = nrSkipped;
+        }
+
+        private void finished() {
+            finished = System.nanoTime();
+            pendingUpdates = null;
+        }
+
+        public int getLogSourcesIndexed() {
+            return nrSkipped + logSourcesIndexed.get();
+        }
+
+        public int getNrLogSources() {
+            return nrLogSources;
+        }
+
+        public int getLogSourcesFailed() {
+            return failedLogSources.size();
+        }
+
+        /**
+         * @return the paths of the tar files and daily log folders that failed to be read or indexed, in order.
+         */
+        public List<String> getFailedLogSources() {
+            return Lists.newArrayList(failedLogSources);
+        }
+
+        public long getUpdatesIndexed() {
+            return updatesIndexed.get();
+        }
+
+        public int getUpdatesPending() {
+            final BlockingQueue<PendingUpdate> queue = pendingUpdates;
+            return queue == null ? 0 : queue.size();
+        }
+
+        public double getUpdatesPerSecond() {
+            final long elapsed = (finished == 0 ? System.nanoTime() : finished) - started;
+            return elapsed <= 0 ? 0 : updatesIndexed.get() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+        }
+
+        public boolean isFinished() {
+            return finished != 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d of %d tar files and daily log folders, %d failed, %d updates indexed (%.1f/s), %d pending%s",
+                    directory,
+                    getLogSourcesIndexed(),
+                    nrLogSources,
+                    getLogSourcesFailed(),
+                    getUpdatesIndexed(),
+                    getUpdatesPerSecond(),
+                    getUpdatesPending(),
+                    isFinished() ? ", finished" : "");
+        }
+    }
+}
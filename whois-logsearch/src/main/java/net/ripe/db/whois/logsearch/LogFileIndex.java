@@ -10,12 +10,14 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.StoredField;
 import org.apache.lucene.facet.taxonomy.TaxonomyReader;
 import org.apache.lucene.facet.taxonomy.TaxonomyWriter;
 import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
@@ -34,6 +36,7 @@ import javax.annotation.Nullable;
 import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 
 @Component
@@ -107,6 +110,14 @@ public class LogFileIndex {
         }
     }
 
+    public Map<String, String> getCommitData() {
+        try {
+            return index.getCommitData();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public static void addToIndex(final LoggedUpdate loggedUpdate, final String contents, final IndexWriter indexWriter) {
         try {
             LOGGER.debug("Indexing {}", loggedUpdate);
@@ -115,6 +126,10 @@ public class LogFileIndex {
             document.add(new Field("updateId", loggedUpdate.getUpdateId(), UPDATE_ID_FIELD_TYPE));
             document.add(new IntField("date", Integer.parseInt(loggedUpdate.getDate()), DATE_FIELD_TYPE));
             document.add(new Field("contents", contents, CONTENTS_FIELD_TYPE));
+            if (loggedUpdate.getOffset() != LoggedUpdate.UNKNOWN) {
+                document.add(new StoredField("offset", loggedUpdate.getOffset()));
+                document.add(new StoredField("length", loggedUpdate.getLength()));
+            }
             indexWriter.addDocument(document);
         } catch (IOException e) {
             throw new IllegalStateException(e);
@@ -206,7 +221,9 @@ public class LogFileIndex {
                         loggedUpdates.add(
                                 LoggedUpdate.parse(
                                         doc.getField("updateId").stringValue(),
-                                        doc.getField("date").stringValue()));
+                                        doc.getField("date").stringValue(),
+                                        getLongValue(doc, "offset"),
+                                        getLongValue(doc, "length")));
                     }
 
                     return loggedUpdates;
@@ -217,6 +234,11 @@ public class LogFileIndex {
         }
     }
 
+    private static long getLongValue(final Document document, final String name) {
+        final IndexableField field = document.getField(name);
+        return (field != null) ? field.numericValue().longValue() : LoggedUpdate.UNKNOWN;
+    }
+
     private Query createContentQuery(@Nullable final String queryString) {
         try {
             final QueryParser queryParser = new QueryParser(Version.LUCENE_41, "contents", LogFileIndex.QUERY_ANALYZER);
@@ -1,16 +1,18 @@
 package net.ripe.db.whois.logsearch;
 
 import com.google.common.base.Splitter;
+import com.google.common.io.ByteStreams;
 import net.ripe.db.whois.logsearch.logformat.LegacyLogFile;
 import net.ripe.db.whois.logsearch.logformat.LogSource;
 import net.ripe.db.whois.logsearch.logformat.LoggedUpdate;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
-import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.apache.commons.lang.StringUtils;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.joda.time.LocalDate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
@@ -24,6 +26,8 @@ import java.util.regex.Pattern;
 
 @Component
 public class LogFileSearch {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogFileSearch.class);
+
     private static final Pattern PASSWORD_PATTERN = Pattern.compile("(?im)^(override|password):\\s*(.+)\\s*$");
     private static final Splitter PATH_ELEMENT_SPLITTER = Splitter.on(File.separatorChar).omitEmptyStrings();
 
@@ -62,6 +66,14 @@ public class LogFileSearch {
     }
 
     private String fetchContents(LoggedUpdate loggedUpdate) {
+        if (loggedUpdate.getOffset() != LoggedUpdate.UNKNOWN) {
+            try {
+                return fetchFromOffset(loggedUpdate);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.debug("Unable to fetch {} from offset, scanning instead: {}", loggedUpdate, e.getMessage());
+            }
+        }
+
         try {
             final Iterable<String> split = PATH_ELEMENT_SPLITTER.split(loggedUpdate.getUpdateId());
             return recurseIntoDir(new File("/"), split.iterator());
@@ -70,6 +82,28 @@ public class LogFileSearch {
         }
     }
 
+    private String fetchFromOffset(final LoggedUpdate loggedUpdate) throws IOException {
+        final String updateId = loggedUpdate.getUpdateId();
+
+        switch (loggedUpdate.getType()) {
+            case TARRED: {
+                final File file = new File(updateId.substring(0, updateId.indexOf(".tar" + File.separator) + ".tar".length()));
+                final byte[] buffer = new byte[(int) loggedUpdate.getLength()];
+                try (InputStream input = new FileInputStream(file)) {
+                    ByteStreams.skipFully(input, loggedUpdate.getOffset());
+                    ByteStreams.readFully(input, buffer);
+                }
+                return LogSource.getGzippedContent(new ByteArrayInputStream(buffer), buffer.length);
+            }
+            case LEGACY: {
+                final File file = new File(updateId.substring(0, updateId.lastIndexOf(File.separatorChar)));
+                return LegacyLogFile.readSection(file, loggedUpdate.getOffset(), loggedUpdate.getLength());
+            }
+            default:
+                throw new IllegalArgumentException("No offset for " + loggedUpdate.getType());
+        }
+    }
+
     private String recurseIntoDir(File dir, Iterator<String> path) {
         if (!path.hasNext()) {
             throw new IllegalArgumentException(dir.getAbsolutePath() + " is not an update log entry");
@@ -130,28 +164,11 @@ public class LogFileSearch {
     }
 
     private String fetchFromBzip2(File file, Iterator<String> path) {
-        int count = Integer.parseInt(path.next());
-        StringBuilder result = new StringBuilder();
-
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new BZip2CompressorInputStream(new FileInputStream(file))))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (count == 0) {
-                    result.append(line).append('\n');
-                }
-
-                if (LegacyLogFile.LOGSECTION_PATTERN.matcher(line).matches()) {
-                    count--;
-                    if (count < 0) {
-                        return result.toString();
-                    }
-                }
-            }
+        try {
+            return LegacyLogFile.readSection(file, Integer.parseInt(path.next()));
         } catch (IOException e) {
             throw new IllegalArgumentException("Error processing bzip2 archive: " + file.getAbsolutePath(), e);
         }
-
-        return result.toString();
     }
 
     // we have to support historical override/password formats here, so we can't rely on whois-update for this functionality
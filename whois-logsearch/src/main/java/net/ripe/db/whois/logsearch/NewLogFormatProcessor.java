@@ -202,7 +202,8 @@ public class NewLogFormatProcessor implements LogFormatProcessor {
     }
 
     private void writeLastUpdatedToIndex(final IndexWriter indexWriter, final long lastUpdated) {
-        final Map<String, String> metadata = Maps.newHashMap();
+        // keep the other commit data, like the checkpoint of a bulk index
+        final Map<String, String> metadata = Maps.newHashMap(indexWriter.getCommitData());
         metadata.put("lastUpdated", Long.toString(lastUpdated));
         indexWriter.setCommitData(metadata);
     }
@@ -0,0 +1,8 @@
+package net.ripe.db.whois.logsearch;
+
+/**
+ * Notified of the logged updates, or whole tar files and daily log folders, that could not be read.
+ */
+public interface ReadFailureHandler {
+    void readFailed(String path, Exception cause);
+}
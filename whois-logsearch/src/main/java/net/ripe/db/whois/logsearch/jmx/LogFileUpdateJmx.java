@@ -2,12 +2,14 @@ package net.ripe.db.whois.logsearch.jmx;
 
 import net.ripe.db.whois.common.jmx.JmxBase;
 import net.ripe.db.whois.logsearch.LegacyLogFormatProcessor;
+import net.ripe.db.whois.logsearch.LogFileBulkIndexer;
 import net.ripe.db.whois.logsearch.LogFileIndex;
 import net.ripe.db.whois.logsearch.NewLogFormatProcessor;
 import net.ripe.db.whois.logsearch.logformat.LoggedUpdate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
 import org.springframework.jmx.export.annotation.ManagedOperation;
 import org.springframework.jmx.export.annotation.ManagedOperationParameter;
 import org.springframework.jmx.export.annotation.ManagedOperationParameters;
@@ -17,6 +19,7 @@ import org.springframework.stereotype.Component;
 import java.io.File;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Component
 @ManagedResource(objectName = JmxBase.OBJECT_NAME_BASE + "LogFileUpdate", description = "Log file update operations")
@@ -27,13 +30,22 @@ public class LogFileUpdateJmx extends JmxBase {
     private final LogFileIndex logFileIndex;
     private final LegacyLogFormatProcessor legacyLogFormatProcessor;
     private final NewLogFormatProcessor newLogFormatProcessor;
+    private final LogFileBulkIndexer logFileBulkIndexer;
+    private final AtomicBoolean bulkIndexStarted = new AtomicBoolean();
 
     @Autowired
-    public LogFileUpdateJmx(final LogFileIndex logFileIndex, final LegacyLogFormatProcessor legacyLogFormatProcessor, final NewLogFormatProcessor newLogFormatProcessor) {
+    public LogFileUpdateJmx(final LogFileIndex logFileIndex, final LegacyLogFormatProcessor legacyLogFormatProcessor, final NewLogFormatProcessor newLogFormatProcessor, final LogFileBulkIndexer logFileBulkIndexer) {
         super(LOGGER);
         this.logFileIndex = logFileIndex;
         this.legacyLogFormatProcessor = legacyLogFormatProcessor;
         this.newLogFormatProcessor = newLogFormatProcessor;
+        this.logFileBulkIndexer = logFileBulkIndexer;
+    }
+
+    @ManagedAttribute(description = "Progress and throughput of the running or last bulk index")
+    public String getBulkIndexProgress() {
+        final LogFileBulkIndexer.Progress progress = logFileBulkIndexer.getProgress();
+        return progress == null ? "No bulk index started" : progress.toString();
     }
 
     @ManagedOperation(description = "Delete index entries by id prefix (not regex, not wildcards; just prefix!)")
@@ -108,6 +120,34 @@ public class LogFileUpdateJmx extends JmxBase {
         return "Started indexing " + path;
     }
 
+    @ManagedOperation(description = "Bulk index daily log files (.tar or directory) in parallel, resuming an interrupted bulk index of the same path")
+    @ManagedOperationParameters({
+            @ManagedOperationParameter(name = "path", description = "Absolute path for starting recursive lookup"),
+    })
+    public String bulkIndexDailyLogDirectory(final String path) {
+        if (!new File(path).exists()) {
+            return path + " does not exist on the filesystem";
+        }
+
+        // claim the bulk index before starting the background thread, so concurrent invocations cannot both start one
+        if (logFileBulkIndexer.isRunning() || !bulkIndexStarted.compareAndSet(false, true)) {
+            return "Bulk index already running";
+        }
+
+        backgroundOperation("bulk index daily log directory", path, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                try {
+                    logFileBulkIndexer.addDirectoryToIndex(path);
+                } finally {
+                    bulkIndexStarted.set(false);
+                }
+                return null;
+            }
+        });
+        return "Started bulk indexing " + path;
+    }
+
     @ManagedOperation(description = "Index a daily log file/dir")
     @ManagedOperationParameters({
             @ManagedOperationParameter(name = "path", description = "Absolute path to a .tar or daily log directory"),
@@ -0,0 +1,262 @@
+package net.ripe.db.whois.logsearch.logformat;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decompresses a bzip2 file one block at a time, so decompression can start at any block instead of at the start of
+ * the file. Blocks are found by their magic number, and are not aligned on bytes: every block is copied into a bzip2
+ * stream of its own, which is decompressed separately.
+ * <p/>
+ * The bit offset of the block the decompressed data at a position came from is kept, so decompression can start
+ * there later on.
+ */
+public class Bzip2BlockInputStream extends InputStream {
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+    private static final long END_OF_STREAM_MAGIC = 0x177245385090L;
+    private static final long MAGIC_MASK = 0xffffffffffffL;
+    private static final int MAGIC_BITS = 48;
+    private static final int CRC_BITS = 32;
+
+    // the largest block size, so any block fits
+    private static final byte[] STREAM_HEADER = {'B', 'Z', 'h', '9'};
+
+    private final InputStream in;
+
+    private long bitOffset;
+    private int bitBuffer;
+    private int bitsInBuffer;
+    private long window;
+    private boolean atBlockMagic;
+
+    private InputStream block;
+    private long position;
+
+    private final List<Long> blockPositions = Lists.newArrayList();
+    private final List<Long> blockOffsets = Lists.newArrayList();
+
+    /**
+     * Decompresses the file from the first block.
+     */
+    public Bzip2BlockInputStream(final File file) throws IOException {
+        this(file, 0);
+        atBlockMagic = scanForBlockMagic();
+    }
+
+    /**
+     * Decompresses the file from the block at the bit offset.
+     *
+     * @throws IOException if there is no block at the bit offset.
+     */
+    public Bzip2BlockInputStream(final File file, final long blockOffset) throws IOException {
+        final FileInputStream fileInputStream = new FileInputStream(file);
+        try {
+            ByteStreams.skipFully(fileInputStream, blockOffset / 8);
+            in = new BufferedInputStream(fileInputStream);
+            bitOffset = blockOffset - blockOffset % 8;
+
+            for (int i = 0; i < MAGIC_BITS + blockOffset % 8; i++) {
+                if (readBit() == -1) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            fileInputStream.close();
+            throw e;
+        }
+
+        atBlockMagic = (window & MAGIC_MASK) == BLOCK_MAGIC;
+        if (blockOffset > 0 && !atBlockMagic) {
+            close();
+            throw new IOException(String.format("No bzip2 block at bit offset %d in %s", blockOffset, file));
+        }
+    }
+
+    /**
+     * @return the bit offset of the block the decompressed data at the position came from.
+     */
+    public long getBlockOffset(final long position) {
+        final int index = Collections.binarySearch(blockPositions, position);
+        return blockOffsets.get(index >= 0 ? index : -index - 2);
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (true) {
+            if (block != null) {
+                final int next = block.read();
+                if (next != -1) {
+                    position++;
+                    return next;
+                }
+
+                block.close();
+                block = null;
+            }
+
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        while (true) {
+            if (block != null) {
+                final int read = block.read(buffer, offset, length);
+                if (read != -1) {
+                    position += read;
+                    return read;
+                }
+
+                block.close();
+                block = null;
+            }
+
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (block != null) {
+            block.close();
+        }
+
+        in.close();
+    }
+
+    private boolean nextBlock() throws IOException {
+        if (!atBlockMagic && !scanForBlockMagic()) {
+            return false;
+        }
+
+        final long blockOffset = bitOffset - MAGIC_BITS;
+        final BitWriter writer = new BitWriter();
+        writer.writeBytes(STREAM_HEADER);
+        writer.writeBits(BLOCK_MAGIC, MAGIC_BITS);
+
+        final long crc = readBits(CRC_BITS);
+        writer.writeBits(crc, CRC_BITS);
+
+        // bits are copied as far behind as the size of the magic, so the magic of the next block is not copied
+        int behind = 0;
+        while (true) {
+            if (readBit() == -1) {
+                throw new IOException("Truncated bzip2 block at bit offset " + blockOffset);
+            }
+
+            if (behind == MAGIC_BITS) {
+                writer.writeBit((int) (window >>> MAGIC_BITS) & 1);
+            } else {
+                behind++;
+            }
+
+            final long magic = window & MAGIC_MASK;
+            if (behind == MAGIC_BITS && (magic == BLOCK_MAGIC || magic == END_OF_STREAM_MAGIC)) {
+                atBlockMagic = magic == BLOCK_MAGIC;
+                break;
+            }
+        }
+
+        // the combined checksum of a stream of one block is the checksum of the block
+        writer.writeBits(END_OF_STREAM_MAGIC, MAGIC_BITS);
+        writer.writeBits(crc, CRC_BITS);
+
+        blockPositions.add(position);
+        blockOffsets.add(blockOffset);
+        block = new BZip2CompressorInputStream(new ByteArrayInputStream(writer.toByteArray()));
+        return true;
+    }
+
+    private boolean scanForBlockMagic() throws IOException {
+        while (readBit() != -1) {
+            if ((window & MAGIC_MASK) == BLOCK_MAGIC) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private long readBits(final int nrBits) throws IOException {
+        for (int i = 0; i < nrBits; i++) {
+            if (readBit() == -1) {
+                throw new IOException("Unexpected end of bzip2 file at bit offset " + bitOffset);
+            }
+        }
+
+        return window & ((1L << nrBits) - 1);
+    }
+
+    private int readBit() throws IOException {
+        if (bitsInBuffer == 0) {
+            bitBuffer = in.read();
+            if (bitBuffer == -1) {
+                return -1;
+            }
+
+            bitsInBuffer = 8;
+        }
+
+        bitsInBuffer--;
+        bitOffset++;
+
+        final int bit = (bitBuffer >>> bitsInBuffer) & 1;
+        window = (window << 1) | bit;
+        return bit;
+    }
+
+    private static final class BitWriter {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream(1024 * 1024);
+        private int current;
+        private int nrBits;
+
+        void writeBytes(final byte[] bytes) {
+            for (final byte b : bytes) {
+                writeBits(b, 8);
+            }
+        }
+
+        void writeBits(final long value, final int count) {
+            for (int i = count - 1; i >= 0; i--) {
+                writeBit((int) (value >>> i) & 1);
+            }
+        }
+
+        void writeBit(final int bit) {
+            current = (current << 1) | bit;
+            if (++nrBits == 8) {
+                out.write(current);
+                current = 0;
+                nrBits = 0;
+            }
+        }
+
+        byte[] toByteArray() {
+            if (nrBits > 0) {
+                writeBits(0, 8 - nrBits);
+            }
+
+            return out.toByteArray();
+        }
+    }
+}
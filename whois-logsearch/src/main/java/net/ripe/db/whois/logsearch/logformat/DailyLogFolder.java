@@ -2,6 +2,7 @@ package net.ripe.db.whois.logsearch.logformat;
 
 import net.ripe.db.whois.logsearch.LoggedUpdateProcessor;
 import net.ripe.db.whois.logsearch.NewLogFormatProcessor;
+import net.ripe.db.whois.logsearch.ReadFailureHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,6 +49,14 @@ public class DailyLogFolder extends LogSource {
     }
 
     public void processLoggedFiles(final LoggedUpdateProcessor loggedUpdateProcessor) {
+        processLoggedFiles(loggedUpdateProcessor, IGNORE_READ_FAILURES);
+    }
+
+    /**
+     * @param readFailureHandler notified of every update log file that could not be read, and of the folder if it could
+     *                           not be listed.
+     */
+    public void processLoggedFiles(final LoggedUpdateProcessor loggedUpdateProcessor, final ReadFailureHandler readFailureHandler) {
         try (final DirectoryStream<Path> updateLogFolders = Files.newDirectoryStream(dailyLogFolder, new DirectoryStream.Filter<Path>() {
             @Override
             public boolean accept(Path entry) throws IOException {
@@ -75,14 +84,18 @@ public class DailyLogFolder extends LogSource {
                                 loggedUpdateProcessor.process(dailyLogEntry, getGzippedContent(is, Files.size(updateLogEntry)));
                             } catch (IOException e) {
                                 LOGGER.warn("IO exception processing file: {}", updateLogEntry, e);
+                                readFailureHandler.readFailed(updateLogEntry.toString(), e);
                             } catch (RuntimeException e) {
                                 LOGGER.warn("Unexpected exception processing file: {}", updateLogEntry, e);
+                                readFailureHandler.readFailed(updateLogEntry.toString(), e);
                             }
                         }
                     }
                 }
             }
         } catch (IOException e) {
+            LOGGER.warn("IO exception processing folder: {}", path, e);
+            readFailureHandler.readFailed(path, e);
         }
     }
 
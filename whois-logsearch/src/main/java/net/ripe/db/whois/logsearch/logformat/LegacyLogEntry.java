@@ -3,10 +3,18 @@ package net.ripe.db.whois.logsearch.logformat;
 public class LegacyLogEntry extends LoggedUpdate {
     private final String updateId;
     private final String date;
+    private final long offset;
+    private final long length;
 
     public LegacyLogEntry(String updateId, String date) {
+        this(updateId, date, UNKNOWN, UNKNOWN);
+    }
+
+    public LegacyLogEntry(String updateId, String date, long offset, long length) {
         this.updateId = updateId;
         this.date = date;
+        this.offset = offset;
+        this.length = length;
     }
 
     @Override
@@ -19,6 +27,16 @@ public class LegacyLogEntry extends LoggedUpdate {
         return date;
     }
 
+    @Override
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
     @Override
     public Type getType() {
         return Type.LEGACY;
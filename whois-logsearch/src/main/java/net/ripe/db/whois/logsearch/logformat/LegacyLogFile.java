@@ -3,12 +3,15 @@ package net.ripe.db.whois.logsearch.logformat;
 import net.ripe.db.whois.logsearch.LoggedUpdateProcessor;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class LegacyLogFile extends LogSource {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LegacyLogFile.class);
 
     public static final Pattern LOGFILE_PATTERN = Pattern.compile("(?:^|.*/)(updlog|acklog)\\.(\\d{8})\\.bz2$");
     public static final Pattern LOGSECTION_PATTERN = Pattern.compile(">>> [t|T]ime: .*(\\d\\d:\\d\\d:\\d\\d) .*(\\w{4} UPDATE) (ACK)?\\s?(\\(.*\\))?\\s?<<<");
@@ -27,28 +30,61 @@ public class LegacyLogFile extends LogSource {
     }
 
     public void processLogFile(final LoggedUpdateProcessor processor) {
-        try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(new BZip2CompressorInputStream(new FileInputStream(path))))) {
-            createLegacyLog(date, bufferedReader, processor);
-        } catch (IOException ignore) {}
+        LineReader reader = null;
+        try (Bzip2BlockInputStream blockInputStream = new Bzip2BlockInputStream(new File(path))) {
+            reader = new LineReader(blockInputStream);
+            createLegacyLog(date, reader, blockInputStream, processor);
+            return;
+        } catch (IOException e) {
+            // sections read so far have been processed already, reading them again would index them twice
+            if (reader != null && reader.getPosition() > 0) {
+                LOGGER.warn("Unable to read {} after {} bytes: {}", path, reader.getPosition(), e.getMessage());
+                return;
+            }
+
+            LOGGER.warn("Reading {} without block offsets: {}", path, e.getMessage());
+        }
+
+        try (InputStream inputStream = new BZip2CompressorInputStream(new FileInputStream(path))) {
+            createLegacyLog(date, new LineReader(inputStream), null, processor);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read {}: {}", path, e.getMessage());
+        }
     }
 
-    private void createLegacyLog(final String date, final BufferedReader reader, final LoggedUpdateProcessor processor) throws IOException {
+    private void createLegacyLog(final String date, final LineReader reader, final Bzip2BlockInputStream blockInputStream, final LoggedUpdateProcessor processor) throws IOException {
         String line;
         StringBuilder builder = new StringBuilder();
         int count = 0;
 
+        long offset = LoggedUpdate.UNKNOWN;
+        long length = LoggedUpdate.UNKNOWN;
+        long lastBlockOffset = LoggedUpdate.UNKNOWN;
+        long sectionsInBlock = 0;
+
         while ((line = reader.readLine()) != null) {
-            final LegacyLogEntry logEntry = new LegacyLogEntry(path + File.separator + count, date);
-            if (LOGSECTION_PATTERN.matcher(line).matches() && processor.accept(logEntry)) {
-                processor.process(logEntry, builder.toString());
-                count++;
+            final LegacyLogEntry logEntry = new LegacyLogEntry(path + File.separator + count, date, offset, length);
+            if (LOGSECTION_PATTERN.matcher(line).matches()) {
+                long blockOffset = LoggedUpdate.UNKNOWN;
+                if (blockInputStream != null) {
+                    blockOffset = blockInputStream.getBlockOffset(reader.getLineStart());
+                    sectionsInBlock = (blockOffset == lastBlockOffset) ? sectionsInBlock + 1 : 1;
+                    lastBlockOffset = blockOffset;
+                }
 
-                builder = new StringBuilder();
+                if (processor.accept(logEntry)) {
+                    processor.process(logEntry, builder.toString());
+                    count++;
+
+                    builder = new StringBuilder();
+                    offset = blockOffset;
+                    length = (blockOffset == LoggedUpdate.UNKNOWN) ? LoggedUpdate.UNKNOWN : sectionsInBlock;
+                }
             }
             builder.append(line).append('\n');
         }
 
-        final LegacyLogEntry logEntry = new LegacyLogEntry(path + File.separator + count, date);
+        final LegacyLogEntry logEntry = new LegacyLogEntry(path + File.separator + count, date, offset, length);
         if (!StringUtils.isBlank(builder.toString()) && processor.accept(logEntry)) {
             processor.process(logEntry, builder.toString());
         }
@@ -57,4 +93,114 @@ public class LegacyLogFile extends LogSource {
     public String getDate() {
         return date;
     }
+
+    /**
+     * Reads the lines following the header of a section in the file, up to and including the header of the next
+     * section, decompressing the file from the start.
+     */
+    public static String readSection(final File file, final int section) throws IOException {
+        try (InputStream inputStream = new BZip2CompressorInputStream(new FileInputStream(file))) {
+            return readSection(new LineReader(inputStream), section);
+        }
+    }
+
+    /**
+     * Reads the lines following the header of a section in the file, up to and including the header of the next
+     * section, decompressing the file from the block the section starts in.
+     *
+     * @param blockOffset    the bit offset of the block the header of the section starts in.
+     * @param sectionsToPass the number of section headers starting in the block, up to and including the header of
+     *                       the section.
+     */
+    public static String readSection(final File file, final long blockOffset, final long sectionsToPass) throws IOException {
+        try (InputStream inputStream = new Bzip2BlockInputStream(file, blockOffset)) {
+            return readSection(new LineReader(inputStream), sectionsToPass);
+        }
+    }
+
+    private static String readSection(final LineReader reader, final long sectionsToPass) throws IOException {
+        long count = sectionsToPass;
+        final StringBuilder result = new StringBuilder();
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (count == 0) {
+                result.append(line).append('\n');
+            }
+
+            if (LOGSECTION_PATTERN.matcher(line).matches()) {
+                count--;
+                if (count < 0) {
+                    return result.toString();
+                }
+            }
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Reads lines like {@link BufferedReader#readLine()}, keeping the position in the input where the line starts.
+     */
+    private static final class LineReader {
+        private final InputStream in;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        private long position;
+        private long lineStart;
+        private int pushedBack = -1;
+
+        private LineReader(final InputStream in) {
+            this.in = new BufferedInputStream(in);
+        }
+
+        private String readLine() throws IOException {
+            line.reset();
+            lineStart = position;
+
+            for (int next = read(); next != -1; next = read()) {
+                if (next == '\n') {
+                    return line.toString();
+                }
+
+                if (next == '\r') {
+                    final int following = read();
+                    if (following != '\n' && following != -1) {
+                        pushedBack = following;
+                        position--;
+                    }
+
+                    return line.toString();
+                }
+
+                line.write(next);
+            }
+
+            return line.size() > 0 ? line.toString() : null;
+        }
+
+        private long getLineStart() {
+            return lineStart;
+        }
+
+        private long getPosition() {
+            return position;
+        }
+
+        private int read() throws IOException {
+            final int next;
+            if (pushedBack != -1) {
+                next = pushedBack;
+                pushedBack = -1;
+            } else {
+                next = in.read();
+            }
+
+            if (next != -1) {
+                position++;
+            }
+
+            return next;
+        }
+    }
 }
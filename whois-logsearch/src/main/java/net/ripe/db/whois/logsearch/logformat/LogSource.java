@@ -1,17 +1,30 @@
 package net.ripe.db.whois.logsearch.logformat;
 
+import net.ripe.db.whois.logsearch.ReadFailureHandler;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.springframework.util.FileCopyUtils;
 
 import java.io.*;
 
 public abstract class LogSource {
+    /**
+     * Ignores read failures, which are logged by the log source already.
+     */
+    protected static final ReadFailureHandler IGNORE_READ_FAILURES = new ReadFailureHandler() {
+        @Override
+        public void readFailed(final String path, final Exception cause) {
+        }
+    };
 
     public static String getGzippedContent(final InputStream input, final long size) throws IOException {
         int remaining = (int) size;
         final byte[] buffer = new byte[remaining];
         while (remaining > 0) {
-            remaining -= input.read(buffer, buffer.length - remaining, remaining);
+            final int read = input.read(buffer, buffer.length - remaining, remaining);
+            if (read == -1) {
+                throw new EOFException("Missing " + remaining + " of " + size + " bytes");
+            }
+            remaining -= read;
         }
 
         try (Reader reader = new InputStreamReader(new GzipCompressorInputStream(new ByteArrayInputStream(buffer)))) {
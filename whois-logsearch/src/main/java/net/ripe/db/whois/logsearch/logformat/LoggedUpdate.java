@@ -4,23 +4,43 @@ package net.ripe.db.whois.logsearch.logformat;
  * updateId is a unique identifier of an indexed file. It is the absolute path to the indexed file, except for:
  * - tarredlogentry: absolute location of tarfile, concatenated with the path inside the tarfile;
  * - legacylogentry: absolute location of bzip2 file, followed by / and the number of message in the file (starting from 0)
+ *
+ * offset and length locate the update in its file, so it can be read without scanning the file from the start
+ * (UNKNOWN if not known):
+ * - tarredlogentry: byte offset and size of the gzipped entry in the tarfile;
+ * - legacylogentry: bit offset of the bzip2 block the message starts in, and the number of messages starting in the
+ *   block, up to and including the message
  */
 public abstract class LoggedUpdate implements Comparable<LoggedUpdate> {
 
     public static enum Type {DAILY, TARRED, LEGACY};
 
+    public static final long UNKNOWN = -1;
+
     public abstract String getUpdateId();
     public abstract String getDate();
     public abstract Type getType();
 
+    public long getOffset() {
+        return UNKNOWN;
+    }
+
+    public long getLength() {
+        return UNKNOWN;
+    }
+
     public static final LoggedUpdate parse(final String updateId, final String date) {
+        return parse(updateId, date, UNKNOWN, UNKNOWN);
+    }
+
+    public static final LoggedUpdate parse(final String updateId, final String date, final long offset, final long length) {
         switch (getUpdateType(updateId)) {
             case DAILY:
                 return new DailyLogEntry(updateId, date);
             case TARRED:
-                return new TarredLogEntry(updateId, date);
+                return new TarredLogEntry(updateId, date, offset, length);
             case LEGACY:
-                return new LegacyLogEntry(updateId, date);
+                return new LegacyLogEntry(updateId, date, offset, length);
             default:
                 throw new IllegalStateException("Unknown type");
         }
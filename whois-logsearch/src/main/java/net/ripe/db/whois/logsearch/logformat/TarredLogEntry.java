@@ -6,14 +6,26 @@ public class TarredLogEntry extends LoggedUpdate {
 
     private final String updateId;
     private final String date;
+    private final long offset;
+    private final long length;
 
     public TarredLogEntry(String tarFilePath, String date, String tarEntryPath) {
-        this(String.format("%s%s%s", tarFilePath, File.separator, tarEntryPath), date);
+        this(tarFilePath, date, tarEntryPath, UNKNOWN, UNKNOWN);
+    }
+
+    public TarredLogEntry(String tarFilePath, String date, String tarEntryPath, long offset, long length) {
+        this(String.format("%s%s%s", tarFilePath, File.separator, tarEntryPath), date, offset, length);
     }
 
     public TarredLogEntry(String updateId, String date) {
+        this(updateId, date, UNKNOWN, UNKNOWN);
+    }
+
+    public TarredLogEntry(String updateId, String date, long offset, long length) {
         this.date = date;
         this.updateId = updateId;
+        this.offset = offset;
+        this.length = length;
     }
 
 
@@ -27,6 +39,16 @@ public class TarredLogEntry extends LoggedUpdate {
         return date;
     }
 
+    @Override
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
     @Override
     public Type getType() {
         return Type.TARRED;
@@ -1,6 +1,8 @@
 package net.ripe.db.whois.logsearch.logformat;
 
+import com.google.common.io.CountingInputStream;
 import net.ripe.db.whois.logsearch.LoggedUpdateProcessor;
+import net.ripe.db.whois.logsearch.ReadFailureHandler;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.slf4j.Logger;
@@ -18,6 +20,8 @@ public class TarredLogFile extends LogSource {
     private static final Logger LOGGER = LoggerFactory.getLogger(TarredLogFile.class);
     public static final Pattern LOGFILE_PATTERN = Pattern.compile("(?:^|.*/)(\\d{8})(\\.tar)");
 
+    private static final int TAR_RECORD_SIZE = 512;
+
     private final String path;
     private final String date;
 
@@ -37,7 +41,18 @@ public class TarredLogFile extends LogSource {
     }
 
     public void processLoggedFiles(final LoggedUpdateProcessor loggedUpdateProcessor) {
-        try (final TarArchiveInputStream tarInput = new TarArchiveInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+        processLoggedFiles(loggedUpdateProcessor, IGNORE_READ_FAILURES);
+    }
+
+    /**
+     * Entries are read one record at a time, so the bytes read so far are the offset of the entry in the tarfile.
+     *
+     * @param readFailureHandler notified of every entry that could not be read, and of the tarfile if it could not be
+     *                           read to the end.
+     */
+    public void processLoggedFiles(final LoggedUpdateProcessor loggedUpdateProcessor, final ReadFailureHandler readFailureHandler) {
+        try (final CountingInputStream countingInput = new CountingInputStream(new BufferedInputStream(new FileInputStream(path)));
+             final TarArchiveInputStream tarInput = new TarArchiveInputStream(countingInput, TAR_RECORD_SIZE, TAR_RECORD_SIZE)) {
 
             for (TarArchiveEntry tarEntry = tarInput.getNextTarEntry(); tarEntry != null; tarEntry = tarInput.getNextTarEntry()) {
                 String tarEntryName = tarEntry.getName();
@@ -48,7 +63,7 @@ public class TarredLogFile extends LogSource {
                 try {
                     if (tarEntry.isFile()) {
                         try {
-                            final LoggedUpdate loggedUpdate = new TarredLogEntry(path, date, tarEntryName);
+                            final LoggedUpdate loggedUpdate = new TarredLogEntry(path, date, tarEntryName, countingInput.getCount(), tarEntry.getSize());
                             if (loggedUpdateProcessor.accept(loggedUpdate)) {
                                 loggedUpdateProcessor.process(loggedUpdate, getGzippedContent(tarInput, tarEntry.getSize()));
                             }
@@ -58,12 +73,15 @@ public class TarredLogFile extends LogSource {
                     }
                 } catch (IOException e) {
                     LOGGER.warn("IO exception processing entry: {} in file: {}", tarEntryName, path, e);
+                    readFailureHandler.readFailed(path + "/" + tarEntryName, e);
                 } catch (RuntimeException e) {
                     LOGGER.warn("Unexpected exception processing entry: {} in file: {}", tarEntryName, path, e);
+                    readFailureHandler.readFailed(path + "/" + tarEntryName, e);
                 }
             }
         } catch (IOException e) {
             LOGGER.warn("Exception processing tarfile: {}", path, e);
+            readFailureHandler.readFailed(path, e);
         }
     }
 
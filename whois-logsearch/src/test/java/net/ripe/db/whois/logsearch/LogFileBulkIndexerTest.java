@@ -0,0 +1,211 @@
+package net.ripe.db.whois.logsearch;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.Uninterruptibles;
+import net.ripe.db.whois.api.search.IndexTemplate;
+import net.ripe.db.whois.logsearch.logformat.LoggedUpdate;
+import org.apache.lucene.facet.taxonomy.TaxonomyWriter;
+import org.apache.lucene.index.IndexWriter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class LogFileBulkIndexerTest {
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private LogFileIndex logFileIndex;
+    private LogFileBulkIndexer subject;
+    private String directory;
+
+    @Before
+    public void setup() throws IOException {
+        logFileIndex = new LogFileIndex("", -1);
+        subject = new LogFileBulkIndexer(logFileIndex);
+        subject.setNrThreads(3);
+        subject.setBatchSize(1);
+        subject.setQueueSize(2);
+
+        directory = new ClassPathResource("log/update").getFile().getAbsolutePath();
+    }
+
+    @After
+    public void cleanup() {
+        logFileIndex.destroy();
+    }
+
+    @Test
+    public void log_sources_in_order() throws IOException {
+        final List<String> logSources = LogFileBulkIndexer.findLogSources(directory);
+
+        assertThat(logSources, hasSize(3));
+        assertThat(logSources.get(0), endsWith("20120816.tar"));
+        assertThat(logSources.get(1), endsWith("20130305.tar"));
+        assertThat(logSources.get(2), endsWith("20130306"));
+    }
+
+    @Test
+    public void indexes_same_updates_as_new_log_format_processor() throws IOException {
+        final LogFileIndex serialIndex = new LogFileIndex("", -1);
+        try {
+            new NewLogFormatProcessor(directory, serialIndex).addDirectoryToIndex(directory);
+            final Set<String> expected = getUpdateIds(serialIndex);
+
+            subject.addDirectoryToIndex(directory);
+
+            assertThat(getUpdateIds(logFileIndex), is(expected));
+            assertThat(subject.getProgress().getUpdatesIndexed(), is((long) expected.size()));
+            assertThat(subject.getProgress().getLogSourcesIndexed(), is(3));
+            assertThat(subject.getProgress().isFinished(), is(true));
+        } finally {
+            serialIndex.destroy();
+        }
+    }
+
+    @Test
+    public void checkpoint_removed_when_finished() throws IOException {
+        subject.addDirectoryToIndex(directory);
+
+        final Map<String, String> commitData = logFileIndex.getCommitData();
+        assertThat(commitData, not(hasKey(LogFileBulkIndexer.CHECKPOINT_DIRECTORY)));
+        assertThat(commitData, not(hasKey(LogFileBulkIndexer.CHECKPOINT)));
+    }
+
+    @Test
+    public void resumes_after_checkpoint() throws IOException {
+        final String checkpoint = LogFileBulkIndexer.findLogSources(directory).get(1);
+        logFileIndex.update(new IndexTemplate.WriteCallback() {
+            @Override
+            public void write(final IndexWriter indexWriter, final TaxonomyWriter taxonomyWriter) throws IOException {
+                final Map<String, String> commitData = Maps.newHashMap(indexWriter.getCommitData());
+                commitData.put(LogFileBulkIndexer.CHECKPOINT_DIRECTORY, directory);
+                commitData.put(LogFileBulkIndexer.CHECKPOINT, checkpoint);
+                indexWriter.setCommitData(commitData);
+            }
+        });
+
+        subject.addDirectoryToIndex(directory);
+
+        for (final LoggedUpdate loggedUpdate : logFileIndex.searchByUpdateId(".*")) {
+            assertThat(loggedUpdate.getUpdateId(), not(containsString(".tar")));
+            assertThat(loggedUpdate.getDate(), is("20130306"));
+        }
+        assertThat(subject.getProgress().getLogSourcesIndexed(), is(3));
+    }
+
+    @Test
+    public void checkpoint_of_other_directory_ignored() throws IOException {
+        logFileIndex.update(new IndexTemplate.WriteCallback() {
+            @Override
+            public void write(final IndexWriter indexWriter, final TaxonomyWriter taxonomyWriter) throws IOException {
+                final Map<String, String> commitData = Maps.newHashMap(indexWriter.getCommitData());
+                commitData.put(LogFileBulkIndexer.CHECKPOINT_DIRECTORY, "/other");
+                commitData.put(LogFileBulkIndexer.CHECKPOINT, "~");
+                indexWriter.setCommitData(commitData);
+            }
+        });
+
+        subject.addDirectoryToIndex(directory);
+
+        assertThat(subject.getProgress().getUpdatesIndexed(), is((long) logFileIndex.searchByUpdateId(".*").size()));
+        assertThat(logFileIndex.searchByUpdateId(".*20120816.*").isEmpty(), is(false));
+    }
+
+    @Test
+    public void checkpoint_kept_before_corrupt_tarfile() throws IOException {
+        final File folder = temporaryFolder.newFolder();
+        Files.copy(new ClassPathResource("log/update/20120816.tar").getFile(), new File(folder, "20120816.tar"));
+        Files.copy(new ClassPathResource("log/corrupt/20130305.tar").getFile(), new File(folder, "20130305.tar"));
+        final String corruptDirectory = folder.getAbsolutePath();
+        final List<String> logSources = LogFileBulkIndexer.findLogSources(corruptDirectory);
+
+        subject.addDirectoryToIndex(corruptDirectory);
+
+        assertThat(subject.getProgress().getFailedLogSources(), contains(logSources.get(1)));
+        assertThat(subject.getProgress().getLogSourcesFailed(), is(1));
+        assertThat(subject.getProgress().getLogSourcesIndexed(), is(1));
+        assertThat(subject.getProgress().toString(), containsString("1 failed"));
+
+        final Map<String, String> commitData = logFileIndex.getCommitData();
+        assertThat(commitData.get(LogFileBulkIndexer.CHECKPOINT_DIRECTORY), is(corruptDirectory));
+        assertThat(commitData.get(LogFileBulkIndexer.CHECKPOINT), is(logSources.get(0)));
+
+        assertThat(logFileIndex.searchByUpdateId(".*20120816.*").isEmpty(), is(false));
+    }
+
+    @Test
+    public void concurrent_bulk_index_rejected() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final LogFileIndex blockingIndex = new LogFileIndex("", -1) {
+            @Override
+            public Map<String, String> getCommitData() {
+                started.countDown();
+                Uninterruptibles.awaitUninterruptibly(release);
+                return super.getCommitData();
+            }
+        };
+
+        try {
+            final LogFileBulkIndexer blockingSubject = new LogFileBulkIndexer(blockingIndex);
+            final Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        blockingSubject.addDirectoryToIndex(directory);
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+            thread.start();
+            assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+            assertThat(blockingSubject.isRunning(), is(true));
+
+            try {
+                blockingSubject.addDirectoryToIndex(directory);
+                fail("Expected second bulk index to be rejected");
+            } catch (IllegalStateException e) {
+                assertThat(e.getMessage(), is("Bulk index already running"));
+            }
+
+            release.countDown();
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+            assertThat(blockingSubject.isRunning(), is(false));
+            assertThat(blockingSubject.getProgress().isFinished(), is(true));
+        } finally {
+            release.countDown();
+            blockingIndex.destroy();
+        }
+    }
+
+    private static Set<String> getUpdateIds(final LogFileIndex logFileIndex) {
+        final Set<String> updateIds = Sets.newHashSet();
+        for (final LoggedUpdate loggedUpdate : logFileIndex.searchByUpdateId(".*")) {
+            updateIds.add(loggedUpdate.getUpdateId());
+        }
+        return updateIds;
+    }
+}
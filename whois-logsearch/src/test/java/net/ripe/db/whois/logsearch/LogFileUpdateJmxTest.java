@@ -5,17 +5,28 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.core.io.ClassPathResource;
 
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
 public class LogFileUpdateJmxTest {
     @Mock LogFileIndex logFileIndex;
     @Mock LegacyLogFormatProcessor legacyLogFormatProcessor;
     @Mock NewLogFormatProcessor newLogFormatProcessor;
+    @Mock LogFileBulkIndexer logFileBulkIndexer;
     @InjectMocks LogFileUpdateJmx subject;
 
     @Test
@@ -65,4 +76,54 @@ public class LogFileUpdateJmxTest {
 
         verify(newLogFormatProcessor).addFileToIndex(path);
     }
+
+    @Test
+    public void bulkIndexDailyLogDirectory() throws Exception {
+        String path = new ClassPathResource("log/update").getFile().getAbsolutePath();
+        subject.bulkIndexDailyLogDirectory(path);
+
+        verify(logFileBulkIndexer, timeout(5000)).addDirectoryToIndex(path);
+    }
+
+    @Test
+    public void bulkIndexDailyLogDirectory_already_running() throws Exception {
+        when(logFileBulkIndexer.isRunning()).thenReturn(true);
+        String path = new ClassPathResource("log/update").getFile().getAbsolutePath();
+
+        assertThat(subject.bulkIndexDailyLogDirectory(path), is("Bulk index already running"));
+
+        verify(logFileBulkIndexer, never()).addDirectoryToIndex(path);
+    }
+
+    @Test
+    public void bulkIndexDailyLogDirectory_concurrent_invocation() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                release.await();
+                return null;
+            }
+        }).when(logFileBulkIndexer).addDirectoryToIndex(anyString());
+        String path = new ClassPathResource("log/update").getFile().getAbsolutePath();
+
+        assertThat(subject.bulkIndexDailyLogDirectory(path), is("Started bulk indexing " + path));
+        assertThat(subject.bulkIndexDailyLogDirectory(path), is("Bulk index already running"));
+
+        release.countDown();
+        verify(logFileBulkIndexer, timeout(5000)).addDirectoryToIndex(path);
+    }
+
+    @Test
+    public void bulkIndexDailyLogDirectory_path_does_not_exist() throws Exception {
+        final String path = "/var/log/update";
+        subject.bulkIndexDailyLogDirectory(path);
+
+        verify(logFileBulkIndexer, never()).addDirectoryToIndex(path);
+    }
+
+    @Test
+    public void bulkIndexProgress_not_started() {
+        assertThat(subject.getBulkIndexProgress(), is("No bulk index started"));
+    }
 }
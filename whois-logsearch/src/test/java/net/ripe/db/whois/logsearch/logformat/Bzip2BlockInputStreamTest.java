@@ -0,0 +1,92 @@
+package net.ripe.db.whois.logsearch.logformat;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+public class Bzip2BlockInputStreamTest {
+    private File folder;
+    private File file;
+    private byte[] contents;
+
+    @Before
+    public void setup() throws IOException {
+        folder = Files.createTempDir();
+        file = new File(folder, "updlog.20030726.bz2");
+
+        contents = new byte[350 * 1000];
+        final Random random = new Random(1);
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = (byte) ('a' + random.nextInt(26));
+        }
+
+        try (BZip2CompressorOutputStream outputStream = new BZip2CompressorOutputStream(new FileOutputStream(file), 1)) {
+            outputStream.write(contents);
+        }
+    }
+
+    @After
+    public void cleanup() {
+        for (final File child : folder.listFiles()) {
+            child.delete();
+        }
+        folder.delete();
+    }
+
+    @Test
+    public void read_from_start() throws IOException {
+        try (Bzip2BlockInputStream inputStream = new Bzip2BlockInputStream(file)) {
+            assertThat(Arrays.equals(ByteStreams.toByteArray(inputStream), contents), is(true));
+        }
+    }
+
+    @Test
+    public void read_from_block() throws IOException {
+        final long position = 250 * 1000;
+        final long blockOffset;
+        try (Bzip2BlockInputStream inputStream = new Bzip2BlockInputStream(file)) {
+            ByteStreams.skipFully(inputStream, position);
+            blockOffset = inputStream.getBlockOffset(position);
+        }
+
+        assertThat(blockOffset, is(greaterThan(0L)));
+
+        try (Bzip2BlockInputStream inputStream = new Bzip2BlockInputStream(file, blockOffset)) {
+            final byte[] fromBlock = ByteStreams.toByteArray(inputStream);
+            final byte[] expected = Arrays.copyOfRange(contents, contents.length - fromBlock.length, contents.length);
+
+            assertThat(fromBlock.length, is(greaterThan(contents.length - (int) position)));
+            assertThat(fromBlock.length, is(not(contents.length)));
+            assertThat(Arrays.equals(fromBlock, expected), is(true));
+        }
+    }
+
+    @Test
+    public void block_offsets_in_order() throws IOException {
+        try (Bzip2BlockInputStream inputStream = new Bzip2BlockInputStream(file)) {
+            ByteStreams.skipFully(inputStream, contents.length);
+
+            assertThat(inputStream.getBlockOffset(0), is(32L));
+            assertThat(inputStream.getBlockOffset(contents.length - 1), is(greaterThan(inputStream.getBlockOffset(0))));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void no_block_at_offset() throws IOException {
+        new Bzip2BlockInputStream(file, 33).close();
+    }
+}
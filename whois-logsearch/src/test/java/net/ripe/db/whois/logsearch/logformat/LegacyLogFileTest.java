@@ -1,14 +1,31 @@
 package net.ripe.db.whois.logsearch.logformat;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import net.ripe.db.whois.logsearch.LoggedUpdateProcessor;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.core.io.ClassPathResource;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
 import java.util.regex.Matcher;
 
 import static net.ripe.db.whois.logsearch.logformat.LegacyLogFile.LOGSECTION_PATTERN;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.core.Is.is;
 
@@ -33,6 +50,60 @@ public class LegacyLogFileTest {
         new LegacyLogFile("updlog.20040404");
     }
 
+    @Test
+    public void sections_read_from_block_offset() throws IOException {
+        final File folder = Files.createTempDir();
+        final File file = new File(folder, "updlog.20030726.bz2");
+        try {
+            writeLogFile(file, 500);
+
+            final List<LegacyLogEntry> entries = processLogFile(file);
+
+            assertThat(entries, hasSize(501));
+            assertThat(entries.get(0).getOffset(), is(LoggedUpdate.UNKNOWN));
+
+            final Set<Long> blockOffsets = Sets.newHashSet();
+            for (int section = 1; section < entries.size(); section++) {
+                final LegacyLogEntry entry = entries.get(section);
+                blockOffsets.add(entry.getOffset());
+
+                if (section % 50 == 0 || section == entries.size() - 1) {
+                    assertThat(LegacyLogFile.readSection(file, entry.getOffset(), entry.getLength()),
+                            is(LegacyLogFile.readSection(file, section)));
+                }
+            }
+
+            assertThat(blockOffsets.size(), is(greaterThan(1)));
+        } finally {
+            file.delete();
+            folder.delete();
+        }
+    }
+
+    @Test
+    public void truncated_file_read_once() throws IOException {
+        final File folder = Files.createTempDir();
+        final File file = new File(folder, "updlog.20030726.bz2");
+        try {
+            writeLogFile(file, 500);
+
+            final byte[] contents = Files.toByteArray(file);
+            Files.write(Arrays.copyOf(contents, contents.length / 2), file);
+
+            final List<LegacyLogEntry> entries = processLogFile(file);
+
+            assertThat(entries, hasSize(both(greaterThan(1)).and(lessThan(501))));
+
+            final Set<String> ids = Sets.newHashSet();
+            for (final LegacyLogEntry entry : entries) {
+                assertThat(ids.add(entry.getUpdateId()), is(true));
+            }
+        } finally {
+            file.delete();
+            folder.delete();
+        }
+    }
+
     @Test
     public void logStartPatternTest() {
         final Matcher matcher = LOGSECTION_PATTERN.matcher(">>> time: Sat Jul 26 23:33:15 2003 SYNC UPDATE (193.0.109.35) <<<");
@@ -75,4 +146,33 @@ public class LegacyLogFileTest {
         assertThat(matcher.group(3), is("ACK"));
         assertThat(matcher.group(4), is(nullValue()));
     }
+
+    private static void writeLogFile(final File file, final int nrSections) throws IOException {
+        final Random random = new Random(1);
+        try (Writer writer = new OutputStreamWriter(new BZip2CompressorOutputStream(new FileOutputStream(file), 1))) {
+            for (int section = 0; section < nrSections; section++) {
+                writer.write(">>> time: Sat Jul 26 23:33:15 2003 SYNC UPDATE (193.0.109.35) <<<\n\n");
+                for (int line = 0; line < 20; line++) {
+                    writer.write(String.format("remarks: section %d line %d %d\n", section, line, random.nextLong()));
+                }
+            }
+        }
+    }
+
+    private static List<LegacyLogEntry> processLogFile(final File file) {
+        final List<LegacyLogEntry> entries = Lists.newArrayList();
+        new LegacyLogFile(file.getAbsolutePath()).processLogFile(new LoggedUpdateProcessor<LegacyLogEntry>() {
+            @Override
+            public boolean accept(final LegacyLogEntry loggedUpdate) {
+                return true;
+            }
+
+            @Override
+            public void process(final LegacyLogEntry loggedUpdate, final String contents) {
+                entries.add(loggedUpdate);
+            }
+        });
+
+        return entries;
+    }
 }
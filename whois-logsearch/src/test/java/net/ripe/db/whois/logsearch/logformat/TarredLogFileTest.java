@@ -0,0 +1,86 @@
+package net.ripe.db.whois.logsearch.logformat;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import net.ripe.db.whois.logsearch.LoggedUpdateProcessor;
+import net.ripe.db.whois.logsearch.ReadFailureHandler;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+public class TarredLogFileTest {
+
+    @Test
+    public void entries_read_from_offset() throws IOException {
+        final File tarFile = new ClassPathResource("/log/update/20130305.tar").getFile();
+        final List<TarredLogEntry> entries = Lists.newArrayList();
+        final List<String> contents = Lists.newArrayList();
+
+        new TarredLogFile(tarFile).processLoggedFiles(new LoggedUpdateProcessor<TarredLogEntry>() {
+            @Override
+            public boolean accept(final TarredLogEntry loggedUpdate) {
+                return true;
+            }
+
+            @Override
+            public void process(final TarredLogEntry loggedUpdate, final String content) {
+                entries.add(loggedUpdate);
+                contents.add(content);
+            }
+        });
+
+        assertThat(entries.isEmpty(), is(false));
+        for (int i = 0; i < entries.size(); i++) {
+            final TarredLogEntry entry = entries.get(i);
+            assertThat(entry.getOffset() % 512, is(0L));
+            assertThat(entry.getOffset(), is(not(LoggedUpdate.UNKNOWN)));
+
+            final byte[] buffer = new byte[(int) entry.getLength()];
+            try (InputStream input = new FileInputStream(tarFile)) {
+                ByteStreams.skipFully(input, entry.getOffset());
+                ByteStreams.readFully(input, buffer);
+            }
+
+            assertThat(LogSource.getGzippedContent(new ByteArrayInputStream(buffer), buffer.length), is(contents.get(i)));
+        }
+    }
+
+    @Test
+    public void truncated_tarfile_read_failure() throws IOException {
+        final File tarFile = new ClassPathResource("/log/corrupt/20130305.tar").getFile();
+        final List<TarredLogEntry> entries = Lists.newArrayList();
+        final List<String> failures = Lists.newArrayList();
+
+        new TarredLogFile(tarFile).processLoggedFiles(new LoggedUpdateProcessor<TarredLogEntry>() {
+            @Override
+            public boolean accept(final TarredLogEntry loggedUpdate) {
+                return true;
+            }
+
+            @Override
+            public void process(final TarredLogEntry loggedUpdate, final String content) {
+                entries.add(loggedUpdate);
+            }
+        }, new ReadFailureHandler() {
+            @Override
+            public void readFailed(final String path, final Exception cause) {
+                failures.add(path);
+            }
+        });
+
+        assertThat(entries, hasSize(4));
+        assertThat(failures, contains(tarFile.getAbsolutePath() + "/140319.syncupdate_127.0.0.1_1362488599134839000/001.msg-in.txt.gz"));
+    }
+}
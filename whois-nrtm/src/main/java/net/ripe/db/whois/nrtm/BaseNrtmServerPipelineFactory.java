@@ -14,7 +14,6 @@ import org.jboss.netty.handler.codec.string.StringDecoder;
 import org.jboss.netty.handler.codec.string.StringEncoder;
 import org.jboss.netty.handler.execution.ExecutionHandler;
 import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
-import org.springframework.scheduling.TaskScheduler;
 
 
 abstract class BaseNrtmServerPipelineFactory implements ChannelPipelineFactory {
@@ -33,31 +32,29 @@ abstract class BaseNrtmServerPipelineFactory implements ChannelPipelineFactory {
     private final AccessControlHandler aclHandler;
     private final SerialDao serialDao;
     private final Dummifier dummifier;
-    private final TaskScheduler clientSynchronisationScheduler;
+    private final NrtmSerialTailer serialTailer;
     private final NrtmLog nrtmLog;
     private final MaintenanceHandler maintenanceHandler;
 
     private final String version;
     private final String source;
-    private final long updateInterval;
 
     protected BaseNrtmServerPipelineFactory(final NrtmChannelsRegistry nrtmChannelsRegistry,
                                             final NrtmExceptionHandler exceptionHandler, final AccessControlHandler aclHandler,
                                             final SerialDao serialDao, final NrtmLog nrtmLog, final Dummifier dummifier,
-                                            final TaskScheduler clientSynchronisationScheduler, final MaintenanceHandler maintenanceHandler, final String version,
-                                            final String source, final long updateInterval) {
+                                            final NrtmSerialTailer serialTailer, final MaintenanceHandler maintenanceHandler, final String version,
+                                            final String source) {
         this.nrtmChannelsRegistry = nrtmChannelsRegistry;
         this.exceptionHandler = exceptionHandler;
         this.aclHandler = aclHandler;
         this.serialDao = serialDao;
         this.nrtmLog = nrtmLog;
         this.dummifier = dummifier;
-        this.clientSynchronisationScheduler = clientSynchronisationScheduler;
+        this.serialTailer = serialTailer;
         this.maintenanceHandler = maintenanceHandler;
 
         this.version = version;
         this.source = source;
-        this.updateInterval = updateInterval;
     }
 
     @Override
@@ -74,7 +71,7 @@ abstract class BaseNrtmServerPipelineFactory implements ChannelPipelineFactory {
 
         pipeline.addLast("UD-execution", executionHandler);
 
-        pipeline.addLast("U-query-handler", new NrtmQueryHandler(serialDao, dummifier, clientSynchronisationScheduler, nrtmLog, version, source, updateInterval));
+        pipeline.addLast("U-query-handler", new NrtmQueryHandler(serialDao, dummifier, serialTailer, nrtmLog, version, source));
 
         pipeline.addLast("U-exception-handler", exceptionHandler);
 
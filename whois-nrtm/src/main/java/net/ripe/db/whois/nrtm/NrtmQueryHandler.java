@@ -1,7 +1,6 @@
 package net.ripe.db.whois.nrtm;
 
 import joptsimple.OptionException;
-import net.ripe.db.whois.common.ServerHelper;
 import net.ripe.db.whois.common.dao.SerialDao;
 import net.ripe.db.whois.common.domain.serials.SerialEntry;
 import net.ripe.db.whois.common.domain.serials.SerialRange;
@@ -11,9 +10,9 @@ import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.TaskScheduler;
 
-import java.util.concurrent.ScheduledFuture;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class NrtmQueryHandler extends SimpleChannelUpstreamHandler {
@@ -23,37 +22,37 @@ public class NrtmQueryHandler extends SimpleChannelUpstreamHandler {
     static final int SECONDS_PER_DAY = 60 * 60 * 24;
     static final int HISTORY_AGE_LIMIT = 14 * SECONDS_PER_DAY;
     static final int MAX_PENDING_WRITES = 16;
+    static final int CATCH_UP_PAGE_SIZE = 1000;
 
     private final SerialDao serialDao;
     private final Dummifier dummifier;
-    private final TaskScheduler clientSynchronisationScheduler;
+    private final NrtmSerialTailer serialTailer;
 
     private final NrtmLog nrtmLog;
     private final String applicationVersion;
     private final String source;
-    private final long updateInterval;
 
     static final ChannelLocal<AtomicInteger> PENDING_WRITES = new ChannelLocal<>();
 
-    private volatile ScheduledFuture<?> scheduledFuture;
+    private volatile boolean keepalive;
+    private volatile CatchUp catchUp;
 
     static final String TERMS_AND_CONDITIONS = "" +
             "% The RIPE Database is subject to Terms and Conditions.\n" +
             "% See http://www.ripe.net/db/support/db-terms-conditions.pdf";
 
-    public NrtmQueryHandler(final SerialDao serialDao, final Dummifier dummifier, final TaskScheduler clientSynchronisationScheduler, final NrtmLog nrtmLog, final String applicationVersion, final String source, final long updateInterval) {
+    public NrtmQueryHandler(final SerialDao serialDao, final Dummifier dummifier, final NrtmSerialTailer serialTailer, final NrtmLog nrtmLog, final String applicationVersion, final String source) {
         this.serialDao = serialDao;
         this.dummifier = dummifier;
-        this.clientSynchronisationScheduler = clientSynchronisationScheduler;
+        this.serialTailer = serialTailer;
         this.nrtmLog = nrtmLog;
         this.applicationVersion = applicationVersion;
         this.source = source;
-        this.updateInterval = updateInterval;
     }
 
     @Override
     public void messageReceived(final ChannelHandlerContext ctx, final MessageEvent e) {
-        if (isKeepAlive()) {
+        if (isMirroring()) {
             return;
         }
 
@@ -92,12 +91,8 @@ public class NrtmQueryHandler extends SimpleChannelUpstreamHandler {
                 writeMessage(channel, String.format("%%WARNING: NRTM version %d is deprecated, please consider migrating to version %d!", version, NrtmServer.NRTM_VERSION));
             }
 
-            if (query.isKeepalive()) {
-                handleMirrorQueryWithKeepalive(query, channel);
-                return;
-            } else {
-                handleMirrorQuery(query, channel);
-            }
+            handleMirrorQuery(query, channel);
+            return;
         } else if (query.isInfoQuery()) {
             switch (query.getQueryOption()) {
                 case SOURCES:
@@ -112,8 +107,8 @@ public class NrtmQueryHandler extends SimpleChannelUpstreamHandler {
         channel.write(ChannelBuffers.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
     }
 
-    private boolean isKeepAlive() {
-        return scheduledFuture != null;
+    private boolean isMirroring() {
+        return keepalive || catchUp != null;
     }
 
     private Query parseQueryString(String queryString) {
@@ -124,71 +119,61 @@ public class NrtmQueryHandler extends SimpleChannelUpstreamHandler {
         }
     }
 
-    void handleMirrorQueryWithKeepalive(final Query query, final Channel channel) {
-        final int version = query.getVersion();
-
-        Runnable instance = new Runnable() {
-            private int serial = query.getSerialBegin();
-
-            @Override
-            public void run() {
-                try {
-                    final SerialRange range = serialDao.getSerials();
-                    serial = writeSerials(serial, range.getEnd(), version, channel);
-                } catch (ChannelException e) {
-                    LOGGER.debug("writeSerials: closed channel");
-                } catch (Exception e) {
-                    // [EB]: no rethrowing else the repeating scheduler unschedules us
-                    LOGGER.info("Exception in scheduled task:", e);
-                }
-            }
-        };
-
-        scheduledFuture = clientSynchronisationScheduler.scheduleAtFixedRate(instance, updateInterval * 1000);
+    private void handleMirrorQuery(final Query query, final Channel channel) {
+        keepalive = query.isKeepalive();
+        catchUp = new CatchUp(query.getVersion(), query.getSerialBegin(), query.getSerialEnd());
+        writeCatchUp(channel);
     }
 
-    private void handleMirrorQuery(final Query query, final Channel channel) {
+    /**
+     * Write the requested serials for as long as the channel is writable, reading them a page at a time. Writing
+     * continues when the channel becomes writable again, so the range is written as fast as the client reads it.
+     */
+    private void writeCatchUp(final Channel channel) {
+        final CatchUp catchUp = this.catchUp;
+        if (catchUp == null) {
+            return;
+        }
 
-        for (int serial = query.getSerialBegin(); serial <= query.getSerialEnd(); ) {
-            serial = writeSerials(serial, query.getSerialEnd(), query.getVersion(), channel);
-            if (serial <= query.getSerialEnd()) {
-                ServerHelper.sleep(1000);
+        while (channel.isWritable()) {
+            final SerialEntry serialEntry = catchUp.page.poll();
+            if (serialEntry != null) {
+                writeSerial(serialEntry, catchUp.version, channel);
+            } else if (catchUp.nextSerial <= catchUp.end) {
+                final int pageEnd = (int) Math.min((long) catchUp.nextSerial + CATCH_UP_PAGE_SIZE - 1, catchUp.end);
+                catchUp.page.addAll(serialDao.getByIdRange(catchUp.nextSerial, pageEnd));
+                catchUp.nextSerial = pageEnd + 1;
+            } else {
+                finishCatchUp(catchUp, channel);
+                return;
             }
         }
-
-        writeMessage(channel, "%END " + source);
     }
 
-    private int writeSerials(final int begin, final int end, final int version, final Channel channel) {
-        int serial = begin;
-
-        while (serial <= end) {
+    private void finishCatchUp(final CatchUp catchUp, final Channel channel) {
+        this.catchUp = null;
 
-            if (PENDING_WRITES.get(channel).get() > MAX_PENDING_WRITES) {
-                break;
-            }
-
-            final SerialEntry serialEntry = serialDao.getById(serial);
+        if (keepalive) {
+            serialTailer.subscribe(channel, catchUp.version, dummifier, catchUp.nextSerial);
+        } else {
+            writeMessage(channel, "%END " + source);
+            channel.write(ChannelBuffers.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
 
-            if (serialEntry != null) {
-                if (dummifier.isAllowed(version, serialEntry.getRpslObject())) {
-                    final String operation = serialEntry.getOperation().toString();
-                    final String message;
-                    if (version == NrtmServer.NRTM_VERSION) {
-                        message = operation + " " + serial;
-                    } else {
-                        message = operation;
-                    }
-
-                    writeMessage(channel, message);
-                    writeMessage(channel, dummifier.dummify(version, serialEntry.getRpslObject()).toString().trim());
-                }
+    private void writeSerial(final SerialEntry serialEntry, final int version, final Channel channel) {
+        if (dummifier.isAllowed(version, serialEntry.getRpslObject())) {
+            final String operation = serialEntry.getOperation().toString();
+            final String message;
+            if (version == NrtmServer.NRTM_VERSION) {
+                message = operation + " " + serialEntry.getSerialId();
+            } else {
+                message = operation;
             }
 
-            serial++;
+            writeMessage(channel, message);
+            writeMessage(channel, dummifier.dummify(version, serialEntry.getRpslObject()).toString().trim());
         }
-
-        return serial;
     }
 
     private boolean isRequestedSerialInRange(final Query query, final SerialRange range) {
@@ -213,10 +198,20 @@ public class NrtmQueryHandler extends SimpleChannelUpstreamHandler {
         super.channelConnected(ctx, e);
     }
 
+    @Override
+    public void channelInterestChanged(final ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
+        if (ctx.getChannel().isWritable()) {
+            writeCatchUp(ctx.getChannel());
+        }
+
+        super.channelInterestChanged(ctx, e);
+    }
+
     @Override
     public void channelDisconnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
-        if (scheduledFuture != null) {
-            scheduledFuture.cancel(true);
+        catchUp = null;
+        if (keepalive) {
+            serialTailer.unsubscribe(ctx.getChannel());
         }
 
         PENDING_WRITES.remove(ctx.getChannel());
@@ -235,7 +230,7 @@ public class NrtmQueryHandler extends SimpleChannelUpstreamHandler {
         channel.write(message + "\n\n").addListener(LISTENER);
     }
 
-    private static final ChannelFutureListener LISTENER = new ChannelFutureListener() {
+    static final ChannelFutureListener LISTENER = new ChannelFutureListener() {
         @Override
         public void operationComplete(ChannelFuture future) throws Exception {
             AtomicInteger pending = PENDING_WRITES.get(future.getChannel());
@@ -244,4 +239,18 @@ public class NrtmQueryHandler extends SimpleChannelUpstreamHandler {
             }
         }
     };
+
+    private static final class CatchUp {
+        private final int version;
+        private final int end;
+        private final Deque<SerialEntry> page = new ArrayDeque<>();
+
+        private int nextSerial;
+
+        private CatchUp(final int version, final int begin, final int end) {
+            this.version = version;
+            this.end = end;
+            this.nextSerial = begin;
+        }
+    }
 }
@@ -0,0 +1,211 @@
+package net.ripe.db.whois.nrtm;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import net.ripe.db.whois.common.dao.SerialDao;
+import net.ripe.db.whois.common.domain.serials.SerialEntry;
+import net.ripe.db.whois.common.rpsl.Dummifier;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Follows the serials of the source for all mirror clients with a persistent connection (-k), so every new serial is
+ * read from the database once, and rendered once per NRTM version and dummifier, however many clients follow it.
+ * <p/>
+ * Every subscribed channel keeps its own position. Channels with too many pending writes are skipped, and catch up
+ * on a later run.
+ */
+@Component
+public class NrtmSerialTailer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NrtmSerialTailer.class);
+
+    static final int BATCH_SIZE = 100;
+
+    private final SerialDao serialDao;
+    private final TaskScheduler clientSynchronisationScheduler;
+    private final long updateInterval;
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private volatile ScheduledFuture<?> scheduledFuture;
+
+    @Autowired
+    public NrtmSerialTailer(final SerialDao serialDao,
+                            @Qualifier("clientSynchronisationScheduler") final TaskScheduler clientSynchronisationScheduler,
+                            @Value("${nrtm.update.interval:60}") final long updateInterval) {
+        this.serialDao = serialDao;
+        this.clientSynchronisationScheduler = clientSynchronisationScheduler;
+        this.updateInterval = updateInterval;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduledFuture = clientSynchronisationScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tail();
+                } catch (Exception e) {
+                    // no rethrowing, else the scheduler stops tailing
+                    LOGGER.info("Exception in scheduled task:", e);
+                }
+            }
+        }, updateInterval * 1000);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduledFuture != null) {
+            scheduledFuture.cancel(true);
+        }
+    }
+
+    void subscribe(final Channel channel, final int version, final Dummifier dummifier, final int nextSerial) {
+        subscriptions.add(new Subscription(channel, version, dummifier, nextSerial));
+    }
+
+    void unsubscribe(final Channel channel) {
+        for (final Subscription subscription : subscriptions) {
+            if (subscription.channel == channel) {
+                subscriptions.remove(subscription);
+            }
+        }
+    }
+
+    int getNrSubscriptions() {
+        return subscriptions.size();
+    }
+
+    void tail() {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+
+        final int end = serialDao.getSerials().getEnd();
+
+        while (true) {
+            final List<Subscription> writable = Lists.newArrayList();
+            int begin = Integer.MAX_VALUE;
+
+            for (final Subscription subscription : subscriptions) {
+                if (!subscription.channel.isOpen()) {
+                    subscriptions.remove(subscription);
+                } else if (subscription.nextSerial <= end && !isThrottled(subscription.channel)) {
+                    writable.add(subscription);
+                    begin = Math.min(begin, subscription.nextSerial);
+                }
+            }
+
+            if (writable.isEmpty()) {
+                return;
+            }
+
+            final int batchEnd = (int) Math.min((long) begin + BATCH_SIZE - 1, end);
+            final List<RenderedSerial> batch = Lists.newArrayList();
+            for (final SerialEntry serialEntry : serialDao.getByIdRange(begin, batchEnd)) {
+                batch.add(new RenderedSerial(serialEntry));
+            }
+
+            for (final Subscription subscription : writable) {
+                write(subscription, batch, batchEnd);
+            }
+        }
+    }
+
+    private void write(final Subscription subscription, final List<RenderedSerial> batch, final int batchEnd) {
+        for (final RenderedSerial renderedSerial : batch) {
+            final int serialId = renderedSerial.serialEntry.getSerialId();
+            if (serialId < subscription.nextSerial) {
+                continue;
+            }
+
+            if (isThrottled(subscription.channel)) {
+                return;
+            }
+
+            final ChannelBuffer message = renderedSerial.render(subscription.version, subscription.dummifier);
+            if (message != null) {
+                final AtomicInteger pending = NrtmQueryHandler.PENDING_WRITES.get(subscription.channel);
+                if (pending != null) {
+                    pending.incrementAndGet();
+                }
+
+                subscription.channel.write(message.duplicate()).addListener(NrtmQueryHandler.LISTENER);
+            }
+
+            subscription.nextSerial = serialId + 1;
+        }
+
+        // serials missing from the batch are skipped as well
+        subscription.nextSerial = Math.max(subscription.nextSerial, batchEnd + 1);
+    }
+
+    private static boolean isThrottled(final Channel channel) {
+        final AtomicInteger pending = NrtmQueryHandler.PENDING_WRITES.get(channel);
+        return pending == null || pending.get() > NrtmQueryHandler.MAX_PENDING_WRITES;
+    }
+
+    private static final class Subscription {
+        private final Channel channel;
+        private final int version;
+        private final Dummifier dummifier;
+
+        private int nextSerial;
+
+        private Subscription(final Channel channel, final int version, final Dummifier dummifier, final int nextSerial) {
+            this.channel = channel;
+            this.version = version;
+            this.dummifier = dummifier;
+            this.nextSerial = nextSerial;
+        }
+    }
+
+    private static final class RenderedSerial {
+        private static final ChannelBuffer NOT_ALLOWED = ChannelBuffers.EMPTY_BUFFER;
+
+        private final SerialEntry serialEntry;
+        private final Map<Dummifier, ChannelBuffer[]> messages = Maps.newIdentityHashMap();
+
+        private RenderedSerial(final SerialEntry serialEntry) {
+            this.serialEntry = serialEntry;
+        }
+
+        private ChannelBuffer render(final int version, final Dummifier dummifier) {
+            ChannelBuffer[] messagesByVersion = messages.get(dummifier);
+            if (messagesByVersion == null) {
+                messagesByVersion = new ChannelBuffer[NrtmServer.NRTM_VERSION + 1];
+                messages.put(dummifier, messagesByVersion);
+            }
+
+            if (messagesByVersion[version] == null) {
+                if (dummifier.isAllowed(version, serialEntry.getRpslObject())) {
+                    final String operation = serialEntry.getOperation().toString();
+                    final String header = version == NrtmServer.NRTM_VERSION ? operation + " " + serialEntry.getSerialId() : operation;
+                    final String object = dummifier.dummify(version, serialEntry.getRpslObject()).toString().trim();
+                    messagesByVersion[version] = ChannelBuffers.copiedBuffer(header + "\n\n" + object + "\n\n", Charsets.UTF_8);
+                } else {
+                    messagesByVersion[version] = NOT_ALLOWED;
+                }
+            }
+
+            return messagesByVersion[version] == NOT_ALLOWED ? null : messagesByVersion[version];
+        }
+    }
+}
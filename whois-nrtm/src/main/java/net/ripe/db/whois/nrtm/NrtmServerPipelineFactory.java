@@ -6,7 +6,6 @@ import net.ripe.db.whois.common.rpsl.Dummifier;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -20,11 +19,10 @@ public class NrtmServerPipelineFactory extends BaseNrtmServerPipelineFactory {
                                      final MaintenanceHandler maintenanceHandler,
                                      final NrtmLog nrtmLog,
                                      final @Qualifier("dummifierCurrent") Dummifier dummifier,
-                                     @Qualifier("clientSynchronisationScheduler") final TaskScheduler clientSynchronisationScheduler,
+                                     final NrtmSerialTailer serialTailer,
                                      @Value("${application.version}") final String version,
-                                     @Value("${whois.source}") final String source,
-                                     @Value("${nrtm.update.interval:60}") final long updateInterval) {
+                                     @Value("${whois.source}") final String source) {
 
-        super(nrtmChannelsRegistry, exceptionHandler, aclHandler, serialDao, nrtmLog, dummifier, clientSynchronisationScheduler, maintenanceHandler, version, source, updateInterval);
+        super(nrtmChannelsRegistry, exceptionHandler, aclHandler, serialDao, nrtmLog, dummifier, serialTailer, maintenanceHandler, version, source);
     }
 }
@@ -1,30 +1,32 @@
 package net.ripe.db.whois.nrtm.client;
 
 
+import com.google.common.collect.Lists;
 import net.ripe.db.whois.common.MaintenanceMode;
 import net.ripe.db.whois.common.ServerHelper;
 import net.ripe.db.whois.common.aspects.RetryFor;
-import net.ripe.db.whois.common.dao.RpslObjectUpdateDao;
-import net.ripe.db.whois.common.dao.RpslObjectUpdateInfo;
 import net.ripe.db.whois.common.dao.SerialDao;
 import net.ripe.db.whois.common.domain.serials.Operation;
 import net.ripe.db.whois.common.rpsl.RpslObject;
 import net.ripe.db.whois.common.source.Source;
 import net.ripe.db.whois.common.source.SourceContext;
 import net.ripe.db.whois.nrtm.dao.NrtmClientDao;
+import net.ripe.db.whois.nrtm.dao.SerialUpdate;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
-import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.net.UnknownHostException;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -32,23 +34,25 @@ import java.util.regex.Pattern;
 class NrtmClientFactory {
     private static final Pattern OPERATION_AND_SERIAL_PATTERN = Pattern.compile("^(ADD|DEL)[ ](\\d+)$");
 
+    static final int BATCH_SIZE = 100;
+    static final int READ_AHEAD = 1000;
+
+    private static final SerialUpdate END_OF_STREAM = new SerialUpdate(Operation.UPDATE, 0, null);
+
     private static final Logger LOGGER = LoggerFactory.getLogger(NrtmClientFactory.class);
 
     private final SourceContext sourceContext;
     private final SerialDao serialDao;
-    private final RpslObjectUpdateDao rpslObjectUpdateDao;
     private final NrtmClientDao nrtmClientDao;
     private final MaintenanceMode maintenanceMode;
 
     @Autowired
     public NrtmClientFactory(final SourceContext sourceContext,
                              final SerialDao serialDao,
-                             final RpslObjectUpdateDao rpslObjectUpdateDao,
                              final NrtmClientDao nrtmClientDao,
                              final MaintenanceMode maintenanceMode) {
         this.sourceContext = sourceContext;
         this.serialDao = serialDao;
-        this.rpslObjectUpdateDao = rpslObjectUpdateDao;
         this.nrtmClientDao = nrtmClientDao;
         this.maintenanceMode = maintenanceMode;
     }
@@ -59,6 +63,7 @@ class NrtmClientFactory {
 
     public class NrtmClient implements Runnable {
         private final NrtmSource nrtmSource;
+        private final NrtmClientStatistics statistics;
 
         private SocketChannel socketChannel;
         private SocketChannelFactory.Reader reader;
@@ -66,6 +71,11 @@ class NrtmClientFactory {
 
         public NrtmClient(final NrtmSource nrtmSource) {
             this.nrtmSource = nrtmSource;
+            this.statistics = new NrtmClientStatistics(nrtmSource.getName());
+        }
+
+        NrtmClientStatistics getStatistics() {
+            return statistics;
         }
 
         @Override
@@ -86,6 +96,9 @@ class NrtmClientFactory {
                     } catch (ClosedByInterruptException e) {
                         LOGGER.info("Interrupted, stopping.");
                         break;
+                    } catch (InterruptedException e) {
+                        LOGGER.info("Interrupted, stopping.");
+                        break;
                     } catch (IllegalStateException e) {
                         LOGGER.error(e.getMessage());
                         break;
@@ -154,46 +167,56 @@ class NrtmClientFactory {
             writer.writeLine(line);
         }
 
-        private void readUpdates() throws IOException {
-            while (true) {
-                if (maintenanceMode.allowUpdate()) {
-                    final OperationSerial operationSerial = readOperationAndSerial();
-                    final RpslObject object = readObject();
-                    update(operationSerial.getOperation(), operationSerial.getSerial(), object);
-                } else {
-                    ServerHelper.sleep(1000);
-                }
-            }
-        }
+        /**
+         * Updates are read and parsed ahead on a separate thread, and applied in batches of consecutive serials, each
+         * in a single transaction. The database does not wait for the network, and the network not for the database.
+         */
+        private void readUpdates() throws IOException, InterruptedException {
+            final ReadAhead readAhead = new ReadAhead();
+            final Thread readAheadThread = new Thread(readAhead, String.format("NrtmReadAhead-%s", nrtmSource.getName()));
+            readAheadThread.start();
 
-        public void update(final Operation operation, final int serialId, final RpslObject rpslObject) {
             try {
-                switch (operation) {
-                    case UPDATE:
-                        try {
-                            final RpslObjectUpdateInfo updateInfo = rpslObjectUpdateDao.lookupObject(rpslObject.getType(), rpslObject.getKey().toString());
-                            if (!nrtmClientDao.objectExistsWithSerial(serialId, updateInfo.getObjectId())) {
-                                nrtmClientDao.updateObject(rpslObject, updateInfo, serialId);
-                            }
-                        } catch (EmptyResultDataAccessException e) {
-                            nrtmClientDao.createObject(rpslObject, serialId);
+                final List<SerialUpdate> batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+                while (true) {
+                    if (maintenanceMode.allowUpdate()) {
+                        batch.add(readAhead.updates.take());
+                        readAhead.updates.drainTo(batch, BATCH_SIZE - 1);
+
+                        final int endOfStream = batch.indexOf(END_OF_STREAM);
+                        if (endOfStream >= 0) {
+                            applyUpdates(batch.subList(0, endOfStream));
+                            readAhead.rethrowFailure();
                         }
-                        break;
 
-                    case DELETE:
-                        try {
-                            final RpslObjectUpdateInfo updateInfo = rpslObjectUpdateDao.lookupObject(rpslObject.getType(), rpslObject.getKey().toString());
-                            if (!nrtmClientDao.objectExistsWithSerial(serialId, updateInfo.getObjectId())) {
-                                nrtmClientDao.deleteObject(updateInfo, serialId);
-                            }
-                        } catch (EmptyResultDataAccessException e) {
-                            throw new IllegalStateException("DELETE serial:" + serialId + " but object:" + rpslObject.getKey().toString() + " doesn't exist");
-                        }
-                        break;
+                        applyUpdates(batch);
+                        batch.clear();
+                    } else {
+                        ServerHelper.sleep(1000);
+                    }
                 }
+            } finally {
+                readAheadThread.interrupt();
+            }
+        }
+
+        private void applyUpdates(final List<SerialUpdate> updates) {
+            if (updates.isEmpty()) {
+                return;
+            }
+
+            final SerialUpdate first = updates.get(0);
+            final SerialUpdate last = updates.get(updates.size() - 1);
+            final long start = System.nanoTime();
+
+            final int applied;
+            try {
+                applied = nrtmClientDao.applyUpdates(updates);
             } catch (DataAccessException e) {
-                throw new IllegalStateException("Unexpected error on " + operation + " " + serialId, e);
+                throw new IllegalStateException("Unexpected error on " + first + " to " + last, e);
             }
+
+            statistics.batchApplied(updates.size(), applied, last.getSerialId(), System.nanoTime() - start);
         }
 
         private OperationSerial readOperationAndSerial() throws IOException {
@@ -220,6 +243,39 @@ class NrtmClientFactory {
             return RpslObject.parse(builder.toString());
         }
 
+        private class ReadAhead implements Runnable {
+            private final BlockingQueue<SerialUpdate> updates = new ArrayBlockingQueue<>(READ_AHEAD);
+            private volatile Exception failure;
+
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final OperationSerial operationSerial = readOperationAndSerial();
+                        final RpslObject object = readObject();
+                        updates.put(new SerialUpdate(operationSerial.getOperation(), operationSerial.getSerial(), object));
+                    }
+                } catch (InterruptedException ignored) {
+                    // stopped by the client
+                } catch (Exception e) {
+                    failure = e;
+                    try {
+                        updates.put(END_OF_STREAM);
+                    } catch (InterruptedException ignored) {
+                        // stopped by the client
+                    }
+                }
+            }
+
+            private void rethrowFailure() throws IOException {
+                if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                }
+
+                throw (RuntimeException) failure;
+            }
+        }
+
         private class OperationSerial {
             private final Operation operation;
             private final int serial;
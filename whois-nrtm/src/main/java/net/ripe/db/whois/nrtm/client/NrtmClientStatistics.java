@@ -0,0 +1,90 @@
+package net.ripe.db.whois.nrtm.client;
+
+import net.ripe.db.whois.common.domain.CIString;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the serials imported from an NRTM source. Updated by the client thread, read over JMX.
+ */
+class NrtmClientStatistics {
+    private final CIString source;
+    private final long started = System.nanoTime();
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong applyNanos = new AtomicLong();
+
+    private volatile int lastSerial;
+
+    NrtmClientStatistics(final CIString source) {
+        this.source = source;
+    }
+
+    void batchApplied(final int nrReceived, final int nrApplied, final int lastSerial, final long nanos) {
+        received.addAndGet(nrReceived);
+        applied.addAndGet(nrApplied);
+        skipped.addAndGet(nrReceived - nrApplied);
+        batches.incrementAndGet();
+        applyNanos.addAndGet(nanos);
+        this.lastSerial = lastSerial;
+    }
+
+    CIString getSource() {
+        return source;
+    }
+
+    long getReceived() {
+        return received.get();
+    }
+
+    long getApplied() {
+        return applied.get();
+    }
+
+    long getSkipped() {
+        return skipped.get();
+    }
+
+    long getBatches() {
+        return batches.get();
+    }
+
+    int getLastSerial() {
+        return lastSerial;
+    }
+
+    /**
+     * @return the serials received per second since the client started.
+     */
+    double getReceivedPerSecond() {
+        return perSecond(received.get(), System.nanoTime() - started);
+    }
+
+    /**
+     * @return the serials applied per second spent applying batches.
+     */
+    double getAppliedPerSecond() {
+        return perSecond(applied.get(), applyNanos.get());
+    }
+
+    private static double perSecond(final long count, final long nanos) {
+        return nanos == 0 ? 0 : count * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d received (%.1f/s), %d applied (%.1f/s), %d skipped, %d batches, last serial %d",
+                source,
+                getReceived(),
+                getReceivedPerSecond(),
+                getApplied(),
+                getAppliedPerSecond(),
+                getSkipped(),
+                getBatches(),
+                getLastSerial());
+    }
+}
@@ -39,7 +39,7 @@ public class NrtmImporter implements EmbeddedValueResolverAware, ApplicationServ
 
     private StringValueResolver valueResolver;
     private ExecutorService executorService;
-    private Set<NrtmClientFactory.NrtmClient> clients = Sets.newHashSet();
+    private final Set<NrtmClientFactory.NrtmClient> clients = Sets.newCopyOnWriteArraySet();
 
     @Autowired
     public NrtmImporter(final NrtmClientFactory nrtmClientFactory,
@@ -105,6 +105,15 @@ public class NrtmImporter implements EmbeddedValueResolverAware, ApplicationServ
         }
     }
 
+    List<NrtmClientStatistics> getStatistics() {
+        final List<NrtmClientStatistics> statistics = Lists.newArrayList();
+        for (final NrtmClientFactory.NrtmClient client : clients) {
+            statistics.add(client.getStatistics());
+        }
+
+        return statistics;
+    }
+
     private List<NrtmSource> readNrtmSources() {
         final List<NrtmSource> nrtmSources = Lists.newArrayList();
 
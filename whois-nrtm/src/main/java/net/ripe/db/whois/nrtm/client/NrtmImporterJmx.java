@@ -0,0 +1,29 @@
+package net.ripe.db.whois.nrtm.client;
+
+import com.google.common.base.Joiner;
+import net.ripe.db.whois.common.jmx.JmxBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+@Component
+@ManagedResource(objectName = JmxBase.OBJECT_NAME_BASE + "NrtmImporter", description = "Whois NRTM importer")
+public class NrtmImporterJmx extends JmxBase {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NrtmImporterJmx.class);
+
+    private final NrtmImporter nrtmImporter;
+
+    @Autowired
+    public NrtmImporterJmx(final NrtmImporter nrtmImporter) {
+        super(LOGGER);
+        this.nrtmImporter = nrtmImporter;
+    }
+
+    @ManagedAttribute(description = "Number of serials received, applied and skipped per source, and their rates")
+    public String getStatistics() {
+        return Joiner.on('\n').join(nrtmImporter.getStatistics());
+    }
+}
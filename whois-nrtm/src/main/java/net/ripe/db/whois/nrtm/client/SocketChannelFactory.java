@@ -23,8 +23,10 @@ public class SocketChannelFactory {
     }
 
     public static class Reader {
+        private static final int BUFFER_SIZE = 64 * 1024;
+
         private final SocketChannel socketChannel;
-        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
 
         public Reader(final SocketChannel socketChannel) {
             this.socketChannel = socketChannel;
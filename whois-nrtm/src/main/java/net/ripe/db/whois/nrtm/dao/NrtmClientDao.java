@@ -3,6 +3,8 @@ package net.ripe.db.whois.nrtm.dao;
 import net.ripe.db.whois.common.dao.RpslObjectUpdateInfo;
 import net.ripe.db.whois.common.rpsl.RpslObject;
 
+import java.util.List;
+
 public interface NrtmClientDao {
 
     RpslObjectUpdateInfo createObject(RpslObject object, int serialId);
@@ -12,4 +14,13 @@ public interface NrtmClientDao {
     void deleteObject(RpslObjectUpdateInfo info, int serialId);
 
     boolean objectExistsWithSerial(int serialId, int objectId);
+
+    /**
+     * Applies the updates in order, in a single transaction. Updates with a serial that already exists are skipped, so
+     * serials received again after a reconnect are applied only once.
+     *
+     * @return the number of updates applied.
+     * @throws IllegalStateException if an object to delete does not exist.
+     */
+    int applyUpdates(List<SerialUpdate> updates);
 }
@@ -1,16 +1,21 @@
 package net.ripe.db.whois.nrtm.dao.jdbc;
 
+import com.google.common.collect.Sets;
 import net.ripe.db.whois.common.DateTimeProvider;
 import net.ripe.db.whois.common.dao.RpslObjectUpdateInfo;
 import net.ripe.db.whois.common.rpsl.RpslObject;
 import net.ripe.db.whois.nrtm.dao.NrtmClientDao;
+import net.ripe.db.whois.nrtm.dao.SerialUpdate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.sql.DataSource;
+import java.util.List;
+import java.util.Set;
 
 import static net.ripe.db.whois.common.dao.jdbc.JdbcRpslObjectOperations.*;
 
@@ -56,4 +61,50 @@ public class JdbcNrtmClientDao implements NrtmClientDao {
         final int found = jdbcTemplate.queryForInt("SELECT count(*) FROM serials WHERE serial_id = ? AND object_id = ?", serialId, objectId);
         return found > 0;
     }
+
+    @Override
+    public int applyUpdates(final List<SerialUpdate> updates) {
+        if (updates.isEmpty()) {
+            return 0;
+        }
+
+        final Set<Integer> existingSerials = getExistingSerials(updates.get(0).getSerialId(), updates.get(updates.size() - 1).getSerialId());
+
+        int applied = 0;
+        for (final SerialUpdate update : updates) {
+            if (existingSerials.contains(update.getSerialId())) {
+                continue;
+            }
+
+            final RpslObject object = update.getRpslObject();
+            switch (update.getOperation()) {
+                case UPDATE:
+                    try {
+                        updateObject(object, lookupRpslObjectUpdateInfo(jdbcTemplate, object.getType(), object.getKey().toString()), update.getSerialId());
+                    } catch (EmptyResultDataAccessException e) {
+                        createObject(object, update.getSerialId());
+                    }
+                    break;
+
+                case DELETE:
+                    try {
+                        deleteObject(lookupRpslObjectUpdateInfo(jdbcTemplate, object.getType(), object.getKey().toString()), update.getSerialId());
+                    } catch (EmptyResultDataAccessException e) {
+                        throw new IllegalStateException("DELETE serial:" + update.getSerialId() + " but object:" + object.getKey() + " doesn't exist");
+                    }
+                    break;
+            }
+
+            applied++;
+        }
+
+        return applied;
+    }
+
+    private Set<Integer> getExistingSerials(final int firstSerial, final int lastSerial) {
+        return Sets.newHashSet(jdbcTemplate.queryForList(
+                "SELECT serial_id FROM serials WHERE serial_id BETWEEN ? AND ?",
+                Integer.class,
+                Math.min(firstSerial, lastSerial), Math.max(firstSerial, lastSerial)));
+    }
 }
@@ -1,9 +1,11 @@
 package net.ripe.db.whois.nrtm;
 
+import com.google.common.collect.Lists;
 import net.ripe.db.whois.common.dao.SerialDao;
 import net.ripe.db.whois.common.domain.serials.Operation;
 import net.ripe.db.whois.common.domain.serials.SerialEntry;
 import net.ripe.db.whois.common.domain.serials.SerialRange;
+import net.ripe.db.whois.common.rpsl.Dummifier;
 import net.ripe.db.whois.common.rpsl.DummifierLegacy;
 import net.ripe.db.whois.common.rpsl.RpslObject;
 import org.jboss.netty.channel.*;
@@ -12,20 +14,16 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InOrder;
 import org.mockito.Mock;
-import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
-import org.mockito.stubbing.Answer;
-import org.springframework.scheduling.TaskScheduler;
 
 import java.net.InetSocketAddress;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
-import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.*;
 
 
@@ -34,7 +32,7 @@ public class NrtmQueryHandlerTest {
 
     @Mock private SerialDao serialDaoMock;
     @Mock private DummifierLegacy dummifierMock;
-    @Mock private TaskScheduler mySchedulerMock;
+    @Mock private NrtmSerialTailer serialTailerMock;
     @Mock private ChannelHandlerContext contextMock;
     @Mock private ChannelStateEvent channelStateEventMock;
     @Mock private Channel channelMock;
@@ -42,7 +40,6 @@ public class NrtmQueryHandlerTest {
     @Mock private ChannelFuture channelFutureMock;
     @Mock private NrtmLog nrtmLogMock;
 
-    private static final long UPDATE_INTERVAL = 1;
     private static final String SOURCE = "RIPE";
     private static final String VERSION = "1.0-SNAPSHOT";
 
@@ -56,25 +53,19 @@ public class NrtmQueryHandlerTest {
         when(contextMock.getChannel()).thenReturn(channelMock);
         when(channelMock.getRemoteAddress()).thenReturn(new InetSocketAddress(0));
         when(channelMock.isOpen()).thenReturn(true);
+        when(channelMock.isWritable()).thenReturn(true);
         when(channelMock.write(any())).thenReturn(channelFutureMock);
         when(serialDaoMock.getSerials()).thenReturn(new SerialRange(1, 2));
 
-        when(serialDaoMock.getById(1)).thenReturn(new SerialEntry(Operation.UPDATE, true, 1, 1000, 1000, inetnum.toByteArray()));
+        final SerialEntry serial1 = new SerialEntry(1, Operation.UPDATE, true, 1, 1000, 1000, inetnum.toByteArray());
+        final SerialEntry serial2 = new SerialEntry(2, Operation.UPDATE, true, 2, 1000, 1000, person.toByteArray());
+        when(serialDaoMock.getByIdRange(1, 1)).thenReturn(Lists.newArrayList(serial1));
+        when(serialDaoMock.getByIdRange(1, 2)).thenReturn(Lists.newArrayList(serial1, serial2));
         when(dummifierMock.isAllowed(NrtmServer.NRTM_VERSION, inetnum)).thenReturn(true);
         when(dummifierMock.dummify(NrtmServer.NRTM_VERSION, inetnum)).thenReturn(inetnum);
-        when(serialDaoMock.getById(2)).thenReturn(new SerialEntry(Operation.UPDATE, true, 2, 1000, 1000, person.toByteArray()));
         when(dummifierMock.isAllowed(NrtmServer.NRTM_VERSION, person)).thenReturn(false);
 
-        when(mySchedulerMock.scheduleAtFixedRate(any(Runnable.class), anyLong())).thenAnswer(new Answer<ScheduledFuture<?>>() {
-            @Override
-            public ScheduledFuture<?> answer(InvocationOnMock invocation) throws Throwable {
-                Object[] args = invocation.getArguments();
-                ((Runnable) args[0]).run();
-                return null;
-            }
-        });
-
-        subject = new NrtmQueryHandler(serialDaoMock, dummifierMock, mySchedulerMock, nrtmLogMock, VERSION, SOURCE, UPDATE_INTERVAL);
+        subject = new NrtmQueryHandler(serialDaoMock, dummifierMock, serialTailerMock, nrtmLogMock, VERSION, SOURCE);
         subject.PENDING_WRITES.set(channelMock, new AtomicInteger());
     }
 
@@ -138,9 +129,19 @@ public class NrtmQueryHandlerTest {
         subject.messageReceived(contextMock, messageEventMock);
 
         verify(channelMock, times(1)).write("%START Version: 3 RIPE 1-2\n\n");
-        verify(mySchedulerMock, times(1)).scheduleAtFixedRate(any(Runnable.class), anyLong());
         verify(channelMock, times(1)).write("ADD 1\n\n");
         verify(channelMock, times(1)).write(inetnum.toString() + "\n");
+        verify(serialTailerMock, times(1)).subscribe(channelMock, 3, dummifierMock, 3);
+    }
+
+    @Test
+    public void keepalive_unsubscribe_on_disconnect() throws Exception {
+        when(messageEventMock.getMessage()).thenReturn("-g RIPE:3:1-LAST -k");
+
+        subject.messageReceived(contextMock, messageEventMock);
+        subject.channelDisconnected(contextMock, channelStateEventMock);
+
+        verify(serialTailerMock).unsubscribe(channelMock);
     }
 
     @Test
@@ -210,15 +211,59 @@ public class NrtmQueryHandlerTest {
     }
 
     @Test
-    public void throttleChannelKeepaliveQuery() {
-        subject.PENDING_WRITES.set(channelMock, new AtomicInteger(subject.MAX_PENDING_WRITES + 1));
+    public void channelNotWritable() throws Exception {
+        when(channelMock.isWritable()).thenReturn(false);
+        when(messageEventMock.getMessage()).thenReturn("-g RIPE:3:1-2");
+
+        subject.messageReceived(contextMock, messageEventMock);
+
+        verify(channelMock, times(1)).write("%START Version: 3 RIPE 1-2\n\n");
+        verify(channelMock, times(1)).write(any(String.class));
+        verify(serialDaoMock, never()).getByIdRange(anyInt(), anyInt());
+
+        when(channelMock.isWritable()).thenReturn(true);
+        subject.channelInterestChanged(contextMock, channelStateEventMock);
+
+        verify(channelMock, times(1)).write("ADD 1\n\n");
+        verify(channelMock, times(1)).write(inetnum.toString() + "\n");
+        verify(channelMock, times(1)).write("%END RIPE\n\n");
+    }
 
+    @Test
+    public void throttleChannelKeepaliveQuery() {
+        when(channelMock.isWritable()).thenReturn(false);
         when(messageEventMock.getMessage()).thenReturn("-g RIPE:3:1-LAST -k");
 
         subject.messageReceived(contextMock, messageEventMock);
 
         verify(channelMock, times(1)).write("%START Version: 3 RIPE 1-2\n\n");
         verify(channelMock, atMost(1)).write(any(String.class));
-        verify(mySchedulerMock, times(1)).scheduleAtFixedRate(any(Runnable.class), anyLong());
+        verify(serialTailerMock, never()).subscribe(any(Channel.class), anyInt(), any(Dummifier.class), anyInt());
+    }
+
+    @Test
+    public void catchUpInPages() {
+        final int end = NrtmQueryHandler.CATCH_UP_PAGE_SIZE + 1;
+        when(serialDaoMock.getSerials()).thenReturn(new SerialRange(1, end));
+        when(messageEventMock.getMessage()).thenReturn("-g RIPE:3:1-LAST");
+
+        subject.messageReceived(contextMock, messageEventMock);
+
+        verify(serialDaoMock).getByIdRange(1, NrtmQueryHandler.CATCH_UP_PAGE_SIZE);
+        verify(serialDaoMock).getByIdRange(end, end);
+        verify(channelMock, times(1)).write("%END RIPE\n\n");
+    }
+
+    @Test
+    public void queriesIgnoredWhileMirroring() {
+        when(channelMock.isWritable()).thenReturn(false);
+        when(messageEventMock.getMessage()).thenReturn("-g RIPE:3:1-2");
+
+        subject.messageReceived(contextMock, messageEventMock);
+
+        when(messageEventMock.getMessage()).thenReturn("-q version");
+        subject.messageReceived(contextMock, messageEventMock);
+
+        verify(channelMock, never()).write("% nrtm-server-" + VERSION + "\n\n");
     }
 }
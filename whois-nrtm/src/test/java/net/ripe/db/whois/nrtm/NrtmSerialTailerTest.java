@@ -0,0 +1,186 @@
+package net.ripe.db.whois.nrtm;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import net.ripe.db.whois.common.dao.SerialDao;
+import net.ripe.db.whois.common.domain.serials.Operation;
+import net.ripe.db.whois.common.domain.serials.SerialEntry;
+import net.ripe.db.whois.common.domain.serials.SerialRange;
+import net.ripe.db.whois.common.rpsl.Dummifier;
+import net.ripe.db.whois.common.rpsl.RpslObject;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NrtmSerialTailerTest {
+    @Mock private SerialDao serialDao;
+    @Mock private TaskScheduler scheduler;
+    @Mock private Dummifier dummifier;
+    @Mock private Channel channel1;
+    @Mock private Channel channel2;
+    @Mock private ChannelFuture channelFuture;
+
+    private static final RpslObject inetnum = RpslObject.parse("inetnum:10.0.0.1");
+    private static final RpslObject person = RpslObject.parse("person:one\nnic-hdl:ONE");
+
+    private NrtmSerialTailer subject;
+
+    @Before
+    public void setup() {
+        for (final Channel channel : Lists.newArrayList(channel1, channel2)) {
+            when(channel.isOpen()).thenReturn(true);
+            when(channel.write(any())).thenReturn(channelFuture);
+            NrtmQueryHandler.PENDING_WRITES.set(channel, new AtomicInteger());
+        }
+
+        when(serialDao.getSerials()).thenReturn(new SerialRange(1, 2));
+        when(serialDao.getByIdRange(anyInt(), anyInt())).thenReturn(Lists.newArrayList(
+                new SerialEntry(1, Operation.UPDATE, true, 1, 1000, 1000, inetnum.toByteArray()),
+                new SerialEntry(2, Operation.DELETE, false, 2, 1000, 1000, person.toByteArray())));
+
+        when(dummifier.isAllowed(anyInt(), any(RpslObject.class))).thenReturn(true);
+        when(dummifier.dummify(anyInt(), any(RpslObject.class))).thenAnswer(new Answer<RpslObject>() {
+            @Override
+            public RpslObject answer(final InvocationOnMock invocation) {
+                return (RpslObject) invocation.getArguments()[1];
+            }
+        });
+
+        subject = new NrtmSerialTailer(serialDao, scheduler, 1);
+    }
+
+    @After
+    public void cleanup() {
+        NrtmQueryHandler.PENDING_WRITES.remove(channel1);
+        NrtmQueryHandler.PENDING_WRITES.remove(channel2);
+    }
+
+    @Test
+    public void no_subscriptions() {
+        subject.tail();
+
+        verifyZeroInteractions(serialDao);
+    }
+
+    @Test
+    public void serials_read_and_rendered_once() {
+        subject.subscribe(channel1, 3, dummifier, 1);
+        subject.subscribe(channel2, 3, dummifier, 1);
+
+        subject.tail();
+
+        verify(serialDao, times(1)).getByIdRange(1, 2);
+        verify(dummifier, times(1)).dummify(3, inetnum);
+        verify(dummifier, times(1)).dummify(3, person);
+
+        final String expected = "ADD 1\n\n" + inetnum.toString().trim() + "\n\n";
+        assertThat(written(channel1, 2), contains(expected, "DEL 2\n\n" + person.toString().trim() + "\n\n"));
+        assertThat(written(channel2, 2), contains(expected, "DEL 2\n\n" + person.toString().trim() + "\n\n"));
+    }
+
+    @Test
+    public void rendered_per_version() {
+        subject.subscribe(channel1, 3, dummifier, 2);
+        subject.subscribe(channel2, 1, dummifier, 2);
+
+        subject.tail();
+
+        assertThat(written(channel1, 1), contains("DEL 2\n\n" + person.toString().trim() + "\n\n"));
+        assertThat(written(channel2, 1), contains("DEL\n\n" + person.toString().trim() + "\n\n"));
+    }
+
+    @Test
+    public void not_allowed_skipped() {
+        when(dummifier.isAllowed(3, person)).thenReturn(false);
+        subject.subscribe(channel1, 3, dummifier, 1);
+
+        subject.tail();
+        subject.tail();
+
+        assertThat(written(channel1, 1), contains("ADD 1\n\n" + inetnum.toString().trim() + "\n\n"));
+    }
+
+    @Test
+    public void throttled_channel_catches_up() {
+        NrtmQueryHandler.PENDING_WRITES.get(channel2).set(NrtmQueryHandler.MAX_PENDING_WRITES + 1);
+        subject.subscribe(channel1, 3, dummifier, 1);
+        subject.subscribe(channel2, 3, dummifier, 1);
+
+        subject.tail();
+
+        verify(channel1, times(2)).write(any());
+        verify(channel2, never()).write(any());
+
+        NrtmQueryHandler.PENDING_WRITES.get(channel2).set(0);
+        subject.tail();
+
+        verify(channel1, times(2)).write(any());
+        verify(channel2, times(2)).write(any());
+    }
+
+    @Test
+    public void position_kept_between_runs() {
+        subject.subscribe(channel1, 3, dummifier, 1);
+
+        subject.tail();
+        subject.tail();
+
+        verify(channel1, times(2)).write(any());
+        verify(serialDao, times(1)).getByIdRange(anyInt(), anyInt());
+    }
+
+    @Test
+    public void closed_channel_unsubscribed() {
+        when(channel1.isOpen()).thenReturn(false);
+        subject.subscribe(channel1, 3, dummifier, 1);
+
+        subject.tail();
+
+        assertThat(subject.getNrSubscriptions(), is(0));
+        verify(channel1, never()).write(any());
+    }
+
+    @Test
+    public void unsubscribe() {
+        subject.subscribe(channel1, 3, dummifier, 1);
+        subject.unsubscribe(channel1);
+
+        subject.tail();
+
+        assertThat(subject.getNrSubscriptions(), is(0));
+        verify(serialDao, never()).getByIdRange(anyInt(), anyInt());
+    }
+
+    private static List<String> written(final Channel channel, final int nrWrites) {
+        final ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(channel, times(nrWrites)).write(captor.capture());
+
+        final List<String> messages = Lists.newArrayList();
+        for (final Object message : captor.getAllValues()) {
+            messages.add(((ChannelBuffer) message).toString(Charsets.UTF_8));
+        }
+
+        return messages;
+    }
+}
@@ -0,0 +1,153 @@
+package net.ripe.db.whois.nrtm.client;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import net.ripe.db.whois.common.MaintenanceMode;
+import net.ripe.db.whois.common.dao.SerialDao;
+import net.ripe.db.whois.common.domain.serials.Operation;
+import net.ripe.db.whois.common.domain.serials.SerialRange;
+import net.ripe.db.whois.common.source.SourceContext;
+import net.ripe.db.whois.nrtm.dao.NrtmClientDao;
+import net.ripe.db.whois.nrtm.dao.SerialUpdate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static net.ripe.db.whois.common.domain.CIString.ciString;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NrtmClientFactoryTest {
+    @Mock private SourceContext sourceContext;
+    @Mock private SerialDao serialDao;
+    @Mock private NrtmClientDao nrtmClientDao;
+    @Mock private MaintenanceMode maintenanceMode;
+
+    private final List<String> applied = Collections.synchronizedList(Lists.<String>newArrayList());
+    private final ExecutorService executorService = Executors.newFixedThreadPool(2);
+
+    private ServerSocket serverSocket;
+    private NrtmClientFactory.NrtmClient subject;
+
+    @Before
+    public void setup() throws IOException {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+
+        when(maintenanceMode.allowUpdate()).thenReturn(true);
+        when(serialDao.getSerials()).thenReturn(new SerialRange(1, 10));
+        when(nrtmClientDao.applyUpdates(anyListOf(SerialUpdate.class))).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(final InvocationOnMock invocation) {
+                @SuppressWarnings("unchecked")
+                final List<SerialUpdate> updates = (List<SerialUpdate>) invocation.getArguments()[0];
+                for (final SerialUpdate update : updates) {
+                    applied.add(update.toString());
+                }
+                return updates.get(0).getSerialId() == 10 ? updates.size() - 1 : updates.size();
+            }
+        });
+
+        final NrtmClientFactory nrtmClientFactory = new NrtmClientFactory(sourceContext, serialDao, nrtmClientDao, maintenanceMode);
+        subject = nrtmClientFactory.createNrtmClient(new NrtmSource(ciString("TEST"), ciString("RIPE"), "localhost", serverSocket.getLocalPort()));
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        executorService.shutdownNow();
+        serverSocket.close();
+    }
+
+    @Test
+    public void updates_applied_in_order() throws Exception {
+        final Future<String> mirrorCommand = serve("" +
+                "ADD 10\n\nmntner: TEST-MNT\n\n" +
+                "ADD 11\n\nperson: Test Person\nnic-hdl: TP1-TEST\n\n" +
+                "DEL 12\n\nmntner: TEST-MNT\n\n");
+        executorService.submit(subject);
+
+        assertThat(mirrorCommand.get(5, TimeUnit.SECONDS), is("-g RIPE:3:10-LAST -k"));
+        waitForApplied(3);
+        assertThat(applied, contains("ADD 10", "ADD 11", "DEL 12"));
+
+        final NrtmClientStatistics statistics = subject.getStatistics();
+        assertThat(statistics.getReceived(), is(3L));
+        assertThat(statistics.getApplied(), is(2L));
+        assertThat(statistics.getSkipped(), is(1L));
+        assertThat(statistics.getLastSerial(), is(12));
+    }
+
+    @Test
+    public void updates_before_unexpected_response_applied() throws Exception {
+        serve("" +
+                "ADD 10\n\nmntner: TEST-MNT\n\n" +
+                "ADD 11\n\nperson: Test Person\nnic-hdl: TP1-TEST\n\n" +
+                "FOO 12\n\n");
+
+        // the client stops on an unexpected response
+        executorService.submit(subject).get(5, TimeUnit.SECONDS);
+
+        assertThat(applied, contains("ADD 10", "ADD 11"));
+    }
+
+    @Test
+    public void not_applied_in_maintenance_mode() throws Exception {
+        when(maintenanceMode.allowUpdate()).thenReturn(false);
+        final Future<String> mirrorCommand = serve("ADD 10\n\nmntner: TEST-MNT\n\n");
+        executorService.submit(subject);
+
+        mirrorCommand.get(5, TimeUnit.SECONDS);
+        Thread.sleep(100);
+        assertThat(applied.isEmpty(), is(true));
+
+        when(maintenanceMode.allowUpdate()).thenReturn(true);
+        waitForApplied(1);
+        assertThat(applied, contains("ADD 10"));
+    }
+
+    private Future<String> serve(final String updates) {
+        return executorService.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                final Socket socket = serverSocket.accept();
+                final OutputStream outputStream = socket.getOutputStream();
+                outputStream.write("% header\n%\n\n".getBytes(Charsets.ISO_8859_1));
+
+                final String mirrorCommand = new BufferedReader(new InputStreamReader(socket.getInputStream(), Charsets.ISO_8859_1)).readLine();
+                outputStream.write(("%START Version: 3 RIPE 10-12\n\n" + updates).getBytes(Charsets.ISO_8859_1));
+                outputStream.flush();
+
+                return mirrorCommand;
+            }
+        });
+    }
+
+    private void waitForApplied(final int nrApplied) throws InterruptedException {
+        for (int i = 0; i < 500 && applied.size() < nrApplied; i++) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -1,11 +1,13 @@
 package net.ripe.db.whois.nrtm.dao.jdbc;
 
+import com.google.common.collect.Lists;
 import net.ripe.db.whois.common.dao.RpslObjectUpdateInfo;
 import net.ripe.db.whois.common.domain.serials.Operation;
 import net.ripe.db.whois.common.rpsl.ObjectType;
 import net.ripe.db.whois.common.rpsl.RpslObject;
 import net.ripe.db.whois.common.support.AbstractDaoTest;
 import net.ripe.db.whois.nrtm.dao.NrtmClientDao;
+import net.ripe.db.whois.nrtm.dao.SerialUpdate;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
@@ -15,6 +17,7 @@ import java.util.Map;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.fail;
 
 @ContextConfiguration(locations = {"classpath:applicationContext-nrtm-test.xml"})
 public class JdbcNrtmClientDaoTest extends AbstractDaoTest {
@@ -76,4 +79,41 @@ public class JdbcNrtmClientDaoTest extends AbstractDaoTest {
                 is(2563245));
         //TODO more assertions
     }
+
+    @Test
+    public void applyUpdates() {
+        final int applied = subject.applyUpdates(Lists.newArrayList(
+                new SerialUpdate(Operation.UPDATE, 3000, RpslObject.parse("mntner: TEST-MNT\nmnt-by: TEST-MNT")),
+                new SerialUpdate(Operation.UPDATE, 3001, RpslObject.parse("mntner: TEST-MNT\nmnt-by: TEST-MNT\nremarks: updated")),
+                new SerialUpdate(Operation.DELETE, 3002, RpslObject.parse("mntner: TEST-MNT\nmnt-by: TEST-MNT"))));
+
+        assertThat(applied, is(3));
+        assertThat(databaseHelper.getWhoisTemplate().queryForInt("SELECT count(*) FROM serials WHERE serial_id BETWEEN 3000 AND 3002"), is(3));
+        assertThat(databaseHelper.getWhoisTemplate().queryForInt("SELECT count(*) FROM mntner WHERE mntner = 'TEST-MNT'"), is(0));
+    }
+
+    @Test
+    public void applyUpdates_existing_serials_skipped() {
+        final SerialUpdate update = new SerialUpdate(Operation.UPDATE, 3000, RpslObject.parse("mntner: TEST-MNT\nmnt-by: TEST-MNT"));
+        assertThat(subject.applyUpdates(Lists.newArrayList(update)), is(1));
+
+        assertThat(subject.applyUpdates(Lists.newArrayList(update,
+                new SerialUpdate(Operation.UPDATE, 3001, RpslObject.parse("mntner: TEST-MNT\nmnt-by: TEST-MNT\nremarks: updated")))), is(1));
+
+        assertThat(databaseHelper.getWhoisTemplate().queryForInt("SELECT sequence_id FROM last WHERE pkey = 'TEST-MNT'"), is(2));
+    }
+
+    @Test
+    public void applyUpdates_delete_unknown_object_rolled_back() {
+        try {
+            subject.applyUpdates(Lists.newArrayList(
+                    new SerialUpdate(Operation.UPDATE, 3000, RpslObject.parse("mntner: TEST-MNT\nmnt-by: TEST-MNT")),
+                    new SerialUpdate(Operation.DELETE, 3001, RpslObject.parse("mntner: OTHER-MNT\nmnt-by: OTHER-MNT"))));
+            fail();
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("DELETE serial:3001 but object:OTHER-MNT doesn't exist"));
+        }
+
+        assertThat(databaseHelper.getWhoisTemplate().queryForInt("SELECT count(*) FROM serials WHERE serial_id = 3000"), is(0));
+    }
 }
@@ -0,0 +1,50 @@
+package net.ripe.db.whois.query;
+
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import net.ripe.db.whois.common.profiles.DeployedProfile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.stereotype.Component;
+
+/**
+ * The single hazelcast member of this node, shared by everything that uses the cluster, so the node joins the
+ * cluster once.
+ */
+@DeployedProfile
+@Component
+public class HazelcastInstanceFactoryBean implements FactoryBean<HazelcastInstance>, DisposableBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HazelcastInstanceFactoryBean.class);
+
+    private HazelcastInstance instance;
+
+    @Override
+    public synchronized HazelcastInstance getObject() {
+        if (instance == null) {
+            instance = Hazelcast.newHazelcastInstance(null);
+        }
+
+        return instance;
+    }
+
+    @Override
+    public Class<?> getObjectType() {
+        return HazelcastInstance.class;
+    }
+
+    @Override
+    public boolean isSingleton() {
+        return true;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (instance != null) {
+            LOGGER.debug("Shutting down hazelcast instance");
+            instance.getLifecycleService().shutdown();
+            instance = null;
+        }
+    }
+}
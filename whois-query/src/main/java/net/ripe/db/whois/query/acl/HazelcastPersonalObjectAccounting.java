@@ -1,16 +1,15 @@
 package net.ripe.db.whois.query.acl;
 
-import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.IMap;
 import net.ripe.db.whois.common.profiles.DeployedProfile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
-import javax.annotation.PreDestroy;
 import java.net.InetAddress;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -21,34 +20,18 @@ import java.util.concurrent.TimeoutException;
 public class HazelcastPersonalObjectAccounting implements PersonalObjectAccounting {
     private static final Logger LOGGER = LoggerFactory.getLogger(HazelcastPersonalObjectAccounting.class);
 
-    private static IMap<InetAddress, Integer> counterMap;
+    private final HazelcastInstance instance;
 
-    private static volatile HazelcastInstance instance;
+    private IMap<InetAddress, Integer> counterMap;
 
-    static synchronized void startHazelcast() {
-        if (instance != null) {
-            throw new IllegalStateException("Hazelcast already started");
-        }
-
-        instance = Hazelcast.newHazelcastInstance(null);
-        counterMap = instance.getMap("queriedPersonal");
-    }
-
-    static void shutdownHazelcast() {
-        LOGGER.debug("Shutting down hazelcast instance");
-
-        instance.getLifecycleService().shutdown();
-        instance = null;
+    @Autowired
+    public HazelcastPersonalObjectAccounting(final HazelcastInstance instance) {
+        this.instance = instance;
     }
 
     @PostConstruct
     public void startService() {
-        startHazelcast();
-    }
-
-    @PreDestroy
-    public void stopService() {
-        shutdownHazelcast();
+        counterMap = instance.getMap("queriedPersonal");
     }
 
     @Override
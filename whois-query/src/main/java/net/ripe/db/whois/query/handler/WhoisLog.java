@@ -1,5 +1,6 @@
 package net.ripe.db.whois.query.handler;
 
+import net.ripe.db.whois.common.collect.ReadAhead;
 import net.ripe.db.whois.query.domain.QueryCompletionInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,18 +22,40 @@ public class WhoisLog {
         this.logger = logger;
     }
 
+    /**
+     * Logs the result of a query, with the batches loaded, loaded ahead and the time waited for them if the query
+     * used read-ahead (see {@link ReadAhead}).
+     */
     public void logQueryResult(final String api, final int personalObjects, final int nonPersonalObjects, @Nullable final QueryCompletionInfo completionInfo, final long executionTime, @Nullable final InetAddress remoteAddress, final Integer channelId, final String queryString) {
-        logger.info(
-                "{} PW-{}-INFO <{}+{}+0> {} {}s [{}] --  {}",
-                String.format("%10d", channelId),
-                api,
-                personalObjects,
-                nonPersonalObjects,
-                completionInfo == null ? "" : completionInfo.name(),
-                formatExecutionTime(executionTime),
-                remoteAddress != null ? remoteAddress.getHostAddress() : "NONE",
-                queryString
-        );
+        final ReadAhead readAhead = ReadAhead.current();
+        if (readAhead == null) {
+            logger.info(
+                    "{} PW-{}-INFO <{}+{}+0> {} {}s [{}] --  {}",
+                    String.format("%10d", channelId),
+                    api,
+                    personalObjects,
+                    nonPersonalObjects,
+                    completionInfo == null ? "" : completionInfo.name(),
+                    formatExecutionTime(executionTime),
+                    remoteAddress != null ? remoteAddress.getHostAddress() : "NONE",
+                    queryString
+            );
+        } else {
+            logger.info(
+                    "{} PW-{}-INFO <{}+{}+0> {} {}s [{}] RA<{}+{}+{}ms> --  {}",
+                    String.format("%10d", channelId),
+                    api,
+                    personalObjects,
+                    nonPersonalObjects,
+                    completionInfo == null ? "" : completionInfo.name(),
+                    formatExecutionTime(executionTime),
+                    remoteAddress != null ? remoteAddress.getHostAddress() : "NONE",
+                    readAhead.getLoads(),
+                    readAhead.getReadAheadLoads(),
+                    readAhead.getLoadWaitMillis(),
+                    queryString
+            );
+        }
     }
 
     private String formatExecutionTime(long elapsedMillis) {
@@ -0,0 +1,60 @@
+package net.ripe.db.whois.query.iptree;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.Message;
+import com.hazelcast.core.MessageListener;
+import net.ripe.db.whois.common.iptree.IpTreeDelta;
+import net.ripe.db.whois.common.iptree.IpTreeUpdateTransport;
+import net.ripe.db.whois.common.profiles.DeployedProfile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Publishes IP tree deltas to all nodes in the cluster through a hazelcast topic.
+ */
+@DeployedProfile
+@Primary
+@Component
+public class HazelcastIpTreeUpdateTransport implements IpTreeUpdateTransport {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HazelcastIpTreeUpdateTransport.class);
+
+    private static final String TOPIC_NAME = "ipTreeUpdates";
+
+    private final HazelcastInstance instance;
+    private ITopic<IpTreeDelta> topic;
+
+    @Autowired
+    public HazelcastIpTreeUpdateTransport(final HazelcastInstance instance) {
+        this.instance = instance;
+    }
+
+    @PostConstruct
+    public void startService() {
+        topic = instance.getTopic(TOPIC_NAME);
+    }
+
+    @Override
+    public void publish(final IpTreeDelta delta) {
+        topic.publish(delta);
+    }
+
+    @Override
+    public void addListener(final Listener listener) {
+        topic.addMessageListener(new MessageListener<IpTreeDelta>() {
+            @Override
+            public void onMessage(final Message<IpTreeDelta> message) {
+                try {
+                    listener.onDelta(message.getMessageObject());
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Unable to apply {}", message.getMessageObject(), e);
+                }
+            }
+        });
+    }
+}
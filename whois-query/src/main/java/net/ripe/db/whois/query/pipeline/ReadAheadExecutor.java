@@ -0,0 +1,117 @@
+package net.ripe.db.whois.query.pipeline;
+
+import com.google.common.base.Supplier;
+import net.ripe.db.whois.common.collect.ReadAhead;
+import net.ripe.db.whois.common.source.Source;
+import net.ripe.db.whois.common.source.SourceContext;
+import org.jboss.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded thread pool loading query results ahead of the query threads.
+ * <p/>
+ * Read-ahead is disabled unless query.readahead.threads is set. When the pool is saturated, batches are loaded by the
+ * query thread itself.
+ */
+@Component
+public class ReadAheadExecutor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReadAheadExecutor.class);
+
+    private final SourceContext sourceContext;
+
+    private int threads;
+    private int prefetch;
+    private ExecutorService executorService;
+
+    @Autowired
+    public ReadAheadExecutor(final SourceContext sourceContext) {
+        this.sourceContext = sourceContext;
+    }
+
+    @Value("${query.readahead.threads:0}")
+    void setThreads(final int threads) {
+        this.threads = threads;
+    }
+
+    @Value("${query.readahead.prefetch:100}")
+    void setPrefetch(final int prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (threads <= 0) {
+            return;
+        }
+
+        LOGGER.info("Initializing read-ahead thread pool with {} threads, prefetch {}", threads, prefetch);
+        executorService = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(threads), new ThreadFactory() {
+            private final ThreadGroup threadGroup = new ThreadGroup("read-ahead-pool");
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(threadGroup, r, "read-ahead-thread-" + threadNumber.incrementAndGet());
+            }
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * @return read-ahead for a query on the channel, which only loads ahead while the channel is writable, or null if
+     * read-ahead is disabled.
+     */
+    @CheckForNull
+    public ReadAhead createReadAhead(final Channel channel) {
+        if (executorService == null) {
+            return null;
+        }
+
+        return new ReadAhead(
+                new Executor() {
+                    @Override
+                    public void execute(final Runnable command) {
+                        final Source source = sourceContext.getCurrentSource();
+                        executorService.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                sourceContext.setCurrent(source);
+                                try {
+                                    command.run();
+                                } finally {
+                                    sourceContext.removeCurrentSource();
+                                }
+                            }
+                        });
+                    }
+                },
+                new Supplier<Boolean>() {
+                    @Override
+                    public Boolean get() {
+                        return channel.isWritable();
+                    }
+                },
+                prefetch);
+    }
+}
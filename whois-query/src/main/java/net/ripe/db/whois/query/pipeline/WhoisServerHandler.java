@@ -1,5 +1,6 @@
 package net.ripe.db.whois.query.pipeline;
 
+import net.ripe.db.whois.common.collect.ReadAhead;
 import net.ripe.db.whois.common.domain.ResponseObject;
 import net.ripe.db.whois.common.pipeline.ChannelUtil;
 import net.ripe.db.whois.query.domain.QueryCompletionInfo;
@@ -11,16 +12,36 @@ import org.jboss.netty.channel.*;
 
 public class WhoisServerHandler extends SimpleChannelUpstreamHandler {
     private final QueryHandler queryHandler;
+    private final ReadAheadExecutor readAheadExecutor;
     private boolean closed;
 
-    public WhoisServerHandler(final QueryHandler queryHandler) {
+    public WhoisServerHandler(final QueryHandler queryHandler, final ReadAheadExecutor readAheadExecutor) {
         this.queryHandler = queryHandler;
+        this.readAheadExecutor = readAheadExecutor;
     }
 
     @Override
     public void messageReceived(final ChannelHandlerContext ctx, final MessageEvent event) {
         final Query query = (Query) event.getMessage();
         final Channel channel = event.getChannel();
+        final ReadAhead readAhead = readAheadExecutor.createReadAhead(channel);
+        if (readAhead != null) {
+            ReadAhead.setCurrent(readAhead);
+        }
+
+        try {
+            streamResults(query, channel);
+        } finally {
+            if (readAhead != null) {
+                readAhead.cancel();
+                ReadAhead.removeCurrent();
+            }
+        }
+
+        channel.getPipeline().sendDownstream(new QueryCompletedEvent(channel));
+    }
+
+    private void streamResults(final Query query, final Channel channel) {
         queryHandler.streamResults(query, ChannelUtil.getRemoteAddress(channel), channel.getId(), new ResponseHandler() {
             @Override
             public String getApi() {
@@ -36,8 +57,6 @@ public class WhoisServerHandler extends SimpleChannelUpstreamHandler {
                 channel.write(responseObject).awaitUninterruptibly();
             }
         });
-
-        channel.getPipeline().sendDownstream(new QueryCompletedEvent(channel));
     }
 
     @SuppressWarnings("PMD.SignatureDeclareThrowsException") // Base class throws exception
@@ -58,6 +58,7 @@ public class WhoisServerPipelineFactory implements ChannelPipelineFactory {
     private final WhoisEncoder whoisEncoder;
     private final QueryDecoder queryDecoder;
     private final QueryHandler queryHandler;
+    private final ReadAheadExecutor readAheadExecutor;
 
     @Autowired
     public WhoisServerPipelineFactory(final MaintenanceHandler maintenanceHandler,
@@ -66,7 +67,8 @@ public class WhoisServerPipelineFactory implements ChannelPipelineFactory {
                                       final QueryDecoder queryDecoder,
                                       final WhoisEncoder whoisEncoder,
                                       final ConnectionPerIpLimitHandler connectionPerIpLimitHandler,
-                                      final QueryHandler queryHandler) {
+                                      final QueryHandler queryHandler,
+                                      final ReadAheadExecutor readAheadExecutor) {
         this.maintenanceHandler = maintenanceHandler;
         this.queryChannelsRegistry = queryChannelsRegistry;
         this.termsAndConditionsHandler = termsAndConditionsHandler;
@@ -74,6 +76,7 @@ public class WhoisServerPipelineFactory implements ChannelPipelineFactory {
         this.whoisEncoder = whoisEncoder;
         this.connectionPerIpLimitHandler = connectionPerIpLimitHandler;
         this.queryHandler = queryHandler;
+        this.readAheadExecutor = readAheadExecutor;
     }
 
     @PreDestroy
@@ -105,7 +108,7 @@ public class WhoisServerPipelineFactory implements ChannelPipelineFactory {
         pipeline.addLast("connection-state", new ConnectionStateHandler());
 
         pipeline.addLast("served-by", new ServedByHandler(version));
-        pipeline.addLast("whois", new WhoisServerHandler(queryHandler));
+        pipeline.addLast("whois", new WhoisServerHandler(queryHandler, readAheadExecutor));
 
         return pipeline;
     }
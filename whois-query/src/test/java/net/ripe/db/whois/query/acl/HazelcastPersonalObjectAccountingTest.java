@@ -1,5 +1,7 @@
 package net.ripe.db.whois.query.acl;
 
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
 import net.ripe.db.whois.common.DateTimeProvider;
 import org.joda.time.LocalDate;
 import org.junit.AfterClass;
@@ -7,7 +9,6 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
@@ -20,24 +21,28 @@ import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
 public class HazelcastPersonalObjectAccountingTest {
+    private static HazelcastInstance instance;
+
     private InetAddress ipv4Address;
 
     @Mock DateTimeProvider dateTimeProvider;
     @Mock Runnable runnable;
-    @InjectMocks HazelcastPersonalObjectAccounting subject;
+    HazelcastPersonalObjectAccounting subject;
 
     @BeforeClass
     public static void startHazelcast() {
-        HazelcastPersonalObjectAccounting.startHazelcast();
+        instance = Hazelcast.newHazelcastInstance(null);
     }
 
     @AfterClass
     public static void shutdownHazelcast() {
-        HazelcastPersonalObjectAccounting.shutdownHazelcast();
+        instance.getLifecycleService().shutdown();
     }
 
     @Before
     public void setUp() throws Exception {
+        subject = new HazelcastPersonalObjectAccounting(instance);
+        subject.startService();
         subject.resetAccounting();
 
         ipv4Address = Inet4Address.getLocalHost();
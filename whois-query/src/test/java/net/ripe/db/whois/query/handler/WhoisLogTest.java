@@ -1,6 +1,9 @@
 package net.ripe.db.whois.query.handler;
 
+import com.google.common.base.Suppliers;
 import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.MoreExecutors;
+import net.ripe.db.whois.common.collect.ReadAhead;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
@@ -28,4 +31,17 @@ public class WhoisLogTest {
         subject.logQueryResult("API", 1, 2, null, 1001, InetAddresses.forString("127.0.0.1"), 0, "testQuery");
         verify(loggerMock).info(anyString(), eq("         0"), eq("API"), eq(1), eq(2), eq(""), eq("1.00"), eq("127.0.0.1"), eq("testQuery"));
     }
+
+    @Test
+    public void read_ahead_gets_logged() {
+        final ReadAhead readAhead = new ReadAhead(MoreExecutors.sameThreadExecutor(), Suppliers.ofInstance(true), 10);
+        ReadAhead.setCurrent(readAhead);
+        try {
+            subject.logQueryResult("QRY", 1, 2, null, 1001, InetAddresses.forString("127.0.0.1"), 0, "testQuery");
+        } finally {
+            ReadAhead.removeCurrent();
+        }
+
+        verify(loggerMock).info(anyString(), eq("         0"), eq("QRY"), eq(1), eq(2), eq(""), eq("1.00"), eq("127.0.0.1"), eq(0), eq(0), eq(0L), eq("testQuery"));
+    }
 }
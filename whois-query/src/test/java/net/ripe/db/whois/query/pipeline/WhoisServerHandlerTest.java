@@ -40,6 +40,7 @@ public class WhoisServerHandlerTest {
     @Mock MessageEvent messageEvent;
 
     @Mock QueryHandler queryHandler;
+    @Mock ReadAheadExecutor readAheadExecutor;
     @InjectMocks WhoisServerHandler subject;
 
     InetAddress inetAddress = InetAddresses.forString("10.0.0.1");
@@ -57,6 +57,14 @@ public class DailyScheduler {
         return true;
     }
 
+    /**
+     * @return true if this cluster member ran the latest daily tasks, so it holds their results (like the export files).
+     */
+    public boolean isLastRunOnLocalHost() {
+        final List<String> hosts = schedulerTemplate.queryForList("SELECT host FROM scheduler ORDER BY date DESC LIMIT 1", String.class);
+        return !hosts.isEmpty() && hosts.get(0).equals(Hosts.getLocalHost().getHostName());
+    }
+
     void runScheduledTasks() {
         new Thread("DailyScheduler-TaskRunner") {
             @Override
@@ -0,0 +1,28 @@
+package net.ripe.db.whois.scheduler.task.export;
+
+import net.ripe.db.whois.scheduler.DailyScheduler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class DatabaseDeltaExport {
+    private static final int DELTA_EXPORT_INTERVAL_IN_SECONDS = 60;
+
+    private final RpslObjectsExporter rpslObjectsExporter;
+    private final DailyScheduler dailyScheduler;
+
+    @Autowired
+    public DatabaseDeltaExport(final RpslObjectsExporter rpslObjectsExporter, final DailyScheduler dailyScheduler) {
+        this.rpslObjectsExporter = rpslObjectsExporter;
+        this.dailyScheduler = dailyScheduler;
+    }
+
+    // the delta files are added to the export of the cluster member that ran the daily export
+    @Scheduled(fixedDelay = DELTA_EXPORT_INTERVAL_IN_SECONDS * 1000)
+    public void run() {
+        if (dailyScheduler.isLastRunOnLocalHost()) {
+            rpslObjectsExporter.exportDelta();
+        }
+    }
+}
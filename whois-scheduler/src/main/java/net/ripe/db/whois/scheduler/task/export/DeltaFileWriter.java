@@ -0,0 +1,86 @@
+package net.ripe.db.whois.scheduler.task.export;
+
+import com.google.common.base.Charsets;
+import net.ripe.db.whois.common.domain.serials.Operation;
+import net.ripe.db.whois.common.rpsl.RpslObject;
+import net.ripe.db.whois.query.domain.QueryMessages;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the changes of a range of serials in the format of an NRTM version 3 mirror stream, so mirrors can apply
+ * the file the same way as the stream.
+ * <p/>
+ * The file is written under a temporary name, and only appears under its own name when closed.
+ */
+class DeltaFileWriter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeltaFileWriter.class);
+
+    private static final int NRTM_VERSION = 3;
+
+    private final File file;
+    private final File tmpFile;
+    private final String source;
+    private final DecorationStrategy decorationStrategy;
+    private final Writer writer;
+
+    DeltaFileWriter(final File file, final String source, final int firstSerial, final int lastSerial, final DecorationStrategy decorationStrategy) throws IOException {
+        this.file = file;
+        this.tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        this.source = source;
+        this.decorationStrategy = decorationStrategy;
+
+        final FileOutputStream fileOutputStream = new FileOutputStream(tmpFile);
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(fileOutputStream), Charsets.ISO_8859_1));
+            writer.write(QueryMessages.termsAndConditionsDump().toString());
+            writer.write(String.format("%%START Version: %d %s %d-%d\n\n", NRTM_VERSION, source, firstSerial, lastSerial));
+        } catch (IOException e) {
+            fileOutputStream.close();
+            throw e;
+        }
+    }
+
+    void write(final int serialId, final Operation operation, final RpslObject object) throws IOException {
+        final RpslObject decoratedObject = decorationStrategy.decorate(object);
+        if (decoratedObject != null) {
+            writer.write(operation + " " + serialId + "\n\n");
+            decoratedObject.writeTo(writer);
+            writer.write('\n');
+        }
+    }
+
+    void close() throws IOException {
+        writer.write("%END " + source + "\n");
+        writer.close();
+
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Rename failed: " + tmpFile);
+        }
+    }
+
+    void abort() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            LOGGER.warn("Closing {}", tmpFile);
+        }
+
+        if (!tmpFile.delete()) {
+            LOGGER.warn("Unable to delete {}", tmpFile);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+}
@@ -4,19 +4,29 @@ import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
 import net.ripe.db.whois.common.rpsl.DummifierCurrent;
 import net.ripe.db.whois.common.rpsl.DummifierLegacy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.util.FileCopyUtils;
 
+import javax.annotation.CheckForNull;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Component
 class ExportFileWriterFactory {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExportFileWriterFactory.class);
+
     private static final String SPLITFILE_FOLDERNAME = "split";
     private static final String CURRENTSERIAL_FILENAME = "RIPE.CURRENTSERIAL";
+    private static final String DELTA_FOLDERNAME = "delta";
+    private static final String DELTA_SOURCE = "RIPE";
+    private static final Pattern DELTA_FILENAME = Pattern.compile("ripe\\.db\\.(\\d+)-(\\d+)\\.gz");
 
     private final DummifierLegacy dummifierLegacy;
     private final DummifierCurrent dummifierCurrent;
@@ -46,12 +56,8 @@ class ExportFileWriterFactory {
 
         initDirs(fullDirNew, fullDir, splitDirNew, splitDir, internalDir);
 
-        try {
-            FileCopyUtils.copy(String.valueOf(lastSerial).getBytes(Charsets.ISO_8859_1), new File(fullDirNew, CURRENTSERIAL_FILENAME));
-            FileCopyUtils.copy(String.valueOf(lastSerial).getBytes(Charsets.ISO_8859_1), new File(fullDir, CURRENTSERIAL_FILENAME));
-        } catch (IOException e) {
-            throw new RuntimeException("Writing current serial", e);
-        }
+        writeSerial(new File(fullDirNew, CURRENTSERIAL_FILENAME), lastSerial);
+        writeSerial(new File(fullDir, CURRENTSERIAL_FILENAME), lastSerial);
 
         return Lists.newArrayList(
                 new ExportFileWriter(fullDir, new FilenameStrategy.SingleFile(), new DecorationStrategy.DummifyLegacy(dummifierLegacy)),
@@ -62,6 +68,122 @@ class ExportFileWriterFactory {
         );
     }
 
+    /**
+     * @return the last serial of the export in the base dir, including the delta files written since the full export,
+     * or null if there is no export.
+     */
+    @CheckForNull
+    public Integer getLastSerial(final File baseDir) {
+        final File deltaSerialFile = new File(getDeltaDir(baseDir, externalExportDir), CURRENTSERIAL_FILENAME);
+        if (deltaSerialFile.exists()) {
+            return readSerial(deltaSerialFile);
+        }
+
+        final File serialFile = new File(baseDir, externalExportDir + File.separator + CURRENTSERIAL_FILENAME);
+        if (serialFile.exists()) {
+            return readSerial(serialFile);
+        }
+
+        return null;
+    }
+
+    /**
+     * Create the writers of the delta files of the serials after fromSerial, up to and including toSerial. Delta files
+     * are written next to the current and internal exports, and dummified the same way.
+     */
+    public List<DeltaFileWriter> createDeltaFileWriters(final File baseDir, final int fromSerial, final int toSerial) {
+        final List<DeltaFileWriter> deltaFileWriters = Lists.newArrayList();
+
+        try {
+            deltaFileWriters.add(createDeltaFileWriter(getDeltaDir(baseDir, externalExportDir), fromSerial, toSerial, new DecorationStrategy.DummifyCurrent(dummifierCurrent)));
+            deltaFileWriters.add(createDeltaFileWriter(getDeltaDir(baseDir, internalExportDir), fromSerial, toSerial, new DecorationStrategy.None()));
+        } catch (IOException e) {
+            for (final DeltaFileWriter deltaFileWriter : deltaFileWriters) {
+                deltaFileWriter.abort();
+            }
+
+            throw new RuntimeException("Creating delta files", e);
+        }
+
+        return deltaFileWriters;
+    }
+
+    private DeltaFileWriter createDeltaFileWriter(final File deltaDir, final int fromSerial, final int toSerial, final DecorationStrategy decorationStrategy) throws IOException {
+        if (!deltaDir.exists() && !deltaDir.mkdirs()) {
+            throw new IOException("Unable to create directory: " + deltaDir.getAbsolutePath());
+        }
+
+        final File file = new File(deltaDir, String.format("ripe.db.%d-%d.gz", fromSerial + 1, toSerial));
+        return new DeltaFileWriter(file, DELTA_SOURCE, fromSerial + 1, toSerial, decorationStrategy);
+    }
+
+    /**
+     * Record the last serial of the delta files written, to continue from with the next delta files.
+     */
+    public void setDeltaSerial(final File baseDir, final int serial) {
+        for (final String exportDir : Lists.newArrayList(externalExportDir, internalExportDir)) {
+            writeSerial(new File(getDeltaDir(baseDir, exportDir), CURRENTSERIAL_FILENAME), serial);
+        }
+    }
+
+    /**
+     * Move the delta files of the export in fromBaseDir to the new export in toBaseDir, dropping those that precede the
+     * full export in fromBaseDir. Mirrors that loaded either full export can continue from the delta files.
+     */
+    public void moveDeltaFiles(final File fromBaseDir, final File toBaseDir) {
+        final File serialFile = new File(fromBaseDir, externalExportDir + File.separator + CURRENTSERIAL_FILENAME);
+        if (!serialFile.exists()) {
+            return;
+        }
+
+        final int previousSerial = readSerial(serialFile);
+        for (final String exportDir : Lists.newArrayList(externalExportDir, internalExportDir)) {
+            final File fromDeltaDir = getDeltaDir(fromBaseDir, exportDir);
+            final File toDeltaDir = getDeltaDir(toBaseDir, exportDir);
+            if (!fromDeltaDir.exists()) {
+                continue;
+            }
+
+            if (!fromDeltaDir.renameTo(toDeltaDir)) {
+                throw new IllegalStateException("Unable to move delta files to: " + toDeltaDir.getAbsolutePath());
+            }
+
+            final File[] files = toDeltaDir.listFiles();
+            if (files == null) {
+                continue;
+            }
+
+            for (final File file : files) {
+                final Matcher matcher = DELTA_FILENAME.matcher(file.getName());
+                if ((matcher.matches() && Integer.parseInt(matcher.group(2)) <= previousSerial) || file.getName().endsWith(".tmp")) {
+                    if (!file.delete()) {
+                        LOGGER.warn("Unable to delete delta file: {}", file);
+                    }
+                }
+            }
+        }
+    }
+
+    private static File getDeltaDir(final File baseDir, final String exportDir) {
+        return new File(baseDir, exportDir + File.separator + DELTA_FOLDERNAME);
+    }
+
+    private static int readSerial(final File file) {
+        try {
+            return Integer.parseInt(new String(FileCopyUtils.copyToByteArray(file), Charsets.ISO_8859_1).trim());
+        } catch (IOException | NumberFormatException e) {
+            throw new RuntimeException("Reading serial from: " + file, e);
+        }
+    }
+
+    private static void writeSerial(final File file, final int serial) {
+        try {
+            FileCopyUtils.copy(String.valueOf(serial).getBytes(Charsets.ISO_8859_1), file);
+        } catch (IOException e) {
+            throw new RuntimeException("Writing serial to: " + file, e);
+        }
+    }
+
     public boolean isExportDir(final File dir) {
         final File[] files = dir.listFiles();
         if (files == null) {
@@ -0,0 +1,299 @@
+package net.ripe.db.whois.scheduler.task.export;
+
+import com.google.common.collect.Lists;
+import net.ripe.db.whois.common.domain.Tag;
+import net.ripe.db.whois.common.rpsl.RpslObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exports objects to the export file writers on multiple threads, writing them in the order they are exported.
+ * <p/>
+ * Objects are handed over in batches. Batches are prepared (attributes decoded) on a pool of threads,
+ * and every export file writer decorates, writes and compresses its files on a thread of its own, taking the prepared
+ * batches in order. All queues between the stages are bounded, so the export is held back by the slowest writer.
+ * A stage only waits for room in a queue as long as the stage taking from it is running, so a stage dying on an
+ * {@link Error} fails the export instead of blocking it.
+ */
+class ExportPipeline {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExportPipeline.class);
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int QUEUE_SIZE = 4;
+    private static final int LOG_EVERY = 500000;
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private static final Batch END = new Batch();
+
+    private final ExecutorService prepareExecutor;
+    private final ExecutorService writeExecutor;
+    private final BlockingQueue<Future<Batch>> preparedBatches;
+    private final List<BlockingQueue<Batch>> writerQueues;
+    private final List<Future<?>> writers;
+    private final Future<?> dispatcher;
+
+    private volatile Throwable failure;
+    private volatile boolean aborted;
+
+    private Batch batch = new Batch();
+    private int nrExported;
+    private boolean done;
+
+    ExportPipeline(final List<ExportFileWriter> exportFileWriters, final int nrThreads) {
+        this.prepareExecutor = Executors.newFixedThreadPool(nrThreads, threadFactory("ExportPrepare"));
+        this.writeExecutor = Executors.newFixedThreadPool(exportFileWriters.size() + 1, threadFactory("ExportWrite"));
+        this.preparedBatches = new ArrayBlockingQueue<>(nrThreads * QUEUE_SIZE);
+        this.writerQueues = Lists.newArrayListWithCapacity(exportFileWriters.size());
+        this.writers = Lists.newArrayListWithCapacity(exportFileWriters.size());
+
+        for (final ExportFileWriter exportFileWriter : exportFileWriters) {
+            final BlockingQueue<Batch> writerQueue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+            writerQueues.add(writerQueue);
+            writers.add(writeExecutor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws InterruptedException {
+                    try {
+                        write(exportFileWriter, writerQueue);
+                    } catch (RuntimeException | Error e) {
+                        setFailure(e);
+                        throw e;
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        this.dispatcher = writeExecutor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+                try {
+                    dispatch();
+                } catch (RuntimeException | Error e) {
+                    setFailure(e);
+
+                    // the writers never get the end of the export, so stop them as well
+                    for (final Future<?> writer : writers) {
+                        writer.cancel(true);
+                    }
+
+                    throw e;
+                }
+                return null;
+            }
+        });
+    }
+
+    private static ThreadFactory threadFactory(final String name) {
+        return new ThreadFactory() {
+            final ThreadGroup threadGroup = new ThreadGroup(Thread.currentThread().getThreadGroup(), name);
+            final AtomicInteger threadNum = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(threadGroup, r, String.format("%s-%s", name, threadNum.incrementAndGet()));
+            }
+        };
+    }
+
+    void exportObject(final RpslObject object, final List<Tag> tags) {
+        batch.objects.add(object);
+        batch.tags.add(tags);
+        if (batch.objects.size() == BATCH_SIZE) {
+            submitBatch();
+        }
+
+        if (++nrExported % LOG_EVERY == 0) {
+            LOGGER.info("Exported {} objects", nrExported);
+        }
+    }
+
+    int getNrExported() {
+        return nrExported;
+    }
+
+    /**
+     * Wait until all exported objects are written.
+     *
+     * @throws RuntimeException if any of the objects could not be written.
+     */
+    void finish() {
+        if (!batch.objects.isEmpty()) {
+            submitBatch();
+        }
+
+        complete();
+        checkFailure();
+    }
+
+    /**
+     * Stop the threads, without writing the objects not written yet if not finished.
+     */
+    void close() {
+        if (!done) {
+            aborted = true;
+            complete();
+        }
+
+        prepareExecutor.shutdownNow();
+        writeExecutor.shutdownNow();
+    }
+
+    private void submitBatch() {
+        checkFailure();
+
+        final Batch submitted = batch;
+        batch = new Batch();
+
+        final boolean dispatched = offerToDispatcher(prepareExecutor.submit(new Callable<Batch>() {
+            @Override
+            public Batch call() {
+                return prepare(submitted);
+            }
+        }));
+
+        if (!dispatched) {
+            checkFailure();
+            throw new IllegalStateException("Export stopped dispatching batches");
+        }
+    }
+
+    private void complete() {
+        done = true;
+
+        final Future<Batch> end = prepareExecutor.submit(new Callable<Batch>() {
+            @Override
+            public Batch call() {
+                return END;
+            }
+        });
+
+        // a dispatcher that stopped has failed the export and stopped the writers
+        offerToDispatcher(end);
+
+        final List<Future<?>> stages = Lists.newArrayList(writers);
+        stages.add(dispatcher);
+        for (final Future<?> stage : stages) {
+            try {
+                stage.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while exporting", e);
+            } catch (ExecutionException e) {
+                setFailure(e.getCause());
+            } catch (CancellationException ignored) {
+                LOGGER.debug("Export stage cancelled");
+            }
+        }
+    }
+
+    private Batch prepare(final Batch batch) {
+        if (failure == null && !aborted) {
+            for (final RpslObject object : batch.objects) {
+                object.getAttributes();
+            }
+        }
+
+        return batch;
+    }
+
+    private void dispatch() throws InterruptedException {
+        while (true) {
+            Batch batch;
+            try {
+                batch = preparedBatches.take().get();
+            } catch (ExecutionException e) {
+                setFailure(e.getCause());
+                continue;
+            }
+
+            // a writer only stops before the end after a failure, which fails the export
+            for (int i = 0; i < writerQueues.size(); i++) {
+                offer(writerQueues.get(i), batch, writers.get(i));
+            }
+
+            if (batch == END) {
+                return;
+            }
+        }
+    }
+
+    private void write(final ExportFileWriter exportFileWriter, final BlockingQueue<Batch> writerQueue) throws InterruptedException {
+        while (true) {
+            final Batch batch = writerQueue.take();
+            if (batch == END) {
+                return;
+            }
+
+            // keep taking batches after a failure, so the other stages are not blocked
+            for (int i = 0; i < batch.objects.size() && failure == null && !aborted; i++) {
+                try {
+                    exportFileWriter.write(batch.objects.get(i), batch.tags.get(i));
+                } catch (IOException e) {
+                    setFailure(new RuntimeException("Exporting to " + exportFileWriter, e));
+                } catch (RuntimeException e) {
+                    setFailure(e);
+                }
+            }
+        }
+    }
+
+    private synchronized void setFailure(final Throwable throwable) {
+        if (failure == null) {
+            failure = throwable;
+        }
+    }
+
+    private void checkFailure() {
+        final Throwable throwable = failure;
+        if (throwable instanceof RuntimeException) {
+            throw (RuntimeException) throwable;
+        } else if (throwable instanceof Error) {
+            throw (Error) throwable;
+        } else if (throwable != null) {
+            throw new IllegalStateException("Exporting", throwable);
+        }
+    }
+
+    private boolean offerToDispatcher(final Future<Batch> preparedBatch) {
+        try {
+            return offer(preparedBatches, preparedBatch, dispatcher);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while exporting", e);
+        }
+    }
+
+    /**
+     * Waits for room in the queue as long as the stage taking from it is running.
+     *
+     * @return false if the stage stopped, so the element will never be taken.
+     */
+    private static <T> boolean offer(final BlockingQueue<T> queue, final T element, final Future<?> stage) throws InterruptedException {
+        while (!queue.offer(element, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (stage.isDone()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static final class Batch {
+        private final List<RpslObject> objects = Lists.newArrayListWithCapacity(BATCH_SIZE);
+        private final List<List<Tag>> tags = Lists.newArrayListWithCapacity(BATCH_SIZE);
+    }
+}
@@ -2,4 +2,6 @@ package net.ripe.db.whois.scheduler.task.export;
 
 public interface RpslObjectsExporter {
     void export();
+
+    void exportDelta();
 }
@@ -34,6 +34,17 @@ public class RpslObjectsExporterJmx extends JmxBase {
         });
     }
 
+    @ManagedOperation(description = "Write the changes since the last export to delta files in configured destination")
+    public String exportDelta() {
+        return invokeOperation("Export delta", "", new Callable<String>() {
+            @Override
+            public String call() {
+                objectsExporter.exportDelta();
+                return "Delta exported";
+            }
+        });
+    }
+
     private static class DatabaseExporterThread extends Thread {
         private final RpslObjectsExporter objectsExporter;
 
@@ -1,9 +1,10 @@
 package net.ripe.db.whois.scheduler.task.export;
 
 import com.google.common.base.Stopwatch;
-import net.ripe.db.whois.common.dao.TagsDao;
 import net.ripe.db.whois.common.domain.Tag;
+import net.ripe.db.whois.common.domain.serials.Operation;
 import net.ripe.db.whois.common.rpsl.RpslObject;
+import net.ripe.db.whois.scheduler.task.export.dao.DeltaCallbackHandler;
 import net.ripe.db.whois.scheduler.task.export.dao.ExportCallbackHandler;
 import net.ripe.db.whois.scheduler.task.export.dao.ExportDao;
 import org.apache.commons.lang.Validate;
@@ -16,6 +17,7 @@ import org.springframework.util.FileSystemUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -23,25 +25,28 @@ import java.util.concurrent.atomic.AtomicBoolean;
 class RpslObjectsToTextExporter implements RpslObjectsExporter {
     private static final Logger LOGGER = LoggerFactory.getLogger(RpslObjectsToTextExporter.class);
 
+    private static final int MAX_DELTA_SERIALS = 100_000;
+
     private final ExportFileWriterFactory exportFileWriterFactory;
     private final ExportDao exportDao;
-    private final TagsDao tagsDao;
     private final File exportDir;
     private final File tmpDir;
 
     private final AtomicBoolean exporting = new AtomicBoolean();
+    private final Object exportDirLock = new Object();
     private final boolean enabled;
 
+    private int nrThreads = 4;
+    private boolean deltaEnabled = true;
+
     @Autowired
     public RpslObjectsToTextExporter(final ExportFileWriterFactory exportFileWriterFactory,
                                      final ExportDao exportDao,
-                                     final TagsDao tagsDao,
                                      @Value("${dir.rpsl.export}") final String exportDirName,
                                      @Value("${dir.rpsl.export.tmp}") final String tmpDirName,
                                      @Value("${rpsl.export.enabled:true}") final boolean enabled) {
         this.exportFileWriterFactory = exportFileWriterFactory;
         this.exportDao = exportDao;
-        this.tagsDao = tagsDao;
         this.enabled = enabled;
 
         exportDir = new File(exportDirName);
@@ -50,6 +55,16 @@ class RpslObjectsToTextExporter implements RpslObjectsExporter {
         initDirs();
     }
 
+    @Value("${rpsl.export.threads:4}")
+    void setNrThreads(final int nrThreads) {
+        this.nrThreads = Math.max(1, nrThreads);
+    }
+
+    @Value("${rpsl.export.delta.enabled:true}")
+    void setDeltaEnabled(final boolean deltaEnabled) {
+        this.deltaEnabled = deltaEnabled;
+    }
+
     public void export() {
         if (!enabled) {
             return;
@@ -65,8 +80,11 @@ class RpslObjectsToTextExporter implements RpslObjectsExporter {
             initDirs();
             exportToFiles();
 
-            Validate.isTrue(FileSystemUtils.deleteRecursively(exportDir), "Recursive delete failed: ", exportDir);
-            Validate.isTrue(tmpDir.renameTo(exportDir), "Rename failed: ", tmpDir);
+            synchronized (exportDirLock) {
+                exportFileWriterFactory.moveDeltaFiles(exportDir, tmpDir);
+                Validate.isTrue(FileSystemUtils.deleteRecursively(exportDir), "Recursive delete failed: ", exportDir);
+                Validate.isTrue(tmpDir.renameTo(exportDir), "Rename failed: ", tmpDir);
+            }
 
             LOGGER.info("Database export complete after {} in {}", stopwatch.stop().toString(), exportDir);
         } finally {
@@ -95,56 +113,114 @@ class RpslObjectsToTextExporter implements RpslObjectsExporter {
     }
 
     private void exportToFiles() {
-        // TODO: [AH] this should be in a single transaction, or the max. serial could have changed while exporting data
-        final int maxSerial = exportDao.getMaxSerial();
-        LOGGER.info("Max serial: {}", maxSerial);
+        final SnapshotExport snapshotExport = new SnapshotExport();
+        try {
+            exportDao.exportObjects(snapshotExport);
+            snapshotExport.finish();
+        } finally {
+            snapshotExport.close();
+        }
+    }
+
+    /**
+     * Write the changes since the last full export or delta files to new delta files in the export dir. Delta files
+     * written while a full export is in progress are moved to the new export.
+     */
+    public void exportDelta() {
+        if (!enabled || !deltaEnabled) {
+            return;
+        }
+
+        synchronized (exportDirLock) {
+            final Integer lastSerial = exportFileWriterFactory.getLastSerial(exportDir);
+            if (lastSerial == null) {
+                LOGGER.debug("No export in {}, skipping delta export", exportDir);
+                return;
+            }
+
+            final int toSerial = Math.min(exportDao.getMaxSerial(), lastSerial + MAX_DELTA_SERIALS);
+            if (toSerial <= lastSerial) {
+                return;
+            }
+
+            exportDeltaToFiles(lastSerial, toSerial);
+            exportFileWriterFactory.setDeltaSerial(exportDir, toSerial);
+        }
+    }
+
+    private void exportDeltaToFiles(final int fromSerial, final int toSerial) {
+        final Stopwatch stopwatch = new Stopwatch().start();
+        final List<DeltaFileWriter> deltaFileWriters = exportFileWriterFactory.createDeltaFileWriters(exportDir, fromSerial, toSerial);
 
-        final List<ExportFileWriter> exportFileWriters = exportFileWriterFactory.createExportFileWriters(tmpDir, maxSerial);
+        boolean complete = false;
         try {
-            final TextFileExporter textFileExporter = new TextFileExporter(exportFileWriters);
-            try {
-                exportDao.exportObjects(textFileExporter);
-            } finally {
-                textFileExporter.logNrExported();
+            exportDao.exportChanges(fromSerial, toSerial, new DeltaCallbackHandler() {
+                @Override
+                public void exportChange(final int serialId, final Operation operation, final RpslObject object) {
+                    for (final DeltaFileWriter deltaFileWriter : deltaFileWriters) {
+                        try {
+                            deltaFileWriter.write(serialId, operation, object);
+                        } catch (IOException e) {
+                            throw new RuntimeException("Exporting to " + deltaFileWriter, e);
+                        }
+                    }
+                }
+            });
+
+            for (final DeltaFileWriter deltaFileWriter : deltaFileWriters) {
+                deltaFileWriter.close();
             }
+
+            complete = true;
+        } catch (IOException e) {
+            throw new RuntimeException("Closing delta files", e);
         } finally {
-            for (final ExportFileWriter exportFileWriter : exportFileWriters) {
-                exportFileWriter.close();
+            if (!complete) {
+                for (final DeltaFileWriter deltaFileWriter : deltaFileWriters) {
+                    deltaFileWriter.abort();
+                }
             }
         }
+
+        LOGGER.info("Exported serials {} to {} in {}", fromSerial + 1, toSerial, stopwatch.stop());
     }
 
-    private class TextFileExporter implements ExportCallbackHandler {
-        private static final int LOG_EVERY = 500000;
-        private final Iterable<ExportFileWriter> exportFileWriters;
+    /**
+     * Creates the export files once the serial of the snapshot is known, and hands the objects to the export pipeline.
+     */
+    private final class SnapshotExport implements ExportCallbackHandler {
+        private List<ExportFileWriter> exportFileWriters = Collections.emptyList();
+        private ExportPipeline exportPipeline;
 
-        private int lastLogged = -1;
-        private int nrExported = 0;
+        @Override
+        public void exportSerial(final int serial) {
+            Validate.isTrue(exportPipeline == null, "Serial already exported");
+            LOGGER.info("Max serial: {}", serial);
 
-        private TextFileExporter(final Iterable<ExportFileWriter> exportFileWriters) {
-            this.exportFileWriters = exportFileWriters;
+            exportFileWriters = exportFileWriterFactory.createExportFileWriters(tmpDir, serial);
+            exportPipeline = new ExportPipeline(exportFileWriters, nrThreads);
         }
 
         @Override
-        public void exportObject(final RpslObject object) {
-            final List<Tag> tags = tagsDao.getTags(object.getObjectId());
-            for (final ExportFileWriter exportFileWriter : exportFileWriters) {
-                try {
-                    exportFileWriter.write(object, tags);
-                } catch (IOException e) {
-                    throw new RuntimeException("Exporting to " + exportFileWriter, e);
-                }
-            }
+        public void exportObject(final RpslObject object, final List<Tag> tags) {
+            exportPipeline.exportObject(object, tags);
+        }
 
-            if (++nrExported % LOG_EVERY == 0) {
-                logNrExported();
-            }
+        void finish() {
+            Validate.notNull(exportPipeline, "No serial exported");
+            exportPipeline.finish();
         }
 
-        public void logNrExported() {
-            if (lastLogged != nrExported) {
-                LOGGER.info("Exported {} objects", nrExported);
-                lastLogged = nrExported;
+        void close() {
+            try {
+                if (exportPipeline != null) {
+                    exportPipeline.close();
+                    LOGGER.info("Exported {} objects", exportPipeline.getNrExported());
+                }
+            } finally {
+                for (final ExportFileWriter exportFileWriter : exportFileWriters) {
+                    exportFileWriter.close();
+                }
             }
         }
     }
@@ -0,0 +1,8 @@
+package net.ripe.db.whois.scheduler.task.export.dao;
+
+import net.ripe.db.whois.common.domain.serials.Operation;
+import net.ripe.db.whois.common.rpsl.RpslObject;
+
+public interface DeltaCallbackHandler {
+    void exportChange(int serialId, Operation operation, RpslObject object);
+}
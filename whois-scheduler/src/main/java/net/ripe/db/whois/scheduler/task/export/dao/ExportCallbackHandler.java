@@ -1,7 +1,15 @@
 package net.ripe.db.whois.scheduler.task.export.dao;
 
+import net.ripe.db.whois.common.domain.Tag;
 import net.ripe.db.whois.common.rpsl.RpslObject;
 
+import java.util.List;
+
 public interface ExportCallbackHandler {
-    void exportObject(RpslObject object);
+    /**
+     * Called once, before any object is exported, with the last serial of the snapshot the objects are exported from.
+     */
+    void exportSerial(int serial);
+
+    void exportObject(RpslObject object, List<Tag> tags);
 }
@@ -3,5 +3,13 @@ package net.ripe.db.whois.scheduler.task.export.dao;
 public interface ExportDao {
     int getMaxSerial();
 
+    /**
+     * Exports all objects from a single consistent snapshot of the database.
+     */
     void exportObjects(ExportCallbackHandler exportCallbackHandler);
+
+    /**
+     * Exports the changes of the serials after fromSerial, up to and including toSerial, in serial order.
+     */
+    void exportChanges(int fromSerial, int toSerial, DeltaCallbackHandler deltaCallbackHandler);
 }
@@ -0,0 +1,70 @@
+package net.ripe.db.whois.scheduler.task.export.dao;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import net.ripe.db.whois.common.domain.CIString;
+import net.ripe.db.whois.common.domain.Tag;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tags of all objects, loaded up front for the export, keyed on object id in a sorted primitive array.
+ * <p/>
+ * Tags must be added in order of object id. Tag types are shared, and tags are only created when looked up.
+ */
+class ExportTags {
+    private final Map<String, CIString> types = Maps.newHashMap();
+
+    private int[] objectIds = new int[1024];
+    private CIString[] tagTypes = new CIString[1024];
+    private String[] values = new String[1024];
+    private int size;
+
+    void add(final int objectId, final CIString type, final String value) {
+        if (size > 0 && objectIds[size - 1] > objectId) {
+            throw new IllegalArgumentException(String.format("Tags not ordered by object id: %d after %d", objectId, objectIds[size - 1]));
+        }
+
+        if (size == objectIds.length) {
+            objectIds = Arrays.copyOf(objectIds, 2 * size);
+            tagTypes = Arrays.copyOf(tagTypes, 2 * size);
+            values = Arrays.copyOf(values, 2 * size);
+        }
+
+        CIString sharedType = types.get(type.toString());
+        if (sharedType == null) {
+            sharedType = type;
+            types.put(type.toString(), type);
+        }
+
+        objectIds[size] = objectId;
+        tagTypes[size] = sharedType;
+        values[size] = value;
+        size++;
+    }
+
+    List<Tag> getTags(final int objectId) {
+        int index = Arrays.binarySearch(objectIds, 0, size, objectId);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+
+        while (index > 0 && objectIds[index - 1] == objectId) {
+            index--;
+        }
+
+        final List<Tag> tags = Lists.newArrayListWithExpectedSize(2);
+        for (; index < size && objectIds[index] == objectId; index++) {
+            tags.add(new Tag(tagTypes[index], objectId, values[index]));
+        }
+
+        return tags;
+    }
+
+    int size() {
+        return size;
+    }
+}
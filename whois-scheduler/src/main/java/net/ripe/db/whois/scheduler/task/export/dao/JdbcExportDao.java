@@ -1,28 +1,44 @@
 package net.ripe.db.whois.scheduler.task.export.dao;
 
 import net.ripe.db.whois.common.dao.jdbc.JdbcStreamingHelper;
+import net.ripe.db.whois.common.domain.serials.Operation;
 import net.ripe.db.whois.common.rpsl.RpslObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.sql.DataSource;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
+import static net.ripe.db.whois.common.domain.CIString.ciString;
+
 @Repository
 class JdbcExportDao implements ExportDao {
     private static final Logger LOGGER = LoggerFactory.getLogger(JdbcExportDao.class);
 
     private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
 
     @Autowired
     JdbcExportDao(@Qualifier("whoisSlaveDataSource") final DataSource dataSource) {
         this.jdbcTemplate = new JdbcTemplate(dataSource);
+
+        // InnoDB takes the snapshot at the first read, all reads after that see the database as of that moment
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.transactionTemplate.setReadOnly(true);
     }
 
     @Override
@@ -30,21 +46,101 @@ class JdbcExportDao implements ExportDao {
         return jdbcTemplate.queryForInt("SELECT max(serial_id) FROM serials");
     }
 
+    /**
+     * Exports all objects with their tags. The max. serial, the tags and the objects are read in a single transaction,
+     * so the serial is exactly that of the objects exported. The tags of all objects are loaded before streaming the
+     * objects, instead of querying the tags of each object.
+     */
     @Override
     public void exportObjects(final ExportCallbackHandler exportCallbackHandler) {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                final int maxSerial = getMaxSerial();
+                LOGGER.info("Exporting snapshot at serial: {}", maxSerial);
+                exportCallbackHandler.exportSerial(maxSerial);
+
+                final ExportTags exportTags = loadTags();
+
+                JdbcStreamingHelper.executeStreaming(jdbcTemplate,
+                        "SELECT object_id, object " +
+                                "FROM last " +
+                                "WHERE sequence_id != 0 " +
+                                "AND object_type != 100",
+                        new ExportRowCallbackHandler(exportCallbackHandler, exportTags));
+            }
+        });
+    }
+
+    /**
+     * Exports the changes with the same object versions as the NRTM server, in a single transaction.
+     */
+    @Override
+    public void exportChanges(final int fromSerial, final int toSerial, final DeltaCallbackHandler deltaCallbackHandler) {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                JdbcStreamingHelper.executeStreaming(jdbcTemplate, "" +
+                        "SELECT serials.serial_id, serials.operation, serials.object_id, " +
+                        "IF(last.sequence_id, last.object, COALESCE(legacy_history.object, rdp_history.object)) " +
+                        "FROM serials " +
+                        "LEFT JOIN last ON last.object_id = serials.object_id " +
+                        "LEFT JOIN history legacy_history ON legacy_history.object_id = serials.object_id AND legacy_history.sequence_id = serials.sequence_id " +
+                        "LEFT JOIN history rdp_history ON rdp_history.object_id = serials.object_id AND rdp_history.sequence_id = serials.sequence_id - 1 " +
+                        "WHERE serials.serial_id > ? " +
+                        "AND serials.serial_id <= ? " +
+                        "ORDER BY serials.serial_id",
+                        new PreparedStatementSetter() {
+                            @Override
+                            public void setValues(final PreparedStatement ps) throws SQLException {
+                                ps.setInt(1, fromSerial);
+                                ps.setInt(2, toSerial);
+                            }
+                        },
+                        new RowCallbackHandler() {
+                            @Override
+                            public void processRow(final ResultSet rs) throws SQLException {
+                                final int serialId = rs.getInt(1);
+                                final RpslObject object;
+                                try {
+                                    object = RpslObject.parse(rs.getInt(3), rs.getBytes(4));
+                                } catch (RuntimeException e) {
+                                    LOGGER.warn("Unable to parse RPSL object of serial: {}", serialId);
+                                    return;
+                                }
+
+                                deltaCallbackHandler.exportChange(serialId, Operation.getByCode(rs.getInt(2)), object);
+                            }
+                        });
+            }
+        });
+    }
+
+    private ExportTags loadTags() {
+        final ExportTags exportTags = new ExportTags();
+
         JdbcStreamingHelper.executeStreaming(jdbcTemplate,
-                "SELECT object_id, object " +
-                        "FROM last " +
-                        "WHERE sequence_id != 0 " +
-                        "AND object_type != 100",
-                new ExportRowCallbackHandler(exportCallbackHandler));
+                "SELECT object_id, tag_id, data " +
+                        "FROM tags " +
+                        "ORDER BY object_id",
+                new RowCallbackHandler() {
+                    @Override
+                    public void processRow(final ResultSet rs) throws SQLException {
+                        exportTags.add(rs.getInt(1), ciString(rs.getString(2)), rs.getString(3));
+                    }
+                });
+
+        LOGGER.info("Loaded {} tags", exportTags.size());
+        return exportTags;
     }
 
     private static class ExportRowCallbackHandler implements RowCallbackHandler {
         private final ExportCallbackHandler exportCallbackHandler;
+        private final ExportTags exportTags;
 
-        private ExportRowCallbackHandler(final ExportCallbackHandler exportCallbackHandler) {
+        private ExportRowCallbackHandler(final ExportCallbackHandler exportCallbackHandler, final ExportTags exportTags) {
             this.exportCallbackHandler = exportCallbackHandler;
+            this.exportTags = exportTags;
         }
 
         @Override
@@ -52,13 +148,14 @@ class JdbcExportDao implements ExportDao {
             final int objectId = rs.getInt(1);
             RpslObject object = null;
             try {
-                object = RpslObject.parse(objectId, rs.getBytes(2));
+                // attributes are decoded by the exporter threads
+                object = RpslObject.parseCompact(objectId, rs.getBytes(2));
             } catch (RuntimeException e) {
                 LOGGER.warn("Unable to parse RPSL object with id: {}", objectId);
             }
 
             if (object != null) {
-                exportCallbackHandler.exportObject(object);
+                exportCallbackHandler.exportObject(object, exportTags.getTags(objectId));
             }
         }
     }
@@ -0,0 +1,117 @@
+package net.ripe.db.whois.scheduler.task.grs;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import net.ripe.db.whois.common.dao.jdbc.index.IndexUpdates;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects the index rows written by the index strategies, to write them as JDBC batches instead of one statement at
+ * a time. Referenced objects are looked up on the database, so rows not flushed yet are not found.
+ * <p/>
+ * Updates are staged per object, and only kept for the batch when committed, so the updates of an object that
+ * failed to index can be discarded. On flush, deletes are executed before inserts, so the index rows of updated
+ * objects are removed before their new index rows are inserted. Each other statement writes a single index row, which
+ * is checked on flush; duplicate index rows of an object are written once.
+ */
+class BatchingIndexUpdates implements IndexUpdates {
+    private final List<StagedUpdate> staged = Lists.newArrayList();
+    private final Map<Integer, List<StagedUpdate>> committed = Maps.newHashMap();
+
+    @Override
+    public int update(final String sql, final Object... args) {
+        staged.add(new StagedUpdate(sql, Arrays.asList(args)));
+        return 1;
+    }
+
+    @Override
+    public boolean isImmediate() {
+        return false;
+    }
+
+    void commit(final int objectId) {
+        final List<StagedUpdate> updates = committed.get(objectId);
+        if (updates == null) {
+            committed.put(objectId, Lists.newArrayList(staged));
+        } else {
+            updates.addAll(staged);
+        }
+
+        staged.clear();
+    }
+
+    void discard() {
+        staged.clear();
+    }
+
+    /**
+     * Writes the committed index rows of the objects, which are kept until cleared.
+     */
+    void flush(final JdbcTemplate jdbcTemplate, final Iterable<Integer> objectIds) {
+        final Map<String, Set<List<Object>>> deletes = Maps.newLinkedHashMap();
+        final Map<String, Set<List<Object>>> updates = Maps.newLinkedHashMap();
+
+        for (final Integer objectId : objectIds) {
+            final List<StagedUpdate> stagedUpdates = committed.get(objectId);
+            if (stagedUpdates == null) {
+                continue;
+            }
+
+            for (final StagedUpdate stagedUpdate : stagedUpdates) {
+                final Map<String, Set<List<Object>>> queue = stagedUpdate.sql.startsWith("DELETE") ? deletes : updates;
+
+                Set<List<Object>> args = queue.get(stagedUpdate.sql);
+                if (args == null) {
+                    args = Sets.newLinkedHashSet();
+                    queue.put(stagedUpdate.sql, args);
+                }
+
+                args.add(stagedUpdate.args);
+            }
+        }
+
+        execute(jdbcTemplate, deletes, false);
+        execute(jdbcTemplate, updates, true);
+    }
+
+    void clear() {
+        staged.clear();
+        committed.clear();
+    }
+
+    private static void execute(final JdbcTemplate jdbcTemplate, final Map<String, Set<List<Object>>> queue, final boolean checkRows) {
+        for (final Map.Entry<String, Set<List<Object>>> entry : queue.entrySet()) {
+            final List<Object[]> batchArgs = Lists.newArrayListWithCapacity(entry.getValue().size());
+            for (final List<Object> args : entry.getValue()) {
+                batchArgs.add(args.toArray());
+            }
+
+            final int[] rowsAffected = jdbcTemplate.batchUpdate(entry.getKey(), batchArgs);
+            if (checkRows) {
+                for (final int rows : rowsAffected) {
+                    if (rows != 1 && rows != Statement.SUCCESS_NO_INFO) {
+                        throw new DataIntegrityViolationException("Rows affected by " + entry.getKey() + ": " + rows);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class StagedUpdate {
+        private final String sql;
+        private final List<Object> args;
+
+        private StagedUpdate(final String sql, final List<Object> args) {
+            this.sql = sql;
+            this.args = args;
+        }
+    }
+}
@@ -1,31 +1,74 @@
 package net.ripe.db.whois.scheduler.task.grs;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
 import net.ripe.db.whois.common.DateTimeProvider;
 import net.ripe.db.whois.common.collect.CollectionHelper;
 import net.ripe.db.whois.common.dao.RpslObjectInfo;
 import net.ripe.db.whois.common.dao.RpslObjectUpdateInfo;
 import net.ripe.db.whois.common.dao.jdbc.JdbcRpslObjectOperations;
+import net.ripe.db.whois.common.dao.jdbc.JdbcStreamingHelper;
 import net.ripe.db.whois.common.dao.jdbc.domain.ObjectTypeIds;
 import net.ripe.db.whois.common.domain.CIString;
+import net.ripe.db.whois.common.domain.serials.Operation;
 import net.ripe.db.whois.common.rpsl.ObjectType;
 import net.ripe.db.whois.common.rpsl.RpslObject;
 import net.ripe.db.whois.common.source.Source;
 import net.ripe.db.whois.common.source.SourceContext;
 import org.slf4j.Logger;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.CheckForNull;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static net.ripe.db.whois.common.dao.jdbc.JdbcRpslObjectOperations.*;
 
 class GrsDao {
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String INSERT_DIGEST = "" +
+            "INSERT INTO object_digest (object_id, digest) " +
+            "VALUES (?, ?) " +
+            "ON DUPLICATE KEY UPDATE digest = VALUES(digest)";
+
+    private static final String DELETE_DIGEST = "" +
+            "DELETE FROM object_digest " +
+            "WHERE object_id = ?";
+
+    private static final String INSERT_LAST = "" +
+            "INSERT INTO last (object_id, object, timestamp, sequence_id, object_type, pkey) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String UPDATE_LAST = "" +
+            "UPDATE last " +
+            "SET object = ?, timestamp = ?, sequence_id = ? " +
+            "WHERE object_id = ?";
+
+    private static final String DELETE_LAST = "" +
+            "UPDATE last SET object = '', timestamp = ?, sequence_id = 0 " +
+            "WHERE object_id = ? AND sequence_id > 0";
+
+    private static final String INSERT_SERIAL = "" +
+            "INSERT INTO serials (object_id, sequence_id, atlast, operation) " +
+            "VALUES (?, ?, ?, ?)";
+
     private final Logger logger;
     private final DateTimeProvider dateTimeProvider;
     private final CIString sourceName;
@@ -66,6 +109,72 @@ class GrsDao {
                 Integer.class);
     }
 
+    /**
+     * @return the current objects by {@link #currentObjectKey(ObjectType, String)}, with the digest of their contents.
+     * <p/>
+     * Objects are only read to compute their digest if it was not stored, and the computed digests are stored for
+     * the next import.
+     */
+    Map<String, CurrentObject> getCurrentObjects() {
+        ensureInitialized();
+        final Map<String, CurrentObject> currentObjects = Maps.newHashMap();
+        final List<Object[]> missingDigests = Lists.newArrayList();
+
+        JdbcStreamingHelper.executeStreaming(masterJdbcTemplate, "" +
+                "SELECT last.object_id, last.sequence_id, last.object_type, last.pkey, object_digest.digest, " +
+                "IF(object_digest.digest IS NULL, last.object, NULL) " +
+                "FROM last " +
+                "LEFT JOIN object_digest ON object_digest.object_id = last.object_id " +
+                "WHERE last.sequence_id != 0",
+                new RowCallbackHandler() {
+                    @Override
+                    public void processRow(final ResultSet rs) throws SQLException {
+                        final int objectId = rs.getInt(1);
+                        final ObjectType objectType;
+                        try {
+                            objectType = ObjectTypeIds.getType(rs.getInt(3));
+                        } catch (IllegalArgumentException e) {
+                            logger.warn("Ignoring object with id {} of unknown type: {}", objectId, rs.getInt(3));
+                            return;
+                        }
+
+                        long digest = rs.getLong(5);
+                        if (rs.wasNull()) {
+                            digest = digest(rs.getBytes(6));
+                            missingDigests.add(new Object[]{objectId, digest});
+                        }
+
+                        final String pkey = rs.getString(4);
+                        currentObjects.put(currentObjectKey(objectType, pkey), new CurrentObject(objectId, rs.getInt(2), objectType, pkey, digest));
+                    }
+                });
+
+        if (!missingDigests.isEmpty()) {
+            logger.info("Storing digests of {} objects", missingDigests.size());
+            for (final List<Object[]> partition : Lists.partition(missingDigests, BATCH_SIZE)) {
+                masterJdbcTemplate.batchUpdate(INSERT_DIGEST, partition);
+            }
+        }
+
+        return currentObjects;
+    }
+
+    static String currentObjectKey(final ObjectType objectType, final String pkey) {
+        return ObjectTypeIds.getId(objectType) + ":" + pkey.toLowerCase();
+    }
+
+    /**
+     * @return a digest of the contents of the object, stable across imports of the same object.
+     */
+    static long digest(final byte[] bytes) {
+        return Hashing.md5().hashBytes(bytes).asLong();
+    }
+
+    BatchUpdate createBatchUpdate() {
+        ensureInitialized();
+        return new BatchUpdate(masterJdbcTemplate.queryForInt("SELECT COALESCE(MAX(object_id), 0) FROM last") + 1);
+    }
+
     @CheckForNull
     GrsObjectInfo get(final int objectId) {
         ensureInitialized();
@@ -116,6 +225,7 @@ class GrsDao {
         ensureInitialized();
         final RpslObjectUpdateInfo rpslObjectInfo = insertIntoLastAndUpdateSerials(dateTimeProvider, masterJdbcTemplate, rpslObject);
         final Set<CIString> missingReferences = insertIntoTablesIgnoreMissing(masterJdbcTemplate, rpslObjectInfo, rpslObject);
+        masterJdbcTemplate.update(INSERT_DIGEST, rpslObjectInfo.getObjectId(), digest(rpslObject.toByteArray()));
 
         return new UpdateResult(rpslObjectInfo, missingReferences);
     }
@@ -127,6 +237,7 @@ class GrsDao {
         deleteFromTables(masterJdbcTemplate, rpslObjectInfo);
         final Set<CIString> missingReferences = insertIntoTablesIgnoreMissing(masterJdbcTemplate, rpslObjectInfo, rpslObject);
         updateLastAndUpdateSerials(dateTimeProvider, masterJdbcTemplate, rpslObjectInfo, rpslObject);
+        masterJdbcTemplate.update(INSERT_DIGEST, rpslObjectInfo.getObjectId(), digest(rpslObject.toByteArray()));
 
         return new UpdateResult(rpslObjectInfo, missingReferences);
     }
@@ -163,6 +274,7 @@ class GrsDao {
         final RpslObjectUpdateInfo rpslObjectInfo = grsObjectInfo.createUpdateInfo();
         deleteFromTables(masterJdbcTemplate, rpslObjectInfo);
         deleteFromLastAndUpdateSerials(dateTimeProvider, masterJdbcTemplate, rpslObjectInfo);
+        masterJdbcTemplate.update(DELETE_DIGEST, objectId);
     }
 
     static class UpdateResult {
@@ -182,4 +294,228 @@ class GrsDao {
             return hasMissingReferences;
         }
     }
+
+    static class CurrentObject {
+        private final int objectId;
+        private final ObjectType objectType;
+        private final String pkey;
+        private int sequenceId;
+        private long digest;
+        private boolean found;
+
+        CurrentObject(final int objectId, final int sequenceId, final ObjectType objectType, final String pkey, final long digest) {
+            this.objectId = objectId;
+            this.sequenceId = sequenceId;
+            this.objectType = objectType;
+            this.pkey = pkey;
+            this.digest = digest;
+        }
+
+        public int getObjectId() {
+            return objectId;
+        }
+
+        public int getSequenceId() {
+            return sequenceId;
+        }
+
+        public long getDigest() {
+            return digest;
+        }
+
+        public boolean isFound() {
+            return found;
+        }
+
+        public void setFound() {
+            found = true;
+        }
+
+        public void setUpdated(final long digest) {
+            this.sequenceId++;
+            this.digest = digest;
+        }
+
+        public void restore(final int sequenceId, final long digest) {
+            this.sequenceId = sequenceId;
+            this.digest = digest;
+        }
+
+        public RpslObjectUpdateInfo createUpdateInfo() {
+            return new RpslObjectUpdateInfo(objectId, sequenceId, objectType, pkey);
+        }
+    }
+
+    /**
+     * Collects creates, updates and deletes of objects, including their index rows, and writes them as JDBC batches
+     * in a single transaction on flush. If the batch fails, it is rolled back, and the objects are written one by one,
+     * each in a transaction of its own, skipping the objects that fail.
+     * <p/>
+     * Object ids of created objects are assigned here rather than generated by the database, which is safe as the
+     * importer is the only one writing to the GRS database. References to objects created in the same batch are
+     * reported missing, as they are looked up in the database.
+     */
+    class BatchUpdate {
+        private final BatchingIndexUpdates indexUpdates = new BatchingIndexUpdates();
+        private final TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(masterJdbcTemplate.getDataSource()));
+        private final Map<Integer, ObjectWrite> objectWrites = Maps.newLinkedHashMap();
+
+        private int nextObjectId;
+
+        BatchUpdate(final int nextObjectId) {
+            this.nextObjectId = nextObjectId;
+        }
+
+        boolean contains(final int objectId) {
+            return objectWrites.containsKey(objectId);
+        }
+
+        int size() {
+            return objectWrites.size();
+        }
+
+        UpdateResult create(final RpslObject rpslObject, final long digest) {
+            final RpslObjectUpdateInfo rpslObjectInfo = new RpslObjectUpdateInfo(nextObjectId, 1, rpslObject.getType(), rpslObject.getKey().toString());
+            final Set<CIString> missingReferences = index(rpslObjectInfo, rpslObject);
+
+            nextObjectId++;
+            objectWrites.put(rpslObjectInfo.getObjectId(), new ObjectWrite(rpslObjectInfo,
+                    INSERT_LAST, new Object[]{rpslObjectInfo.getObjectId(), rpslObject.toByteArray(), now(dateTimeProvider), 1, ObjectTypeIds.getId(rpslObjectInfo.getObjectType()), rpslObjectInfo.getKey()},
+                    new Object[]{rpslObjectInfo.getObjectId(), 1, 1, Operation.UPDATE.getCode()},
+                    INSERT_DIGEST, new Object[]{rpslObjectInfo.getObjectId(), digest}));
+
+            return new UpdateResult(rpslObjectInfo, missingReferences);
+        }
+
+        UpdateResult update(final RpslObjectUpdateInfo rpslObjectInfo, final RpslObject rpslObject, final long digest) {
+            deleteFromTables(indexUpdates, rpslObjectInfo);
+            final Set<CIString> missingReferences = index(rpslObjectInfo, rpslObject);
+
+            final int newSequenceId = rpslObjectInfo.getSequenceId() + 1;
+            objectWrites.put(rpslObjectInfo.getObjectId(), new ObjectWrite(rpslObjectInfo,
+                    UPDATE_LAST, new Object[]{rpslObject.toByteArray(), now(dateTimeProvider), newSequenceId, rpslObjectInfo.getObjectId()},
+                    new Object[]{rpslObjectInfo.getObjectId(), newSequenceId, 1, Operation.UPDATE.getCode()},
+                    INSERT_DIGEST, new Object[]{rpslObjectInfo.getObjectId(), digest}));
+
+            return new UpdateResult(rpslObjectInfo, missingReferences);
+        }
+
+        void delete(final RpslObjectUpdateInfo rpslObjectInfo) {
+            deleteFromTables(indexUpdates, rpslObjectInfo);
+            indexUpdates.commit(rpslObjectInfo.getObjectId());
+
+            objectWrites.put(rpslObjectInfo.getObjectId(), new ObjectWrite(rpslObjectInfo,
+                    DELETE_LAST, new Object[]{now(dateTimeProvider), rpslObjectInfo.getObjectId()},
+                    new Object[]{rpslObjectInfo.getObjectId(), rpslObjectInfo.getSequenceId() + 1, 0, Operation.DELETE.getCode()},
+                    DELETE_DIGEST, new Object[]{rpslObjectInfo.getObjectId()}));
+        }
+
+        private Set<CIString> index(final RpslObjectUpdateInfo rpslObjectInfo, final RpslObject rpslObject) {
+            final Set<CIString> missingReferences;
+            try {
+                missingReferences = insertIntoTablesIgnoreMissing(masterJdbcTemplate, indexUpdates, rpslObjectInfo, rpslObject);
+            } catch (RuntimeException e) {
+                indexUpdates.discard();
+                throw e;
+            }
+
+            indexUpdates.commit(rpslObjectInfo.getObjectId());
+            return missingReferences;
+        }
+
+        /**
+         * @return the ids of the objects that failed to be written, and were skipped.
+         */
+        Set<Integer> flush() {
+            if (objectWrites.isEmpty()) {
+                return Collections.emptySet();
+            }
+
+            try {
+                try {
+                    write(objectWrites.values());
+                    return Collections.emptySet();
+                } catch (RuntimeException e) {
+                    logger.warn("Unable to write {} objects in a batch, writing them one by one: {}", objectWrites.size(), e.getMessage());
+                }
+
+                final Set<Integer> failedObjectIds = Sets.newHashSet();
+                for (final ObjectWrite objectWrite : objectWrites.values()) {
+                    try {
+                        write(Collections.singletonList(objectWrite));
+                    } catch (RuntimeException e) {
+                        final RpslObjectUpdateInfo rpslObjectInfo = objectWrite.rpslObjectInfo;
+                        logger.warn("Unexpected error writing object [{}] {}: {}", rpslObjectInfo.getObjectType().getName(), rpslObjectInfo.getKey(), e.getMessage(), e);
+                        failedObjectIds.add(rpslObjectInfo.getObjectId());
+                    }
+                }
+
+                return failedObjectIds;
+            } finally {
+                objectWrites.clear();
+                indexUpdates.clear();
+            }
+        }
+
+        private void write(final Collection<ObjectWrite> writes) {
+            final Map<String, List<Object[]>> batchArgs = Maps.newLinkedHashMap();
+            for (final String sql : new String[]{INSERT_LAST, UPDATE_LAST, DELETE_LAST, INSERT_SERIAL, INSERT_DIGEST, DELETE_DIGEST}) {
+                batchArgs.put(sql, Lists.<Object[]>newArrayList());
+            }
+
+            final List<Integer> objectIds = Lists.newArrayListWithCapacity(writes.size());
+            for (final ObjectWrite objectWrite : writes) {
+                batchArgs.get(objectWrite.lastSql).add(objectWrite.lastArgs);
+                batchArgs.get(INSERT_SERIAL).add(objectWrite.serialArgs);
+                batchArgs.get(objectWrite.digestSql).add(objectWrite.digestArgs);
+                objectIds.add(objectWrite.rpslObjectInfo.getObjectId());
+            }
+
+            transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                    for (final Map.Entry<String, List<Object[]>> entry : batchArgs.entrySet()) {
+                        // objects may have no digest stored, so rows affected by digest updates are not checked
+                        final String sql = entry.getKey();
+                        batchUpdate(sql, entry.getValue(), !sql.equals(INSERT_DIGEST) && !sql.equals(DELETE_DIGEST));
+                    }
+
+                    indexUpdates.flush(masterJdbcTemplate, objectIds);
+                }
+            });
+        }
+
+        private void batchUpdate(final String sql, final List<Object[]> batchArgs, final boolean checkRows) {
+            if (batchArgs.isEmpty()) {
+                return;
+            }
+
+            final int[] rowsAffected = masterJdbcTemplate.batchUpdate(sql, batchArgs);
+            if (checkRows) {
+                for (final int rows : rowsAffected) {
+                    if (rows != 1 && rows != Statement.SUCCESS_NO_INFO) {
+                        throw new DataIntegrityViolationException("Rows affected by " + sql + ": " + rows);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class ObjectWrite {
+        private final RpslObjectUpdateInfo rpslObjectInfo;
+        private final String lastSql;
+        private final Object[] lastArgs;
+        private final Object[] serialArgs;
+        private final String digestSql;
+        private final Object[] digestArgs;
+
+        private ObjectWrite(final RpslObjectUpdateInfo rpslObjectInfo, final String lastSql, final Object[] lastArgs, final Object[] serialArgs, final String digestSql, final Object[] digestArgs) {
+            this.rpslObjectInfo = rpslObjectInfo;
+            this.lastSql = lastSql;
+            this.lastArgs = lastArgs;
+            this.serialArgs = serialArgs;
+            this.digestSql = digestSql;
+            this.digestArgs = digestArgs;
+        }
+    }
 }
@@ -3,7 +3,9 @@ package net.ripe.db.whois.scheduler.task.grs;
 import com.google.common.base.Joiner;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import net.ripe.db.whois.common.dao.RpslObjectUpdateInfo;
 import net.ripe.db.whois.common.grs.AuthoritativeResource;
 import net.ripe.db.whois.common.rpsl.*;
 import net.ripe.db.whois.common.source.SourceContext;
@@ -12,13 +14,20 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
 class GrsSourceImporter {
@@ -26,10 +35,12 @@ class GrsSourceImporter {
 
     private static final Joiner LINE_JOINER = Joiner.on("");
     private static final int LOG_EVERY_NR_HANDLED = 100000;
+    private static final int BATCH_SIZE = 1000;
 
     private final AttributeSanitizer sanitizer;
     private final ResourceTagger resourceTagger;
     private final SourceContext sourceContext;
+    private final int nrThreads;
 
     private File downloadDir;
 
@@ -38,8 +49,10 @@ class GrsSourceImporter {
             @Value("${dir.grs.import.download}") final String downloadDir,
             final AttributeSanitizer sanitizer,
             final ResourceTagger resourceTagger,
-            final SourceContext sourceContext) {
+            final SourceContext sourceContext,
+            @Value("${grs.import.threads:4}") final int nrThreads) {
         this.sourceContext = sourceContext;
+        this.nrThreads = nrThreads;
         this.downloadDir = new File(downloadDir);
         this.sanitizer = sanitizer;
         this.resourceTagger = resourceTagger;
@@ -75,8 +88,9 @@ class GrsSourceImporter {
             private int nrDeleted;
             private int nrIgnored;
 
-            private Set<Integer> currentObjectIds;
+            private Map<String, GrsDao.CurrentObject> currentObjects;
             private Set<Integer> incompletelyIndexedObjectIds = Sets.newHashSet();
+            private Map<Integer, UnwrittenChange> unwrittenChanges = Maps.newHashMap();
 
             @Override
             public void run() {
@@ -92,154 +106,341 @@ class GrsSourceImporter {
 
                 if (rebuild) {
                     grsSource.getDao().cleanDatabase();
-                    currentObjectIds = Collections.emptySet();
+                    currentObjects = Maps.newHashMap();
                     logger.info("Rebuilding database");
                 } else {
-                    currentObjectIds = Sets.newHashSet(grsSource.getDao().getCurrentObjectIds());
-                    logger.info("Updating {} current objects in database", currentObjectIds.size());
+                    currentObjects = grsSource.getDao().getCurrentObjects();
+                    logger.info("Updating {} current objects in database", currentObjects.size());
                 }
 
+                final GrsDao.BatchUpdate batchUpdate = grsSource.getDao().createBatchUpdate();
+                final ExecutorService executorService = Executors.newFixedThreadPool(nrThreads, threadFactory(grsSource.getName().toUpperCase()));
                 try {
-                    importObjects(dumpFile);
-                    deleteNotFoundInImport();
+                    importObjects(dumpFile, batchUpdate, executorService);
+                    deleteNotFoundInImport(batchUpdate);
                 } catch (IOException e) {
                     throw new RuntimeException(e);
                 } finally {
+                    executorService.shutdownNow();
                     logger.info("created {} / updated {} / deleted {} / ignored {} in {}", nrCreated, nrUpdated, nrDeleted, nrIgnored, stopwatch.stop());
                 }
 
                 updateIndexes();
             }
 
-            private void importObjects(final File dumpFile) throws IOException {
-                grsSource.handleObjects(dumpFile, new ObjectHandler() {
-                    @Override
-                    public void handle(final List<String> lines) {
-                        final String rpslObjectString = LINE_JOINER.join(lines);
+            private void importObjects(final File dumpFile, final GrsDao.BatchUpdate batchUpdate, final ExecutorService executorService) throws IOException {
+                final ImportHandler importHandler = new ImportHandler(batchUpdate, executorService);
+                grsSource.handleObjects(dumpFile, importHandler);
+                importHandler.finish();
+            }
 
-                        final RpslObject rpslObject;
-                        try {
-                            rpslObject = RpslObject.parse(rpslObjectString);
-                        } catch (RuntimeException e) {
-                            logger.warn("Unable to parse input as object:\n\n{}\n", rpslObjectString);
-                            return;
+            /**
+             * Parses, cleans and computes the digest of the objects on a pool of threads, and writes them in the order they were read
+             * on the calling thread, in batches.
+             */
+            final class ImportHandler implements ObjectHandler {
+                private final GrsDao.BatchUpdate batchUpdate;
+                private final ExecutorService executorService;
+                private final Deque<Future<PreparedBatch>> preparedBatches = Lists.newLinkedList();
+
+                private List<Object> batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+                private RuntimeException failure;
+
+                ImportHandler(final GrsDao.BatchUpdate batchUpdate, final ExecutorService executorService) {
+                    this.batchUpdate = batchUpdate;
+                    this.executorService = executorService;
+                }
+
+                @Override
+                public void handle(final List<String> lines) {
+                    add(LINE_JOINER.join(lines));
+                }
+
+                @Override
+                public void handle(final RpslObject rpslObject) {
+                    add(rpslObject);
+                }
+
+                private void add(final Object object) {
+                    if (failure != null) {
+                        return;
+                    }
+
+                    batch.add(object);
+                    if (batch.size() == BATCH_SIZE) {
+                        submitBatch();
+                    }
+                }
+
+                private void submitBatch() {
+                    final List<Object> submitted = batch;
+                    batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+
+                    preparedBatches.add(executorService.submit(new Callable<PreparedBatch>() {
+                        @Override
+                        public PreparedBatch call() {
+                            return prepare(submitted);
                         }
+                    }));
 
-                        handle(rpslObject);
+                    // the source catches exceptions thrown by the handler, so remember the failure to throw when finished
+                    try {
+                        while (preparedBatches.size() > nrThreads * 2) {
+                            writeNextBatch();
+                        }
+                    } catch (RuntimeException e) {
+                        failure = e;
                     }
+                }
 
-                    @Override
-                    public void handle(final RpslObject rpslObject) {
-                        if (rpslObject.getType() == null) {
-                            logger.debug("Unknown type: \n\n{}\n", rpslObject);
-                            nrIgnored++;
-                        } else {
-                            final ObjectMessages messages = new ObjectMessages();
-                            final RpslObject filteredObject = filterObject(rpslObject);
-                            final RpslObject cleanObject = sanitizer.sanitize(filteredObject, messages);
-                            final RpslAttribute typeAttribute = cleanObject.getTypeAttribute();
-                            typeAttribute.validateSyntax(cleanObject.getType(), messages);
-                            if (messages.hasErrors()) {
-                                logger.debug("Errors for object with key {}: {}", typeAttribute, messages);
-                                nrIgnored++;
-                            } else if (authoritativeData.isMaintainedInRirSpace(cleanObject)) {
-                                createOrUpdate(cleanObject);
+                void finish() {
+                    if (failure == null) {
+                        if (!batch.isEmpty()) {
+                            submitBatch();
+                        }
+
+                        while (failure == null && !preparedBatches.isEmpty()) {
+                            try {
+                                writeNextBatch();
+                            } catch (RuntimeException e) {
+                                failure = e;
                             }
                         }
                     }
 
-                    private RpslObject filterObject(final RpslObject rpslObject) {
-                        final RpslAttribute sourceAttribute = new RpslAttribute(AttributeType.SOURCE, grsSource.getName().toUpperCase());
+                    if (failure != null) {
+                        throw failure;
+                    }
+
+                    flush(batchUpdate);
+                }
+
+                private void writeNextBatch() {
+                    final PreparedBatch preparedBatch;
+                    try {
+                        preparedBatch = preparedBatches.removeFirst().get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while importing", e);
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException("Preparing objects", e.getCause());
+                    }
 
-                        final ObjectTemplate objectTemplate = ObjectTemplate.getTemplate(rpslObject.getType());
-                        final Set<AttributeType> attributeTypes = objectTemplate.getAllAttributes();
+                    nrIgnored += preparedBatch.nrIgnored;
+                    for (final PreparedObject preparedObject : preparedBatch.objects) {
+                        createOrUpdate(preparedObject);
+                    }
+                }
 
-                        final List<RpslAttribute> attributes = rpslObject.getAttributes();
-                        final List<RpslAttribute> newAttributes = Lists.newArrayListWithExpectedSize(attributes.size());
-                        final Set<AttributeType> newAttributeTypes = Sets.newHashSet();
+                private PreparedBatch prepare(final List<Object> objects) {
+                    final PreparedBatch preparedBatch = new PreparedBatch();
 
-                        for (final RpslAttribute attribute : attributes) {
-                            final AttributeType attributeType = attribute.getType();
-                            if (attributeType == null || !attributeTypes.contains(attributeType)) {
-                                logger.debug("Ignoring attribute in object {}: {}", rpslObject.getFormattedKey(), attribute);
+                    for (final Object object : objects) {
+                        final RpslObject rpslObject;
+                        if (object instanceof RpslObject) {
+                            rpslObject = (RpslObject) object;
+                        } else {
+                            try {
+                                rpslObject = RpslObject.parse((String) object);
+                            } catch (RuntimeException e) {
+                                logger.warn("Unable to parse input as object:\n\n{}\n", object);
                                 continue;
                             }
+                        }
 
-                            newAttributeTypes.add(attributeType);
-                            if (attributeType.equals(AttributeType.SOURCE)) {
-                                newAttributes.add(sourceAttribute);
-                            } else {
-                                newAttributes.add(attribute);
-                            }
+                        try {
+                            prepare(rpslObject, preparedBatch);
+                        } catch (RuntimeException e) {
+                            logger.warn("Unexpected error preparing object {}: {}", rpslObject.getFormattedKey(), e.getMessage(), e);
+                        }
+                    }
+
+                    return preparedBatch;
+                }
+
+                private void prepare(final RpslObject rpslObject, final PreparedBatch preparedBatch) {
+                    if (rpslObject.getType() == null) {
+                        logger.debug("Unknown type: \n\n{}\n", rpslObject);
+                        preparedBatch.nrIgnored++;
+                    } else {
+                        final ObjectMessages messages = new ObjectMessages();
+                        final RpslObject filteredObject = filterObject(rpslObject);
+                        final RpslObject cleanObject = sanitizer.sanitize(filteredObject, messages);
+                        final RpslAttribute typeAttribute = cleanObject.getTypeAttribute();
+                        typeAttribute.validateSyntax(cleanObject.getType(), messages);
+                        if (messages.hasErrors()) {
+                            logger.debug("Errors for object with key {}: {}", typeAttribute, messages);
+                            preparedBatch.nrIgnored++;
+                        } else if (authoritativeData.isMaintainedInRirSpace(cleanObject)) {
+                            preparedBatch.objects.add(new PreparedObject(cleanObject));
+                        }
+                    }
+                }
+
+                private RpslObject filterObject(final RpslObject rpslObject) {
+                    final RpslAttribute sourceAttribute = new RpslAttribute(AttributeType.SOURCE, grsSource.getName().toUpperCase());
+
+                    final ObjectTemplate objectTemplate = ObjectTemplate.getTemplate(rpslObject.getType());
+                    final Set<AttributeType> attributeTypes = objectTemplate.getAllAttributes();
+
+                    final List<RpslAttribute> attributes = rpslObject.getAttributes();
+                    final List<RpslAttribute> newAttributes = Lists.newArrayListWithExpectedSize(attributes.size());
+                    final Set<AttributeType> newAttributeTypes = Sets.newHashSet();
+
+                    for (final RpslAttribute attribute : attributes) {
+                        final AttributeType attributeType = attribute.getType();
+                        if (attributeType == null || !attributeTypes.contains(attributeType)) {
+                            logger.debug("Ignoring attribute in object {}: {}", rpslObject.getFormattedKey(), attribute);
+                            continue;
                         }
 
-                        if (!newAttributeTypes.contains(AttributeType.SOURCE)) {
+                        newAttributeTypes.add(attributeType);
+                        if (attributeType.equals(AttributeType.SOURCE)) {
                             newAttributes.add(sourceAttribute);
+                        } else {
+                            newAttributes.add(attribute);
                         }
+                    }
 
-                        return new RpslObject(newAttributes);
+                    if (!newAttributeTypes.contains(AttributeType.SOURCE)) {
+                        newAttributes.add(sourceAttribute);
                     }
 
-                    @Transactional
-                    private void createOrUpdate(final RpslObject importedObject) {
-                        final String pkey = importedObject.getKey().toString();
-                        final ObjectType type = importedObject.getType();
-                        final GrsObjectInfo grsObjectInfo = grsSource.getDao().find(pkey, type);
+                    return new RpslObject(newAttributes);
+                }
 
-                        if (grsObjectInfo == null) {
-                            if (type == ObjectType.PERSON && grsSource.getDao().find(pkey, ObjectType.ROLE) != null) {
-                                return;
-                            }
+                private void createOrUpdate(final PreparedObject preparedObject) {
+                    final RpslObject importedObject = preparedObject.rpslObject;
+                    final String pkey = importedObject.getKey().toString();
+                    final ObjectType type = importedObject.getType();
+                    final GrsDao.CurrentObject currentObject = currentObjects.get(GrsDao.currentObjectKey(type, pkey));
 
-                            if (type == ObjectType.ROLE && grsSource.getDao().find(pkey, ObjectType.PERSON) != null) {
-                                return;
-                            }
+                    if (currentObject == null) {
+                        if (type == ObjectType.PERSON && currentObjects.containsKey(GrsDao.currentObjectKey(ObjectType.ROLE, pkey))) {
+                            return;
+                        }
 
-                            create(importedObject);
-                        } else {
-                            currentObjectIds.remove(grsObjectInfo.getObjectId());
-                            if (!grsObjectInfo.getRpslObject().equals(importedObject)) {
-                                update(importedObject, grsObjectInfo);
-                            }
+                        if (type == ObjectType.ROLE && currentObjects.containsKey(GrsDao.currentObjectKey(ObjectType.PERSON, pkey))) {
+                            return;
                         }
 
-                        final int nrImported = nrCreated + nrUpdated;
-                        if ((nrImported % LOG_EVERY_NR_HANDLED == 0) && (nrImported > 0)) {
-                            logger.info("Imported {} objects", nrImported);
+                        create(preparedObject);
+                    } else {
+                        currentObject.setFound();
+                        if (currentObject.getDigest() != preparedObject.digest) {
+                            update(preparedObject, currentObject);
                         }
                     }
 
-                    private void create(final RpslObject importedObject) {
-                        final GrsDao.UpdateResult updateResult = grsSource.getDao().createObject(importedObject);
-                        if (updateResult.hasMissingReferences()) {
-                            incompletelyIndexedObjectIds.add(updateResult.getObjectId());
-                        }
-                        nrCreated++;
+                    if (batchUpdate.size() >= BATCH_SIZE) {
+                        flush(batchUpdate);
+                    }
+
+                    final int nrImported = nrCreated + nrUpdated;
+                    if ((nrImported % LOG_EVERY_NR_HANDLED == 0) && (nrImported > 0)) {
+                        logger.info("Imported {} objects", nrImported);
+                    }
+                }
+
+                private void create(final PreparedObject preparedObject) {
+                    final RpslObject importedObject = preparedObject.rpslObject;
+                    final GrsDao.UpdateResult updateResult;
+                    try {
+                        updateResult = batchUpdate.create(importedObject, preparedObject.digest);
+                    } catch (RuntimeException e) {
+                        logger.warn("Unexpected error creating object {}: {}", importedObject.getFormattedKey(), e.getMessage(), e);
+                        return;
+                    }
+
+                    if (updateResult.hasMissingReferences()) {
+                        incompletelyIndexedObjectIds.add(updateResult.getObjectId());
                     }
 
-                    private void update(final RpslObject importedObject, final GrsObjectInfo grsObjectInfo) {
-                        final GrsDao.UpdateResult updateResult = grsSource.getDao().updateObject(grsObjectInfo, importedObject);
-                        if (updateResult.hasMissingReferences()) {
-                            incompletelyIndexedObjectIds.add(updateResult.getObjectId());
+                    final GrsDao.CurrentObject currentObject = new GrsDao.CurrentObject(updateResult.getObjectId(), 1, importedObject.getType(), importedObject.getKey().toString(), preparedObject.digest);
+                    currentObject.setFound();
+                    currentObjects.put(GrsDao.currentObjectKey(importedObject.getType(), importedObject.getKey().toString()), currentObject);
+                    unwrittenChanges.put(updateResult.getObjectId(), new UnwrittenChange(currentObject, true));
+                    nrCreated++;
+                }
+
+                private void update(final PreparedObject preparedObject, final GrsDao.CurrentObject currentObject) {
+                    // index rows of an object are replaced on update, so do not update an object twice in a batch
+                    if (batchUpdate.contains(currentObject.getObjectId())) {
+                        flush(batchUpdate);
+                    }
+
+                    final GrsDao.UpdateResult updateResult;
+                    try {
+                        updateResult = batchUpdate.update(currentObject.createUpdateInfo(), preparedObject.rpslObject, preparedObject.digest);
+                    } catch (RuntimeException e) {
+                        logger.warn("Unexpected error updating object {}: {}", preparedObject.rpslObject.getFormattedKey(), e.getMessage(), e);
+                        return;
+                    }
+
+                    if (updateResult.hasMissingReferences()) {
+                        incompletelyIndexedObjectIds.add(updateResult.getObjectId());
+                    }
+
+                    unwrittenChanges.put(updateResult.getObjectId(), new UnwrittenChange(currentObject, false));
+                    currentObject.setUpdated(preparedObject.digest);
+                    nrUpdated++;
+                }
+            }
+
+            /**
+             * Writes the batch, and undoes the changes of the current objects that failed to be written.
+             *
+             * @return the number of objects that failed to be written.
+             */
+            private int flush(final GrsDao.BatchUpdate batchUpdate) {
+                try {
+                    final Set<Integer> failedObjectIds = batchUpdate.flush();
+                    for (final Integer objectId : failedObjectIds) {
+                        final UnwrittenChange unwrittenChange = unwrittenChanges.get(objectId);
+                        if (unwrittenChange == null) {
+                            continue;
+                        }
+
+                        if (unwrittenChange.created) {
+                            final RpslObjectUpdateInfo rpslObjectInfo = unwrittenChange.currentObject.createUpdateInfo();
+                            currentObjects.remove(GrsDao.currentObjectKey(rpslObjectInfo.getObjectType(), rpslObjectInfo.getKey()));
+                            incompletelyIndexedObjectIds.remove(objectId);
+                            nrCreated--;
+                        } else {
+                            unwrittenChange.currentObject.restore(unwrittenChange.sequenceId, unwrittenChange.digest);
+                            nrUpdated--;
                         }
-                        nrUpdated++;
                     }
-                });
+
+                    return failedObjectIds.size();
+                } finally {
+                    unwrittenChanges.clear();
+                }
             }
 
-            private void deleteNotFoundInImport() {
+            private void deleteNotFoundInImport(final GrsDao.BatchUpdate batchUpdate) {
                 if (nrCreated == 0 && nrUpdated == 0) {
                     logger.warn("Skipping deletion since there were no other updates");
                     return;
                 }
 
-                logger.info("Cleaning up {} currently unreferenced objects", currentObjectIds.size());
-                for (final Integer objectId : currentObjectIds) {
+                final List<GrsDao.CurrentObject> notFound = Lists.newArrayList();
+                for (final GrsDao.CurrentObject currentObject : currentObjects.values()) {
+                    if (!currentObject.isFound()) {
+                        notFound.add(currentObject);
+                    }
+                }
+
+                logger.info("Cleaning up {} currently unreferenced objects", notFound.size());
+                for (final List<GrsDao.CurrentObject> partition : Lists.partition(notFound, BATCH_SIZE)) {
                     try {
-                        grsSource.getDao().deleteObject(objectId);
-                        nrDeleted++;
+                        for (final GrsDao.CurrentObject currentObject : partition) {
+                            batchUpdate.delete(currentObject.createUpdateInfo());
+                        }
+
+                        nrDeleted += partition.size() - flush(batchUpdate);
                     } catch (RuntimeException e) {
-                        logger.error("Deleting object with id: {}", objectId, e);
+                        logger.error("Deleting {} objects starting with id: {}", partition.size(), partition.get(0).getObjectId(), e);
                     }
                 }
             }
@@ -264,4 +465,50 @@ class GrsSourceImporter {
             }
         }.run();
     }
+
+    private static ThreadFactory threadFactory(final String sourceName) {
+        final String name = "GrsImport-" + sourceName;
+
+        return new ThreadFactory() {
+            final ThreadGroup threadGroup = new ThreadGroup(Thread.currentThread().getThreadGroup(), name);
+            final AtomicInteger threadNum = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(threadGroup, r, String.format("%s-%s", name, threadNum.incrementAndGet()));
+            }
+        };
+    }
+
+    private static final class PreparedObject {
+        private final RpslObject rpslObject;
+        private final long digest;
+
+        private PreparedObject(final RpslObject rpslObject) {
+            this.rpslObject = rpslObject;
+            this.digest = GrsDao.digest(rpslObject.toByteArray());
+        }
+    }
+
+    /**
+     * A change of a current object not written yet, to undo if the object fails to be written.
+     */
+    private static final class UnwrittenChange {
+        private final GrsDao.CurrentObject currentObject;
+        private final boolean created;
+        private final int sequenceId;
+        private final long digest;
+
+        private UnwrittenChange(final GrsDao.CurrentObject currentObject, final boolean created) {
+            this.currentObject = currentObject;
+            this.created = created;
+            this.sequenceId = currentObject.getSequenceId();
+            this.digest = currentObject.getDigest();
+        }
+    }
+
+    private static final class PreparedBatch {
+        private final List<PreparedObject> objects = Lists.newArrayListWithCapacity(BATCH_SIZE);
+        private int nrIgnored;
+    }
 }
@@ -0,0 +1,235 @@
+package net.ripe.db.whois.scheduler.task.unref;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Graph of the references between delete candidates, using the index of the candidate as node and primitive arrays
+ * for the edges, so it takes little memory for the whole database.
+ * <p/>
+ * References from objects that are not delete candidates are roots. Every reference is made a number of days ago,
+ * references in current objects are made today. An object is referenced as long ago as the most recent path from a
+ * root to the object, where a path is as old as its oldest reference. Objects on a cycle of references not reachable
+ * from a root are unreferenced.
+ */
+class ReferenceGraph {
+    static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int[] objectIds;
+    private final int[] daysUnreferenced;
+
+    private final IntList edgeSources = new IntList(INITIAL_CAPACITY);
+    private final IntList edgeTargets = new IntList(INITIAL_CAPACITY);
+    private final IntList edgeDays = new IntList(INITIAL_CAPACITY);
+    private final BitSet currentEdges = new BitSet();
+
+    private int[] edgeOffsets;
+    private int[] edgesBySource;
+
+    ReferenceGraph(final int[] objectIds) {
+        this.objectIds = objectIds.clone();
+        Arrays.sort(this.objectIds);
+
+        this.daysUnreferenced = new int[objectIds.length];
+        Arrays.fill(daysUnreferenced, UNREACHABLE);
+    }
+
+    int size() {
+        return objectIds.length;
+    }
+
+    /**
+     * @return the node of the object, or -1 if the object is not in the graph.
+     */
+    int getNode(final int objectId) {
+        final int node = Arrays.binarySearch(objectIds, objectId);
+        return node < 0 ? -1 : node;
+    }
+
+    int getObjectId(final int node) {
+        return objectIds[node];
+    }
+
+    void addRoot(final int node, final int days) {
+        if (days < daysUnreferenced[node]) {
+            daysUnreferenced[node] = days;
+        }
+    }
+
+    void addReference(final int source, final int target, final int days, final boolean current) {
+        if (current) {
+            currentEdges.set(edgeSources.size());
+        }
+
+        edgeSources.add(source);
+        edgeTargets.add(target);
+        edgeDays.add(days);
+        edgeOffsets = null;
+    }
+
+    int getNrReferences() {
+        return edgeSources.size();
+    }
+
+    /**
+     * Computes the number of days every object has been unreferenced, like Dijkstra's algorithm with a bucket per day:
+     * following a reference never makes a path more recent, so the objects are visited in order of days unreferenced.
+     */
+    void computeReachability() {
+        buildAdjacency();
+
+        int maxDays = 0;
+        for (final int days : daysUnreferenced) {
+            if (days != UNREACHABLE) {
+                maxDays = Math.max(maxDays, days);
+            }
+        }
+
+        for (int edge = 0; edge < edgeDays.size(); edge++) {
+            maxDays = Math.max(maxDays, edgeDays.get(edge));
+        }
+
+        final IntList[] buckets = new IntList[maxDays + 1];
+        for (int node = 0; node < daysUnreferenced.length; node++) {
+            if (daysUnreferenced[node] != UNREACHABLE) {
+                push(buckets, daysUnreferenced[node], node);
+            }
+        }
+
+        for (int day = 0; day < buckets.length; day++) {
+            final IntList bucket = buckets[day];
+            while (bucket != null && !bucket.isEmpty()) {
+                final int node = bucket.pop();
+                if (daysUnreferenced[node] != day) {
+                    continue;
+                }
+
+                for (int i = edgeOffsets[node]; i < edgeOffsets[node + 1]; i++) {
+                    final int edge = edgesBySource[i];
+                    final int target = edgeTargets.get(edge);
+                    final int days = Math.max(day, edgeDays.get(edge));
+                    if (days < daysUnreferenced[target]) {
+                        daysUnreferenced[target] = days;
+                        push(buckets, days, target);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of days the object has been unreferenced, 0 if referenced today, or {@link #UNREACHABLE}.
+     */
+    int getDaysUnreferenced(final int node) {
+        return daysUnreferenced[node];
+    }
+
+    /**
+     * @return the nodes to delete, ordered so objects are deleted before the objects they reference. Objects still
+     * referenced from objects not deleted, or on a cycle of current references, cannot be deleted and are left out.
+     */
+    int[] getDeleteOrder(final BitSet deletable) {
+        buildAdjacency();
+
+        final int[] nrReferencing = new int[objectIds.length];
+        for (int edge = currentEdges.nextSetBit(0); edge >= 0; edge = currentEdges.nextSetBit(edge + 1)) {
+            if (deletable.get(edgeTargets.get(edge))) {
+                nrReferencing[edgeTargets.get(edge)]++;
+            }
+        }
+
+        final IntList unreferenced = new IntList(INITIAL_CAPACITY);
+        for (int node = deletable.nextSetBit(0); node >= 0; node = deletable.nextSetBit(node + 1)) {
+            if (nrReferencing[node] == 0) {
+                unreferenced.add(node);
+            }
+        }
+
+        final IntList deleteOrder = new IntList(deletable.cardinality());
+        for (int i = 0; i < unreferenced.size(); i++) {
+            final int node = unreferenced.get(i);
+            deleteOrder.add(node);
+
+            for (int j = edgeOffsets[node]; j < edgeOffsets[node + 1]; j++) {
+                final int edge = edgesBySource[j];
+                final int target = edgeTargets.get(edge);
+                if (currentEdges.get(edge) && deletable.get(target) && --nrReferencing[target] == 0) {
+                    unreferenced.add(target);
+                }
+            }
+        }
+
+        return deleteOrder.toArray();
+    }
+
+    private void buildAdjacency() {
+        if (edgeOffsets != null) {
+            return;
+        }
+
+        final int nrEdges = edgeSources.size();
+        final int[] offsets = new int[objectIds.length + 1];
+        for (int edge = 0; edge < nrEdges; edge++) {
+            offsets[edgeSources.get(edge) + 1]++;
+        }
+
+        for (int node = 0; node < objectIds.length; node++) {
+            offsets[node + 1] += offsets[node];
+        }
+
+        final int[] next = Arrays.copyOf(offsets, objectIds.length);
+        edgesBySource = new int[nrEdges];
+        for (int edge = 0; edge < nrEdges; edge++) {
+            edgesBySource[next[edgeSources.get(edge)]++] = edge;
+        }
+
+        edgeOffsets = offsets;
+    }
+
+    private static void push(final IntList[] buckets, final int days, final int node) {
+        if (buckets[days] == null) {
+            buckets[days] = new IntList(INITIAL_CAPACITY);
+        }
+
+        buckets[days].add(node);
+    }
+
+    private static final class IntList {
+        private int[] values;
+        private int size;
+
+        private IntList(final int capacity) {
+            values = new int[Math.max(capacity, 1)];
+        }
+
+        void add(final int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+
+            values[size++] = value;
+        }
+
+        int get(final int index) {
+            return values[index];
+        }
+
+        int pop() {
+            return values[--size];
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
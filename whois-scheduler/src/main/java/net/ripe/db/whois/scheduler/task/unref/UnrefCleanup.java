@@ -34,22 +34,24 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
-import java.util.Iterator;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.locks.ReentrantLock;
 
 /* Clean up old, unreferenced, non-resource objects
 Algorithm:
-- collect all objects in last table, call this set 'deletion candidates'
-- go through all objects in last, remove all referenced objects from deletion candidates
-- go though all objects in history of last 90 days, remove all referenced objects from deletion candidates, add tags of unref cleanup
-- from remaining deletion candidates, remove objects from deletion candidates that are <90 days old and tag for unref cleanup
-- remaining deletion candidates are deleted via updates
+- collect all objects in last of the cleanup types, call this set 'deletion candidates'
+- go through all objects in last, and all objects in history of last 90 days, adding their references to deletion
+  candidates to a reference graph; references from objects that are not deletion candidates are roots
+- deletion candidates reachable from a root are kept, and tagged for unref cleanup if only reachable through history
+- from remaining deletion candidates, keep objects that are <90 days old and tag for unref cleanup
+- remaining deletion candidates are deleted via updates, referencing objects before referenced objects
+- remaining deletion candidates on a circle of references, or referenced from one, cannot be deleted and are tagged
  */
 
-// TODO: [AH] hard to follow code, should be refactored
-// TODO: [AH] does not handle circles of unreferenced objects (e.g. person referenced from key-cert, key-cert referenced from mntner, mntner referenced from person), need a different approach to support this
+// TODO: [AH] does not delete circles of unreferenced objects (e.g. person referenced from key-cert, key-cert referenced from mntner, mntner referenced from person): they are tagged and logged, but every delete in a circle would fail as the object is still referenced from the circle, need a different approach to support this
 @Component
 public class UnrefCleanup implements DailyScheduledTask {
     private static final Logger LOGGER = LoggerFactory.getLogger(UnrefCleanup.class);
@@ -118,8 +120,6 @@ public class UnrefCleanup implements DailyScheduledTask {
                 Joiner.on(',').join(REFERENCE_ATTRIBUTETYPES));
     }
 
-    Map<ObjectKey, DeleteCandidate> deleteCandidates;
-    Map<ObjectKey, UnreferencedObject> unreferencedObjects;
     final ReentrantLock unrefCleanupLock = new ReentrantLock();
 
     @Override
@@ -137,13 +137,14 @@ public class UnrefCleanup implements DailyScheduledTask {
             LOGGER.info("Starting unreferenced object cleanup");
             final Stopwatch stopwatch = new Stopwatch().start();
 
-            deleteCandidates = unrefCleanupDao.getDeleteCandidates(CLEANUP_OBJECTS);
-            unreferencedObjects = Maps.newHashMap();
+            final Map<ObjectKey, DeleteCandidate> deleteCandidates = unrefCleanupDao.getDeleteCandidates(CLEANUP_OBJECTS);
+            final ReferenceGraph referenceGraph = buildReferenceGraph(deleteCandidates);
 
-            filterReferencedObjects(deleteCandidates, unreferencedObjects);
+            final List<UnreferencedObject> unreferencedObjects = Lists.newArrayList();
+            final List<DeleteCandidate> deleteObjects = filterReferencedObjects(deleteCandidates, referenceGraph, unreferencedObjects);
 
             LOGGER.info("Tagging {} unreferenced objects", unreferencedObjects.size());
-            tagsDao.rebuild(CIString.ciString("unref"), Lists.newArrayList(Iterables.transform(unreferencedObjects.values(), new Function<UnreferencedObject, Tag>() {
+            tagsDao.rebuild(CIString.ciString("unref"), Lists.newArrayList(Iterables.transform(unreferencedObjects, new Function<UnreferencedObject, Tag>() {
                 @Nullable
                 @Override
                 public Tag apply(final UnreferencedObject unreferencedObject) {
@@ -154,7 +155,7 @@ public class UnrefCleanup implements DailyScheduledTask {
             loggerContext.init("unrefcleanup");
             try {
                 sourceContext.setCurrentSourceToWhoisMaster();
-                performCleanup(deleteCandidates);
+                performCleanup(deleteObjects);
             } finally {
                 sourceContext.removeCurrentSource();
                 loggerContext.remove();
@@ -165,92 +166,98 @@ public class UnrefCleanup implements DailyScheduledTask {
         }
     }
 
-    void addUnrefObjectTag(ObjectKey objectKey, int objectId, int daysUnreferenced) {
-        final UnreferencedObject unreferencedObject = unreferencedObjects.get(objectKey);
-        if (unreferencedObject == null || daysUnreferenced < unreferencedObject.getNrDays()) {
-            unreferencedObjects.put(objectKey, new UnreferencedObject(objectId, daysUnreferenced));
+    private ReferenceGraph buildReferenceGraph(final Map<ObjectKey, DeleteCandidate> deleteCandidates) {
+        final int[] objectIds = new int[deleteCandidates.size()];
+        int i = 0;
+        for (final DeleteCandidate deleteCandidate : deleteCandidates.values()) {
+            objectIds[i++] = deleteCandidate.getObjectId();
         }
-    }
 
-    private void filterReferencedObjects(final Map<ObjectKey, DeleteCandidate> deleteCandidates, final Map<ObjectKey, UnreferencedObject> nrDaysUnrefByObjectKey) {
-        final UnrefCleanupDao.DeleteCandidatesFilter deleteCandidatesFilter = new UnrefCleanupDao.DeleteCandidatesFilter() {
-            private int nrErrors = 0;
-
-            @Override
-            public void filter(final RpslObject rpslObject, final LocalDate date) {
-                if (ObjectType.ORGANISATION.equals(rpslObject.getType())) {
-                    final OrgType orgType = OrgType.getFor(rpslObject.getValueForAttribute(AttributeType.ORG_TYPE));
-                    if (OrgType.LIR.equals(orgType)) {
-                        LOGGER.debug("Never remove organisation of type LIR:\n\n{}\n", rpslObject);
-                        deleteCandidates.remove(new ObjectKey(ObjectType.ORGANISATION, rpslObject.getKey()));
-                    }
-                }
+        final ReferenceGraph referenceGraph = new ReferenceGraph(objectIds);
+        final ReferenceCollector referenceCollector = new ReferenceCollector(deleteCandidates, referenceGraph);
 
-                for (final RpslAttribute rpslAttribute : rpslObject.findAttributes(REFERENCE_ATTRIBUTETYPES)) {
-                    try {
-                        filterReferencedInAttribute(rpslObject, rpslAttribute, date);
-                    } catch (RuntimeException e) {
-                        if (e instanceof AttributeParseException) {
-                            LOGGER.error("Processing attribute {}: {}", rpslObject.getFormattedKey(), rpslAttribute);
-                        } else {
-                            LOGGER.error("Processing attribute {}: {}", rpslObject.getFormattedKey(), rpslAttribute, e);
-                        }
+        referenceCollector.current = true;
+        unrefCleanupDao.doForCurrentRpslObjects(referenceCollector);
+        LOGGER.info("References between delete candidates after checking last: {}", referenceGraph.getNrReferences());
 
-                        if (nrErrors++ > MAX_ERRORS) {
-                            throw new IllegalStateException("Too many errors occured removing delete candidates, aborting unref cleanup");
-                        }
-                    }
-                }
-            }
+        referenceCollector.current = false;
+        unrefCleanupDao.doForHistoricRpslObjects(referenceCollector, dateTimeProvider.getCurrentDate().minusDays(ALLOW_UNREFERENCED_DAYS));
+        LOGGER.info("References between delete candidates after checking history: {}", referenceGraph.getNrReferences());
 
-            private void filterReferencedInAttribute(final RpslObject rpslObject, final RpslAttribute rpslAttribute, final LocalDate date) {
-                for (final CIString value : rpslAttribute.getReferenceValues()) {
-                    final Set<ObjectType> referenceTypes = rpslAttribute.getType().getReferences(value);
-                    if (referenceTypes.contains(rpslObject.getType()) && value.equals(rpslObject.getKey())) {
-                        LOGGER.debug("Skipping self reference for {} in \n\n{}\n", rpslAttribute, rpslObject);
-                    } else {
-                        for (final ObjectType referenceType : referenceTypes) {
-                            final ObjectKey objectKey = new ObjectKey(referenceType, value);
-                            DeleteCandidate deleteCandidate = deleteCandidates.remove(objectKey);
-
-                            if (deleteCandidate != null) {
-                                final int daysUnreferenced = Days.daysBetween(date, dateTimeProvider.getCurrentDate()).getDays();
-                                if (daysUnreferenced > 0) {     // don't tag currently referenced objects
-                                    addUnrefObjectTag(objectKey, deleteCandidate.getObjectId(), daysUnreferenced);
-                                }
-                            }
-                        }
-                    }
+        referenceGraph.computeReachability();
+        return referenceGraph;
+    }
+
+    private List<DeleteCandidate> filterReferencedObjects(final Map<ObjectKey, DeleteCandidate> deleteCandidates, final ReferenceGraph referenceGraph, final List<UnreferencedObject> unreferencedObjects) {
+        final LocalDate today = dateTimeProvider.getCurrentDate();
+        final BitSet deletable = new BitSet(referenceGraph.size());
+
+        for (final DeleteCandidate deleteCandidate : deleteCandidates.values()) {
+            final int node = referenceGraph.getNode(deleteCandidate.getObjectId());
+            final int daysUnreferenced = referenceGraph.getDaysUnreferenced(node);
+
+            if (daysUnreferenced == ReferenceGraph.UNREACHABLE) {
+                // keep unreferenced objects if they are still 'young'
+                final int daysCreated = Days.daysBetween(deleteCandidate.getCreationDate(), today).getDays();
+                if (daysCreated <= ALLOW_UNREFERENCED_DAYS) {
+                    unreferencedObjects.add(new UnreferencedObject(deleteCandidate.getObjectId(), daysCreated));
+                } else {
+                    deletable.set(node);
                 }
+            } else if (daysUnreferenced > 0) {     // don't tag currently referenced objects
+                unreferencedObjects.add(new UnreferencedObject(deleteCandidate.getObjectId(), daysUnreferenced));
             }
-        };
-
-        unrefCleanupDao.doForCurrentRpslObjects(deleteCandidatesFilter);
-        LOGGER.info("Delete candidates after checking references in last: {}", deleteCandidates.size());
-
-        unrefCleanupDao.doForHistoricRpslObjects(deleteCandidatesFilter, dateTimeProvider.getCurrentDate().minusDays(ALLOW_UNREFERENCED_DAYS));
-        LOGGER.info("Delete candidates after checking references in history: {}", deleteCandidates.size());
-
-        // keep unreferenced objects if they are still 'young'
-        final Iterator<Map.Entry<ObjectKey, DeleteCandidate>> deleteCandidateEntryIterator = deleteCandidates.entrySet().iterator();
-        while (deleteCandidateEntryIterator.hasNext()) {
-            final Map.Entry<ObjectKey, DeleteCandidate> deleteCandidateEntry = deleteCandidateEntryIterator.next();
-            final int daysUnreferenced = Days.daysBetween(deleteCandidateEntry.getValue().getCreationDate(), dateTimeProvider.getCurrentDate()).getDays();
-            if (daysUnreferenced <= ALLOW_UNREFERENCED_DAYS) {
-                addUnrefObjectTag(deleteCandidateEntry.getKey(), deleteCandidateEntry.getValue().getObjectId(), daysUnreferenced);
-                deleteCandidateEntryIterator.remove();
+        }
+
+        LOGGER.info("Unreferenced created over {} days ago: {}", ALLOW_UNREFERENCED_DAYS, deletable.cardinality());
+
+        final int[] deleteOrder = referenceGraph.getDeleteOrder(deletable);
+
+        final Map<Integer, DeleteCandidate> deleteCandidatesById = Maps.newHashMapWithExpectedSize(deleteOrder.length);
+        for (final DeleteCandidate deleteCandidate : deleteCandidates.values()) {
+            deleteCandidatesById.put(deleteCandidate.getObjectId(), deleteCandidate);
+        }
+
+        if (deleteOrder.length < deletable.cardinality()) {
+            tagUndeletableObjects(deleteCandidates, referenceGraph, deletable, deleteOrder, unreferencedObjects);
+        }
+
+        final List<DeleteCandidate> deleteObjects = Lists.newArrayListWithCapacity(deleteOrder.length);
+        for (final int node : deleteOrder) {
+            deleteObjects.add(deleteCandidatesById.get(referenceGraph.getObjectId(node)));
+        }
+
+        return deleteObjects;
+    }
+
+    /**
+     * Objects on a circle of references, and objects referenced from them, are left out of the delete order. They are
+     * tagged as due for deletion and logged, so they can be cleaned up by hand.
+     */
+    private static void tagUndeletableObjects(final Map<ObjectKey, DeleteCandidate> deleteCandidates, final ReferenceGraph referenceGraph, final BitSet deletable, final int[] deleteOrder, final List<UnreferencedObject> unreferencedObjects) {
+        final BitSet undeletable = (BitSet) deletable.clone();
+        for (final int node : deleteOrder) {
+            undeletable.clear(node);
+        }
+
+        final List<ObjectKey> undeletableKeys = Lists.newArrayListWithCapacity(undeletable.cardinality());
+        for (final Map.Entry<ObjectKey, DeleteCandidate> deleteCandidateEntry : deleteCandidates.entrySet()) {
+            final int objectId = deleteCandidateEntry.getValue().getObjectId();
+            if (undeletable.get(referenceGraph.getNode(objectId))) {
+                unreferencedObjects.add(new UnreferencedObject(objectId, ALLOW_UNREFERENCED_DAYS));
+                undeletableKeys.add(deleteCandidateEntry.getKey());
             }
         }
 
-        LOGGER.info("Unreferenced created over {} days ago: {}", ALLOW_UNREFERENCED_DAYS, deleteCandidates.size());
+        LOGGER.warn("Not deleting {} unreferenced objects referenced by objects not deleted or on a circle of references: {}", undeletableKeys.size(), undeletableKeys);
     }
 
-    private void performCleanup(final Map<ObjectKey, DeleteCandidate> deleteCandidates) {
+    private void performCleanup(final List<DeleteCandidate> deleteCandidates) {
         final Origin origin = new MaintenanceJob(REASON);
         final UpdateContext updateContext = new UpdateContext(loggerContext);
 
         int remainingDeletes = MAX_DELETE_OBJECTS;
-        for (final DeleteCandidate deleteCandidate : deleteCandidates.values()) {
+        for (final DeleteCandidate deleteCandidate : deleteCandidates) {
             final int objectId = deleteCandidate.getObjectId();
             try {
                 final RpslObject object = objectDao.getById(objectId);
@@ -285,6 +292,81 @@ public class UnrefCleanup implements DailyScheduledTask {
         }
     }
 
+    /**
+     * Adds the references to delete candidates to the reference graph, references from objects that are not delete
+     * candidates as roots.
+     */
+    private class ReferenceCollector implements UnrefCleanupDao.DeleteCandidatesFilter {
+        private final Map<ObjectKey, DeleteCandidate> deleteCandidates;
+        private final ReferenceGraph referenceGraph;
+        private final LocalDate today = dateTimeProvider.getCurrentDate();
+
+        private boolean current;
+        private int nrErrors = 0;
+
+        private ReferenceCollector(final Map<ObjectKey, DeleteCandidate> deleteCandidates, final ReferenceGraph referenceGraph) {
+            this.deleteCandidates = deleteCandidates;
+            this.referenceGraph = referenceGraph;
+        }
+
+        @Override
+        public void filter(final RpslObject rpslObject, final LocalDate date) {
+            final int source = getNode(new ObjectKey(rpslObject.getType(), rpslObject.getKey()));
+
+            if (source != -1 && ObjectType.ORGANISATION.equals(rpslObject.getType())) {
+                final OrgType orgType = OrgType.getFor(rpslObject.getValueForAttribute(AttributeType.ORG_TYPE));
+                if (OrgType.LIR.equals(orgType)) {
+                    LOGGER.debug("Never remove organisation of type LIR:\n\n{}\n", rpslObject);
+                    referenceGraph.addRoot(source, 0);
+                }
+            }
+
+            final int days = Math.max(0, Days.daysBetween(date, today).getDays());
+            for (final RpslAttribute rpslAttribute : rpslObject.findAttributes(REFERENCE_ATTRIBUTETYPES)) {
+                try {
+                    addReferences(rpslObject, rpslAttribute, source, days);
+                } catch (RuntimeException e) {
+                    if (e instanceof AttributeParseException) {
+                        LOGGER.error("Processing attribute {}: {}", rpslObject.getFormattedKey(), rpslAttribute);
+                    } else {
+                        LOGGER.error("Processing attribute {}: {}", rpslObject.getFormattedKey(), rpslAttribute, e);
+                    }
+
+                    if (nrErrors++ > MAX_ERRORS) {
+                        throw new IllegalStateException("Too many errors occured removing delete candidates, aborting unref cleanup");
+                    }
+                }
+            }
+        }
+
+        private void addReferences(final RpslObject rpslObject, final RpslAttribute rpslAttribute, final int source, final int days) {
+            for (final CIString value : rpslAttribute.getReferenceValues()) {
+                final Set<ObjectType> referenceTypes = rpslAttribute.getType().getReferences(value);
+                if (referenceTypes.contains(rpslObject.getType()) && value.equals(rpslObject.getKey())) {
+                    LOGGER.debug("Skipping self reference for {} in \n\n{}\n", rpslAttribute, rpslObject);
+                } else {
+                    for (final ObjectType referenceType : referenceTypes) {
+                        final int target = getNode(new ObjectKey(referenceType, value));
+                        if (target == -1) {
+                            continue;
+                        }
+
+                        if (source == -1) {
+                            referenceGraph.addRoot(target, days);
+                        } else {
+                            referenceGraph.addReference(source, target, days, current);
+                        }
+                    }
+                }
+            }
+        }
+
+        private int getNode(final ObjectKey objectKey) {
+            final DeleteCandidate deleteCandidate = deleteCandidates.get(objectKey);
+            return deleteCandidate == null ? -1 : referenceGraph.getNode(deleteCandidate.getObjectId());
+        }
+    }
+
     @Immutable
     static class DeleteCandidate {
         private final int objectId;
@@ -0,0 +1,37 @@
+package net.ripe.db.whois.scheduler.task.export;
+
+import net.ripe.db.whois.scheduler.DailyScheduler;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DatabaseDeltaExportTest {
+    @Mock RpslObjectsExporter rpslObjectsExporter;
+    @Mock DailyScheduler dailyScheduler;
+    @InjectMocks DatabaseDeltaExport subject;
+
+    @Test
+    public void run() {
+        when(dailyScheduler.isLastRunOnLocalHost()).thenReturn(true);
+
+        subject.run();
+
+        verify(rpslObjectsExporter).exportDelta();
+    }
+
+    @Test
+    public void run_on_other_cluster_member() {
+        when(dailyScheduler.isLastRunOnLocalHost()).thenReturn(false);
+
+        subject.run();
+
+        verifyZeroInteractions(rpslObjectsExporter);
+    }
+}
@@ -423,6 +423,37 @@ public class ExportDatabaseTestIntegration extends AbstractSchedulerIntegrationT
                 "Tags relating to 'ORG-TO1-TEST'", "bar # Bar Data", "foo # Foo Data");
     }
 
+    @Test
+    public void export_delta() throws IOException {
+        sourceContext.removeCurrentSource();
+        rpslObjectsExporter.export();
+
+        databaseHelper.addObject("" +
+                "mntner:         DELTA-MNT\n" +
+                "auth:           MD5-PW $1$xNv6umMG$cBd9DXqWEpsqeBq2AUjGy/\n" +
+                "source:         TEST");
+        databaseHelper.removeObject(databaseHelper.lookupObject(ObjectType.MNTNER, "DEV-MNT0"));
+
+        rpslObjectsExporter.exportDelta();
+
+        checkFile("dbase_new/delta/ripe.db.121-122.gz",
+                "%START Version: 3 RIPE 121-122\n",
+                "ADD 121\n\nmntner:         DELTA-MNT\n",
+                "DEL 122\n\nmntner:         DEV-MNT0\n",
+                "%END RIPE\n");
+        checkFile("internal/delta/ripe.db.121-122.gz",
+                "ADD 121\n\nmntner:         DELTA-MNT\nauth:           MD5-PW $1$xNv6umMG$cBd9DXqWEpsqeBq2AUjGy/",
+                "DEL 122\n\nmntner:         DEV-MNT0\n");
+        checkFile("dbase_new/delta/RIPE.CURRENTSERIAL", "122");
+        checkFile("dbase/RIPE.CURRENTSERIAL", "120");
+
+        rpslObjectsExporter.export();
+
+        checkFile("dbase_new/RIPE.CURRENTSERIAL", "122");
+        checkFile("dbase_new/delta/ripe.db.121-122.gz", "%START Version: 3 RIPE 121-122\n");
+        checkFile("dbase_new/delta/RIPE.CURRENTSERIAL", "122");
+    }
+
     private void checkFile(final String name, final String... expectedContents) throws IOException {
         final File file = new File(exportDir, name);
 
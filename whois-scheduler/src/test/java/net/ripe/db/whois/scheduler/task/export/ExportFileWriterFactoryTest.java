@@ -1,8 +1,10 @@
 package net.ripe.db.whois.scheduler.task.export;
 
 import com.google.common.base.Charsets;
+import net.ripe.db.whois.common.domain.serials.Operation;
 import net.ripe.db.whois.common.rpsl.DummifierCurrent;
 import net.ripe.db.whois.common.rpsl.DummifierLegacy;
+import net.ripe.db.whois.common.rpsl.RpslObject;
 import org.hamcrest.Matchers;
 import org.junit.Assert;
 import org.junit.Before;
@@ -15,10 +17,14 @@ import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.util.FileCopyUtils;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -97,4 +103,71 @@ public class ExportFileWriterFactoryTest {
         final String newSavedSerial = new String(FileCopyUtils.copyToByteArray(currentSerialFile), Charsets.ISO_8859_1);
         assertThat(newSavedSerial, Matchers.is(String.valueOf(LAST_SERIAL)));
     }
+
+    @Test
+    public void getLastSerial_no_export() {
+        assertNull(subject.getLastSerial(folder.getRoot()));
+    }
+
+    @Test
+    public void getLastSerial() {
+        subject.createExportFileWriters(folder.getRoot(), LAST_SERIAL);
+        assertThat(subject.getLastSerial(folder.getRoot()), Matchers.is(LAST_SERIAL));
+
+        subject.createDeltaFileWriters(folder.getRoot(), LAST_SERIAL, LAST_SERIAL + 10);
+        assertThat(subject.getLastSerial(folder.getRoot()), Matchers.is(LAST_SERIAL));
+
+        subject.setDeltaSerial(folder.getRoot(), LAST_SERIAL + 10);
+        assertThat(subject.getLastSerial(folder.getRoot()), Matchers.is(LAST_SERIAL + 10));
+    }
+
+    @Test
+    public void createDeltaFileWriters() throws IOException {
+        final List<DeltaFileWriter> deltaFileWriters = subject.createDeltaFileWriters(folder.getRoot(), LAST_SERIAL, LAST_SERIAL + 2);
+        assertThat(deltaFileWriters, Matchers.hasSize(2));
+
+        for (final DeltaFileWriter deltaFileWriter : deltaFileWriters) {
+            deltaFileWriter.write(LAST_SERIAL + 1, Operation.UPDATE, RpslObject.parse("mntner: DEV-MNT"));
+            deltaFileWriter.write(LAST_SERIAL + 2, Operation.DELETE, RpslObject.parse("mntner: DEV-MNT"));
+            deltaFileWriter.close();
+        }
+
+        assertThat(new File(folder.getRoot(), "dbase_new/delta/ripe.db.1235-1236.gz").exists(), Matchers.is(true));
+
+        final File internalFile = new File(folder.getRoot(), "internal/delta/ripe.db.1235-1236.gz");
+        final String contents = FileCopyUtils.copyToString(new InputStreamReader(new GZIPInputStream(new FileInputStream(internalFile)), Charsets.ISO_8859_1));
+        assertThat(contents, Matchers.endsWith("" +
+                "%START Version: 3 RIPE 1235-1236\n" +
+                "\n" +
+                "ADD 1235\n" +
+                "\n" +
+                "mntner:         DEV-MNT\n" +
+                "\n" +
+                "DEL 1236\n" +
+                "\n" +
+                "mntner:         DEV-MNT\n" +
+                "\n" +
+                "%END RIPE\n"));
+    }
+
+    @Test
+    public void moveDeltaFiles() throws IOException {
+        final File previousDir = folder.newFolder("previous");
+        subject.createExportFileWriters(previousDir, LAST_SERIAL);
+        for (final DeltaFileWriter deltaFileWriter : subject.createDeltaFileWriters(previousDir, LAST_SERIAL - 10, LAST_SERIAL)) {
+            deltaFileWriter.close();
+        }
+        for (final DeltaFileWriter deltaFileWriter : subject.createDeltaFileWriters(previousDir, LAST_SERIAL, LAST_SERIAL + 10)) {
+            deltaFileWriter.close();
+        }
+        subject.setDeltaSerial(previousDir, LAST_SERIAL + 10);
+
+        final File newDir = folder.newFolder("new");
+        subject.createExportFileWriters(newDir, LAST_SERIAL + 5);
+        subject.moveDeltaFiles(previousDir, newDir);
+
+        assertThat(new File(newDir, "dbase_new/delta").list(), Matchers.arrayContainingInAnyOrder("ripe.db.1235-1244.gz", "RIPE.CURRENTSERIAL"));
+        assertThat(new File(newDir, "internal/delta").list(), Matchers.arrayContainingInAnyOrder("ripe.db.1235-1244.gz", "RIPE.CURRENTSERIAL"));
+        assertThat(subject.getLastSerial(newDir), Matchers.is(LAST_SERIAL + 10));
+    }
 }
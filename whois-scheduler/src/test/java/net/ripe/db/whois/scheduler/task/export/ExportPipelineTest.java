@@ -0,0 +1,183 @@
+package net.ripe.db.whois.scheduler.task.export;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import net.ripe.db.whois.common.domain.CIString;
+import net.ripe.db.whois.common.domain.Tag;
+import net.ripe.db.whois.common.rpsl.DummifierLegacy;
+import net.ripe.db.whois.common.rpsl.RpslObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.util.FileCopyUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ExportPipelineTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void output_identical_to_sequential_export() throws IOException {
+        final List<RpslObject> objects = Lists.newArrayList();
+        for (int i = 0; i < 2500; i++) {
+            switch (i % 4) {
+                case 0:
+                    objects.add(RpslObject.parseCompact(i, ("mntner: DEV" + i + "-MNT\ndescr: description\nsource: RIPE").getBytes(Charsets.ISO_8859_1)));
+                    break;
+                case 1:
+                    objects.add(RpslObject.parseCompact(i, ("person: Person " + i + "\nnic-hdl: P" + i + "-RIPE\nsource: RIPE").getBytes(Charsets.ISO_8859_1)));
+                    break;
+                case 2:
+                    objects.add(RpslObject.parseCompact(i, ("role: Role " + i + "\nnic-hdl: R" + i + "-RIPE\nsource: RIPE").getBytes(Charsets.ISO_8859_1)));
+                    break;
+                default:
+                    objects.add(RpslObject.parseCompact(i, ("inetnum: 10.0.0.0 - 10.0.0." + (i % 256) + "\nnetname: NET" + i + "\nsource: RIPE").getBytes(Charsets.ISO_8859_1)));
+                    break;
+            }
+        }
+
+        final File sequentialDir = folder.newFolder("sequential");
+        final List<ExportFileWriter> sequentialWriters = createExportFileWriters(sequentialDir);
+        for (final RpslObject object : objects) {
+            for (final ExportFileWriter exportFileWriter : sequentialWriters) {
+                exportFileWriter.write(RpslObject.parse(object.getObjectId(), object.toByteArray()), tags(object.getObjectId()));
+            }
+        }
+        close(sequentialWriters);
+
+        final File pipelineDir = folder.newFolder("pipeline");
+        final List<ExportFileWriter> pipelineWriters = createExportFileWriters(pipelineDir);
+        final ExportPipeline subject = new ExportPipeline(pipelineWriters, 3);
+        try {
+            for (final RpslObject object : objects) {
+                subject.exportObject(object, tags(object.getObjectId()));
+            }
+
+            subject.finish();
+        } finally {
+            subject.close();
+            close(pipelineWriters);
+        }
+
+        assertThat(subject.getNrExported(), is(objects.size()));
+        assertSameFiles(new File(sequentialDir, "full"), new File(pipelineDir, "full"));
+        assertSameFiles(new File(sequentialDir, "split"), new File(pipelineDir, "split"));
+        assertSameFiles(new File(sequentialDir, "internal"), new File(pipelineDir, "internal"));
+    }
+
+    @Test
+    public void write_failure() throws IOException {
+        final RpslObject object1 = RpslObject.parse(1, "mntner: DEV-MNT1");
+        final RpslObject object2 = RpslObject.parse(2, "mntner: DEV-MNT2");
+
+        final ExportFileWriter failingWriter = mock(ExportFileWriter.class);
+        final ExportFileWriter otherWriter = mock(ExportFileWriter.class);
+        doThrow(IOException.class).when(failingWriter).write(object1, Collections.<Tag>emptyList());
+
+        final ExportPipeline subject = new ExportPipeline(Lists.newArrayList(failingWriter, otherWriter), 2);
+        try {
+            subject.exportObject(object1, Collections.<Tag>emptyList());
+            subject.exportObject(object2, Collections.<Tag>emptyList());
+            subject.finish();
+            fail("Expected exception");
+        } catch (RuntimeException ignored) {
+        } finally {
+            subject.close();
+        }
+
+        verify(failingWriter).write(object1, Collections.<Tag>emptyList());
+        verify(failingWriter, never()).write(object2, Collections.<Tag>emptyList());
+    }
+
+    @Test(timeout = 10000)
+    public void writer_error() throws IOException {
+        final RpslObject object = RpslObject.parse(1, "mntner: DEV-MNT1");
+
+        final ExportFileWriter failingWriter = mock(ExportFileWriter.class);
+        final ExportFileWriter otherWriter = mock(ExportFileWriter.class);
+        final OutOfMemoryError error = new OutOfMemoryError();
+        doThrow(error).when(failingWriter).write(object, Collections.<Tag>emptyList());
+
+        final ExportPipeline subject = new ExportPipeline(Lists.newArrayList(failingWriter, otherWriter), 2);
+        try {
+            for (int i = 0; i < 50000; i++) {
+                subject.exportObject(object, Collections.<Tag>emptyList());
+            }
+
+            subject.finish();
+            fail("Expected error");
+        } catch (OutOfMemoryError e) {
+            assertThat(e, sameInstance(error));
+        } finally {
+            subject.close();
+        }
+
+        verify(failingWriter).write(object, Collections.<Tag>emptyList());
+    }
+
+    @Test
+    public void close_without_finish() throws IOException {
+        final ExportFileWriter exportFileWriter = mock(ExportFileWriter.class);
+
+        final ExportPipeline subject = new ExportPipeline(Lists.newArrayList(exportFileWriter), 2);
+        subject.exportObject(RpslObject.parse(1, "mntner: DEV-MNT1"), Collections.<Tag>emptyList());
+        subject.close();
+
+        verify(exportFileWriter, never()).write(any(RpslObject.class), anyListOf(Tag.class));
+    }
+
+    private static List<Tag> tags(final int objectId) {
+        if (objectId % 7 == 0) {
+            return Lists.newArrayList(new Tag(CIString.ciString("unref"), objectId, "tag " + objectId));
+        }
+
+        return Collections.emptyList();
+    }
+
+    private List<ExportFileWriter> createExportFileWriters(final File baseDir) {
+        final File fullDir = new File(baseDir, "full");
+        final File splitDir = new File(baseDir, "split");
+        final File internalDir = new File(baseDir, "internal");
+        assertThat(fullDir.mkdir() && splitDir.mkdir() && internalDir.mkdir(), is(true));
+
+        final DummifierLegacy dummifierLegacy = new DummifierLegacy();
+        return Lists.newArrayList(
+                new ExportFileWriter(fullDir, new FilenameStrategy.SingleFile(), new DecorationStrategy.DummifyLegacy(dummifierLegacy)),
+                new ExportFileWriter(splitDir, new FilenameStrategy.SplitFile(), new DecorationStrategy.DummifyLegacy(dummifierLegacy)),
+                new ExportFileWriter(internalDir, new FilenameStrategy.SplitFile(), new DecorationStrategy.None()));
+    }
+
+    private static void close(final List<ExportFileWriter> exportFileWriters) {
+        for (final ExportFileWriter exportFileWriter : exportFileWriters) {
+            exportFileWriter.close();
+        }
+    }
+
+    private static void assertSameFiles(final File expectedDir, final File actualDir) throws IOException {
+        final File[] expectedFiles = expectedDir.listFiles();
+        assertThat(actualDir.list().length, is(expectedFiles.length));
+
+        for (final File expectedFile : expectedFiles) {
+            final byte[] expected = FileCopyUtils.copyToByteArray(expectedFile);
+            final byte[] actual = FileCopyUtils.copyToByteArray(new File(actualDir, expectedFile.getName()));
+            assertThat(expectedFile.getName(), actual, is(expected));
+        }
+    }
+}
@@ -1,9 +1,10 @@
 package net.ripe.db.whois.scheduler.task.export;
 
 import com.google.common.collect.Lists;
-import net.ripe.db.whois.common.dao.TagsDao;
 import net.ripe.db.whois.common.domain.Tag;
+import net.ripe.db.whois.common.domain.serials.Operation;
 import net.ripe.db.whois.common.rpsl.RpslObject;
+import net.ripe.db.whois.scheduler.task.export.dao.DeltaCallbackHandler;
 import net.ripe.db.whois.scheduler.task.export.dao.ExportCallbackHandler;
 import net.ripe.db.whois.scheduler.task.export.dao.ExportDao;
 import org.hamcrest.Matchers;
@@ -13,6 +14,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
@@ -28,6 +30,7 @@ import java.util.concurrent.TimeUnit;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -36,7 +39,6 @@ public class RpslObjectsToTextExporterTest {
 
     @Mock ExportFileWriterFactory exportFileWriterFactory;
     @Mock ExportDao exportDao;
-    @Mock TagsDao tagsDao;
 
     RpslObjectsToTextExporter subject;
     File exportDir;
@@ -52,7 +54,26 @@ public class RpslObjectsToTextExporterTest {
 
         when(exportFileWriterFactory.isExportDir(any(File.class))).thenReturn(true);
 
-        subject = new RpslObjectsToTextExporter(exportFileWriterFactory, exportDao, tagsDao, exportdirName, tmpDirName, true);
+        subject = new RpslObjectsToTextExporter(exportFileWriterFactory, exportDao, exportdirName, tmpDirName, true);
+        subject.setDeltaEnabled(true);
+
+        exportObjects(0);
+    }
+
+    private void exportObjects(final int serial, final RpslObject... objects) {
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                final ExportCallbackHandler exportCallbackHandler = (ExportCallbackHandler) invocation.getArguments()[0];
+                exportCallbackHandler.exportSerial(serial);
+
+                for (final RpslObject object : objects) {
+                    exportCallbackHandler.exportObject(object, Collections.<Tag>emptyList());
+                }
+
+                return null;
+            }
+        }).when(exportDao).exportObjects(any(ExportCallbackHandler.class));
     }
 
     @Test(expected = RuntimeException.class)
@@ -65,7 +86,7 @@ public class RpslObjectsToTextExporterTest {
     @Test
     public void export() {
         final int maxSerial = 1234;
-        when(exportDao.getMaxSerial()).thenReturn(maxSerial);
+        exportObjects(maxSerial);
 
         subject.export();
 
@@ -90,20 +111,7 @@ public class RpslObjectsToTextExporterTest {
         final RpslObject rpslObject1 = RpslObject.parse(2, "mntner: DEV-MNT1");
         final RpslObject rpslObject2 = RpslObject.parse(3, "mntner: DEV-MNT2");
 
-        Mockito.doAnswer(new Answer<Void>() {
-            @Override
-            public Void answer(InvocationOnMock invocation) throws Throwable {
-                ExportCallbackHandler exportCallbackHandler = (ExportCallbackHandler) invocation.getArguments()[0];
-
-                for (final RpslObject rpslObject : Lists.newArrayList(rpslObject1, rpslObject2)) {
-                    exportCallbackHandler.exportObject(rpslObject);
-                }
-
-                return null;
-            }
-        }).when(exportDao).exportObjects(any(ExportCallbackHandler.class));
-
-        when(tagsDao.getTags(anyInt())).thenReturn(emptyList);
+        exportObjects(0, rpslObject1, rpslObject2);
 
         subject.export();
 
@@ -127,22 +135,10 @@ public class RpslObjectsToTextExporterTest {
         final RpslObject rpslObject1 = RpslObject.parse(2, "mntner: DEV-MNT1");
         final RpslObject rpslObject2 = RpslObject.parse(3, "mntner: DEV-MNT2");
 
-        Mockito.doAnswer(new Answer<Void>() {
-            @Override
-            public Void answer(InvocationOnMock invocation) throws Throwable {
-                ExportCallbackHandler exportCallbackHandler = (ExportCallbackHandler) invocation.getArguments()[0];
-                for (final RpslObject rpslObject : Lists.newArrayList(rpslObject1, rpslObject2)) {
-                    exportCallbackHandler.exportObject(rpslObject);
-                }
-
-                return null;
-            }
-        }).when(exportDao).exportObjects(any(ExportCallbackHandler.class));
+        exportObjects(0, rpslObject1, rpslObject2);
 
         Mockito.doThrow(IOException.class).when(exportFileWriter).write(rpslObject1, emptyList);
 
-        when(tagsDao.getTags(2)).thenReturn(emptyList);
-
         try {
             subject.export();
             Assert.fail("Expected exception");
@@ -167,14 +163,15 @@ public class RpslObjectsToTextExporterTest {
         final CountDownLatch startLatch = new CountDownLatch(1);
         final CountDownLatch waitLatch = new CountDownLatch(1);
 
-        when(exportDao.getMaxSerial()).thenAnswer(new Answer<Integer>() {
+        Mockito.doAnswer(new Answer<Void>() {
             @Override
-            public Integer answer(InvocationOnMock invocation) throws Throwable {
+            public Void answer(InvocationOnMock invocation) throws Throwable {
                 startLatch.countDown();
                 waitLatch.await(5, TimeUnit.SECONDS);
-                return 0;
+                ((ExportCallbackHandler) invocation.getArguments()[0]).exportSerial(0);
+                return null;
             }
-        });
+        }).when(exportDao).exportObjects(any(ExportCallbackHandler.class));
 
         new Thread() {
             @Override
@@ -192,4 +189,70 @@ public class RpslObjectsToTextExporterTest {
             waitLatch.countDown();
         }
     }
+
+    @Test
+    public void export_delta() throws IOException {
+        final DeltaFileWriter deltaFileWriter = Mockito.mock(DeltaFileWriter.class);
+        final RpslObject rpslObject = RpslObject.parse(2, "mntner: DEV-MNT1");
+
+        when(exportFileWriterFactory.getLastSerial(exportDir)).thenReturn(10);
+        when(exportDao.getMaxSerial()).thenReturn(12);
+        when(exportFileWriterFactory.createDeltaFileWriters(exportDir, 10, 12)).thenReturn(Lists.newArrayList(deltaFileWriter));
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                final DeltaCallbackHandler deltaCallbackHandler = (DeltaCallbackHandler) invocation.getArguments()[2];
+                deltaCallbackHandler.exportChange(11, Operation.UPDATE, rpslObject);
+                deltaCallbackHandler.exportChange(12, Operation.DELETE, rpslObject);
+                return null;
+            }
+        }).when(exportDao).exportChanges(eq(10), eq(12), any(DeltaCallbackHandler.class));
+
+        subject.exportDelta();
+
+        final InOrder inOrder = Mockito.inOrder(deltaFileWriter, exportFileWriterFactory);
+        inOrder.verify(deltaFileWriter).write(11, Operation.UPDATE, rpslObject);
+        inOrder.verify(deltaFileWriter).write(12, Operation.DELETE, rpslObject);
+        inOrder.verify(deltaFileWriter).close();
+        inOrder.verify(exportFileWriterFactory).setDeltaSerial(exportDir, 12);
+    }
+
+    @Test
+    public void export_delta_failure() throws IOException {
+        final DeltaFileWriter deltaFileWriter = Mockito.mock(DeltaFileWriter.class);
+
+        when(exportFileWriterFactory.getLastSerial(exportDir)).thenReturn(10);
+        when(exportDao.getMaxSerial()).thenReturn(12);
+        when(exportFileWriterFactory.createDeltaFileWriters(exportDir, 10, 12)).thenReturn(Lists.newArrayList(deltaFileWriter));
+        Mockito.doThrow(IllegalStateException.class).when(exportDao).exportChanges(eq(10), eq(12), any(DeltaCallbackHandler.class));
+
+        try {
+            subject.exportDelta();
+            Assert.fail("Expected exception");
+        } catch (IllegalStateException ignored) {
+        }
+
+        Mockito.verify(deltaFileWriter).abort();
+        Mockito.verify(exportFileWriterFactory, Mockito.never()).setDeltaSerial(any(File.class), anyInt());
+    }
+
+    @Test
+    public void export_delta_up_to_date() {
+        when(exportFileWriterFactory.getLastSerial(exportDir)).thenReturn(12);
+        when(exportDao.getMaxSerial()).thenReturn(12);
+
+        subject.exportDelta();
+
+        Mockito.verify(exportDao, Mockito.never()).exportChanges(anyInt(), anyInt(), any(DeltaCallbackHandler.class));
+    }
+
+    @Test
+    public void export_delta_without_export() {
+        when(exportFileWriterFactory.getLastSerial(exportDir)).thenReturn(null);
+
+        subject.exportDelta();
+
+        Mockito.verify(exportDao, Mockito.never()).getMaxSerial();
+        Mockito.verify(exportDao, Mockito.never()).exportChanges(anyInt(), anyInt(), any(DeltaCallbackHandler.class));
+    }
 }
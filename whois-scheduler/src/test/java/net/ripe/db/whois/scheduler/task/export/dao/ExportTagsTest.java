@@ -0,0 +1,59 @@
+package net.ripe.db.whois.scheduler.task.export.dao;
+
+import net.ripe.db.whois.common.domain.Tag;
+import org.junit.Before;
+import org.junit.Test;
+
+import static net.ripe.db.whois.common.domain.CIString.ciString;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class ExportTagsTest {
+    ExportTags subject;
+
+    @Before
+    public void setUp() {
+        subject = new ExportTags();
+    }
+
+    @Test
+    public void empty_tags() {
+        assertThat(subject.getTags(1), is(empty()));
+        assertThat(subject.size(), is(0));
+    }
+
+    @Test
+    public void get_tags() {
+        for (int objectId = 0; objectId < 5000; objectId += 2) {
+            subject.add(objectId, ciString("unref"), "28");
+            if (objectId % 10 == 0) {
+                subject.add(objectId, ciString("other"), null);
+            }
+        }
+
+        assertThat(subject.getTags(1), is(empty()));
+        assertThat(subject.getTags(5000), is(empty()));
+        assertThat(subject.getTags(2), contains(new Tag(ciString("unref"), 2, "28")));
+        assertThat(subject.getTags(4990), contains(new Tag(ciString("unref"), 4990, "28"), new Tag(ciString("other"), 4990, null)));
+        assertThat(subject.size(), is(3000));
+    }
+
+    @Test
+    public void types_are_shared() {
+        subject.add(1, ciString("unref"), null);
+        subject.add(2, ciString("unref"), null);
+        subject.add(3, ciString("UNREF"), null);
+
+        assertThat(subject.getTags(2).get(0).getType(), is(sameInstance(subject.getTags(1).get(0).getType())));
+        assertThat(subject.getTags(3).get(0).getType().toString(), is("UNREF"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unordered() {
+        subject.add(2, ciString("unref"), null);
+        subject.add(1, ciString("unref"), null);
+    }
+}
@@ -1,6 +1,9 @@
 package net.ripe.db.whois.scheduler.task.export.dao;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import net.ripe.db.whois.common.domain.Tag;
+import net.ripe.db.whois.common.domain.serials.Operation;
 import net.ripe.db.whois.common.rpsl.RpslObject;
 import net.ripe.db.whois.scheduler.AbstractSchedulerIntegrationTest;
 import org.hamcrest.Matchers;
@@ -8,6 +11,7 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.List;
 import java.util.Set;
 
 public class JdbcExportDaoTest extends AbstractSchedulerIntegrationTest {
@@ -22,7 +26,11 @@ public class JdbcExportDaoTest extends AbstractSchedulerIntegrationTest {
     public void exportObjects_in_context() {
         subject.exportObjects(new ExportCallbackHandler() {
             @Override
-            public void exportObject(final RpslObject object) {
+            public void exportSerial(final int serial) {
+            }
+
+            @Override
+            public void exportObject(final RpslObject object, final List<Tag> tags) {
             }
         });
     }
@@ -34,7 +42,11 @@ public class JdbcExportDaoTest extends AbstractSchedulerIntegrationTest {
         try {
             subject.exportObjects(new ExportCallbackHandler() {
                 @Override
-                public void exportObject(final RpslObject object) {
+                public void exportSerial(final int serial) {
+                }
+
+                @Override
+                public void exportObject(final RpslObject object, final List<Tag> tags) {
                     throw new RuntimeException("Oops");
                 }
             });
@@ -57,7 +69,12 @@ public class JdbcExportDaoTest extends AbstractSchedulerIntegrationTest {
 
         subject.exportObjects(new ExportCallbackHandler() {
             @Override
-            public void exportObject(final RpslObject object) {
+            public void exportSerial(final int serial) {
+                Assert.assertThat(serial, Matchers.is(nrObjects));
+            }
+
+            @Override
+            public void exportObject(final RpslObject object, final List<Tag> tags) {
                 if (!objects.remove(object)) {
                     Assert.fail("Object not in set: " + object);
                 }
@@ -66,4 +83,21 @@ public class JdbcExportDaoTest extends AbstractSchedulerIntegrationTest {
 
         Assert.assertThat(objects, Matchers.hasSize(0));
     }
+
+    @Test
+    public void exportChanges() {
+        final RpslObject object = databaseHelper.addObject("mntner: DEV-MNT1");
+        databaseHelper.addObject("mntner: DEV-MNT2");
+        databaseHelper.removeObject(object);
+
+        final List<String> changes = Lists.newArrayList();
+        subject.exportChanges(1, 3, new DeltaCallbackHandler() {
+            @Override
+            public void exportChange(final int serialId, final Operation operation, final RpslObject object) {
+                changes.add(operation + " " + serialId + " " + object.getKey());
+            }
+        });
+
+        Assert.assertThat(changes, Matchers.contains("ADD 2 DEV-MNT2", "DEL 3 DEV-MNT1"));
+    }
 }
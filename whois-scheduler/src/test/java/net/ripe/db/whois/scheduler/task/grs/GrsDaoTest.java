@@ -4,6 +4,7 @@ import net.ripe.db.whois.common.DateTimeProvider;
 import net.ripe.db.whois.common.domain.CIString;
 import net.ripe.db.whois.common.rpsl.ObjectType;
 import net.ripe.db.whois.common.rpsl.RpslObject;
+import net.ripe.db.whois.common.source.Source;
 import net.ripe.db.whois.common.source.SourceContext;
 import net.ripe.db.whois.scheduler.AbstractSchedulerIntegrationTest;
 import org.junit.Before;
@@ -12,7 +13,9 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 
+import java.util.Map;
 import java.util.Set;
 
 import static net.ripe.db.whois.common.domain.CIString.ciString;
@@ -118,4 +121,72 @@ public class GrsDaoTest extends AbstractSchedulerIntegrationTest {
         final Set<CIString> missingReferences = subject.updateIndexes(1);
         assertThat(missingReferences, hasSize(0));
     }
+
+    @Test
+    public void batch_create_update_and_delete() {
+        final GrsDao.BatchUpdate batchUpdate = subject.createBatchUpdate();
+        final RpslObject createdObject = RpslObject.parse("" +
+                "mntner: DEV1-MNT\n" +
+                "mnt-by: DEV1-MNT");
+        final GrsDao.UpdateResult created = batchUpdate.create(createdObject, GrsDao.digest(createdObject.toByteArray()));
+        batchUpdate.create(RpslObject.parse("mntner: DEV2-MNT"), 2);
+        batchUpdate.flush();
+
+        assertThat(created.hasMissingReferences(), is(true));
+        assertThat(subject.updateIndexes(created.getObjectId()), hasSize(0));
+
+        final Map<String, GrsDao.CurrentObject> currentObjects = subject.getCurrentObjects();
+        assertThat(currentObjects.values(), hasSize(2));
+
+        final GrsDao.CurrentObject dev1 = currentObjects.get(GrsDao.currentObjectKey(ObjectType.MNTNER, "dev1-mnt"));
+        assertThat(dev1.getObjectId(), is(created.getObjectId()));
+        assertThat(dev1.getDigest(), is(GrsDao.digest(subject.get(created.getObjectId()).getRpslObject().toByteArray())));
+
+        final RpslObject updatedObject = RpslObject.parse("" +
+                "mntner: DEV1-MNT\n" +
+                "mnt-by: DEV2-MNT");
+        final GrsDao.UpdateResult updated = batchUpdate.update(dev1.createUpdateInfo(), updatedObject, GrsDao.digest(updatedObject.toByteArray()));
+        batchUpdate.delete(currentObjects.get(GrsDao.currentObjectKey(ObjectType.MNTNER, "DEV2-MNT")).createUpdateInfo());
+        batchUpdate.flush();
+
+        assertThat(updated.hasMissingReferences(), is(false));
+        assertThat(subject.getCurrentObjects().values(), hasSize(1));
+        assertThat(subject.getCurrentObjects().get(GrsDao.currentObjectKey(ObjectType.MNTNER, "DEV1-MNT")).getDigest(), is(GrsDao.digest(updatedObject.toByteArray())));
+        assertThat(subject.find("DEV1-MNT", ObjectType.MNTNER).getRpslObject(), is(updatedObject));
+        assertNull(subject.find("DEV2-MNT", ObjectType.MNTNER));
+    }
+
+    @Test
+    public void batch_with_failing_object() {
+        final GrsDao.BatchUpdate batchUpdate = subject.createBatchUpdate();
+        final GrsDao.UpdateResult created1 = batchUpdate.create(RpslObject.parse("mntner: DEV1-MNT"), 1);
+        final GrsDao.UpdateResult created2 = batchUpdate.create(RpslObject.parse("mntner: DEV2-MNT"), 2);
+        final GrsDao.UpdateResult created3 = batchUpdate.create(RpslObject.parse("mntner: DEV3-MNT"), 3);
+
+        final JdbcTemplate jdbcTemplate = sourceContext.getSourceConfiguration(Source.master("TEST-GRS")).getJdbcTemplate();
+        jdbcTemplate.update("INSERT INTO mntner (object_id, mntner) VALUES (?, ?)", created2.getObjectId(), "OTHER-MNT");
+
+        assertThat(batchUpdate.flush(), contains(created2.getObjectId()));
+
+        assertThat(subject.getCurrentObjects().keySet(), containsInAnyOrder(
+                GrsDao.currentObjectKey(ObjectType.MNTNER, "DEV1-MNT"),
+                GrsDao.currentObjectKey(ObjectType.MNTNER, "DEV3-MNT")));
+        assertThat(subject.find("DEV1-MNT", ObjectType.MNTNER).getObjectId(), is(created1.getObjectId()));
+        assertThat(subject.find("DEV3-MNT", ObjectType.MNTNER).getObjectId(), is(created3.getObjectId()));
+        assertNull(subject.find("DEV2-MNT", ObjectType.MNTNER));
+        assertThat(jdbcTemplate.queryForInt("SELECT COUNT(*) FROM mntner WHERE mntner = 'DEV2-MNT'"), is(0));
+    }
+
+    @Test
+    public void digests_stored_for_objects_without_digest() {
+        final RpslObject maintainer = RpslObject.parse("mntner: DEV-MNT");
+        final GrsDao.UpdateResult created = subject.createObject(maintainer);
+
+        final JdbcTemplate jdbcTemplate = sourceContext.getSourceConfiguration(Source.master("TEST-GRS")).getJdbcTemplate();
+        jdbcTemplate.update("DELETE FROM object_digest");
+
+        final GrsDao.CurrentObject currentObject = subject.getCurrentObjects().get(GrsDao.currentObjectKey(ObjectType.MNTNER, "DEV-MNT"));
+        assertThat(currentObject.getDigest(), is(GrsDao.digest(maintainer.toByteArray())));
+        assertThat(jdbcTemplate.queryForLong("SELECT digest FROM object_digest WHERE object_id = ?", created.getObjectId()), is(currentObject.getDigest()));
+    }
 }
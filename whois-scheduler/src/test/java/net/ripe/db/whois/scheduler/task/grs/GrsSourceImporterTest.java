@@ -1,6 +1,8 @@
 package net.ripe.db.whois.scheduler.task.grs;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import net.ripe.db.whois.common.dao.RpslObjectUpdateInfo;
 import net.ripe.db.whois.common.grs.AuthoritativeResource;
 import net.ripe.db.whois.common.rpsl.AttributeSanitizer;
 import net.ripe.db.whois.common.rpsl.ObjectMessages;
@@ -21,6 +23,8 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
 
 import static net.ripe.db.whois.common.domain.CIString.ciString;
 import static org.junit.Assert.fail;
@@ -36,6 +40,7 @@ public class GrsSourceImporterTest {
     @Mock ResourceTagger resourceTagger;
     @Mock GrsSource grsSource;
     @Mock GrsDao grsDao;
+    @Mock GrsDao.BatchUpdate batchUpdate;
     @Mock GrsDao.UpdateResult updateResultCreate;
     @Mock GrsDao.UpdateResult updateResultUpdate;
     @Mock AuthoritativeResource authoritativeResource;
@@ -58,10 +63,11 @@ public class GrsSourceImporterTest {
             }
         });
 
-        when(grsDao.createObject(any(RpslObject.class))).thenReturn(updateResultCreate);
-        when(grsDao.updateObject(any(GrsObjectInfo.class), any(RpslObject.class))).thenReturn(updateResultUpdate);
+        when(grsDao.createBatchUpdate()).thenReturn(batchUpdate);
+        when(batchUpdate.create(any(RpslObject.class), anyLong())).thenReturn(updateResultCreate);
+        when(batchUpdate.update(any(RpslObjectUpdateInfo.class), any(RpslObject.class), anyLong())).thenReturn(updateResultUpdate);
 
-        subject = new GrsSourceImporter(folder.getRoot().getAbsolutePath(), sanitizer, resourceTagger, sourceContext);
+        subject = new GrsSourceImporter(folder.getRoot().getAbsolutePath(), sanitizer, resourceTagger, sourceContext, 2);
     }
 
     @Test
@@ -70,7 +76,7 @@ public class GrsSourceImporterTest {
         subject.grsImport(grsSource, true);
 
         verify(grsDao).cleanDatabase();
-        verify(grsDao, never()).getCurrentObjectIds();
+        verify(grsDao, never()).getCurrentObjects();
     }
 
     @Test
@@ -80,7 +86,7 @@ public class GrsSourceImporterTest {
         subject.grsImport(grsSource, true);
 
         verify(grsDao, never()).cleanDatabase();
-        verify(grsDao, never()).getCurrentObjectIds();
+        verify(grsDao, never()).getCurrentObjects();
     }
 
     @Test
@@ -89,7 +95,7 @@ public class GrsSourceImporterTest {
         subject.grsImport(grsSource, false);
 
         verify(grsDao, never()).cleanDatabase();
-        verify(grsDao).getCurrentObjectIds();
+        verify(grsDao).getCurrentObjects();
     }
 
     @Test
@@ -99,7 +105,7 @@ public class GrsSourceImporterTest {
         subject.grsImport(grsSource, false);
 
         verify(grsDao, never()).cleanDatabase();
-        verify(grsDao, never()).getCurrentObjectIds();
+        verify(grsDao, never()).getCurrentObjects();
     }
 
     @Test
@@ -127,11 +133,11 @@ public class GrsSourceImporterTest {
     @Test
     public void process_nothing_does_not_delete() {
         when(grsSource.getName()).thenReturn(ciString("APNIC-GRS"));
-        when(grsDao.getCurrentObjectIds()).thenReturn(Lists.newArrayList(1));
+        when(grsDao.getCurrentObjects()).thenReturn(currentObjects(new GrsDao.CurrentObject(1, 1, ObjectType.MNTNER, "DEV-MNT", 0)));
 
         subject.grsImport(grsSource, false);
 
-        verify(grsDao, never()).deleteObject(anyInt());
+        verify(batchUpdate, never()).delete(any(RpslObjectUpdateInfo.class));
     }
 
     @Test
@@ -172,7 +178,7 @@ public class GrsSourceImporterTest {
 
         subject.grsImport(grsSource, false);
 
-        verify(grsDao).createObject(RpslObject.parse("" +
+        verify(batchUpdate).create(eq(RpslObject.parse("" +
                 "aut-num:        AS1263\n" +
                 "as-name:        NSN-TEST-AS\n" +
                 "descr:          NSN-TEST-AS\n" +
@@ -180,7 +186,7 @@ public class GrsSourceImporterTest {
                 "tech-c:         See MAINT-AS1263\n" +
                 "mnt-by:         MAINT-AS1263\n" +
                 "changed:        DB-admin@merit.edu 19950201\n" +
-                "source:         APNIC-GRS"));
+                "source:         APNIC-GRS")), anyLong());
 
         verify(sanitizer).sanitize(any(RpslObject.class), any(ObjectMessages.class));
     }
@@ -206,7 +212,7 @@ public class GrsSourceImporterTest {
 
         subject.grsImport(grsSource, false);
 
-        verify(grsDao, never()).createObject(any(RpslObject.class));
+        verify(batchUpdate, never()).create(any(RpslObject.class), anyLong());
         verify(sanitizer).sanitize(any(RpslObject.class), any(ObjectMessages.class));
     }
 
@@ -237,7 +243,7 @@ public class GrsSourceImporterTest {
 
         subject.grsImport(grsSource, false);
 
-        verify(grsDao).createObject(RpslObject.parse("" +
+        verify(batchUpdate).create(eq(RpslObject.parse("" +
                 "aut-num:        AS1263\n" +
                 "as-name:        NSN-TEST-AS\n" +
                 "descr:          NSN-TEST-AS\n" +
@@ -246,7 +252,7 @@ public class GrsSourceImporterTest {
                 "tech-c:         See MAINT-AS1263\n" +
                 "mnt-by:         MAINT-AS1263\n" +
                 "changed:        DB-admin@merit.edu 19950201\n" +
-                "source:         APNIC-GRS"));
+                "source:         APNIC-GRS")), anyLong());
 
         verify(sanitizer).sanitize(any(RpslObject.class), any(ObjectMessages.class));
     }
@@ -270,10 +276,10 @@ public class GrsSourceImporterTest {
 
         subject.grsImport(grsSource, false);
 
-        verify(grsDao).createObject(RpslObject.parse("" +
+        verify(batchUpdate).create(eq(RpslObject.parse("" +
                 "aut-num:        AS1263\n" +
                 "changed:        DB-admin@merit.edu 19950201\n" +
-                "source:         APNIC-GRS"));
+                "source:         APNIC-GRS")), anyLong());
 
         verify(sanitizer).sanitize(any(RpslObject.class), any(ObjectMessages.class));
     }
@@ -296,22 +302,25 @@ public class GrsSourceImporterTest {
             }
         }).when(grsSource).handleObjects(any(File.class), any(ObjectHandler.class));
 
-        final GrsObjectInfo grsObjectInfo1 = new GrsObjectInfo(1, 1, RpslObject.parse("role: Ninja Role\nnic-hdl: NI124-RIPE\n"));
-        when(grsDao.find("NI124-RIPE", ObjectType.PERSON)).thenReturn(null);
-        when(grsDao.find("NI124-RIPE", ObjectType.ROLE)).thenReturn(grsObjectInfo1);
+        when(grsDao.getCurrentObjects()).thenReturn(currentObjects(new GrsDao.CurrentObject(1, 1, ObjectType.ROLE, "NI124-RIPE", 0)));
 
         subject.grsImport(grsSource, false);
 
-        verify(grsDao, times(0)).createObject(any(RpslObject.class));
-        verify(grsDao, times(0)).updateObject(any(GrsObjectInfo.class), any(RpslObject.class));
+        verify(batchUpdate, times(0)).create(any(RpslObject.class), anyLong());
+        verify(batchUpdate, times(0)).update(any(RpslObjectUpdateInfo.class), any(RpslObject.class), anyLong());
     }
 
     @Test
     public void run_create_update_delete() throws IOException {
         when(grsSource.getName()).thenReturn(ciString("APNIC-GRS"));
-        when(grsDao.getCurrentObjectIds()).thenReturn(Lists.newArrayList(1, 2, 3));
         when(authoritativeResource.isMaintainedInRirSpace(any(RpslObject.class))).thenReturn(true);
 
+        final RpslObject noopObject = RpslObject.parse("mntner:         NOOP-MNT\nsource:         APNIC-GRS");
+        when(grsDao.getCurrentObjects()).thenReturn(currentObjects(
+                new GrsDao.CurrentObject(1, 1, ObjectType.MNTNER, "MODIFY-MNT", GrsDao.digest(RpslObject.parse("mntner: MODIFY-MNT").toByteArray())),
+                new GrsDao.CurrentObject(2, 2, ObjectType.MNTNER, "NOOP-MNT", GrsDao.digest(noopObject.toByteArray())),
+                new GrsDao.CurrentObject(3, 1, ObjectType.MNTNER, "DELETE-MNT", 0)));
+
         doAnswer(new Answer() {
             @Override
             public Object answer(final InvocationOnMock invocation) throws Throwable {
@@ -334,27 +343,117 @@ public class GrsSourceImporterTest {
 
         when(updateResultUpdate.hasMissingReferences()).thenReturn(true);
 
-        final GrsObjectInfo grsObjectInfo1 = new GrsObjectInfo(1, 1, RpslObject.parse("mntner: MODIFY-MNT"));
-        when(grsDao.find("MODIFY-MNT", ObjectType.MNTNER)).thenReturn(grsObjectInfo1);
-
-        final GrsObjectInfo grsObjectInfo2 = new GrsObjectInfo(2, 2, RpslObject.parse("mntner:         NOOP-MNT\nsource:         APNIC-GRS"));
-        when(grsDao.find("NOOP-MNT", ObjectType.MNTNER)).thenReturn(grsObjectInfo2);
-
         subject.grsImport(grsSource, false);
 
-        verify(grsDao).createObject(RpslObject.parse("" +
+        verify(batchUpdate).create(eq(RpslObject.parse("" +
                 "mntner:         CREATE-MNT\n" +
                 "mnt-by:         CREATE-MNT\n" +
-                "source:         APNIC-GRS"));
+                "source:         APNIC-GRS")), anyLong());
 
-        verify(grsDao).updateObject(grsObjectInfo1, RpslObject.parse("" +
+        final RpslObject modifiedObject = RpslObject.parse("" +
                 "mntner:         MODIFY-MNT\n" +
                 "mnt-by:         CREATE-MNT\n" +
-                "source:         APNIC-GRS"));
+                "source:         APNIC-GRS");
+        verify(batchUpdate).update(new RpslObjectUpdateInfo(1, 1, ObjectType.MNTNER, "MODIFY-MNT"), modifiedObject, GrsDao.digest(modifiedObject.toByteArray()));
 
         verify(grsDao).updateIndexes(0);
-        verify(grsDao, times(1)).updateObject(any(GrsObjectInfo.class), any(RpslObject.class));
+        verify(batchUpdate, times(1)).update(any(RpslObjectUpdateInfo.class), any(RpslObject.class), anyLong());
+
+        verify(batchUpdate).delete(new RpslObjectUpdateInfo(3, 1, ObjectType.MNTNER, "DELETE-MNT"));
+        verify(batchUpdate, times(1)).delete(any(RpslObjectUpdateInfo.class));
+        verify(batchUpdate, times(2)).flush();
+    }
+
+    @Test
+    public void import_more_objects_than_batch_size() throws IOException {
+        when(grsSource.getName()).thenReturn(ciString("APNIC-GRS"));
+        when(authoritativeResource.isMaintainedInRirSpace(any(RpslObject.class))).thenReturn(true);
+
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws Throwable {
+                final ObjectHandler objectHandler = (ObjectHandler) invocation.getArguments()[1];
+                for (int i = 0; i < 5000; i++) {
+                    objectHandler.handle(Lists.newArrayList("mntner: MNT" + i + "\n"));
+                }
+
+                objectHandler.handle(Lists.newArrayList("mntner: MNT1\n", "descr: duplicate\n"));
+                return null;
+            }
+        }).when(grsSource).handleObjects(any(File.class), any(ObjectHandler.class));
+
+        // mocks are not thread safe, so prepare on a single thread
+        subject = new GrsSourceImporter(folder.getRoot().getAbsolutePath(), sanitizer, resourceTagger, sourceContext, 1);
+        subject.grsImport(grsSource, false);
+
+        verify(batchUpdate, times(5000)).create(any(RpslObject.class), anyLong());
+        verify(batchUpdate).create(eq(RpslObject.parse("mntner: MNT4999\nsource: APNIC-GRS")), anyLong());
+        verify(batchUpdate).update(any(RpslObjectUpdateInfo.class), eq(RpslObject.parse("mntner: MNT1\ndescr: duplicate\nsource: APNIC-GRS")), anyLong());
+    }
+
+    @Test
+    public void failed_create_undone() throws IOException {
+        when(grsSource.getName()).thenReturn(ciString("APNIC-GRS"));
+        when(authoritativeResource.isMaintainedInRirSpace(any(RpslObject.class))).thenReturn(true);
+
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws Throwable {
+                final ObjectHandler objectHandler = (ObjectHandler) invocation.getArguments()[1];
+                objectHandler.handle(RpslObject.parse("mntner: CREATE-MNT"));
+                objectHandler.handle(RpslObject.parse("mntner: CREATE-MNT"));
+                return null;
+            }
+        }).when(grsSource).handleObjects(any(File.class), any(ObjectHandler.class));
+
+        // flush after every object, failing to write it
+        when(batchUpdate.size()).thenReturn(Integer.MAX_VALUE);
+        when(updateResultCreate.getObjectId()).thenReturn(10);
+        when(batchUpdate.flush()).thenReturn(Collections.singleton(10));
+
+        subject = new GrsSourceImporter(folder.getRoot().getAbsolutePath(), sanitizer, resourceTagger, sourceContext, 1);
+        subject.grsImport(grsSource, false);
+
+        verify(batchUpdate, times(2)).create(eq(RpslObject.parse("mntner: CREATE-MNT\nsource: APNIC-GRS")), anyLong());
+        verify(batchUpdate, never()).update(any(RpslObjectUpdateInfo.class), any(RpslObject.class), anyLong());
+        verify(grsDao, never()).updateIndexes(10);
+    }
+
+    @Test
+    public void failed_update_undone() throws IOException {
+        when(grsSource.getName()).thenReturn(ciString("APNIC-GRS"));
+        when(authoritativeResource.isMaintainedInRirSpace(any(RpslObject.class))).thenReturn(true);
+        when(grsDao.getCurrentObjects()).thenReturn(currentObjects(
+                new GrsDao.CurrentObject(1, 1, ObjectType.MNTNER, "MODIFY-MNT", GrsDao.digest(RpslObject.parse("mntner: MODIFY-MNT").toByteArray()))));
+
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws Throwable {
+                final ObjectHandler objectHandler = (ObjectHandler) invocation.getArguments()[1];
+                objectHandler.handle(RpslObject.parse("mntner: MODIFY-MNT\ndescr: modified"));
+                objectHandler.handle(RpslObject.parse("mntner: MODIFY-MNT\ndescr: modified"));
+                return null;
+            }
+        }).when(grsSource).handleObjects(any(File.class), any(ObjectHandler.class));
+
+        // flush after every object, failing to write it
+        when(batchUpdate.size()).thenReturn(Integer.MAX_VALUE);
+        when(updateResultUpdate.getObjectId()).thenReturn(1);
+        when(batchUpdate.flush()).thenReturn(Collections.singleton(1));
+
+        subject = new GrsSourceImporter(folder.getRoot().getAbsolutePath(), sanitizer, resourceTagger, sourceContext, 1);
+        subject.grsImport(grsSource, false);
+
+        final RpslObject modifiedObject = RpslObject.parse("mntner: MODIFY-MNT\ndescr: modified\nsource: APNIC-GRS");
+        verify(batchUpdate, times(2)).update(new RpslObjectUpdateInfo(1, 1, ObjectType.MNTNER, "MODIFY-MNT"), modifiedObject, GrsDao.digest(modifiedObject.toByteArray()));
+    }
+
+    private static Map<String, GrsDao.CurrentObject> currentObjects(final GrsDao.CurrentObject... currentObjects) {
+        final Map<String, GrsDao.CurrentObject> result = Maps.newHashMap();
+        for (final GrsDao.CurrentObject currentObject : currentObjects) {
+            result.put(GrsDao.currentObjectKey(currentObject.createUpdateInfo().getObjectType(), currentObject.createUpdateInfo().getKey()), currentObject);
+        }
 
-        verify(grsDao).deleteObject(3);
+        return result;
     }
 }
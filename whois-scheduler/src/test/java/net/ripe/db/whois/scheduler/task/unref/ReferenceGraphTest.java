@@ -0,0 +1,139 @@
+package net.ripe.db.whois.scheduler.task.unref;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.BitSet;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ReferenceGraphTest {
+    private ReferenceGraph subject;
+
+    @Before
+    public void setUp() {
+        subject = new ReferenceGraph(new int[]{40, 10, 30, 20});
+    }
+
+    @Test
+    public void nodes() {
+        assertThat(subject.size(), is(4));
+        assertThat(subject.getNode(10), is(0));
+        assertThat(subject.getNode(40), is(3));
+        assertThat(subject.getNode(15), is(-1));
+        assertThat(subject.getObjectId(subject.getNode(30)), is(30));
+    }
+
+    @Test
+    public void unreachable_without_roots() {
+        subject.addReference(0, 1, 0, true);
+        subject.computeReachability();
+
+        for (int node = 0; node < subject.size(); node++) {
+            assertThat(subject.getDaysUnreferenced(node), is(ReferenceGraph.UNREACHABLE));
+        }
+    }
+
+    @Test
+    public void chain_from_root() {
+        subject.addRoot(0, 0);
+        subject.addReference(0, 1, 0, true);
+        subject.addReference(1, 2, 0, true);
+        subject.computeReachability();
+
+        assertThat(subject.getDaysUnreferenced(0), is(0));
+        assertThat(subject.getDaysUnreferenced(1), is(0));
+        assertThat(subject.getDaysUnreferenced(2), is(0));
+        assertThat(subject.getDaysUnreferenced(3), is(ReferenceGraph.UNREACHABLE));
+    }
+
+    @Test
+    public void cycle_not_reachable_from_root() {
+        subject.addReference(0, 1, 0, true);
+        subject.addReference(1, 2, 0, true);
+        subject.addReference(2, 0, 0, true);
+        subject.addRoot(3, 0);
+        subject.computeReachability();
+
+        assertThat(subject.getDaysUnreferenced(0), is(ReferenceGraph.UNREACHABLE));
+        assertThat(subject.getDaysUnreferenced(1), is(ReferenceGraph.UNREACHABLE));
+        assertThat(subject.getDaysUnreferenced(2), is(ReferenceGraph.UNREACHABLE));
+        assertThat(subject.getDaysUnreferenced(3), is(0));
+    }
+
+    @Test
+    public void most_recent_path() {
+        subject.addRoot(0, 10);
+        subject.addRoot(1, 0);
+        subject.addReference(0, 2, 0, true);
+        subject.addReference(1, 2, 30, false);
+        subject.addReference(2, 3, 5, false);
+        subject.computeReachability();
+
+        assertThat(subject.getDaysUnreferenced(0), is(10));
+        assertThat(subject.getDaysUnreferenced(1), is(0));
+        assertThat(subject.getDaysUnreferenced(2), is(10));
+        assertThat(subject.getDaysUnreferenced(3), is(10));
+    }
+
+    @Test
+    public void delete_order_referencing_first() {
+        subject.addReference(2, 1, 0, true);
+        subject.addReference(1, 0, 0, true);
+        subject.addReference(3, 0, 0, true);
+        subject.computeReachability();
+
+        final int[] deleteOrder = subject.getDeleteOrder(all());
+
+        assertThat(deleteOrder.length, is(4));
+        assertThat(indexOf(deleteOrder, 2) < indexOf(deleteOrder, 1), is(true));
+        assertThat(indexOf(deleteOrder, 1) < indexOf(deleteOrder, 0), is(true));
+        assertThat(indexOf(deleteOrder, 3) < indexOf(deleteOrder, 0), is(true));
+    }
+
+    @Test
+    public void delete_order_ignores_history() {
+        subject.addReference(0, 1, 0, false);
+        subject.addReference(1, 0, 0, true);
+
+        assertThat(subject.getDeleteOrder(all()), is(new int[]{1, 2, 3, 0}));
+    }
+
+    @Test
+    public void delete_order_leaves_out_cycle() {
+        subject.addReference(0, 1, 0, true);
+        subject.addReference(1, 0, 0, true);
+        subject.addReference(1, 2, 0, true);
+
+        assertThat(subject.getDeleteOrder(all()), is(new int[]{3}));
+    }
+
+    @Test
+    public void delete_order_leaves_out_referenced_by_kept() {
+        subject.addReference(0, 1, 0, true);
+        subject.addReference(1, 2, 0, true);
+
+        final BitSet deletable = new BitSet();
+        deletable.set(1);
+        deletable.set(2);
+
+        assertThat(subject.getDeleteOrder(deletable), is(new int[]{}));
+    }
+
+    private BitSet all() {
+        final BitSet deletable = new BitSet();
+        deletable.set(0, subject.size());
+        return deletable;
+    }
+
+    private static int indexOf(final int[] values, final int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
@@ -310,6 +310,52 @@ public class UnrefCleanupTest {
         assertThat(tag.getType(), is(CIString.ciString("unref")));
     }
 
+    @Test
+    public void candidates_referencing_each_other_only() {
+        deleteCandidates.put(new ObjectKey(ObjectType.MNTNER, "DEV-MNT"), new UnrefCleanup.DeleteCandidate(1, new LocalDate()));
+        deleteCandidates.put(new ObjectKey(ObjectType.PERSON, "TEST-PN"), new UnrefCleanup.DeleteCandidate(2, new LocalDate()));
+
+        final RpslObject mntner = RpslObject.parse("mntner: DEV-MNT\nadmin-c: TEST-PN");
+        final RpslObject person = RpslObject.parse("person: test\nnic-hdl: TEST-PN\nmnt-by: DEV-MNT");
+        rpslObjectsInLast.add(mntner);
+        rpslObjectsInLast.add(person);
+
+        when(dateTimeProvider.getCurrentDate()).thenReturn(new LocalDate().plusDays(100));
+
+        subject.run();
+
+        verifyZeroInteractions(singleUpdateHandler);
+
+        final ArgumentCaptor<List> argument = ArgumentCaptor.forClass(List.class);
+        verify(tagsDao).rebuild(eq(CIString.ciString("unref")), argument.capture());
+        assertThat(argument.getValue().size(), is(2));
+        for (final Object tag : argument.getValue()) {
+            assertThat(((Tag) tag).getValue(), is("0"));
+        }
+    }
+
+    @Test
+    public void candidate_referenced_by_unreferenced_candidate() {
+        deleteCandidates.put(new ObjectKey(ObjectType.MNTNER, "DEV-MNT"), new UnrefCleanup.DeleteCandidate(1, new LocalDate()));
+        deleteCandidates.put(new ObjectKey(ObjectType.PERSON, "TEST-PN"), new UnrefCleanup.DeleteCandidate(2, new LocalDate()));
+
+        final RpslObject mntner = RpslObject.parse("mntner: DEV-MNT\nmnt-by: DEV-MNT");
+        final RpslObject person = RpslObject.parse("person: test\nnic-hdl: TEST-PN\nmnt-by: DEV-MNT");
+        rpslObjectsInLast.add(mntner);
+        rpslObjectsInLast.add(person);
+
+        when(objectDao.getById(1)).thenReturn(mntner);
+        when(objectDao.getById(2)).thenReturn(person);
+        when(dateTimeProvider.getCurrentDate()).thenReturn(new LocalDate().plusDays(100));
+
+        subject.run();
+
+        final ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(singleUpdateHandler, times(2)).handle(any(Origin.class), any(Keyword.class), updates.capture(), any(UpdateContext.class));
+        assertThat(updates.getAllValues().get(0).getSubmittedObject(), is(person));
+        assertThat(updates.getAllValues().get(1).getSubmittedObject(), is(mntner));
+    }
+
     @Test(expected = IllegalStateException.class)
     public void too_many_errors() {
         deleteCandidates.put(new ObjectKey(ObjectType.MNTNER, "DEV-MNT"), new UnrefCleanup.DeleteCandidate(1, new LocalDate()));
@@ -19,6 +19,8 @@ import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
@@ -110,9 +112,25 @@ class TransactionalSingleUpdateHandler implements SingleUpdateHandler {
             pendingUpdateHandler.handle(preparedUpdate, updateContext);
         } else {
             updateObjectHandler.execute(preparedUpdate, updateContext);
+            publishIpTreeUpdates();
         }
     }
 
+    private void publishIpTreeUpdates() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            ipTreeUpdater.requestPublication();
+            return;
+        }
+
+        // the published delta holds the updates up to the last serial in the database, so request it once committed
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                ipTreeUpdater.requestPublication();
+            }
+        });
+    }
+
     @CheckForNull
     private RpslObject getOriginalObject(final RpslObject updatedObject, final Update update, final UpdateContext updateContext, final OverrideOptions overrideOptions) {
         if (overrideOptions.isObjectIdOverride()) {
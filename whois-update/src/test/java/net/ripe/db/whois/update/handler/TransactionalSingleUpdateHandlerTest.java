@@ -92,6 +92,15 @@ public class TransactionalSingleUpdateHandlerTest {
         verify(updateObjectHandler, times(1)).execute(any(PreparedUpdate.class), any(UpdateContext.class));
     }
 
+    @Test
+    public void handle_execute_publishes_ip_tree_updates() {
+        when(update.getOperation()).thenReturn(Operation.UNSPECIFIED);
+
+        subject.handle(origin, Keyword.NONE, update, updateContext);
+
+        verify(ipTreeUpdater).requestPublication();
+    }
+
     @Test(expected = IllegalStateException.class)
     public void object_modified_unexpectedly() {
         final RpslObject inetnum = RpslObject.parse("inetnum: 192.168.1.1");